@@ -0,0 +1,85 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.benchmark;
+
+import edu.ucla.sspace.vector.CompactSparseVector;
+import edu.ucla.sspace.vector.DenseVector;
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.SparseHashDoubleVector;
+
+import java.util.Random;
+
+
+/**
+ * Utility methods for creating the random vectors used by the benchmarks.
+ * Vectors are identified by name so that the vector type may be specified as
+ * a benchmark parameter.
+ */
+class BenchmarkVectors {
+
+    /**
+     * The name for a {@link DenseVector}
+     */
+    static final String DENSE = "dense";
+
+    /**
+     * The name for a {@link CompactSparseVector}
+     */
+    static final String COMPACT_SPARSE = "compactSparse";
+
+    /**
+     * The name for a {@link SparseHashDoubleVector}
+     */
+    static final String SPARSE_HASH = "sparseHash";
+
+    /**
+     * Uninstantiable
+     */
+    private BenchmarkVectors() { }
+
+    /**
+     * Returns an empty vector of the named type.
+     */
+    static DoubleVector create(String type, int length) {
+        if (type.equals(DENSE))
+            return new DenseVector(length);
+        else if (type.equals(COMPACT_SPARSE))
+            return new CompactSparseVector(length);
+        else if (type.equals(SPARSE_HASH))
+            return new SparseHashDoubleVector(length);
+        throw new IllegalArgumentException("Unknown vector type: " + type);
+    }
+
+    /**
+     * Returns a vector of the named type in which each dimension is non-zero
+     * with the probability {@code density}.
+     */
+    static DoubleVector random(String type, int length, double density,
+                               Random random) {
+        DoubleVector v = create(type, length);
+        for (int i = 0; i < length; ++i) {
+            if (random.nextDouble() < density)
+                v.set(i, random.nextGaussian());
+        }
+        return v;
+    }
+}
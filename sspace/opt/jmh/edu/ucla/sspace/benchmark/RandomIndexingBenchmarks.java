@@ -0,0 +1,130 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.benchmark;
+
+import edu.ucla.sspace.ri.RandomIndexing;
+
+import edu.ucla.sspace.util.WorkQueue;
+
+import java.io.BufferedReader;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks for {@link RandomIndexing#processDocument(BufferedReader)
+ * RandomIndexing.processDocument} on documents from a {@link
+ * SyntheticCorpus}.  Each invocation processes a fixed batch of documents
+ * using the specified number of threads, in the same way that {@link
+ * edu.ucla.sspace.mains.GenericMain GenericMain} processes a corpus, so the
+ * score reflects both the per-document cost and the contention between threads
+ * updating the shared semantic vectors.  The same {@code RandomIndexing}
+ * instance is used for the entire trial, so after the warmup iterations every
+ * word in the vocabulary has been seen and the benchmark measures the
+ * steady-state cost of updating existing semantic vectors.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@State(Scope.Benchmark)
+public class RandomIndexingBenchmarks {
+
+    /**
+     * The number of documents processed by each invocation
+     */
+    private static final int DOCUMENTS_PER_INVOCATION = 64;
+
+    @Param({"1", "2", "4"})
+    public int threads;
+
+    @Param({"1000", "4000"})
+    public int vectorLength;
+
+    @Param({"100", "1000"})
+    public int tokensPerDocument;
+
+    @Param({"false", "true"})
+    public boolean sparseSemantics;
+
+    @Param({"false", "true"})
+    public boolean bufferedAccumulation;
+
+    private RandomIndexing ri;
+
+    private List<String> documents;
+
+    private WorkQueue workQueue;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Properties props = new Properties();
+        props.setProperty(RandomIndexing.VECTOR_LENGTH_PROPERTY,
+                          String.valueOf(vectorLength));
+        props.setProperty(RandomIndexing.USE_SPARSE_SEMANTICS_PROPERTY,
+                          String.valueOf(sparseSemantics));
+        props.setProperty(RandomIndexing.USE_BUFFERED_ACCUMULATION_PROPERTY,
+                          String.valueOf(bufferedAccumulation));
+        ri = new RandomIndexing(props);
+        documents = new SyntheticCorpus(0).nextDocuments(
+            DOCUMENTS_PER_INVOCATION, tokensPerDocument);
+        workQueue = new WorkQueue(threads);
+    }
+
+    @Benchmark
+    public RandomIndexing processDocuments() {
+        Object key = workQueue.registerTaskGroup(documents.size());
+        for (final String doc : documents) {
+            workQueue.add(key, new Runnable() {
+                public void run() {
+                    try {
+                        ri.processDocument(
+                            new BufferedReader(new StringReader(doc)));
+                    } catch (IOException ioe) {
+                        throw new IOError(ioe);
+                    }
+                }
+            });
+        }
+        workQueue.await(key);
+        return ri;
+    }
+}
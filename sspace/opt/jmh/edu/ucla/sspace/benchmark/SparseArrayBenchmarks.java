@@ -0,0 +1,100 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.benchmark;
+
+import edu.ucla.sspace.util.SparseDoubleArray;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks for {@link SparseDoubleArray#addPrimitive(int,double)
+ * SparseDoubleArray.addPrimitive}.  The {@code updateExisting} benchmark adds
+ * to indices that already have values, which measures the cost of finding an
+ * index.  The {@code build} benchmark adds {@code nonZeros} randomly ordered
+ * indices to an empty array, which also measures the cost of inserting new
+ * indices and the allocation rate of growing the array.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SparseArrayBenchmarks {
+
+    @Param({"100000", "1000000"})
+    public int length;
+
+    @Param({"100", "1000", "10000"})
+    public int nonZeros;
+
+    /**
+     * The indices that are added, in random order
+     */
+    private int[] indices;
+
+    private SparseDoubleArray populated;
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(length ^ nonZeros);
+        indices = new int[nonZeros];
+        for (int i = 0; i < nonZeros; ++i)
+            indices[i] = random.nextInt(length);
+        populated = new SparseDoubleArray(length);
+        for (int i : indices)
+            populated.addPrimitive(i, 1);
+        next = 0;
+    }
+
+    @Benchmark
+    public double updateExisting() {
+        int i = indices[next];
+        if (++next == indices.length)
+            next = 0;
+        return populated.addPrimitive(i, 1);
+    }
+
+    @Benchmark
+    public SparseDoubleArray build() {
+        SparseDoubleArray arr = new SparseDoubleArray(length);
+        for (int i : indices)
+            arr.addPrimitive(i, 1);
+        return arr;
+    }
+}
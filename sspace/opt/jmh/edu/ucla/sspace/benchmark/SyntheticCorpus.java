@@ -0,0 +1,208 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * A generator of synthetic documents whose tokens follow a Zipfian
+ * distribution, which approximates the word frequencies of natural language
+ * text.  The generator is deterministic for a given seed, so benchmarks that
+ * process its documents are repeatable across runs and machines without
+ * needing to download or distribute a real corpus.<p>
+ *
+ * The vocabulary consists of pseudo-words, where the word with rank {@code r}
+ * occurs with a probability proportional to {@code 1 / r^s} for the exponent
+ * {@code s}.  Each document is a single line of space-separated tokens, which
+ * matches the format expected by the {@code --docFile} option of the
+ * command-line mains.<p>
+ *
+ * This class is not thread-safe.
+ */
+public class SyntheticCorpus {
+
+    /**
+     * The default number of distinct words in the vocabulary
+     */
+    public static final int DEFAULT_VOCABULARY_SIZE = 50000;
+
+    /**
+     * The default Zipfian exponent, which is close to that observed for
+     * English text
+     */
+    public static final double DEFAULT_EXPONENT = 1.07;
+
+    /**
+     * The words of the vocabulary in order of decreasing frequency
+     */
+    private final String[] words;
+
+    /**
+     * The cumulative probability of sampling each word, where the last value
+     * is {@code 1}
+     */
+    private final double[] cumulative;
+
+    /**
+     * The source of randomness for sampling words
+     */
+    private final Random random;
+
+    /**
+     * Creates a generator with the default vocabulary size and exponent.
+     */
+    public SyntheticCorpus(long seed) {
+        this(DEFAULT_VOCABULARY_SIZE, DEFAULT_EXPONENT, seed);
+    }
+
+    /**
+     * Creates a generator that samples from {@code vocabularySize} distinct
+     * words with the specified Zipfian exponent.
+     */
+    public SyntheticCorpus(int vocabularySize, double exponent, long seed) {
+        if (vocabularySize < 1)
+            throw new IllegalArgumentException(
+                "The vocabulary must contain at least one word");
+        if (exponent <= 0)
+            throw new IllegalArgumentException(
+                "The exponent must be positive: " + exponent);
+        words = new String[vocabularySize];
+        cumulative = new double[vocabularySize];
+        double sum = 0;
+        for (int r = 0; r < vocabularySize; ++r) {
+            words[r] = wordForRank(r);
+            sum += 1d / Math.pow(r + 1, exponent);
+            cumulative[r] = sum;
+        }
+        for (int r = 0; r < vocabularySize; ++r)
+            cumulative[r] /= sum;
+        cumulative[vocabularySize - 1] = 1d;
+        random = new Random(seed);
+    }
+
+    /**
+     * Returns a pronounceable pseudo-word that is unique to the rank.
+     */
+    private static String wordForRank(int rank) {
+        final String consonants = "bdfgklmnprstvz";
+        final String vowels = "aeiou";
+        StringBuilder sb = new StringBuilder(8);
+        int r = rank;
+        do {
+            sb.append(consonants.charAt(r % consonants.length()));
+            r /= consonants.length();
+            sb.append(vowels.charAt(r % vowels.length()));
+            r /= vowels.length();
+        } while (r > 0);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the next document, which contains the specified number of
+     * space-separated tokens.
+     */
+    public String nextDocument(int numTokens) {
+        StringBuilder sb = new StringBuilder(numTokens * 6);
+        for (int i = 0; i < numTokens; ++i) {
+            if (i > 0)
+                sb.append(' ');
+            sb.append(nextWord());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the next {@code numDocs} documents, each of which contains the
+     * specified number of tokens.
+     */
+    public List<String> nextDocuments(int numDocs, int tokensPerDocument) {
+        List<String> docs = new ArrayList<String>(numDocs);
+        for (int i = 0; i < numDocs; ++i)
+            docs.add(nextDocument(tokensPerDocument));
+        return docs;
+    }
+
+    /**
+     * Returns a word sampled from the Zipfian distribution.
+     */
+    public String nextWord() {
+        int i = Arrays.binarySearch(cumulative, random.nextDouble());
+        // binarySearch returns (-(insertion point) - 1) for missing values
+        return words[(i < 0) ? -(i + 1) : i];
+    }
+
+    /**
+     * Returns the number of distinct words that may be generated.
+     */
+    public int vocabularySize() {
+        return words.length;
+    }
+
+    /**
+     * Writes {@code numDocs} documents to the file, one per line.
+     */
+    public void write(File output, int numDocs, int tokensPerDocument)
+            throws IOException {
+        PrintWriter pw = new PrintWriter(
+            new BufferedWriter(new FileWriter(output)));
+        try {
+            for (int i = 0; i < numDocs; ++i)
+                pw.println(nextDocument(tokensPerDocument));
+        } finally {
+            pw.close();
+        }
+        if (pw.checkError())
+            throw new IOException("Unable to write corpus to " + output);
+    }
+
+    /**
+     * Writes a synthetic corpus to a file so that it may be used as input to
+     * the command-line mains when profiling an entire run.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println(
+                "usage: java SyntheticCorpus <output-file> <num-docs> " +
+                "<tokens-per-doc> [vocabulary-size] [exponent] [seed]");
+            return;
+        }
+        int vocabularySize = (args.length > 3)
+            ? Integer.parseInt(args[3]) : DEFAULT_VOCABULARY_SIZE;
+        double exponent = (args.length > 4)
+            ? Double.parseDouble(args[4]) : DEFAULT_EXPONENT;
+        long seed = (args.length > 5) ? Long.parseLong(args[5]) : 0;
+        SyntheticCorpus corpus =
+            new SyntheticCorpus(vocabularySize, exponent, seed);
+        corpus.write(new File(args[0]), Integer.parseInt(args[1]),
+                     Integer.parseInt(args[2]));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.benchmark;
+
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.VectorMath;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * Benchmarks for {@link VectorMath#add(DoubleVector,DoubleVector)
+ * VectorMath.add}, which is the inner operation of most semantic space
+ * algorithms that sum co-occurrence or index vectors.<p>
+ *
+ * The {@code accumulate} benchmark repeatedly adds the same vector to a
+ * running sum, so after the first invocation the sum's non-zero dimensions no
+ * longer change and the benchmark measures the steady-state cost of updating
+ * existing values.  The {@code addToEmpty} benchmark adds the vector to a
+ * newly created vector, which also measures the cost of inserting new
+ * non-zero dimensions and the allocation rate of growing a sparse vector.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VectorBenchmarks {
+
+    @Param({"dense", "compactSparse", "sparseHash"})
+    public String vectorType;
+
+    @Param({"1000", "10000", "100000"})
+    public int length;
+
+    @Param({"0.01", "0.1", "1"})
+    public double density;
+
+    private DoubleVector sum;
+
+    private DoubleVector addend;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(length);
+        sum = BenchmarkVectors.random(vectorType, length, density, random);
+        addend = BenchmarkVectors.random(vectorType, length, density, random);
+    }
+
+    @Benchmark
+    public DoubleVector accumulate() {
+        return VectorMath.add(sum, addend);
+    }
+
+    @Benchmark
+    public DoubleVector addToEmpty() {
+        return VectorMath.add(
+            BenchmarkVectors.create(vectorType, length), addend);
+    }
+}
@@ -33,7 +33,6 @@ import edu.ucla.sspace.text.IteratorFactory;
 import edu.ucla.sspace.vector.DenseVector;
 import edu.ucla.sspace.vector.DoubleVector;
 import edu.ucla.sspace.vector.VectorMath;
-import edu.ucla.sspace.vector.VectorMath;
 import edu.ucla.sspace.vector.Vectors;
 
 import java.io.BufferedReader;
@@ -41,6 +40,7 @@ import java.io.FileReader;
 import java.io.IOException;
 
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -69,7 +69,21 @@ import java.util.logging.Logger;
  * sliding window centered around the target term. Additionally a sum of
  * convolutions of several n-grams is added to the holographic meaning. The
  * main functionality of this class can be found in the {@link IndexBuilder}
- * class.
+ * class.<p>
+ *
+ * Optionally, the circular convolutions may be computed entirely in the
+ * frequency domain by caching the Fourier transform of each index vector.  In
+ * this mode, the permutations that make the convolution non-commutative
+ * multiply the index of each dimension by an odd constant, which is equivalent
+ * to a permutation of the Fourier transform.  This allows every n-gram of a
+ * context to be bound and summed using only element-wise products of the
+ * cached transforms, followed by a single inverse transform per context,
+ * rather than three transforms for every convolution.  All intermediate
+ * values are kept in {@code double[]} buffers that are reused by each thread.
+ * Since the permutations differ, the holographs are not identical to those
+ * computed without caching, though they encode the same n-gram information.
+ * The cached transforms require roughly as much memory as the index vectors
+ * themselves, and the vector size must be a power of two.
  *
  * @author Keith Stevens
  */
@@ -144,6 +158,43 @@ public class Beagle implements SemanticSpace {
 
     private final SemanticType semanticType;
 
+    /**
+     * Whether the Fourier transforms of the index vectors are cached and the
+     * convolutions are computed in the frequency domain.
+     */
+    private final boolean cacheTransforms;
+
+    /**
+     * A mapping from each term to the first {@code indexVectorSize / 2 + 1}
+     * complex values of the Fourier transform of its index vector, which
+     * determine the remaining values since the index vectors are real.  This
+     * is only used when transforms are cached.
+     */
+    private final ConcurrentMap<String, double[]> termSpectra;
+
+    /**
+     * The transform used to compute the cached spectra and the inverse of the
+     * convolutions when transforms are cached.
+     */
+    private final ComplexDoubleFFT_Radix2 fft;
+
+    /**
+     * For each frequency, the frequency of the untransformed spectrum that is
+     * moved to it by the permutation of the left operand of a convolution.
+     */
+    private final int[] leftSpectralPermutation;
+
+    /**
+     * For each frequency, the frequency of the untransformed spectrum that is
+     * moved to it by the permutation of the right operand of a convolution.
+     */
+    private final int[] rightSpectralPermutation;
+
+    /**
+     * The buffers used by each thread when transforms are cached.
+     */
+    private final ThreadLocal<ConvolutionBuffers> buffers;
+
     public Beagle(int vectorSize, Map<String, DoubleVector> vectorMap) {
         this(vectorSize, SemanticType.COMPOSITE, vectorMap);
     }
@@ -151,6 +202,26 @@ public class Beagle implements SemanticSpace {
     public Beagle(int vectorSize,
                   SemanticType semanticType,
                   Map<String, DoubleVector> vectorMap) {
+        this(vectorSize, semanticType, vectorMap, false);
+    }
+
+    /**
+     * Creates a new {@code Beagle} instance.
+     *
+     * @param vectorSize the length of the index and semantic vectors
+     * @param semanticType the information encoded in the semantic vectors
+     * @param vectorMap a mapping from each term to its index vector
+     * @param cacheTransforms {@code true} if the Fourier transforms of the
+     *        index vectors should be cached and the convolutions computed in
+     *        the frequency domain
+     *
+     * @throws IllegalArgumentException if {@code cacheTransforms} is {@code
+     *         true} and {@code vectorSize} is not a power of two
+     */
+    public Beagle(int vectorSize,
+                  SemanticType semanticType,
+                  Map<String, DoubleVector> vectorMap,
+                  boolean cacheTransforms) {
         this.indexVectorSize = vectorSize;
         this.vectorMap = vectorMap;
         termHolographs = new ConcurrentHashMap<String, DoubleVector>();
@@ -166,6 +237,31 @@ public class Beagle implements SemanticSpace {
 
         prevSize = 1;
         nextSize = 5;
+
+        this.cacheTransforms = cacheTransforms;
+        if (cacheTransforms) {
+            if (vectorSize < 1 || (vectorSize & (vectorSize - 1)) != 0)
+                throw new IllegalArgumentException(
+                    "The vector size must be a power of two when caching " +
+                    "transforms: " + vectorSize);
+            termSpectra = new ConcurrentHashMap<String, double[]>();
+            fft = new ComplexDoubleFFT_Radix2(vectorSize);
+            int leftMultiplier = randomOddMultiplier(-1);
+            int rightMultiplier = randomOddMultiplier(leftMultiplier);
+            leftSpectralPermutation = spectralPermutation(leftMultiplier);
+            rightSpectralPermutation = spectralPermutation(rightMultiplier);
+            buffers = new ThreadLocal<ConvolutionBuffers>() {
+                protected ConvolutionBuffers initialValue() {
+                    return new ConvolutionBuffers(indexVectorSize);
+                }
+            };
+        } else {
+            termSpectra = null;
+            fft = null;
+            leftSpectralPermutation = null;
+            rightSpectralPermutation = null;
+            buffers = null;
+        }
     }
 
     /**
@@ -231,7 +327,10 @@ public class Beagle implements SemanticSpace {
                     meaning = new DenseVector(indexVectorSize);
                     documentVectors.put(focusWord, meaning);
                 }
-                updateMeaning(meaning, prevWords, nextWords);
+                if (cacheTransforms)
+                    updateMeaningFromSpectra(meaning, prevWords, nextWords);
+                else
+                    updateMeaning(meaning, prevWords, nextWords);
             }
 
             prevWords.offer(focusWord);
@@ -312,6 +411,219 @@ public class Beagle implements SemanticSpace {
         }
     }
 
+    /**
+     * Adds a holograph encoding the co-occurance information, and the
+     * ordering information of the given context in the same manner as {@link
+     * #updateMeaning(DoubleVector,Queue,Queue) updateMeaning}, but computes the
+     * convolutions in the frequency domain using the cached transforms of the
+     * index vectors.
+     */
+    private void updateMeaningFromSpectra(DoubleVector meaning,
+                                          Queue<String> prevWords,
+                                          Queue<String> nextWords) {
+        ConvolutionBuffers b = buffers.get();
+        if (semanticType == SemanticType.COMPOSITE ||
+            semanticType == SemanticType.CONTEXT) {
+            double[] context = b.context;
+            Arrays.fill(context, 0);
+            for (String term : prevWords) 
+                addIndexVector(context, term);
+            for (String term : nextWords) 
+                addIndexVector(context, term);
+            addNormalized(meaning, context);
+        }
+
+        if (semanticType == SemanticType.COMPOSITE ||
+            semanticType == SemanticType.ORDERING) {
+            int n = indexVectorSize;
+            double[] sum = b.sum;
+            Arrays.fill(sum, 0);
+            double[] placeHolderSpectrum = getSpectrum("");
+
+            // Do the convolutions starting at index 0.
+            double[] chain = b.chain;
+            String prevWord = prevWords.peek();
+            if (!prevWord.equals(IteratorFactory.EMPTY_TOKEN)) {
+                bind(getSpectrum(prevWord), placeHolderSpectrum, chain);
+                add(sum, chain);
+            } else
+                System.arraycopy(placeHolderSpectrum, 0, chain, 0, n + 2);
+            chain = bindAll(nextWords, chain, b.chainTemp, sum);
+
+            // Do the convolutions starting at index 1.
+            System.arraycopy(placeHolderSpectrum, 0, chain, 0, n + 2);
+            double[] temp = (chain == b.chain) ? b.chainTemp : b.chain;
+            bindAll(nextWords, chain, temp, sum);
+
+            // Invert the sum of the n-gram spectra to get the order vector
+            double[] full = b.full;
+            for (int k = 0; k <= n / 2; ++k) {
+                full[2 * k] = sum[2 * k];
+                full[2 * k + 1] = sum[2 * k + 1];
+            }
+            // The remaining frequencies are the complex conjugates
+            for (int k = n / 2 + 1; k < n; ++k) {
+                full[2 * k] = sum[2 * (n - k)];
+                full[2 * k + 1] = -sum[2 * (n - k) + 1];
+            }
+            fft.inverse(full);
+            double[] order = b.context;
+            for (int i = 0; i < n; ++i)
+                order[i] = full[2 * i];
+            addNormalized(meaning, order);
+        }
+    }
+
+    /**
+     * Binds each of the terms to the n-gram whose spectrum is in {@code
+     * chain}, in order, adding the spectrum of each resulting n-gram to {@code
+     * sum}.  Filtered tokens are skipped.
+     *
+     * @return the array that contains the spectrum of the final n-gram, which
+     *         is either {@code chain} or {@code temp}
+     */
+    private double[] bindAll(Queue<String> terms, double[] chain,
+                             double[] temp, double[] sum) {
+        for (String term : terms) {
+            if (term.equals(IteratorFactory.EMPTY_TOKEN))
+                continue;
+            bind(chain, getSpectrum(term), temp);
+            add(sum, temp);
+            double[] swap = chain;
+            chain = temp;
+            temp = swap;
+        }
+        return chain;
+    }
+
+    /**
+     * Stores the spectrum of the circular convolution of the permuted left and
+     * right operands in {@code result}, given the spectra of the unpermuted
+     * operands.  Only the first {@code indexVectorSize / 2 + 1} frequencies
+     * are computed, since the remaining values are their complex conjugates.
+     */
+    private void bind(double[] left, double[] right, double[] result) {
+        int n = indexVectorSize;
+        int half = n / 2;
+        for (int k = 0; k <= half; ++k) {
+            int l = leftSpectralPermutation[k];
+            double lRe, lIm;
+            if (l <= half) {
+                lRe = left[2 * l];
+                lIm = left[2 * l + 1];
+            } else {
+                lRe = left[2 * (n - l)];
+                lIm = -left[2 * (n - l) + 1];
+            }
+            int r = rightSpectralPermutation[k];
+            double rRe, rIm;
+            if (r <= half) {
+                rRe = right[2 * r];
+                rIm = right[2 * r + 1];
+            } else {
+                rRe = right[2 * (n - r)];
+                rIm = -right[2 * (n - r) + 1];
+            }
+            result[2 * k] = lRe * rRe - lIm * rIm;
+            result[2 * k + 1] = lRe * rIm + lIm * rRe;
+        }
+    }
+
+    /**
+     * Returns the first {@code indexVectorSize / 2 + 1} complex values of the
+     * Fourier transform of the term's index vector, computing the transform if
+     * it has not already been cached.
+     */
+    private double[] getSpectrum(String term) {
+        double[] spectrum = termSpectra.get(term);
+        if (spectrum != null)
+            return spectrum;
+        DoubleVector indexVector = vectorMap.get(term);
+        double[] full = new double[2 * indexVectorSize];
+        for (int i = 0; i < indexVectorSize; ++i)
+            full[2 * i] = indexVector.get(i);
+        fft.transform(full);
+        spectrum = Arrays.copyOf(full, indexVectorSize + 2);
+        // If another thread has already computed the spectrum, use its copy so
+        // that only a single instance is retained
+        double[] existing = termSpectra.putIfAbsent(term, spectrum);
+        return (existing == null) ? spectrum : existing;
+    }
+
+    /**
+     * Adds the index vector for the term to the array, unless the term is a
+     * filtered token.
+     */
+    private void addIndexVector(double[] sum, String term) {
+        if (term.equals(IteratorFactory.EMPTY_TOKEN))
+            return;
+        DoubleVector v = vectorMap.get(term);
+        for (int i = 0; i < indexVectorSize; ++i)
+            sum[i] += v.get(i);
+    }
+
+    /**
+     * Adds the values of the second array to the first.
+     */
+    private static void add(double[] sum, double[] values) {
+        for (int i = 0; i < sum.length; ++i)
+            sum[i] += values[i];
+    }
+
+    /**
+     * Adds the l2-normalized values of the array to the vector.  If the
+     * magnitude of the array is 0, the vector is left unchanged.
+     */
+    private static void addNormalized(DoubleVector v, double[] values) {
+        double magnitude = 0;
+        for (double d : values)
+            magnitude += d * d;
+        if (magnitude == 0)
+            return;
+        magnitude = Math.sqrt(magnitude);
+        for (int i = 0; i < values.length; ++i)
+            v.add(i, values[i] / magnitude);
+    }
+
+    /**
+     * Returns a random odd multiplier, other than {@code 1}, {@code -1} and
+     * {@code exclude}, for the indices of a vector.  Multiplying each index by
+     * an odd number modulo the vector size, which is a power of two, permutes
+     * the indices.
+     */
+    private int randomOddMultiplier(int exclude) {
+        int n = indexVectorSize;
+        // Vectors of length 4 or less have no such multiplier
+        if (n <= 4)
+            return 1;
+        int multiplier;
+        do {
+            multiplier = (2 * (int)(Math.random() * (n / 2))) + 1;
+        } while (multiplier == 1 || multiplier == n - 1 
+                 || multiplier == exclude);
+        return multiplier;
+    }
+
+    /**
+     * Returns the permutation of the Fourier transform that is equivalent to
+     * permuting a vector by moving the value at index {@code multiplier * i}
+     * to index {@code i}.  The value of frequency {@code k} of the permuted
+     * vector's transform is the value of frequency {@code multiplier^-1 * k}
+     * of the original transform, where the inverse is modulo the vector size.
+     */
+    private int[] spectralPermutation(int multiplier) {
+        // Newton's iteration for the inverse of an odd number modulo 2^32,
+        // where each step doubles the number of correct low-order bits
+        int inverse = multiplier;
+        for (int i = 0; i < 5; ++i)
+            inverse *= 2 - multiplier * inverse;
+        int mask = indexVectorSize - 1;
+        int[] permutation = new int[indexVectorSize];
+        for (int k = 0; k < indexVectorSize; ++k)
+            permutation[k] = (inverse * k) & mask;
+        return permutation;
+    }
+
     /**
      * Performs l2-normalization on the vector in place.  If the magnitude of
      * the vector is 0, the values are left unchanged.
@@ -422,4 +734,45 @@ public class Beagle implements SemanticSpace {
             result.set(i, data.get(orderVector[i]));
         return result;
     }
+
+    /**
+     * The reusable buffers for computing a holograph in the frequency domain.
+     * The spectra contain the first {@code n / 2 + 1} complex values of a
+     * transform, as alternating real and imaginary parts.
+     */
+    private static class ConvolutionBuffers {
+
+        /**
+         * The sum of the index vectors in the context, or the order vector
+         */
+        final double[] context;
+
+        /**
+         * The sum of the spectra of each n-gram
+         */
+        final double[] sum;
+
+        /**
+         * The spectrum of the current n-gram
+         */
+        final double[] chain;
+
+        /**
+         * The spectrum of the next n-gram
+         */
+        final double[] chainTemp;
+
+        /**
+         * The complete complex transform used for the inverse transform
+         */
+        final double[] full;
+
+        public ConvolutionBuffers(int n) {
+            context = new double[n];
+            sum = new double[n + 2];
+            chain = new double[n + 2];
+            chainTemp = new double[n + 2];
+            full = new double[2 * n];
+        }
+    }
 }
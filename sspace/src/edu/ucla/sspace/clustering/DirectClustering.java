@@ -34,6 +34,7 @@ import edu.ucla.sspace.matrix.Matrix;
 import edu.ucla.sspace.matrix.*;
 
 import edu.ucla.sspace.util.ReflectionUtil;
+import edu.ucla.sspace.util.WorkQueue;
 
 import edu.ucla.sspace.vector.*;
 import edu.ucla.sspace.vector.DoubleVector;
@@ -79,6 +80,17 @@ import static edu.ucla.sspace.util.LoggerUtil.verbose;
  *   different objectives.</ol>
  * </li>
  *
+ * When more than one repetition is requested, the repetitions are run
+ * concurrently, each with its own instance of the {@link CriterionFunction}'s
+ * class.  When only a single repetition is run, the initial assignment of data
+ * points to their most similar seed is instead computed concurrently.  The
+ * initial assignment caches the normalized seeds as arrays, which allows the
+ * similarity of a sparse data point to be computed from only its non-zero
+ * values, and uses the triangle inequality to skip seeds that cannot be more
+ * similar than the most similar seed found so far.  The {@link Matrix} being
+ * clustered must therefore support concurrent calls to {@link
+ * Matrix#getRowVector(int) getRowVector}.
+ *
  * @author Keith Stevens
  */
 public class DirectClustering implements Clustering {
@@ -86,6 +98,12 @@ public class DirectClustering implements Clustering {
     private static final Logger LOGGER = 
         Logger.getLogger(DirectClustering.class.getName());
 
+    /**
+     * The number of data points assigned to their initial cluster by each
+     * concurrent task.
+     */
+    private static final int ROWS_PER_TASK = 1024;
+
     /**
      * A property prefix for specifiying options when using {@link
      * DirectClustering}.
@@ -189,27 +207,68 @@ public class DirectClustering implements Clustering {
     /**
      * Clusters {@link matrix} using the specified {@link SeedAlgorithm}
      * and the specified {@link CriterionFunction}. The best scoring solution
-     * out of {@code numRepetitions} will be returned.
+     * out of {@code numRepetitions} will be returned.  If the repetitions are
+     * run concurrently, {@code criterion} is used for the first repetition and
+     * a new instance of its class is used for each of the others.
      */
-    public static Assignments cluster(Matrix matrix,
-                                      int numClusters,
+    public static Assignments cluster(final Matrix matrix,
+                                      final int numClusters,
                                       int numRepetitions,
-                                      KMeansSeed seedType,
-                                      CriterionFunction criterion) {
+                                      final KMeansSeed seedType,
+                                      final CriterionFunction criterion) {
+        final double[] scores = new double[numRepetitions];
+        final int[][] repetitionAssignments = new int[numRepetitions][];
+
+        WorkQueue workQueue = WorkQueue.getWorkQueue();
+        if (numRepetitions > 1 && workQueue.numThreads() > 1 
+                && isInstantiable(criterion)) {
+            final int repetitions = numRepetitions;
+            Object key = workQueue.registerTaskGroup(numRepetitions);
+            for (int i = 0; i < numRepetitions; ++i) {
+                final int repetition = i;
+                workQueue.add(key, new Runnable() {
+                    public void run() {
+                        verbose(LOGGER, "Beginning iteration %d/%d",
+                                repetition+1, repetitions);
+                        // Only the criterion's score and assignments are
+                        // retained, so that the memory for each repetition's
+                        // centroids may be reclaimed once it finishes
+                        CriterionFunction function = criterion;
+                        if (repetition > 0)
+                            function = ReflectionUtil.getObjectInstance(
+                                criterion.getClass().getName());
+                        clusterIteration(matrix, numClusters, seedType,
+                                         function, false);
+                        scores[repetition] = function.score();
+                        repetitionAssignments[repetition] =
+                            function.assignments();
+                    }
+                });
+            }
+            workQueue.await(key);
+        } else {
+            for (int i = 0; i < numRepetitions; ++i) {
+                verbose(LOGGER, "Beginning iteration %d/%d",
+                        i+1, numRepetitions);
+                clusterIteration(matrix, numClusters, seedType, criterion,
+                                 true);
+                scores[i] = criterion.score();
+                repetitionAssignments[i] = criterion.assignments();
+            }
+        }
+
         int[] bestAssignment = null;
         double bestScore = (criterion.isMaximize()) ? 0 : Double.MAX_VALUE;
         for (int i = 0; i < numRepetitions; ++i) {
-            verbose(LOGGER, "Beginning iteration %d/%d", i+1, numRepetitions);
-            clusterIteration(matrix, numClusters, seedType, criterion);
             if (criterion.isMaximize()) {
-                if (criterion.score() > bestScore) {
-                    bestScore = criterion.score();
-                    bestAssignment = criterion.assignments();
+                if (scores[i] > bestScore) {
+                    bestScore = scores[i];
+                    bestAssignment = repetitionAssignments[i];
                 }
             } else {
-                if (criterion.score() < bestScore) {
-                    bestScore = criterion.score();
-                    bestAssignment = criterion.assignments();
+                if (scores[i] < bestScore) {
+                    bestScore = scores[i];
+                    bestAssignment = repetitionAssignments[i];
                 }
             }
         }
@@ -222,13 +281,30 @@ public class DirectClustering implements Clustering {
         return new Assignments(numClusters, assignments, matrix);
     }
 
+    /**
+     * Returns {@code true} if a new instance of the criterion's class can be
+     * created with its no-argument constructor.
+     */
+    private static boolean isInstantiable(CriterionFunction criterion) {
+        try {
+            criterion.getClass().getConstructor();
+            return true;
+        } catch (NoSuchMethodException nsme) {
+            return false;
+        }
+    }
+
     /**
      * Performs one iteration of Direct Clustering over the data set.
+     *
+     * @param assignConcurrently {@code true} if the initial assignment of data
+     *        points should be computed concurrently
      */
     private static void clusterIteration(Matrix matrix,
                                          int numClusters,
                                          KMeansSeed seedType,
-                                         CriterionFunction criterion) {
+                                         CriterionFunction criterion,
+                                         boolean assignConcurrently) {
         DoubleVector[] centers = seedType.chooseSeeds(numClusters, matrix);
 
         // Compute the initial set of assignments for each data point based on
@@ -238,23 +314,9 @@ public class DirectClustering implements Clustering {
         // If there is to be only one cluster, then everything will be auto
         // assigned to the first cluster.  This is just a special case that only
         // comes up when comparing other solutions to the non-solution.
-        if (numClusters != 1) {
-            int nc = 0;
-            for (int i = 0; i < matrix.rows(); ++i) {
-
-                DoubleVector vector = matrix.getRowVector(i);
-                double bestSimilarity = 0;
-                for (int c = 0; c < numClusters; ++c) {
-                    double similarity = Similarity.cosineSimilarity(
-                            centers[c], vector);
-                    nc++;
-                    if (similarity >= bestSimilarity) {
-                        bestSimilarity = similarity;
-                        initialAssignments[i] = c;
-                    }
-                }
-            }
-        }
+        if (numClusters != 1) 
+            new SeedAssigner(matrix, centers, initialAssignments)
+                .assign(assignConcurrently);
 
         // Setup the criterion function with it's meta data.
         criterion.setup(matrix, initialAssignments, numClusters);
@@ -280,4 +342,173 @@ public class DirectClustering implements Clustering {
     public String toString() {
         return "DirectClustering";
     }
+
+    /**
+     * Assigns each data point to the seed with which it has the highest cosine
+     * similarity, or to the first seed if no similarity is non-negative.  If
+     * several seeds are equally similar, the last of them is chosen.<p>
+     *
+     * Since cosine similarity is independent of magnitude, the seeds and each
+     * data point are treated as unit vectors, for which the Euclidean distance
+     * is {@code sqrt(2 - 2 * cosine)}.  By the triangle inequality, if the
+     * distance between the current best seed and another seed is more than
+     * twice the distance between the data point and the best seed, the other
+     * seed must be farther from the data point, and so its similarity is not
+     * computed.
+     */
+    private static class SeedAssigner {
+
+        private final Matrix matrix;
+
+        private final int[] assignments;
+
+        /**
+         * The seeds normalized to unit length, or {@code null} for seeds with
+         * no non-zero values
+         */
+        private final double[][] unitSeeds;
+
+        /**
+         * Half of the Euclidean distance between each pair of normalized seeds
+         */
+        private final double[][] halfSeedDistances;
+
+        /**
+         * The index of the last seed with no non-zero values, or {@code -1} if
+         * all seeds have a non-zero value.
+         */
+        private final int lastZeroSeed;
+
+        public SeedAssigner(Matrix matrix, DoubleVector[] seeds,
+                            int[] assignments) {
+            this.matrix = matrix;
+            this.assignments = assignments;
+            int k = seeds.length;
+            unitSeeds = new double[k][];
+            int lastZero = -1;
+            for (int c = 0; c < k; ++c) {
+                double magnitude = seeds[c].magnitude();
+                if (magnitude == 0) {
+                    lastZero = c;
+                    continue;
+                }
+                double[] unit = seeds[c].toArray();
+                for (int j = 0; j < unit.length; ++j)
+                    unit[j] /= magnitude;
+                unitSeeds[c] = unit;
+            }
+            lastZeroSeed = lastZero;
+
+            halfSeedDistances = new double[k][k];
+            for (int c = 0; c < k; ++c) {
+                if (unitSeeds[c] == null)
+                    continue;
+                for (int j = c + 1; j < k; ++j) {
+                    if (unitSeeds[j] == null)
+                        continue;
+                    double dot = 0;
+                    double[] a = unitSeeds[c];
+                    double[] b = unitSeeds[j];
+                    for (int d = 0; d < a.length; ++d)
+                        dot += a[d] * b[d];
+                    double half = distance(dot) / 2;
+                    halfSeedDistances[c][j] = half;
+                    halfSeedDistances[j][c] = half;
+                }
+            }
+        }
+
+        /**
+         * Returns the Euclidean distance between two unit vectors with the
+         * specified cosine similarity.
+         */
+        private static double distance(double cosine) {
+            return Math.sqrt(Math.max(0, 2 - 2 * cosine));
+        }
+
+        /**
+         * Assigns every data point, using the work queue if {@code
+         * concurrently} is {@code true}.
+         */
+        public void assign(boolean concurrently) {
+            final int rows = matrix.rows();
+            if (!concurrently || rows <= ROWS_PER_TASK) {
+                assignRange(0, rows);
+                return;
+            }
+            int numTasks = (rows + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+            WorkQueue workQueue = WorkQueue.getWorkQueue();
+            Object key = workQueue.registerTaskGroup(numTasks);
+            for (int start = 0; start < rows; start += ROWS_PER_TASK) {
+                final int s = start;
+                final int e = Math.min(rows, start + ROWS_PER_TASK);
+                workQueue.add(key, new Runnable() {
+                    public void run() {
+                        assignRange(s, e);
+                    }
+                });
+            }
+            workQueue.await(key);
+        }
+
+        /**
+         * Assigns the data points from {@code start} up to, but not including,
+         * {@code end}.
+         */
+        private void assignRange(int start, int end) {
+            for (int i = start; i < end; ++i)
+                assignments[i] = assign(matrix.getRowVector(i));
+        }
+
+        /**
+         * Returns the seed to which the vector should be assigned.
+         */
+        private int assign(DoubleVector vector) {
+            double magnitude = vector.magnitude();
+            // A vector with no non-zero values is equally dissimilar to every
+            // seed
+            if (magnitude == 0)
+                return unitSeeds.length - 1;
+
+            int best = -1;
+            double bestSimilarity = 0;
+            double bestDistance = 0;
+            for (int c = 0; c < unitSeeds.length; ++c) {
+                if (unitSeeds[c] == null)
+                    continue;
+                if (best >= 0 && halfSeedDistances[best][c] > bestDistance)
+                    continue;
+                double similarity = dot(unitSeeds[c], vector) / magnitude;
+                if (best < 0 || similarity >= bestSimilarity) {
+                    best = c;
+                    bestSimilarity = similarity;
+                    bestDistance = distance(similarity);
+                }
+            }
+
+            // Seeds with no non-zero values have a similarity of 0 
+            if (lastZeroSeed >= 0 && (best < 0 || bestSimilarity < 0 
+                    || (bestSimilarity == 0 && lastZeroSeed > best)))
+                return lastZeroSeed;
+            return (bestSimilarity >= 0) ? best : 0;
+        }
+
+        /**
+         * Returns the dot product of the array and the vector, using only the
+         * non-zero values of the vector if it is sparse.
+         */
+        private static double dot(double[] seed, DoubleVector vector) {
+            double dot = 0;
+            if (vector instanceof SparseDoubleVector) {
+                SparseDoubleVector sv = (SparseDoubleVector) vector;
+                for (int nz : sv.getNonZeroIndices())
+                    dot += seed[nz] * sv.get(nz);
+            } else {
+                int length = vector.length();
+                for (int d = 0; d < length; ++d)
+                    dot += seed[d] * vector.get(d);
+            }
+            return dot;
+        }
+    }
 }
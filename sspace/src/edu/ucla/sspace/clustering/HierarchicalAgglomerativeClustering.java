@@ -94,12 +94,16 @@ import java.util.logging.Logger;
  * The resulting {@link edu.ucla.sspace.util.MultiMap} {@code clusterToRows}
  * contains the mapping from each cluster to the rows that are a part of it.
  *
- * <p><i>Implementation Note:</i> The current version runs in O(n<sup>3</sup>)
- * worst case time for the number of rows in the matrix.  While O(n<sup>2</sup>
- * * log(n)) methods exist, these require storing similarity comparisons in a
- * priority queue, which has a substantially higher memory overhead.  Therefore,
- * this implementation has opted for a more expensive running time in order to
- * be able to process larger matrices.
+ * <p><i>Implementation Note:</i> The {@link ClusterLinkage#SINGLE_LINKAGE
+ * SINGLE_LINKAGE}, {@link ClusterLinkage#COMPLETE_LINKAGE COMPLETE_LINKAGE} and
+ * {@link ClusterLinkage#MEAN_LINKAGE MEAN_LINKAGE} linkages are computed with
+ * the nearest-neighbor chain algorithm, which runs in O(n<sup>2</sup>) time
+ * for the number of rows in the matrix.  The pair-wise similarities are stored
+ * in memory as {@code float} values, which requires {@code 2 * n * (n - 1)}
+ * bytes, and at most 65536 rows may be clustered.  The {@link
+ * ClusterLinkage#MEDIAN_LINKAGE MEDIAN_LINKAGE} linkage cannot be computed
+ * this way, so it uses an O(n<sup>3</sup>) worst case time algorithm that
+ * stores the similarities on disk.
  *
  * <p> When using the {@link Clustering#cluster(Matrix,Properties)} interface,
  * this class supports the following properties for controlling the clustering.
@@ -234,9 +238,28 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
         Logger.getLogger(HierarchicalAgglomerativeClustering.class.getName());
 
     /**
-     * The work used by all HAC instances to perform multi-threaded operations.
+     * The work queue used by this instance to perform multi-threaded
+     * operations.
      */
-    private static final WorkQueue WORK_QUEUE = new WorkQueue();
+    private final WorkQueue workQueue;
+
+    /**
+     * Creates a new instance that performs its multi-threaded operations on
+     * the shared {@link WorkQueue}.
+     */
+    public HierarchicalAgglomerativeClustering() {
+        this(WorkQueue.getWorkQueue());
+    }
+
+    /**
+     * Creates a new instance that performs its multi-threaded operations on
+     * the provided work queue.
+     */
+    public HierarchicalAgglomerativeClustering(WorkQueue workQueue) {
+        if (workQueue == null)
+            throw new NullPointerException("workQueue cannot be null");
+        this.workQueue = workQueue;
+    }
 
     /**
      * {@inheritDoc}
@@ -269,7 +292,8 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
             try {
                 double clusterSimThresh = Double.parseDouble(minSimProp);
                 return toAssignments(cluster(matrix, clusterSimThresh, 
-                                             linkage, simFunc, -1), matrix, -1);
+                                             linkage, simFunc, -1, workQueue),
+                                     matrix, -1);
             } catch (NumberFormatException nfe) {
                 throw new IllegalArgumentException(
                     "Cluster similarity threshold was not a valid double: " +
@@ -301,7 +325,8 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
                     SIMILARITY_FUNCTION_PROPERTY,
                     DEFAULT_SIMILARITY_FUNCTION_PROPERTY));
         return toAssignments(cluster(m, clusterSimilarityThreshold, linkage,
-                                     similarityFunction, numClusters),
+                                     similarityFunction, numClusters,
+                                     workQueue),
                              m, numClusters);
     }
 
@@ -323,7 +348,33 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
     public static int[] partitionRows(Matrix m, int numClusters,
                                       ClusterLinkage linkage,
                                       SimType similarityFunction) {
-        return cluster(m, -1, linkage, similarityFunction, numClusters);
+        return partitionRows(m, numClusters, linkage, similarityFunction,
+                             WorkQueue.getWorkQueue());
+    }
+
+    /**
+     * Clusters all rows in the matrix using the specified cluster similarity
+     * measure for comparison and stopping when the number of clusters is equal
+     * to the specified number, performing any multi-threaded operations on the
+     * provided work queue.
+     *
+     * @param m a matrix whose rows are to be clustered
+     * @param numClusters the number of clusters into which the matrix should
+     *        divided
+     * @param linkage the method to use for computing the similarity of two
+     *        clusters
+     * @param workQueue the work queue on which the similarities are computed
+     *
+     * @return an array where each element corresponds to a row and the value is
+     *         the cluster number to which that row was assigned.  Cluster
+     *         numbers will start at 0 and increase.
+     */
+    public static int[] partitionRows(Matrix m, int numClusters,
+                                      ClusterLinkage linkage,
+                                      SimType similarityFunction,
+                                      WorkQueue workQueue) {
+        return cluster(m, -1, linkage, similarityFunction, numClusters,
+                       workQueue);
     }
 
     /**
@@ -348,8 +399,36 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
     public static int[] clusterRows(Matrix m, double clusterSimilarityThreshold,
                                     ClusterLinkage linkage,
                                     SimType similarityFunction) {
+        return clusterRows(m, clusterSimilarityThreshold, linkage,
+                           similarityFunction, WorkQueue.getWorkQueue());
+    }
+
+    /**
+     * Clusters all rows in the matrix using the specified cluster similarity
+     * measure for comparison and threshold for when to stop clustering,
+     * performing any multi-threaded operations on the provided work queue.
+     * Clusters will be repeatedly merged until the highest cluster similarity
+     * is below the threshold.
+     *
+     * @param m a matrix whose rows are to be clustered
+     * @param clusterSimilarityThreshold the threshold to use when deciding
+     *        whether two clusters should be merged.  If the similarity of the
+     *        clusters is below this threshold, they will not be merged and the
+     *        clustering process will be stopped.
+     * @param linkage the method to use for computing the similarity of two
+     *        clusters
+     * @param workQueue the work queue on which the similarities are computed
+     *
+     * @return an array where each element corresponds to a row and the value is
+     *         the cluster number to which that row was assigned.  Cluster
+     *         numbers will start at 0 and increase.
+     */
+    public static int[] clusterRows(Matrix m, double clusterSimilarityThreshold,
+                                    ClusterLinkage linkage,
+                                    SimType similarityFunction,
+                                    WorkQueue workQueue) {
         return cluster(m, clusterSimilarityThreshold, linkage, 
-                       similarityFunction, -1);
+                       similarityFunction, -1, workQueue);
     }
 
     /**
@@ -369,6 +448,7 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
      *        clusters will be merged until the inter-cluster similarity is
      *        below the threshold, otherwise; if the value is positive, clusters
      *        are merged until the desired number of clusters has been reached.
+     * @param workQueue the work queue on which the similarities are computed
      *
      * @return an array where each element corresponds to a row and the value is
      *         the cluster number to which that row was assigned.  Cluster
@@ -377,9 +457,25 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
     private static int[] cluster(Matrix m, double clusterSimilarityThreshold,
                                  ClusterLinkage linkage, 
                                  SimType similarityFunction,
-                                 int maxNumberOfClusters) {
+                                 int maxNumberOfClusters,
+                                 WorkQueue workQueue) {
         int rows = m.rows();
         LOGGER.info("Generating similarity matrix for " + rows+ " data points");
+        if (NearestNeighborChain.isSupported(linkage)) {
+            float[] similarities = NearestNeighborChain.computeSimilarities(
+                m, similarityFunction, workQueue);
+            LOGGER.info("Assigning clusters using " + linkage);
+            int[] assignments = NearestNeighborChain.cut(
+                NearestNeighborChain.buildDendrogram(
+                    similarities, rows, linkage),
+                rows, clusterSimilarityThreshold, maxNumberOfClusters);
+            int numClusters = 0;
+            for (int a : assignments)
+                numClusters = Math.max(numClusters, a + 1);
+            LOGGER.info("total number of clusters: " + numClusters);
+            return assignments;
+        }
+
         Matrix similarityMatrix = 
             computeSimilarityMatrix(m, similarityFunction);
 
@@ -550,6 +646,12 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
 
         int rows = m.rows();
         LOGGER.finer("Generating similarity matrix for " + rows+ " data points");
+        if (NearestNeighborChain.isSupported(linkage)) {
+            return NearestNeighborChain.buildDendrogram(
+                NearestNeighborChain.computeSimilarities(
+                    m, similarityFunction, workQueue),
+                rows, linkage);
+        }
         Matrix similarityMatrix = 
             computeSimilarityMatrix(m, similarityFunction);
         return buildDendrogram(similarityMatrix, linkage);
@@ -580,6 +682,19 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
             throw new IllegalArgumentException(
                 "Similarity matrix must be square");
 
+        if (NearestNeighborChain.isSupported(linkage)) {
+            // An OnDiskMatrix is read from a single thread for the same
+            // reason as below
+            float[] similarities = NearestNeighborChain.condense(
+                similarityMatrix, (similarityMatrix instanceof OnDiskMatrix)
+                                  ? null : workQueue);
+            return NearestNeighborChain.buildDendrogram(
+                similarities, similarityMatrix.rows(), linkage);
+        }
+
+        // An OnDiskMatrix is accessed from a single thread to avoid random
+        // access to its temporary files.  Other matrices, including those
+        // backed by a MemoryMappedMatrix, support concurrent readers.
         if (!(similarityMatrix instanceof OnDiskMatrix)) {
             LOGGER.fine("Similarity matrix supports fast multi-threaded " +
                         "access; switching to multi-threaded clustering");
@@ -745,10 +860,10 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
         // thread as the task key so any other thread executing this method
         // won't conflict.
         Object taskKey = 
-            WORK_QUEUE.registerTaskGroup(clusterAssignment.size());
+            workQueue.registerTaskGroup(clusterAssignment.size());
         for (Integer clusterId : clusterAssignment.keySet()) {
             final Integer clustId = clusterId;
-            WORK_QUEUE.add(taskKey, new Runnable() {
+            workQueue.add(taskKey, new Runnable() {
                     public void run() {
                           clusterSimilarities.put(clustId,
                               findMostSimilar(clusterAssignment, clustId, 
@@ -756,7 +871,7 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
                     }
                 });
         }        
-        WORK_QUEUE.await(taskKey);
+        workQueue.await(taskKey);
 
         LOGGER.finer("Assigning clusters");
         List<Merge> merges = new ArrayList<Merge>(rows - 1);
@@ -832,7 +947,7 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
             // Use size()-1 as the number of tasks because we skip adding a task
             // for computing the new cluster's similarity to itself
             taskKey = 
-                WORK_QUEUE.registerTaskGroup(clusterSimilarities.size() - 1);
+                workQueue.registerTaskGroup(clusterSimilarities.size() - 1);
 
             for (Map.Entry<Integer,Pairing> entry :
                      clusterSimilarities.entrySet()) {
@@ -848,7 +963,7 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
                 if (clusterId == c1index)
                     continue;
                 
-                WORK_QUEUE.add(taskKey, new Runnable() {
+                workQueue.add(taskKey, new Runnable() {
                         public void run() {                            
                             // Task-local state variables to use while
                             // recalculating the similarities
@@ -888,7 +1003,7 @@ public class HierarchicalAgglomerativeClustering implements Clustering {
             }
             
             // Run each thread's comparisons
-            WORK_QUEUE.await(taskKey);
+            workQueue.await(taskKey);
 
             // Collect the results from the similarity map.  The highest
             // similarity should be the largest key in the map, with the
@@ -0,0 +1,397 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.clustering;
+
+import edu.ucla.sspace.clustering.HierarchicalAgglomerativeClustering.ClusterLinkage;
+
+import edu.ucla.sspace.common.Similarity;
+import edu.ucla.sspace.common.Similarity.SimType;
+
+import edu.ucla.sspace.matrix.Matrix;
+
+import edu.ucla.sspace.util.WorkQueue;
+
+import edu.ucla.sspace.vector.DoubleVector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * An implementation of agglomerative clustering using the nearest-neighbor
+ * chain algorithm, which builds the dendrogram for {@code n} data points in
+ * O(n<sup>2</sup>) time.  See the following paper for details:
+ *
+ * <ul> <li style="font-family:Garamond, Georgia, serif"> F. Murtagh.  A survey
+ * of recent advances in hierarchical clustering algorithms.  <i>The Computer
+ * Journal</i>, 26(4):354-359, 1983.</li> </ul>
+ *
+ * The algorithm follows a chain of nearest neighbors from an arbitrary cluster
+ * until it reaches two clusters that are each other's nearest neighbor, which
+ * it then merges.  The merge is correct only if merging two clusters never
+ * makes the merged cluster more similar to another cluster than either of the
+ * two was, so only the {@link #isSupported(ClusterLinkage) reducible} linkages
+ * are supported.  The similarities between the merged cluster and the other
+ * clusters are updated with the Lance-Williams formula for the linkage, so the
+ * data points are never revisited.<p>
+ *
+ * The similarities are stored as a condensed upper triangle of {@code float}
+ * values, which requires {@code 2 * n * (n - 1)} bytes.  The only other state
+ * is a constant number of {@code int} values per data point.  Because the
+ * triangle is indexed by an {@code int}, at most {@value #MAX_POINTS} data
+ * points may be clustered.
+ *
+ * @see HierarchicalAgglomerativeClustering
+ */
+class NearestNeighborChain {
+
+    /**
+     * The largest number of data points whose condensed similarity matrix can
+     * be indexed by an {@code int}.
+     */
+    static final int MAX_POINTS = 65536;
+
+    /**
+     * Uninstantiable
+     */
+    private NearestNeighborChain() { }
+
+    /**
+     * Returns {@code true} if the linkage can be computed by this class.
+     * {@link ClusterLinkage#MEDIAN_LINKAGE MEDIAN_LINKAGE} is not supported,
+     * since the median similarity of the merged cluster cannot be computed from
+     * the median similarities of its parts.
+     */
+    static boolean isSupported(ClusterLinkage linkage) {
+        return linkage == ClusterLinkage.SINGLE_LINKAGE
+            || linkage == ClusterLinkage.COMPLETE_LINKAGE
+            || linkage == ClusterLinkage.MEAN_LINKAGE;
+    }
+
+    /**
+     * Returns the condensed similarity matrix of the rows of {@code m}, with
+     * the comparisons computed in parallel on the work queue.
+     */
+    static float[] computeSimilarities(Matrix m, 
+                                       final SimType similarityFunction,
+                                       WorkQueue workQueue) {
+        final int n = m.rows();
+        checkSize(n);
+        final DoubleVector[] rows = new DoubleVector[n];
+        for (int i = 0; i < n; ++i)
+            rows[i] = m.getRowVector(i);
+        final float[] similarities = new float[triangleSize(n)];
+
+        // The rows have decreasing amounts of work, so interleave them among
+        // the tasks to balance the load
+        final int numTasks = Math.min(n, workQueue.numThreads() * 4);
+        Collection<Runnable> tasks = new ArrayList<Runnable>(numTasks);
+        for (int t = 0; t < numTasks; ++t) {
+            final int first = t;
+            tasks.add(new Runnable() {
+                    public void run() {
+                        for (int i = first; i < n; i += numTasks) {
+                            int offset = rowOffset(i, n);
+                            for (int j = i + 1; j < n; ++j)
+                                similarities[offset + j] = (float)
+                                    Similarity.getSimilarity(
+                                        similarityFunction, rows[i], rows[j]);
+                        }
+                    }
+                });
+        }
+        workQueue.run(tasks);
+        return similarities;
+    }
+
+    /**
+     * Returns the upper triangle of the square similarity matrix in condensed
+     * form.  If {@code workQueue} is non-{@code null}, the rows are read in
+     * parallel.
+     */
+    static float[] condense(final Matrix similarityMatrix,
+                            WorkQueue workQueue) {
+        final int n = similarityMatrix.rows();
+        checkSize(n);
+        final float[] similarities = new float[triangleSize(n)];
+        if (workQueue == null) {
+            for (int i = 0; i < n; ++i) 
+                condenseRow(similarityMatrix, i, similarities);
+            return similarities;
+        }
+        final int numTasks = Math.min(n, workQueue.numThreads() * 4);
+        Collection<Runnable> tasks = new ArrayList<Runnable>(numTasks);
+        for (int t = 0; t < numTasks; ++t) {
+            final int first = t;
+            tasks.add(new Runnable() {
+                    public void run() {
+                        for (int i = first; i < n; i += numTasks) 
+                            condenseRow(similarityMatrix, i, similarities);
+                    }
+                });
+        }
+        workQueue.run(tasks);
+        return similarities;
+    }
+
+    /**
+     * Copies the values of the row that are right of the diagonal into the
+     * condensed similarity matrix.
+     */
+    private static void condenseRow(Matrix similarityMatrix, int i,
+                                    float[] similarities) {
+        int n = similarityMatrix.rows();
+        int offset = rowOffset(i, n);
+        for (int j = i + 1; j < n; ++j)
+            similarities[offset + j] = (float)similarityMatrix.get(i, j);
+    }
+
+    /**
+     * Returns the merges that agglomeratively cluster the data points in order
+     * of decreasing similarity, using the same numbering as {@link
+     * HierarchicalAgglomerativeClustering#buildDendrogram(Matrix,ClusterLinkage)
+     * buildDendrogram}: each cluster is identified by the lowest-numbered data
+     * point in it.  The condensed similarity matrix is overwritten.
+     *
+     * @param similarities the condensed similarity matrix of the data points
+     * @param n the number of data points
+     * @param linkage a linkage for which {@link #isSupported(ClusterLinkage)}
+     *        returns {@code true}
+     */
+    static List<Merge> buildDendrogram(float[] similarities, int n,
+                                       ClusterLinkage linkage) {
+        if (!isSupported(linkage))
+            throw new IllegalArgumentException(
+                "Unsupported linkage: " + linkage);
+        // Each cluster is stored at the index of its lowest-numbered point,
+        // which is always the index of one of the two merged clusters
+        int[] sizes = new int[n];
+        Arrays.fill(sizes, 1);
+        // The similarity at which each cluster was formed
+        float[] formedAt = new float[n];
+        Arrays.fill(formedAt, Float.POSITIVE_INFINITY);
+
+        // The active clusters form a doubly-linked list in increasing order,
+        // so that each scan reads the row of the condensed matrix
+        // sequentially.  The list starts at index n of the next array.
+        int[] next = new int[n + 1];
+        int[] prev = new int[n + 1];
+        for (int i = 0; i <= n; ++i) {
+            next[i] = (i == n) ? 0 : i + 1;
+            prev[i] = (i == 0) ? n : i - 1;
+        }
+        int numActive = n;
+
+        final int[] merged1 = new int[Math.max(n - 1, 0)];
+        final int[] merged2 = new int[merged1.length];
+        final float[] mergeSims = new float[merged1.length];
+        int numMerges = 0;
+
+        int[] chain = new int[n];
+        int chainLength = 0;
+        while (numActive > 1) {
+            if (chainLength == 0)
+                chain[chainLength++] = next[n];
+
+            // Extend the chain until its last two clusters are each other's
+            // nearest neighbors
+            int a;
+            int b;
+            float sim;
+            while (true) {
+                a = chain[chainLength - 1];
+                // Prefer the previous cluster in the chain when there are ties,
+                // which ensures that the chain always terminates
+                int best = (chainLength > 1) ? chain[chainLength - 2] : -1;
+                float bestSim = (best >= 0)
+                    ? similarities[index(a, best, n)]
+                    : Float.NEGATIVE_INFINITY;
+                int c = next[n];
+                for (; c < a; c = next[c]) {
+                    float s = similarities[rowOffset(c, n) + a];
+                    if (s > bestSim) {
+                        bestSim = s;
+                        best = c;
+                    }
+                }
+                int aOffset = rowOffset(a, n);
+                for (c = next[a]; c < n; c = next[c]) {
+                    float s = similarities[aOffset + c];
+                    if (s > bestSim) {
+                        bestSim = s;
+                        best = c;
+                    }
+                }
+                // Every remaining similarity is NaN, so merge arbitrarily
+                if (best < 0) {
+                    best = (next[n] == a) ? next[a] : next[n];
+                    bestSim = similarities[index(a, best, n)];
+                }
+                if (chainLength > 1 && best == chain[chainLength - 2]) {
+                    b = best;
+                    sim = bestSim;
+                    break;
+                }
+                chain[chainLength++] = best;
+            }
+            chainLength -= 2;
+
+            int remaining = Math.min(a, b);
+            int removed = Math.max(a, b);
+            // Merges must be reported in order of decreasing similarity, so
+            // guard against rounding making a merge more similar than the
+            // merges that formed its clusters
+            sim = Math.min(sim, Math.min(formedAt[a], formedAt[b]));
+            merged1[numMerges] = remaining;
+            merged2[numMerges] = removed;
+            mergeSims[numMerges] = sim;
+            numMerges++;
+
+            // Remove the merged cluster from the active list
+            next[prev[removed]] = next[removed];
+            prev[next[removed]] = prev[removed];
+            numActive--;
+
+            // Update the similarities of the other clusters to the merged
+            // cluster
+            int sizeR = sizes[remaining];
+            int sizeM = sizes[removed];
+            for (int c = next[n]; c < n; c = next[c]) {
+                if (c == remaining)
+                    continue;
+                int i1 = index(c, remaining, n);
+                int i2 = index(c, removed, n);
+                similarities[i1] = update(linkage, similarities[i1], sizeR,
+                                          similarities[i2], sizeM);
+            }
+            sizes[remaining] = sizeR + sizeM;
+            formedAt[remaining] = sim;
+        }
+
+        // The merges were found in chain order, so sort them by decreasing
+        // similarity.  The sort is stable, so a merge is never placed before a
+        // merge with the same similarity that formed one of its clusters.
+        Integer[] order = new Integer[numMerges];
+        for (int i = 0; i < numMerges; ++i)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer i, Integer j) {
+                    return Float.compare(mergeSims[j], mergeSims[i]);
+                }
+            });
+        List<Merge> merges = new ArrayList<Merge>(numMerges);
+        for (int i : order)
+            merges.add(new Merge(merged1[i], merged2[i], mergeSims[i]));
+        return merges;
+    }
+
+    /**
+     * Returns the similarity of a cluster to the merger of two clusters using
+     * the Lance-Williams formula for the linkage.
+     */
+    private static float update(ClusterLinkage linkage, float sim1, int size1,
+                                float sim2, int size2) {
+        switch (linkage) {
+        case SINGLE_LINKAGE:
+            return Math.max(sim1, sim2);
+        case COMPLETE_LINKAGE:
+            return Math.min(sim1, sim2);
+        case MEAN_LINKAGE:
+            return (float)(((double)sim1 * size1 + (double)sim2 * size2)
+                           / (size1 + size2));
+        default:
+            throw new IllegalArgumentException(
+                "Unsupported linkage: " + linkage);
+        }
+    }
+
+    /**
+     * Returns the cluster number of each data point after applying the merges
+     * in order until either {@code numClusters} clusters remain or the next
+     * merge's similarity is below the threshold.  If {@code numClusters} is
+     * positive, the threshold is ignored.  The clusters are numbered from 0 in
+     * the order of their lowest-numbered data points.
+     */
+    static int[] cut(List<Merge> merges, int n, double threshold,
+                     int numClusters) {
+        int[] parent = new int[n];
+        for (int i = 0; i < n; ++i)
+            parent[i] = i;
+        int clusters = n;
+        for (Merge m : merges) {
+            if (numClusters > 0) {
+                if (clusters <= numClusters)
+                    break;
+            }
+            else if (m.similarity() < threshold)
+                break;
+            parent[m.mergedCluster()] = m.remainingCluster();
+            clusters--;
+        }
+
+        // Each merge points a cluster at a lower-numbered cluster, so each
+        // point's root has already been resolved by the time it is visited
+        int[] assignments = new int[n];
+        int next = 0;
+        for (int i = 0; i < n; ++i) {
+            int root = parent[i];
+            assignments[i] = (root == i) ? next++ : assignments[root];
+        }
+        return assignments;
+    }
+
+    /**
+     * Throws an exception if the number of data points is too large.
+     */
+    private static void checkSize(int n) {
+        if (n > MAX_POINTS)
+            throw new IllegalArgumentException(
+                "Cannot cluster more than " + MAX_POINTS + 
+                " data points: " + n);
+    }
+
+    /**
+     * Returns the number of values in the condensed matrix.
+     */
+    private static int triangleSize(int n) {
+        return (int)((long)n * (n - 1) / 2);
+    }
+
+    /**
+     * Returns the index of the value for {@code (i, j)} in the condensed
+     * matrix minus {@code j}, for any {@code j > i}.
+     */
+    private static int rowOffset(int i, int n) {
+        return (int)((long)i * n - (long)i * (i + 1) / 2 - i - 1);
+    }
+
+    /**
+     * Returns the index of the value for the pair of data points in the
+     * condensed matrix.
+     */
+    private static int index(int i, int j, int n) {
+        return (i < j) ? rowOffset(i, n) + j : rowOffset(j, n) + i;
+    }
+}
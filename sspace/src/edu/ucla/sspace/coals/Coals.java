@@ -48,6 +48,9 @@ import edu.ucla.sspace.vector.VectorMath;
 
 import edu.ucla.sspace.text.IteratorFactory;
 
+import edu.ucla.sspace.util.StringIntMap;
+import edu.ucla.sspace.util.TokenDictionary;
+
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOError;
@@ -95,7 +98,8 @@ import java.util.logging.Logger;
  * this transform, all negative correlations are dropped and replaced with a 0.
  * Finally, and optionally, the {@link SVD} is used to reduce the semantic
  * space.  To set the number of retained dimensions via {@link SVD}, set the
- * {@value REDUCE_DIMENSION_PROPERTY} property.
+ * {@value REDUCE_DIMENSION_PROPERTY} property.  The SVD algorithm may be
+ * selected with the {@value SVD_ALGORITHM_PROPERTY} property.
  *
  * @author Keith Stevens
  */
@@ -139,6 +143,13 @@ public class Coals implements SemanticSpace {
     public static final String DO_NOT_NORMALIZE_PROPERTY = 
         PROPERTY_PREFIX + ".doNotNormalize";
 
+    /**
+     * Specifies the name of the {@link SVD.Algorithm} used to reduce the
+     * co-occurance matrix.  If unset, any available algorithm is used.
+     */
+    public static final String SVD_ALGORITHM_PROPERTY = 
+        PROPERTY_PREFIX + ".svdAlgorithm";
+
     /**
      * The default number of dimensions to reduce to.
      */
@@ -172,9 +183,17 @@ public class Coals implements SemanticSpace {
     private Map<String, SparseDoubleVector> wordToSemantics;
 
     /**
-     * A mapping from word to index number.
+     * A mapping from each word to the index number used for it while the
+     * co-occurrence statistics are being gathered.
      */
-    private Map<String, Integer> termToIndex;
+    private final TokenDictionary termDictionary;
+
+    /**
+     * A mapping from each retained word to its row in {@link
+     * #finalCorrelation}, or {@code null} if the space has not yet been
+     * processed.
+     */
+    private StringIntMap termToIndex;
 
     /**
      * A map containg the total frequency counts of each word.
@@ -197,16 +216,12 @@ public class Coals implements SemanticSpace {
      */
     int reducedDimensions;
 
-    /**
-     * A counter for keeping track of the index values of words.
-     */
-    private int wordIndexCounter;
-
     /**
      * Creats a {@link Coals} instance.
      */
     public Coals() {
-        termToIndex = new HashMap<String, Integer>();
+        termDictionary = new TokenDictionary();
+        termToIndex = null;
         totalWordFreq = new ConcurrentHashMap<String, AtomicInteger>();
         wordToSemantics = new HashMap<String, SparseDoubleVector>(1024, 4f);
         finalCorrelation = null;
@@ -216,18 +231,21 @@ public class Coals implements SemanticSpace {
      * {@inheritDoc}
      */
     public Set<String> getWords() {
-        return termToIndex.keySet();
+        return (termToIndex == null)
+            ? termDictionary.keySet()
+            : Collections.unmodifiableSet(termToIndex.keySet());
     }
 
     /**
      * {@inheritDoc}
      */
     public Vector getVector(String term) {
-        Integer index = termToIndex.get(term);
-        if (index == null) 
+        if (termToIndex == null)
+            return null;
+        int index = termToIndex.get(term);
+        if (index < 0) 
             return null;
-        return Vectors.immutable(
-                finalCorrelation.getRowVector(index.intValue()));
+        return Vectors.immutable(finalCorrelation.getRowVector(index));
     }
 
     public String getSpaceName() {
@@ -245,7 +263,7 @@ public class Coals implements SemanticSpace {
      * {@inheritDoc}
      */
     public void processDocument(BufferedReader document) throws IOException {
-        Map<String, Integer> wordFreq = new HashMap<String, Integer>();
+        StringIntMap wordFreq = new StringIntMap();
         Map<String, SparseDoubleVector> wordDocSemantics =
             new HashMap<String, SparseDoubleVector>();
 
@@ -273,10 +291,7 @@ public class Coals implements SemanticSpace {
                 getIndexFor(focusWord);
 
                 // Update the frequency count of the focus word.
-                Integer focusFreq = wordFreq.get(focusWord);
-                wordFreq.put(focusWord, (focusFreq == null)
-                        ? 1
-                        : 1 + focusFreq.intValue());
+                wordFreq.increment(focusWord, 1);
 
                 // Get the temprorary semantics for the focus word, create a new
                 // vector for them if needed.
@@ -330,10 +345,10 @@ public class Coals implements SemanticSpace {
 
         // Store the total frequency counts of the words seen in this document
         // so far.
-        for (Map.Entry<String, Integer> entry : wordFreq.entrySet()) {
-            int count = entry.getValue().intValue();
+        for (String word : wordFreq.keySet()) {
+            int count = wordFreq.get(word);
             AtomicInteger freq = totalWordFreq.putIfAbsent(
-                    entry.getKey(), new AtomicInteger(count));
+                    word, new AtomicInteger(count));
             if (freq != null)
                 freq.addAndGet(count);
         }
@@ -372,21 +387,7 @@ public class Coals implements SemanticSpace {
      * returns that index.
      */
     private int getIndexFor(String word) {
-        Integer index = termToIndex.get(word);
-        if (index == null) {     
-            synchronized(this) {
-                // recheck to see if the term was added while blocking
-                index = termToIndex.get(word);
-                // if another thread has not already added this word while the
-                // current thread was blocking waiting on the lock, then add it.
-                if (index == null) {
-                    int i = wordIndexCounter++;
-                    termToIndex.put(word, i);
-                    return i; // avoid the auto-boxing to assign i to index
-                }
-            }
-        }
-        return index;
+        return termDictionary.getDimension(word);
     }
                 
     /**
@@ -406,6 +407,10 @@ public class Coals implements SemanticSpace {
         int maxDimensions = Integer.parseInt(
                 props.getProperty(MAX_DIMENSIONS_PROPERTY,
                                   DEFAULT_MAX_DIMENSIONS));
+        String svdProp = props.getProperty(SVD_ALGORITHM_PROPERTY);
+        SVD.Algorithm alg = (svdProp == null)
+            ? SVD.Algorithm.ANY
+            : SVD.Algorithm.valueOf(svdProp);
 
         COALS_LOGGER.info("Droppring dimensions from co-occurrance matrix.");
         // Read in the matrix from a file with dimensions dropped.
@@ -424,23 +429,31 @@ public class Coals implements SemanticSpace {
 
         if (reduceMatrix) {
             COALS_LOGGER.info("Reducing using SVD.");
-            try {
-                File coalsMatrixFile =
-                    File.createTempFile("coals-term-doc-matrix", "dat");
-                coalsMatrixFile.deleteOnExit();
-                MatrixIO.writeMatrix(finalCorrelation,
-                                     coalsMatrixFile,
-                                     Format.SVDLIBC_SPARSE_BINARY);
-                if (reducedDimensions > finalCorrelation.columns())
-                    reducedDimensions = finalCorrelation.columns();
-
-                Matrix[] usv = SVD.svd(coalsMatrixFile,
-                                       SVD.Algorithm.ANY,
-                                       Format.SVDLIBC_SPARSE_BINARY,
-                                       reducedDimensions);
-                finalCorrelation = usv[0];
-            } catch (IOException ioe) {
-                throw new IOError(ioe);
+            if (reducedDimensions > finalCorrelation.columns())
+                reducedDimensions = finalCorrelation.columns();
+
+            // The randomized SVD operates on the matrix directly, so there is
+            // no need to write it to disk first
+            if (alg.equals(SVD.Algorithm.RANDOMIZED)) {
+                finalCorrelation =
+                    SVD.svd(finalCorrelation, alg, reducedDimensions)[0];
+            }
+            else {
+                try {
+                    File coalsMatrixFile =
+                        File.createTempFile("coals-term-doc-matrix", "dat");
+                    coalsMatrixFile.deleteOnExit();
+                    MatrixIO.writeMatrix(finalCorrelation,
+                                         coalsMatrixFile,
+                                         Format.SVDLIBC_SPARSE_BINARY);
+                    Matrix[] usv = SVD.svd(coalsMatrixFile,
+                                           alg,
+                                           Format.SVDLIBC_SPARSE_BINARY,
+                                           reducedDimensions);
+                    finalCorrelation = usv[0];
+                } catch (IOException ioe) {
+                    throw new IOError(ioe);
+                }
             }
             COALS_LOGGER.info("Done reducing using SVD.");
         }
@@ -452,8 +465,8 @@ public class Coals implements SemanticSpace {
      * returned in the semantic {@link Matrix}.  If {@code maxDimensions} is
      * larger than the number of observed features, then all observed features
      * will be maintained.  The resulting rows and columns are both ordred based
-     * on the frequency of each term, in descending order, {@code termToIndex}
-     * is modified to account for these changed.
+     * on the frequency of each term, in descending order, and {@code
+     * termToIndex} is set to map each retained term to its new row.
      */
     private Matrix buildMatrix(int maxWords, int maxDimensions) {
         // Convert the vectors in the semantic map to a matrix.
@@ -461,7 +474,7 @@ public class Coals implements SemanticSpace {
             new SparseDoubleVector[wordToSemantics.size()];
         for (Map.Entry<String, SparseDoubleVector> e :
                 wordToSemantics.entrySet())
-            vectorList[getIndexFor(e.getKey())] = e.getValue();
+            vectorList[termDictionary.indexOf(e.getKey())] = e.getValue();
         SparseMatrix matrix = Matrices.asSparseMatrix(
                 Arrays.asList(vectorList));
 
@@ -469,13 +482,6 @@ public class Coals implements SemanticSpace {
         if (maxWords == 0)
             maxWords = wordToSemantics.size();
 
-        COALS_LOGGER.info("Forming the inverse mapping from terms to indices.");
-        // Calculate an inverse mapping from index to word since the binary file
-        // stores things by index number.
-        String[] indexToTerm = new String[termToIndex.size()];
-        for (Map.Entry<String, Integer> entry : termToIndex.entrySet())
-            indexToTerm[entry.getValue()] = entry.getKey();
-
         COALS_LOGGER.info("Sorting the terms based on frequency.");
         // Calculate the new indices for each word that will be kept based on
         // the frequency count, where the most frequent word will be first.
@@ -502,14 +508,15 @@ public class Coals implements SemanticSpace {
         SparseDoubleVector[] newVectorList = new SparseDoubleVector[maxWords];
 
         // For each of the terms that we have a mapping, add row and column
-        // maskings for the indices of the first maxWords terms.  For all other
-        // terms, remove the term to index mapping.
+        // maskings for the indices of the first maxWords terms.  All other
+        // terms are left out of the final term to index mapping.
+        termToIndex = new StringIntMap(maxWords);
         int termCount = 0;
         for (Map.Entry<String, AtomicInteger> entry : wordCountList) {
-            Integer oldIndex = termToIndex.get(entry.getKey());
+            int oldIndex = termDictionary.indexOf(entry.getKey());
 
             // Skip any non mapped terms.
-            if (oldIndex == null)
+            if (oldIndex < 0)
                 continue;
 
             // Add a row and/or column mask from the index of this word to it's
@@ -525,9 +532,6 @@ public class Coals implements SemanticSpace {
                 termToIndex.put(entry.getKey(), termCount);
                 termCount++;
             }
-            // Drop all other mappings.
-            else
-                termToIndex.remove(entry.getKey());
         }
 
         wordToSemantics = null;
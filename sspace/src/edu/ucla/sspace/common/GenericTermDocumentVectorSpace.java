@@ -22,7 +22,6 @@
 package edu.ucla.sspace.common;
 
 import edu.ucla.sspace.basis.BasisMapping;
-import edu.ucla.sspace.basis.StringBasisMapping;
 
 import edu.ucla.sspace.matrix.Matrices;
 import edu.ucla.sspace.matrix.Matrix;
@@ -38,6 +37,8 @@ import edu.ucla.sspace.text.IteratorFactory;
 import edu.ucla.sspace.util.LoggerUtil;
 import edu.ucla.sspace.util.SparseArray;
 import edu.ucla.sspace.util.SparseIntHashArray;
+import edu.ucla.sspace.util.StringIntMap;
+import edu.ucla.sspace.util.TokenDictionary;
 
 import edu.ucla.sspace.vector.DoubleVector;
 import edu.ucla.sspace.vector.Vector;
@@ -48,7 +49,6 @@ import java.io.IOError;
 import java.io.IOException;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Properties;
@@ -138,7 +138,7 @@ public abstract class GenericTermDocumentVectorSpace implements SemanticSpace {
      *         the backing array files required for processing
      */
     public GenericTermDocumentVectorSpace() throws IOException {
-        this(false,new StringBasisMapping(),Matrices.getMatrixBuilderForSVD());
+        this(false, new TokenDictionary(), Matrices.getMatrixBuilderForSVD());
     }
 
     /**
@@ -189,8 +189,9 @@ public abstract class GenericTermDocumentVectorSpace implements SemanticSpace {
         // MatrixBuilder.  Note that the SparseArray implementation would also
         // incur an additional performance hit since each word would have to be
         // converted to its index form for each occurrence, which results in a
-        // double Map look-up.
-        Map<String,Integer> termCounts = new HashMap<String,Integer>(1000);
+        // double Map look-up.  A primitive map is used to avoid boxing the
+        // count for every token.
+        StringIntMap termCounts = new StringIntMap(1000);
         Iterator<String> documentTokens = IteratorFactory.tokenize(document);
 
         // Increaes the count of documents observed so far.
@@ -216,12 +217,9 @@ public abstract class GenericTermDocumentVectorSpace implements SemanticSpace {
             // Add the term to the total list of terms to ensure it has a proper
             // index.  If the term was already added, this method is a no-op
             termToIndex.getDimension(word);
-            Integer termCount = termCounts.get(word);
 
             // update the term count
-            termCounts.put(word, (termCount == null) 
-                           ? 1
-                           : 1 + termCount.intValue());
+            termCounts.increment(word, 1);
         }
 
         document.close();
@@ -240,9 +238,9 @@ public abstract class GenericTermDocumentVectorSpace implements SemanticSpace {
         // Convert the Map count to a SparseArray
         SparseArray<Integer> documentColumn = 
             new SparseIntHashArray(totalNumberOfUniqueWords);
-        for (Map.Entry<String,Integer> e : termCounts.entrySet())
+        for (String term : termCounts.keySet())
             documentColumn.set(
-                    termToIndex.getDimension(e.getKey()), e.getValue());
+                    termToIndex.getDimension(term), termCounts.get(term));
 
         // Update the term-document matrix with the results of processing the
         // document.
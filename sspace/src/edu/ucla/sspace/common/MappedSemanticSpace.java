@@ -0,0 +1,482 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.common;
+
+import edu.ucla.sspace.common.SemanticSpaceIO.SSpaceFormat;
+
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.SparseDoubleVector;
+import edu.ucla.sspace.vector.Vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A {@link SemanticSpace} whose vectors are read directly from a memory-mapped
+ * {@link SSpaceFormat#BINARY binary} or {@link SSpaceFormat#SPARSE_BINARY
+ * sparse binary} {@code .sspace} file.  Unlike {@link OnDiskSemanticSpace},
+ * which seeks through a single {@link RandomAccessFile} and therefore must
+ * serialize all access to the data, this class maps the file into memory once
+ * and returns {@link DoubleVector} instances that are read-only views of the
+ * mapped region.  No vector data is copied onto the heap and no locking is
+ * required, so any number of threads may call {@link #getVector(String)
+ * getVector} concurrently.  The operating system is responsible for paging the
+ * vector data in and out of memory, which allows for semantic spaces much
+ * larger than the available heap.<p>
+ *
+ * Files larger than 2GB are mapped as a sequence of overlapping regions, where
+ * each region is large enough to contain any vector that starts within it.
+ * Therefore, each returned vector is always backed by exactly one region.<p>
+ *
+ * The vectors returned by this class are unmodifiable; calls to {@code set} or
+ * {@code add} will throw an {@link UnsupportedOperationException}.  The {@code
+ * getWords} method will return words in the order they are stored on disk.<p>
+ *
+ * This class is thread-safe.
+ *
+ * @see SemanticSpaceIO
+ * @see OnDiskSemanticSpace
+ */
+public class MappedSemanticSpace implements SemanticSpace {
+
+    private static final Logger LOGGER =
+        Logger.getLogger(MappedSemanticSpace.class.getName());
+
+    /**
+     * The distance between the start of each mapped region of the file.
+     */
+    private static final long REGION_STEP = 1L << 30;
+
+    /**
+     * The number of bytes used to store a single index and value pair in the
+     * {@link SSpaceFormat#SPARSE_BINARY} format.
+     */
+    private static final int SPARSE_ENTRY_BYTES = 12;
+
+    /**
+     * A mapping of terms to the row in which their vector is stored.
+     */
+    private final Map<String,Integer> termToRow;
+
+    /**
+     * The byte offset in the file for the start of each row's vector data.
+     */
+    private final long[] rowOffsets;
+
+    /**
+     * The mapped regions of the backing file, where region {@code i} starts at
+     * byte {@code i * REGION_STEP}.
+     */
+    private final ByteBuffer[] regions;
+
+    /**
+     * The number of dimensions used in this semantic space.
+     */
+    private final int dimensions;
+
+    /**
+     * The format of the file that backs this space.
+     */
+    private final SSpaceFormat format;
+
+    /**
+     * Whether every sparse vector in the file has its non-zero indices stored
+     * in increasing order, which allows for values to be found using a binary
+     * search.
+     */
+    private final boolean sortedIndices;
+
+    /**
+     * The name of this semantic space.
+     */
+    private final String spaceName;
+
+    /**
+     * Creates the {@link MappedSemanticSpace} from the file.
+     *
+     * @param filename the name of a semantic space file
+     *
+     * @throws IOException if any I/O exception occurs when reading the semantic
+     *         space data from the file
+     * @throws IllegalArgumentException if the file is not in a binary format
+     */
+    public MappedSemanticSpace(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    /**
+     * Creates the {@link MappedSemanticSpace} from the provided file.
+     *
+     * @param file a file containing a semantic space in either {@link
+     *        SSpaceFormat#BINARY} or {@link SSpaceFormat#SPARSE_BINARY} format
+     *
+     * @throws IOException if any I/O exception occurs when reading the semantic
+     *         space data from the file
+     * @throws IllegalArgumentException if the file is not in a binary format
+     */
+    public MappedSemanticSpace(File file) throws IOException {
+        format = SemanticSpaceIO.getFormat(file);
+        if (format != SSpaceFormat.BINARY
+                && format != SSpaceFormat.SPARSE_BINARY)
+            throw new IllegalArgumentException(
+                "Only BINARY and SPARSE_BINARY formats may be mapped: " +
+                format);
+        spaceName = file.getName();
+
+        // NOTE: Use a LinkedHashMap here because this will ensure that the
+        // words are returned in the same row-order as the matrix.
+        termToRow = new LinkedHashMap<String,Integer>();
+        long start = System.currentTimeMillis();
+
+        DataInputStream dis = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        // Skip the 4-byte header
+        dis.readInt();
+        int rows = dis.readInt();
+        dimensions = dis.readInt();
+        long offset = 12;
+        rowOffsets = new long[rows];
+
+        // Scan through the file to find where each vector starts.  This also
+        // records the largest vector so that the mapped regions can overlap by
+        // enough to keep every vector within a single region
+        long maxVectorBytes = (format == SSpaceFormat.BINARY)
+            ? 8L * dimensions : 0;
+        boolean sorted = true;
+        for (int row = 0; row < rows; ++row) {
+            int wordLength = dis.readUnsignedShort();
+            byte[] utf = new byte[wordLength + 2];
+            utf[0] = (byte)(wordLength >>> 8);
+            utf[1] = (byte)wordLength;
+            dis.readFully(utf, 2, wordLength);
+            String word = new DataInputStream(
+                new ByteArrayInputStream(utf)).readUTF();
+            offset += utf.length;
+            termToRow.put(word, row);
+            rowOffsets[row] = offset;
+
+            if (format == SSpaceFormat.BINARY) {
+                skipFully(dis, maxVectorBytes);
+                offset += maxVectorBytes;
+            }
+            else {
+                int nonZero = dis.readInt();
+                int prev = -1;
+                for (int i = 0; i < nonZero; ++i) {
+                    int index = dis.readInt();
+                    if (index <= prev)
+                        sorted = false;
+                    prev = index;
+                    skipFully(dis, 8);
+                }
+                long vectorBytes = 4 + (long)nonZero * SPARSE_ENTRY_BYTES;
+                offset += vectorBytes;
+                if (vectorBytes > maxVectorBytes)
+                    maxVectorBytes = vectorBytes;
+            }
+        }
+        dis.close();
+        sortedIndices = sorted;
+
+        // Map the file in overlapping regions
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        FileChannel fc = raf.getChannel();
+        long fileLength = fc.size();
+        int numRegions = (int)((fileLength + REGION_STEP - 1) / REGION_STEP);
+        regions = new ByteBuffer[Math.max(numRegions, 1)];
+        for (int i = 0; i < numRegions; ++i) {
+            long regionStart = i * REGION_STEP;
+            long regionLength = Math.min(REGION_STEP + maxVectorBytes,
+                                         fileLength - regionStart);
+            regions[i] = fc.map(MapMode.READ_ONLY, regionStart, regionLength);
+        }
+        // The mappings remain valid after the channel is closed
+        fc.close();
+        raf.close();
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("mapped " + format + " .sspace file in " +
+                (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Skips exactly {@code bytes} bytes in the stream.
+     */
+    private static void skipFully(DataInputStream dis, long bytes)
+            throws IOException {
+        while (bytes > 0) {
+            int skipped = dis.skipBytes((int)Math.min(bytes, Integer.MAX_VALUE));
+            if (skipped <= 0)
+                throw new IOException("Unexpected end of .sspace file");
+            bytes -= skipped;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Set<String> getWords() {
+        return Collections.unmodifiableSet(termToRow.keySet());
+    }
+
+    /**
+     * Returns a read-only view of the word's vector in the mapped file, or
+     * {@code null} if the word is not in the semantic space.  The returned
+     * vector will be a {@link SparseDoubleVector} if the backing file is in
+     * {@link SSpaceFormat#SPARSE_BINARY} format.
+     */
+    public DoubleVector getVector(String word) {
+        Integer row = termToRow.get(word);
+        if (row == null)
+            return null;
+        long offset = rowOffsets[row];
+        ByteBuffer region = regions[(int)(offset / REGION_STEP)];
+        int base = (int)(offset % REGION_STEP);
+        return (format == SSpaceFormat.BINARY)
+            ? new MappedDenseVector(region, base, dimensions)
+            : new MappedSparseVector(region, base, dimensions, sortedIndices);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getSpaceName() {
+        return spaceName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getVectorLength() {
+        return dimensions;
+    }
+
+    /**
+     * Not supported; throws an {@link UnsupportedOperationException} if called.
+     */
+    public void processDocument(BufferedReader document) {
+        throw new UnsupportedOperationException(
+            "MappedSemanticSpace instances cannot be updated");
+    }
+
+    /**
+     * Not supported; throws an {@link UnsupportedOperationException} if called.
+     */
+    public void processSpace(Properties props) {
+        throw new UnsupportedOperationException(
+            "MappedSemanticSpace instances cannot be updated");
+    }
+
+    /**
+     * A read-only view of a dense vector stored as consecutive {@code double}
+     * values in a mapped region.  All reads use absolute positions, so a
+     * single region may be safely shared by many views and threads.
+     */
+    private static class MappedDenseVector implements DoubleVector {
+
+        private final ByteBuffer region;
+
+        private final int base;
+
+        private final int length;
+
+        public MappedDenseVector(ByteBuffer region, int base, int length) {
+            this.region = region;
+            this.base = base;
+            this.length = length;
+        }
+
+        public double add(int index, double delta) {
+            throw new UnsupportedOperationException("vector is read-only");
+        }
+
+        public double get(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("index: " + index);
+            return region.getDouble(base + (index << 3));
+        }
+
+        public Double getValue(int index) {
+            return get(index);
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public double magnitude() {
+            double m = 0;
+            for (int i = 0; i < length; ++i) {
+                double d = region.getDouble(base + (i << 3));
+                m += d * d;
+            }
+            return Math.sqrt(m);
+        }
+
+        public void set(int index, double value) {
+            throw new UnsupportedOperationException("vector is read-only");
+        }
+
+        public void set(int index, Number value) {
+            throw new UnsupportedOperationException("vector is read-only");
+        }
+
+        public double[] toArray() {
+            double[] arr = new double[length];
+            for (int i = 0; i < length; ++i)
+                arr[i] = region.getDouble(base + (i << 3));
+            return arr;
+        }
+    }
+
+    /**
+     * A read-only view of a sparse vector stored as a count of non-zero values
+     * followed by the {@code int} index and {@code double} value of each in a
+     * mapped region.
+     */
+    private static class MappedSparseVector implements SparseDoubleVector {
+
+        private final ByteBuffer region;
+
+        /**
+         * The offset of the first index and value pair
+         */
+        private final int entriesStart;
+
+        private final int nonZero;
+
+        private final int length;
+
+        /**
+         * Whether the indices are stored in increasing order
+         */
+        private final boolean sorted;
+
+        public MappedSparseVector(ByteBuffer region, int base, int length,
+                                  boolean sorted) {
+            this.region = region;
+            this.length = length;
+            this.sorted = sorted;
+            nonZero = region.getInt(base);
+            entriesStart = base + 4;
+        }
+
+        private int indexAt(int entry) {
+            return region.getInt(entriesStart + entry * SPARSE_ENTRY_BYTES);
+        }
+
+        private double valueAt(int entry) {
+            return region.getDouble(
+                entriesStart + entry * SPARSE_ENTRY_BYTES + 4);
+        }
+
+        public double add(int index, double delta) {
+            throw new UnsupportedOperationException("vector is read-only");
+        }
+
+        public double get(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("index: " + index);
+            if (sorted) {
+                int lo = 0;
+                int hi = nonZero - 1;
+                while (lo <= hi) {
+                    int mid = (lo + hi) >>> 1;
+                    int i = indexAt(mid);
+                    if (i < index)
+                        lo = mid + 1;
+                    else if (i > index)
+                        hi = mid - 1;
+                    else
+                        return valueAt(mid);
+                }
+            }
+            else {
+                for (int e = 0; e < nonZero; ++e)
+                    if (indexAt(e) == index)
+                        return valueAt(e);
+            }
+            return 0;
+        }
+
+        public Double getValue(int index) {
+            return get(index);
+        }
+
+        public int[] getNonZeroIndices() {
+            int[] indices = new int[nonZero];
+            for (int e = 0; e < nonZero; ++e)
+                indices[e] = indexAt(e);
+            return indices;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public double magnitude() {
+            double m = 0;
+            for (int e = 0; e < nonZero; ++e) {
+                double d = valueAt(e);
+                m += d * d;
+            }
+            return Math.sqrt(m);
+        }
+
+        public void set(int index, double value) {
+            throw new UnsupportedOperationException("vector is read-only");
+        }
+
+        public void set(int index, Number value) {
+            throw new UnsupportedOperationException("vector is read-only");
+        }
+
+        public double[] toArray() {
+            double[] arr = new double[length];
+            for (int e = 0; e < nonZero; ++e)
+                arr[indexAt(e)] = valueAt(e);
+            return arr;
+        }
+    }
+}
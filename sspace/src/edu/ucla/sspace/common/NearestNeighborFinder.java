@@ -0,0 +1,70 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.common;
+
+import edu.ucla.sspace.util.SortedMultiMap;
+
+import edu.ucla.sspace.vector.Vector;
+
+
+/**
+ * An interface for classes that find the words in a {@link SemanticSpace}
+ * whose vectors are most similar to a query.  Unlike {@link WordComparator},
+ * which compares the query against every word in the space, implementations
+ * are free to use an index to return an approximate answer in less time.
+ *
+ * @see WordComparator
+ * @see RandomProjectionNearestNeighborFinder
+ */
+public interface NearestNeighborFinder {
+
+    /**
+     * Returns the words whose vectors are most similar to the vector for the
+     * provided word, according to the specified similarity measure.  The word
+     * itself is not included in the results.
+     *
+     * @param word the word whose neighbors should be found
+     * @param numberOfSimilarWords the maximum number of words to return
+     * @param similarityType the similarity measure used to rank the neighbors
+     *
+     * @return the most similar words, or {@code null} if the provided word was
+     *         not in the semantic space.
+     */
+    SortedMultiMap<Double,String> getMostSimilar(
+        String word, int numberOfSimilarWords,
+        Similarity.SimType similarityType);
+
+    /**
+     * Returns the words whose vectors are most similar to the provided vector,
+     * according to the specified similarity measure.
+     *
+     * @param vector a vector with the same length as the vectors in the
+     *        semantic space
+     * @param numberOfSimilarWords the maximum number of words to return
+     * @param similarityType the similarity measure used to rank the neighbors
+     *
+     * @return the most similar words
+     */
+    SortedMultiMap<Double,String> getMostSimilar(
+        Vector vector, int numberOfSimilarWords,
+        Similarity.SimType similarityType);
+}
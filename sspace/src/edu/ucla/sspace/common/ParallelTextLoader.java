@@ -0,0 +1,529 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.common;
+
+import edu.ucla.sspace.common.SemanticSpaceIO.SSpaceFormat;
+
+import edu.ucla.sspace.matrix.ArrayMatrix;
+import edu.ucla.sspace.matrix.Matrices;
+import edu.ucla.sspace.matrix.Matrix;
+
+import edu.ucla.sspace.util.WorkQueue;
+
+import edu.ucla.sspace.vector.CompactSparseVector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * A loader for {@link SSpaceFormat#TEXT TEXT} and {@link
+ * SSpaceFormat#SPARSE_TEXT SPARSE_TEXT} {@code .sspace} files that parses the
+ * vectors in parallel.  The file is split into chunks that end on line
+ * boundaries.  The lines of each chunk are first counted in parallel, which
+ * determines the row of the first vector in every chunk, and then the chunks
+ * are parsed in parallel directly into storage that was allocated for the
+ * entire space.  Numbers are parsed from the raw bytes of the file without
+ * creating intermediate strings whenever the value can be represented
+ * exactly.<p>
+ *
+ * Words are decoded using the platform's default character set, which matches
+ * how the text formats are written by {@link SemanticSpaceIO}.
+ *
+ * @see StaticSemanticSpace
+ */
+class ParallelTextLoader {
+
+    /**
+     * The approximate number of bytes in each chunk of the file.
+     */
+    static final int CHUNK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The number of bytes read at a time when searching for the end of a line.
+     */
+    private static final int SCAN_SIZE = 64 * 1024;
+
+    /**
+     * Exact powers of ten that may be used to convert a decimal number without
+     * any loss of precision.
+     */
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+        1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The largest integer for which every smaller integer is exactly
+     * representable as a {@code double}.
+     */
+    private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+    /**
+     * The words of the space in row order.
+     */
+    private final String[] words;
+
+    /**
+     * The vectors of the space.
+     */
+    private final Matrix matrix;
+
+    /**
+     * Loads the space from the file, which must be in the specified text
+     * format and begin with the four byte format header.
+     *
+     * @throws IOException if any I/O exception occurs when reading the file or
+     *         if the file is not properly formatted
+     */
+    public ParallelTextLoader(File file, SSpaceFormat format)
+            throws IOException {
+        if (format != SSpaceFormat.TEXT && format != SSpaceFormat.SPARSE_TEXT)
+            throw new IllegalArgumentException(
+                "Only TEXT and SPARSE_TEXT files may be loaded: " + format);
+        final boolean sparse = format == SSpaceFormat.SPARSE_TEXT;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            long length = channel.size();
+
+            // Read the dimensions of the space, which follow the header
+            long dataStart = findLineEnd(channel, 4, length);
+            if (dataStart == 4)
+                throw new IOException("Empty .sspace file");
+            String[] dimensions = new String(
+                read(channel, 4, (int)(dataStart - 4))).trim().split("\\s+");
+            final int rows = Integer.parseInt(dimensions[0]);
+            final int columns = Integer.parseInt(dimensions[1]);
+
+            // Split the remaining data into chunks that end on a line
+            List<Long> bounds = new ArrayList<Long>();
+            bounds.add(dataStart);
+            for (long pos = dataStart + CHUNK_SIZE; pos < length; ) {
+                long end = findLineEnd(channel, pos, length);
+                bounds.add(end);
+                pos = end + CHUNK_SIZE;
+            }
+            if (bounds.get(bounds.size() - 1) < length)
+                bounds.add(length);
+            final int numChunks = bounds.size() - 1;
+            final long[] chunkStarts = new long[numChunks + 1];
+            for (int i = 0; i <= numChunks; ++i)
+                chunkStarts[i] = bounds.get(i);
+
+            // Count the vectors in each chunk to find the row of its first
+            final int[] firstRows = new int[numChunks + 1];
+            final IOException[] error = new IOException[1];
+            Collection<Runnable> tasks = new ArrayList<Runnable>();
+            for (int c = 0; c < numChunks; ++c) {
+                final int chunk = c;
+                tasks.add(new Runnable() {
+                        public void run() {
+                            try {
+                                byte[] bytes = readChunk(channel, chunkStarts,
+                                                         chunk);
+                                firstRows[chunk + 1] = countLines(bytes);
+                            } catch (IOException ioe) {
+                                setError(error, ioe);
+                            }
+                        }
+                    });
+            }
+            WorkQueue.getWorkQueue().run(tasks);
+            if (error[0] != null)
+                throw error[0];
+            for (int c = 0; c < numChunks; ++c)
+                firstRows[c + 1] += firstRows[c];
+            if (firstRows[numChunks] != rows)
+                throw new IOException(String.format(
+                    "Expected %d rows; saw %d", rows, firstRows[numChunks]));
+
+            // Parse each chunk into the preallocated storage
+            words = new String[rows];
+            final ArrayMatrix dense = (sparse)
+                ? null : new ArrayMatrix(rows, columns);
+            final CompactSparseVector[] rowVectors = (sparse)
+                ? new CompactSparseVector[rows] : null;
+            tasks.clear();
+            for (int c = 0; c < numChunks; ++c) {
+                final int chunk = c;
+                tasks.add(new Runnable() {
+                        public void run() {
+                            try {
+                                byte[] bytes = readChunk(channel, chunkStarts,
+                                                         chunk);
+                                parseChunk(bytes, firstRows[chunk], columns,
+                                           dense, rowVectors);
+                            } catch (IOException ioe) {
+                                setError(error, ioe);
+                            } catch (RuntimeException re) {
+                                setError(error, new IOException(
+                                    "improperly formated semantic space file",
+                                    re));
+                            }
+                        }
+                    });
+            }
+            WorkQueue.getWorkQueue().run(tasks);
+            if (error[0] != null)
+                throw error[0];
+            matrix = (sparse)
+                ? Matrices.asSparseMatrix(Arrays.asList(rowVectors))
+                : dense;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the words of the space in row order.
+     */
+    public String[] getWords() {
+        return words;
+    }
+
+    /**
+     * Returns the vectors of the space, where row {@code i} is the vector for
+     * the {@code i}th word.
+     */
+    public Matrix getMatrix() {
+        return matrix;
+    }
+
+    /**
+     * Records the first error reported by any task.
+     */
+    private static void setError(IOException[] error, IOException ioe) {
+        synchronized (error) {
+            if (error[0] == null)
+                error[0] = ioe;
+        }
+    }
+
+    /**
+     * Returns the position just after the first newline at or after the
+     * specified position, or the length of the file if there are no more
+     * newlines.
+     */
+    private static long findLineEnd(FileChannel channel, long pos, long length)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_SIZE);
+        while (pos < length) {
+            buf.clear();
+            int read = channel.read(buf, pos);
+            if (read <= 0)
+                break;
+            for (int i = 0; i < read; ++i)
+                if (buf.get(i) == '\n')
+                    return pos + i + 1;
+            pos += read;
+        }
+        return length;
+    }
+
+    /**
+     * Returns the bytes of the chunk.
+     */
+    private static byte[] readChunk(FileChannel channel, long[] chunkStarts,
+                                    int chunk) throws IOException {
+        long size = chunkStarts[chunk + 1] - chunkStarts[chunk];
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("Line is too long: " + size + " bytes");
+        return read(channel, chunkStarts[chunk], (int)size);
+    }
+
+    /**
+     * Reads the specified number of bytes starting at the position, which may
+     * safely be called from several threads at once.
+     */
+    private static byte[] read(FileChannel channel, long pos, int size)
+            throws IOException {
+        byte[] bytes = new byte[size];
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0)
+                throw new IOException("Unexpected end of file");
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of lines in the bytes that contain at least one
+     * non-whitespace character.
+     */
+    static int countLines(byte[] bytes) {
+        int lines = 0;
+        boolean blank = true;
+        for (byte b : bytes) {
+            if (b == '\n') {
+                if (!blank)
+                    lines++;
+                blank = true;
+            }
+            else if (!isSpace(b))
+                blank = false;
+        }
+        return (blank) ? lines : lines + 1;
+    }
+
+    /**
+     * Returns {@code true} if the byte is an ASCII whitespace or control
+     * character.  Bytes of multi-byte characters are never whitespace.
+     */
+    private static boolean isSpace(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    /**
+     * Parses every non-blank line of the chunk, storing the word and vector
+     * of each as consecutive rows starting at {@code firstRow}.
+     */
+    private void parseChunk(byte[] bytes, int firstRow, int columns,
+                            ArrayMatrix dense,
+                            CompactSparseVector[] rowVectors)
+            throws IOException {
+        double[] values = (dense == null) ? null : new double[columns];
+        int row = firstRow;
+        int start = 0;
+        while (start < bytes.length) {
+            int end = start;
+            while (end < bytes.length && bytes[end] != '\n')
+                end++;
+            int next = end + 1;
+            // Trim any whitespace, such as a carriage return
+            while (end > start && isSpace(bytes[end - 1]))
+                end--;
+            while (start < end && isSpace(bytes[start]))
+                start++;
+            if (start < end) {
+                int bar = start;
+                while (bar < end && bytes[bar] != '|')
+                    bar++;
+                if (bar == end)
+                    throw new IOException(
+                        "improperly formated semantic space file");
+                words[row] = new String(bytes, start, bar - start);
+                if (dense != null) {
+                    parseDense(bytes, bar + 1, end, values);
+                    dense.setRow(row, values);
+                }
+                else
+                    rowVectors[row] = parseSparse(bytes, bar + 1, end, columns);
+                row++;
+            }
+            start = next;
+        }
+    }
+
+    /**
+     * Parses the whitespace-separated values of a dense vector.
+     *
+     * @throws IOException if the number of values does not match the length
+     *         of the array
+     */
+    private static void parseDense(byte[] bytes, int start, int end,
+                                   double[] values) throws IOException {
+        int col = 0;
+        int i = start;
+        while (i < end) {
+            while (i < end && isSpace(bytes[i]))
+                i++;
+            if (i == end)
+                break;
+            int tokenEnd = i;
+            while (tokenEnd < end && !isSpace(bytes[tokenEnd]))
+                tokenEnd++;
+            if (col == values.length)
+                throw new IOException(
+                    "improperly formated semantic space file");
+            values[col++] = parseDouble(bytes, i, tokenEnd);
+            i = tokenEnd;
+        }
+        if (col != values.length)
+            throw new IOException("improperly formated semantic space file");
+    }
+
+    /**
+     * Parses the comma-separated index and value pairs of a sparse vector.
+     * Pairs whose indices are out of order are sorted.
+     */
+    private static CompactSparseVector parseSparse(byte[] bytes, int start,
+                                                   int end, int columns)
+            throws IOException {
+        int commas = 0;
+        for (int i = start; i < end; ++i)
+            if (bytes[i] == ',')
+                commas++;
+        int pairs = (start == end) ? 0 : (commas + 1) / 2;
+        int[] indices = new int[pairs];
+        double[] values = new double[pairs];
+        boolean sorted = true;
+        int i = start;
+        for (int p = 0; p < pairs; ++p) {
+            int comma = i;
+            while (comma < end && bytes[comma] != ',')
+                comma++;
+            indices[p] = parseInt(bytes, i, comma);
+            i = comma + 1;
+            comma = i;
+            while (comma < end && bytes[comma] != ',')
+                comma++;
+            if (i >= comma)
+                throw new IOException(
+                    "improperly formated semantic space file");
+            values[p] = parseDouble(bytes, i, comma);
+            i = comma + 1;
+            if (p > 0 && indices[p] <= indices[p - 1])
+                sorted = false;
+        }
+        if (!sorted) {
+            long[] order = new long[pairs];
+            for (int p = 0; p < pairs; ++p)
+                order[p] = ((long)indices[p] << 32) | p;
+            Arrays.sort(order);
+            int[] sortedIndices = new int[pairs];
+            double[] sortedValues = new double[pairs];
+            for (int p = 0; p < pairs; ++p) {
+                sortedIndices[p] = (int)(order[p] >>> 32);
+                sortedValues[p] = values[(int)order[p]];
+            }
+            indices = sortedIndices;
+            values = sortedValues;
+        }
+        return new CompactSparseVector(indices, values, columns);
+    }
+
+    /**
+     * Parses a non-negative decimal integer.
+     */
+    static int parseInt(byte[] bytes, int start, int end) {
+        if (start >= end)
+            throw new NumberFormatException("Empty index");
+        long value = 0;
+        for (int i = start; i < end; ++i) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE)
+                throw new NumberFormatException(
+                    new String(bytes, start, end - start));
+            value = value * 10 + digit;
+        }
+        if (value > Integer.MAX_VALUE)
+            throw new NumberFormatException(
+                new String(bytes, start, end - start));
+        return (int)value;
+    }
+
+    /**
+     * Parses a decimal number, returning the same value as {@link
+     * Double#parseDouble(String)}.  Numbers whose digits and exponent can be
+     * converted exactly using a single multiplication or division are parsed
+     * directly from the bytes, while all others are converted to a string
+     * first.
+     */
+    static double parseDouble(byte[] bytes, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int exponent = 0;
+        boolean sawDigit = false;
+        boolean sawPoint = false;
+        for (; i < end; ++i) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                sawDigit = true;
+                if (mantissa != 0 || b != '0')
+                    significantDigits++;
+                // More digits than fit in a long require the slow path
+                if (significantDigits > 18)
+                    return slowParse(bytes, start, end);
+                mantissa = mantissa * 10 + (b - '0');
+                if (sawPoint)
+                    exponent--;
+            }
+            else if (b == '.' && !sawPoint)
+                sawPoint = true;
+            else
+                break;
+        }
+        if (!sawDigit)
+            return slowParse(bytes, start, end);
+        if (i < end) {
+            if (bytes[i] != 'e' && bytes[i] != 'E')
+                return slowParse(bytes, start, end);
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (bytes[i] == '-' || bytes[i] == '+')) {
+                negativeExponent = bytes[i] == '-';
+                i++;
+            }
+            if (i == end)
+                return slowParse(bytes, start, end);
+            int e = 0;
+            for (; i < end; ++i) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9 || e > 10000)
+                    return slowParse(bytes, start, end);
+                e = e * 10 + digit;
+            }
+            exponent += (negativeExponent) ? -e : e;
+        }
+
+        double value;
+        if (mantissa == 0)
+            value = 0;
+        else if (mantissa > MAX_EXACT_INTEGER
+                 || exponent < -22 || exponent > 22)
+            return slowParse(bytes, start, end);
+        // Both the mantissa and the power of ten are exact, so a single
+        // operation yields the correctly rounded result
+        else if (exponent >= 0)
+            value = mantissa * POWERS_OF_TEN[exponent];
+        else
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        return (negative) ? -value : value;
+    }
+
+    /**
+     * Parses the number using {@link Double#parseDouble(String)}.
+     */
+    private static double slowParse(byte[] bytes, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = 0; i < chars.length; ++i)
+            chars[i] = (char)(bytes[start + i] & 0xFF);
+        return Double.parseDouble(new String(chars));
+    }
+}
@@ -0,0 +1,1067 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.common;
+
+import edu.ucla.sspace.common.SemanticSpaceIO.SSpaceFormat;
+
+import edu.ucla.sspace.util.BoundedSortedMultiMap;
+import edu.ucla.sspace.util.SortedMultiMap;
+import edu.ucla.sspace.util.WorkQueue;
+
+import edu.ucla.sspace.vector.DenseVector;
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.Vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A compact, read-only {@link SemanticSpace} backed by a {@link
+ * SSpaceFormat#QUANTIZED quantized} {@code .sspace} file.  Each vector is
+ * stored as a per-vector scale and offset followed by one code per dimension,
+ * where the code is either a signed byte ({@link Encoding#INT8}) or an IEEE
+ * half-precision float ({@link Encoding#FLOAT16}).  A value is recovered as
+ * {@code offset + scale * code}, which makes the files roughly eight or four
+ * times smaller than the {@link SSpaceFormat#BINARY BINARY} format,
+ * respectively.<p>
+ *
+ * The file may optionally contain a product-quantization codebook, in which
+ * the dimensions are split into contiguous subspaces and each vector
+ * additionally records the nearest of up to 256 centroids in every subspace.
+ * These codes allow a query to be compared against a vector using only one
+ * table lookup per subspace.<p>
+ *
+ * The codes are kept on the heap and are never expanded in bulk.  The {@link
+ * #getMostSimilar(String,int,Similarity.SimType) getMostSimilar} methods
+ * compute cosine similarity directly from the codes, using the precomputed
+ * sums and magnitudes of each vector.  When a codebook is present, the
+ * product-quantized codes are first used to select a shortlist of candidates,
+ * which are then re-ranked using their scalar codes.  Other similarity
+ * measures are computed from the dequantized vectors.  {@link WordComparator}
+ * uses these methods automatically when given an instance of this class.<p>
+ *
+ * The vectors returned by {@link #getVector(String) getVector} are newly
+ * dequantized copies, so changes to them are not reflected in this space.
+ * The {@code getWords} method will return words in the order they are stored
+ * on disk.<p>
+ *
+ * This class is thread-safe.
+ *
+ * @see SemanticSpaceIO
+ */
+public class QuantizedSemanticSpace
+        implements SemanticSpace, NearestNeighborFinder {
+
+    private static final Logger LOGGER =
+        Logger.getLogger(QuantizedSemanticSpace.class.getName());
+
+    /**
+     * The storage used for the code of each dimension.
+     */
+    public enum Encoding {
+        /**
+         * One signed byte per dimension, with codes in {@code [-127, 127]}
+         */
+        INT8,
+
+        /**
+         * One half-precision float per dimension, with codes in {@code [-1,
+         * 1]}
+         */
+        FLOAT16
+    }
+
+    /**
+     * The maximum number of centroids learned for each product-quantization
+     * subspace, which allows each code to be stored in a single byte.
+     */
+    public static final int CENTROIDS_PER_SUBSPACE = 256;
+
+    /**
+     * The number of candidates selected using the product-quantization codes
+     * for each requested neighbor, prior to re-ranking.
+     */
+    public static final int SHORTLIST_FACTOR = 10;
+
+    /**
+     * The minimum number of candidates that are re-ranked.
+     */
+    public static final int MIN_SHORTLIST_SIZE = 100;
+
+    /**
+     * The largest value of an {@link Encoding#INT8} code.
+     */
+    private static final int MAX_BYTE_CODE = 127;
+
+    /**
+     * The maximum number of vectors used to train the product-quantization
+     * codebook.
+     */
+    private static final int TRAINING_SAMPLE_SIZE = 10000;
+
+    /**
+     * The number of k-means iterations used to train each subspace's
+     * centroids.
+     */
+    private static final int TRAINING_ITERATIONS = 10;
+
+    /**
+     * The seed used to sample the training vectors and initial centroids, so
+     * that writing the same space always produces the same file.
+     */
+    private static final long TRAINING_SEED = 0;
+
+    /**
+     * The value of every half-precision float, indexed by its bits.
+     */
+    private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int i = 0; i < HALF_TO_FLOAT.length; ++i)
+            HALF_TO_FLOAT[i] = halfToFloat((short)i);
+    }
+
+    /**
+     * A mapping of terms to the row in which their codes are stored.
+     */
+    private final Map<String,Integer> termToRow;
+
+    /**
+     * The words of the space in row order.
+     */
+    private final String[] words;
+
+    /**
+     * The number of dimensions used in this semantic space.
+     */
+    private final int dimensions;
+
+    /**
+     * The encoding of the scalar codes.
+     */
+    private final Encoding encoding;
+
+    /**
+     * The {@link Encoding#INT8} codes of each row, or {@code null} if the
+     * space uses a different encoding.
+     */
+    private final byte[][] byteCodes;
+
+    /**
+     * The {@link Encoding#FLOAT16} codes of each row, or {@code null} if the
+     * space uses a different encoding.
+     */
+    private final short[][] halfCodes;
+
+    /**
+     * The scale of each row's codes.
+     */
+    private final float[] scales;
+
+    /**
+     * The offset of each row's codes.
+     */
+    private final float[] offsets;
+
+    /**
+     * The sum of each row's decoded codes, prior to scaling.
+     */
+    private final double[] codeSums;
+
+    /**
+     * The magnitude of each row's dequantized vector.
+     */
+    private final double[] magnitudes;
+
+    /**
+     * The first dimension of each product-quantization subspace, followed by
+     * the number of dimensions, or {@code null} if the file has no codebook.
+     */
+    private final int[] subspaceStarts;
+
+    /**
+     * The centroids of each subspace, stored consecutively in row-major order.
+     */
+    private final float[][] codebooks;
+
+    /**
+     * The product-quantization codes, with one byte per subspace for each
+     * row.
+     */
+    private final byte[] productCodes;
+
+    /**
+     * The name of this semantic space.
+     */
+    private final String spaceName;
+
+    /**
+     * Creates the {@link QuantizedSemanticSpace} from the file.
+     *
+     * @param filename the name of a semantic space file
+     *
+     * @throws IOException if any I/O exception occurs when reading the semantic
+     *         space data from the file
+     * @throws IllegalArgumentException if the file is not in the quantized
+     *         format
+     */
+    public QuantizedSemanticSpace(String filename) throws IOException {
+        this(new File(filename));
+    }
+
+    /**
+     * Creates the {@link QuantizedSemanticSpace} from the provided file.
+     *
+     * @param file a file containing a semantic space in the {@link
+     *        SSpaceFormat#QUANTIZED} format
+     *
+     * @throws IOException if any I/O exception occurs when reading the semantic
+     *         space data from the file
+     * @throws IllegalArgumentException if the file is not in the quantized
+     *         format
+     */
+    public QuantizedSemanticSpace(File file) throws IOException {
+        SSpaceFormat format = SemanticSpaceIO.getFormat(file);
+        if (format != SSpaceFormat.QUANTIZED)
+            throw new IllegalArgumentException(
+                "Not a QUANTIZED .sspace file: " + format);
+        spaceName = file.getName();
+        long start = System.currentTimeMillis();
+
+        DataInputStream dis = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        try {
+            // Skip the 4-byte header
+            dis.readInt();
+            int rows = dis.readInt();
+            dimensions = dis.readInt();
+            encoding = Encoding.values()[dis.readByte()];
+            int numSubspaces = dis.readInt();
+
+            if (numSubspaces > 0) {
+                subspaceStarts = getSubspaceStarts(dimensions, numSubspaces);
+                codebooks = new float[numSubspaces][];
+                for (int s = 0; s < numSubspaces; ++s) {
+                    int centroids = dis.readInt();
+                    int width = subspaceStarts[s + 1] - subspaceStarts[s];
+                    float[] codebook = new float[centroids * width];
+                    for (int i = 0; i < codebook.length; ++i)
+                        codebook[i] = dis.readFloat();
+                    codebooks[s] = codebook;
+                }
+                productCodes = new byte[rows * numSubspaces];
+            }
+            else {
+                subspaceStarts = null;
+                codebooks = null;
+                productCodes = null;
+            }
+
+            // NOTE: Use a LinkedHashMap here because this will ensure that the
+            // words are returned in the same row-order as the file.
+            termToRow = new LinkedHashMap<String,Integer>();
+            words = new String[rows];
+            scales = new float[rows];
+            offsets = new float[rows];
+            codeSums = new double[rows];
+            magnitudes = new double[rows];
+            byteCodes = (encoding == Encoding.INT8) ? new byte[rows][] : null;
+            halfCodes = (encoding == Encoding.FLOAT16)
+                ? new short[rows][] : null;
+
+            for (int row = 0; row < rows; ++row) {
+                words[row] = dis.readUTF();
+                termToRow.put(words[row], row);
+                scales[row] = dis.readFloat();
+                offsets[row] = dis.readFloat();
+                double sum = 0;
+                double sumOfSquares = 0;
+                if (encoding == Encoding.INT8) {
+                    byte[] codes = new byte[dimensions];
+                    dis.readFully(codes);
+                    for (byte c : codes) {
+                        sum += c;
+                        sumOfSquares += c * c;
+                    }
+                    byteCodes[row] = codes;
+                }
+                else {
+                    short[] codes = new short[dimensions];
+                    for (int i = 0; i < dimensions; ++i) {
+                        codes[i] = dis.readShort();
+                        double c = HALF_TO_FLOAT[codes[i] & 0xFFFF];
+                        sum += c;
+                        sumOfSquares += c * c;
+                    }
+                    halfCodes[row] = codes;
+                }
+                if (numSubspaces > 0)
+                    dis.readFully(productCodes, row * numSubspaces,
+                                  numSubspaces);
+                codeSums[row] = sum;
+
+                // |o + s*c|^2 = d*o^2 + 2*o*s*sum(c) + s^2*sum(c^2)
+                double o = offsets[row];
+                double sc = scales[row];
+                magnitudes[row] = Math.sqrt(Math.max(0, dimensions * o * o
+                    + 2 * o * sc * sum + sc * sc * sumOfSquares));
+            }
+        } finally {
+            dis.close();
+        }
+
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("loaded " + encoding + " quantized .sspace file with "
+                        + words.length + " words in "
+                        + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
+    /**
+     * Writes the semantic space to the file in the {@link
+     * SSpaceFormat#QUANTIZED} format using {@link Encoding#INT8} codes and no
+     * product-quantization codebook.
+     *
+     * @param sspace the semantic space to be written
+     * @param output the file into which the space will be written
+     *
+     * @throws IOException if any I/O exception occurs when writing the semantic
+     *         space data to the file
+     */
+    public static void write(SemanticSpace sspace, File output)
+            throws IOException {
+        write(sspace, output, Encoding.INT8, 0);
+    }
+
+    /**
+     * Writes the semantic space to the file in the {@link
+     * SSpaceFormat#QUANTIZED} format.  If {@code numSubspaces} is positive, a
+     * product-quantization codebook with that many subspaces is trained from
+     * a sample of the vectors and written along with the codes.
+     *
+     * @param sspace the semantic space to be written
+     * @param output the file into which the space will be written
+     * @param encoding the encoding of each dimension's code
+     * @param numSubspaces the number of product-quantization subspaces, or
+     *        {@code 0} if no codebook should be written
+     *
+     * @throws IllegalArgumentException if {@code numSubspaces} is negative or
+     *         greater than the number of dimensions
+     * @throws IOException if any I/O exception occurs when writing the semantic
+     *         space data to the file
+     */
+    public static void write(SemanticSpace sspace, File output,
+                             Encoding encoding, int numSubspaces)
+            throws IOException {
+        List<String> words = new ArrayList<String>(sspace.getWords());
+        int dimensions = (words.size() > 0) ? sspace.getVectorLength() : 0;
+        if (numSubspaces < 0 || numSubspaces > dimensions)
+            throw new IllegalArgumentException(
+                "The number of subspaces must be between 0 and the number of " +
+                "dimensions: " + numSubspaces);
+        int[] subspaceStarts = null;
+        float[][] codebooks = null;
+        if (numSubspaces > 0) {
+            subspaceStarts = getSubspaceStarts(dimensions, numSubspaces);
+            codebooks = trainCodebooks(sspace, words, subspaceStarts);
+        }
+
+        DataOutputStream dos = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(output)));
+        try {
+            SemanticSpaceIO.writeHeader(dos, SSpaceFormat.QUANTIZED);
+            dos.writeInt(words.size());
+            dos.writeInt(dimensions);
+            dos.writeByte(encoding.ordinal());
+            dos.writeInt(numSubspaces);
+            LOGGER.fine("saving " + encoding + " quantized S-Space with " +
+                        words.size() + " words with " + dimensions +
+                        "-dimensional vectors and " + numSubspaces +
+                        " product-quantization subspaces");
+            for (int s = 0; s < numSubspaces; ++s) {
+                int width = subspaceStarts[s + 1] - subspaceStarts[s];
+                dos.writeInt(codebooks[s].length / width);
+                for (float f : codebooks[s])
+                    dos.writeFloat(f);
+            }
+
+            double[] values = new double[dimensions];
+            byte[] codes = new byte[dimensions];
+            for (String word : words) {
+                dos.writeUTF(word);
+                toArray(sspace.getVector(word), values);
+                double min = Double.POSITIVE_INFINITY;
+                double max = Double.NEGATIVE_INFINITY;
+                for (double v : values) {
+                    if (v < min)
+                        min = v;
+                    if (v > max)
+                        max = v;
+                }
+                // Center the codes on the middle of the vector's range so that
+                // the full range of each code is used
+                float offset = (dimensions == 0) ? 0 : (float)((max + min) / 2);
+                float scale = (dimensions == 0) ? 0 : (float)((max - min) / 2);
+                if (encoding == Encoding.INT8)
+                    scale /= MAX_BYTE_CODE;
+                dos.writeFloat(scale);
+                dos.writeFloat(offset);
+                for (int i = 0; i < dimensions; ++i) {
+                    double c = (scale == 0) ? 0 : (values[i] - offset) / scale;
+                    if (encoding == Encoding.INT8) {
+                        long code = Math.round(c);
+                        code = Math.min(MAX_BYTE_CODE, code);
+                        codes[i] = (byte)Math.max(-MAX_BYTE_CODE, code);
+                    }
+                    else
+                        dos.writeShort(floatToHalf((float)c));
+                }
+                if (encoding == Encoding.INT8)
+                    dos.write(codes);
+                for (int s = 0; s < numSubspaces; ++s)
+                    dos.writeByte(nearestCentroid(
+                        values, subspaceStarts[s], subspaceStarts[s + 1],
+                        codebooks[s]));
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    /**
+     * Returns the first dimension of each subspace when the dimensions are
+     * split as evenly as possible, followed by the number of dimensions.
+     */
+    private static int[] getSubspaceStarts(int dimensions, int numSubspaces) {
+        int[] starts = new int[numSubspaces + 1];
+        for (int s = 0; s <= numSubspaces; ++s)
+            starts[s] = (int)((long)s * dimensions / numSubspaces);
+        return starts;
+    }
+
+    /**
+     * Copies the values of the vector into the array.
+     */
+    private static void toArray(Vector vector, double[] values) {
+        if (vector instanceof DoubleVector) {
+            DoubleVector v = (DoubleVector)vector;
+            for (int i = 0; i < values.length; ++i)
+                values[i] = v.get(i);
+        }
+        else {
+            for (int i = 0; i < values.length; ++i)
+                values[i] = vector.getValue(i).doubleValue();
+        }
+    }
+
+    /**
+     * Learns the centroids of each subspace using k-means on a random sample
+     * of the space's vectors.  The subspaces are trained in parallel.
+     */
+    private static float[][] trainCodebooks(SemanticSpace sspace,
+                                            List<String> words,
+                                            final int[] subspaceStarts) {
+        // Select the training vectors with reservoir sampling
+        Random random = new Random(TRAINING_SEED);
+        int sampleSize = Math.min(TRAINING_SAMPLE_SIZE, words.size());
+        String[] sampled = new String[sampleSize];
+        for (int i = 0; i < words.size(); ++i) {
+            if (i < sampleSize)
+                sampled[i] = words.get(i);
+            else {
+                int j = random.nextInt(i + 1);
+                if (j < sampleSize)
+                    sampled[j] = words.get(i);
+            }
+        }
+        int dimensions = subspaceStarts[subspaceStarts.length - 1];
+        final double[][] sample = new double[sampleSize][dimensions];
+        for (int i = 0; i < sampleSize; ++i)
+            toArray(sspace.getVector(sampled[i]), sample[i]);
+
+        // Initialize each subspace's centroids from a different random subset
+        // of the sample
+        int numSubspaces = subspaceStarts.length - 1;
+        final float[][] codebooks = new float[numSubspaces][];
+        final int centroids = Math.min(CENTROIDS_PER_SUBSPACE, sampleSize);
+        final long[] seeds = new long[numSubspaces];
+        for (int s = 0; s < numSubspaces; ++s)
+            seeds[s] = random.nextLong();
+
+        Collection<Runnable> tasks = new ArrayList<Runnable>();
+        for (int s = 0; s < numSubspaces; ++s) {
+            final int subspace = s;
+            tasks.add(new Runnable() {
+                    public void run() {
+                        codebooks[subspace] = kMeans(
+                            sample, subspaceStarts[subspace],
+                            subspaceStarts[subspace + 1], centroids,
+                            new Random(seeds[subspace]));
+                    }
+                });
+        }
+        WorkQueue.getWorkQueue().run(tasks);
+        return codebooks;
+    }
+
+    /**
+     * Returns the centroids found by k-means for the specified dimensions of
+     * the sample, stored consecutively in row-major order.  Centroids that
+     * lose all of their points keep their previous value.
+     */
+    private static float[] kMeans(double[][] sample, int start, int end,
+                                  int numCentroids, Random random) {
+        int width = end - start;
+        float[] centroids = new float[numCentroids * width];
+        int[] order = new int[sample.length];
+        for (int i = 0; i < order.length; ++i)
+            order[i] = i;
+        for (int i = 0; i < numCentroids; ++i) {
+            int j = i + random.nextInt(order.length - i);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+            for (int k = 0; k < width; ++k)
+                centroids[i * width + k] = (float)sample[order[i]][start + k];
+        }
+
+        double[] sums = new double[numCentroids * width];
+        int[] counts = new int[numCentroids];
+        for (int iter = 0; iter < TRAINING_ITERATIONS; ++iter) {
+            Arrays.fill(sums, 0);
+            Arrays.fill(counts, 0);
+            for (double[] point : sample) {
+                int c = nearestCentroid(point, start, end, centroids) & 0xFF;
+                counts[c]++;
+                for (int k = 0; k < width; ++k)
+                    sums[c * width + k] += point[start + k];
+            }
+            for (int c = 0; c < numCentroids; ++c) {
+                if (counts[c] == 0)
+                    continue;
+                for (int k = 0; k < width; ++k)
+                    centroids[c * width + k] =
+                        (float)(sums[c * width + k] / counts[c]);
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * Returns the index of the centroid nearest to the specified dimensions of
+     * the point.
+     */
+    private static byte nearestCentroid(double[] point, int start, int end,
+                                        float[] centroids) {
+        int width = end - start;
+        int numCentroids = centroids.length / width;
+        int nearest = 0;
+        double nearestDist = Double.MAX_VALUE;
+        for (int c = 0, base = 0; c < numCentroids; ++c, base += width) {
+            double dist = 0;
+            for (int k = 0; k < width && dist < nearestDist; ++k) {
+                double diff = point[start + k] - centroids[base + k];
+                dist += diff * diff;
+            }
+            if (dist < nearestDist) {
+                nearestDist = dist;
+                nearest = c;
+            }
+        }
+        return (byte)nearest;
+    }
+
+    /**
+     * Returns the half-precision float nearest to the value, rounding ties to
+     * even.
+     */
+    static short floatToHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        // NaN and infinity
+        if (exponent == 0xFF - 127 + 15)
+            return (short)(sign | 0x7C00 | ((mantissa != 0) ? 0x200 : 0));
+        // Too large to represent
+        if (exponent >= 0x1F)
+            return (short)(sign | 0x7C00);
+        // Too small to represent, even as a subnormal value
+        if (exponent < -10)
+            return (short)sign;
+
+        int shift = 13;
+        if (exponent <= 0) {
+            // Subnormal values make the implicit leading bit explicit
+            mantissa |= 0x800000;
+            shift = 14 - exponent;
+            exponent = 0;
+        }
+        int half = (exponent << 10) | (mantissa >> shift);
+        int remainder = mantissa & ((1 << shift) - 1);
+        int halfway = 1 << (shift - 1);
+        // A carry out of the mantissa correctly increments the exponent
+        if (remainder > halfway || (remainder == halfway && (half & 1) != 0))
+            half++;
+        return (short)(sign | half);
+    }
+
+    /**
+     * Returns the value of the half-precision float.
+     */
+    static float halfToFloat(short half) {
+        int bits = half & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+        if (exponent == 0x1F)
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        if (exponent == 0) {
+            // Zero and subnormal values, which are mantissa * 2^-24
+            float value = mantissa / (float)(1 << 24);
+            return (sign == 0) ? value : -value;
+        }
+        return Float.intBitsToFloat(
+            sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+
+    /**
+     * Returns the encoding of the scalar codes in this space.
+     */
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Returns the number of product-quantization subspaces in this space, or
+     * {@code 0} if the space has no codebook.
+     */
+    public int getNumSubspaces() {
+        return (subspaceStarts == null) ? 0 : subspaceStarts.length - 1;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Set<String> getWords() {
+        return Collections.unmodifiableSet(termToRow.keySet());
+    }
+
+    /**
+     * Returns a dequantized copy of the word's vector, or {@code null} if the
+     * word is not in the semantic space.
+     */
+    public DoubleVector getVector(String word) {
+        Integer row = termToRow.get(word);
+        return (row == null) ? null : new DenseVector(dequantize(row));
+    }
+
+    /**
+     * Returns the values represented by the codes of the row.
+     */
+    private double[] dequantize(int row) {
+        double[] values = new double[dimensions];
+        double offset = offsets[row];
+        double scale = scales[row];
+        if (encoding == Encoding.INT8) {
+            byte[] codes = byteCodes[row];
+            for (int i = 0; i < dimensions; ++i)
+                values[i] = offset + scale * codes[i];
+        }
+        else {
+            short[] codes = halfCodes[row];
+            for (int i = 0; i < dimensions; ++i)
+                values[i] = offset + scale * HALF_TO_FLOAT[codes[i] & 0xFFFF];
+        }
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String getSpaceName() {
+        return spaceName;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int getVectorLength() {
+        return dimensions;
+    }
+
+    /**
+     * Not supported; throws an {@link UnsupportedOperationException} if called.
+     */
+    public void processDocument(BufferedReader document) {
+        throw new UnsupportedOperationException(
+            "QuantizedSemanticSpace instances cannot be updated");
+    }
+
+    /**
+     * Not supported; throws an {@link UnsupportedOperationException} if called.
+     */
+    public void processSpace(Properties props) {
+        throw new UnsupportedOperationException(
+            "QuantizedSemanticSpace instances cannot be updated");
+    }
+
+    /**
+     * {@inheritDoc}  Cosine similarity is computed directly from the codes of
+     * both words.
+     */
+    public SortedMultiMap<Double,String> getMostSimilar(
+            String word, int numberOfSimilarWords,
+            Similarity.SimType similarityType) {
+        Integer row = termToRow.get(word);
+        if (row == null)
+            return null;
+        return getMostSimilar(dequantize(row), row, numberOfSimilarWords,
+                              similarityType);
+    }
+
+    /**
+     * {@inheritDoc}  Cosine similarity is computed directly from the codes of
+     * each word in the space.
+     */
+    public SortedMultiMap<Double,String> getMostSimilar(
+            Vector vector, int numberOfSimilarWords,
+            Similarity.SimType similarityType) {
+        if (vector.length() != dimensions)
+            throw new IllegalArgumentException(
+                "The vector must have " + dimensions + " dimensions: " +
+                vector.length());
+        double[] query = new double[dimensions];
+        toArray(vector, query);
+        return getMostSimilar(query, -1, numberOfSimilarWords, similarityType);
+    }
+
+    /**
+     * Returns the words most similar to the query, excluding the specified
+     * row.
+     *
+     * @param query the values of the query vector
+     * @param queryRow the row of the query, which is compared using only its
+     *        codes, or {@code -1} if the query is not in this space
+     */
+    private SortedMultiMap<Double,String> getMostSimilar(
+            final double[] query, final int queryRow,
+            int numberOfSimilarWords, final Similarity.SimType similarityType) {
+        SortedMultiMap<Double,String> mostSimilar =
+            new BoundedSortedMultiMap<Double,String>(numberOfSimilarWords,
+                                                     false);
+        if (numberOfSimilarWords < 1 || words.length == 0)
+            return mostSimilar;
+
+        TopK top;
+        if (similarityType != Similarity.SimType.COSINE) {
+            final Vector queryVector = new DenseVector(query);
+            top = scan(numberOfSimilarWords, queryRow, new RowScorer() {
+                    public double score(int row) {
+                        return Similarity.getSimilarity(
+                            similarityType, queryVector,
+                            new DenseVector(dequantize(row)));
+                    }
+                });
+        }
+        else {
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (double v : query) {
+                sum += v;
+                sumOfSquares += v * v;
+            }
+            final double querySum = sum;
+            final double queryMagnitude = Math.sqrt(sumOfSquares);
+            if (queryMagnitude == 0)
+                return mostSimilar;
+
+            if (productCodes != null) {
+                int shortlist = (int)Math.min(words.length, Math.max(
+                    (long)numberOfSimilarWords * SHORTLIST_FACTOR,
+                    MIN_SHORTLIST_SIZE));
+                TopK candidates = shortlist(query, queryRow, shortlist);
+                top = new TopK(numberOfSimilarWords);
+                for (int i = 0; i < candidates.size(); ++i) {
+                    int row = candidates.row(i);
+                    top.offer(cosine(query, querySum, queryMagnitude, row),
+                              row);
+                }
+            }
+            else if (queryRow >= 0) {
+                top = scan(numberOfSimilarWords, queryRow, new RowScorer() {
+                        public double score(int row) {
+                            return cosine(queryRow, row);
+                        }
+                    });
+            }
+            else {
+                top = scan(numberOfSimilarWords, queryRow, new RowScorer() {
+                        public double score(int row) {
+                            return cosine(query, querySum, queryMagnitude,
+                                          row);
+                        }
+                    });
+            }
+        }
+        for (int i = 0; i < top.size(); ++i)
+            mostSimilar.put(top.similarity(i), words[top.row(i)]);
+        return mostSimilar;
+    }
+
+    /**
+     * Returns the {@code k} rows with the highest score, excluding the
+     * specified row.  The rows are split into contiguous ranges that are
+     * scored in parallel.
+     */
+    private TopK scan(final int k, final int excludedRow,
+                      final RowScorer scorer) {
+        WorkQueue workQueue = WorkQueue.getWorkQueue();
+        int numTasks = Math.min(workQueue.numThreads(), words.length);
+        final TopK[] partial = new TopK[numTasks];
+        Collection<Runnable> tasks = new ArrayList<Runnable>(numTasks);
+        for (int t = 0; t < numTasks; ++t) {
+            final int task = t;
+            final int start = (int)((long)t * words.length / numTasks);
+            final int end = (int)((long)(t + 1) * words.length / numTasks);
+            tasks.add(new Runnable() {
+                    public void run() {
+                        TopK top = new TopK(k);
+                        for (int row = start; row < end; ++row) {
+                            if (row != excludedRow)
+                                top.offer(scorer.score(row), row);
+                        }
+                        partial[task] = top;
+                    }
+                });
+        }
+        workQueue.run(tasks);
+
+        TopK top = new TopK(k);
+        for (TopK p : partial)
+            for (int i = 0; i < p.size(); ++i)
+                top.offer(p.similarity(i), p.row(i));
+        return top;
+    }
+
+    /**
+     * Returns the rows whose product-quantization codes have the highest
+     * estimated cosine similarity to the query.  The dot product with each
+     * row is estimated from a table of the query's dot product with every
+     * centroid.
+     */
+    private TopK shortlist(double[] query, int excludedRow, int size) {
+        final int numSubspaces = subspaceStarts.length - 1;
+        final double[][] table = new double[numSubspaces][];
+        for (int s = 0; s < numSubspaces; ++s) {
+            int start = subspaceStarts[s];
+            int width = subspaceStarts[s + 1] - start;
+            float[] codebook = codebooks[s];
+            double[] dots = new double[codebook.length / width];
+            for (int c = 0; c < dots.length; ++c) {
+                double dot = 0;
+                for (int k = 0; k < width; ++k)
+                    dot += query[start + k] * codebook[c * width + k];
+                dots[c] = dot;
+            }
+            table[s] = dots;
+        }
+        return scan(size, excludedRow, new RowScorer() {
+                public double score(int row) {
+                    if (magnitudes[row] == 0)
+                        return 0;
+                    double dot = 0;
+                    int base = row * numSubspaces;
+                    for (int s = 0; s < numSubspaces; ++s)
+                        dot += table[s][productCodes[base + s] & 0xFF];
+                    return dot / magnitudes[row];
+                }
+            });
+    }
+
+    /**
+     * Returns the cosine similarity of the query with the row, which is
+     * computed from the row's codes as {@code offset * sum(query) + scale *
+     * (query . codes)}.
+     */
+    private double cosine(double[] query, double querySum,
+                          double queryMagnitude, int row) {
+        if (magnitudes[row] == 0)
+            return 0;
+        double dot = 0;
+        if (encoding == Encoding.INT8) {
+            byte[] codes = byteCodes[row];
+            for (int i = 0; i < dimensions; ++i)
+                dot += query[i] * codes[i];
+        }
+        else {
+            short[] codes = halfCodes[row];
+            for (int i = 0; i < dimensions; ++i)
+                dot += query[i] * HALF_TO_FLOAT[codes[i] & 0xFFFF];
+        }
+        dot = offsets[row] * querySum + scales[row] * dot;
+        return dot / (queryMagnitude * magnitudes[row]);
+    }
+
+    /**
+     * Returns the cosine similarity of the two rows, which is computed
+     * entirely from their codes.  For {@link Encoding#INT8} codes, the dot
+     * product of the codes is accumulated using integer arithmetic.
+     */
+    private double cosine(int row1, int row2) {
+        if (magnitudes[row1] == 0 || magnitudes[row2] == 0)
+            return 0;
+        double codeDot;
+        if (encoding == Encoding.INT8) {
+            byte[] codes1 = byteCodes[row1];
+            byte[] codes2 = byteCodes[row2];
+            // Each product is at most 127^2, so the int sum is flushed every
+            // 2^16 dimensions to keep it from overflowing
+            long dot = 0;
+            int sum = 0;
+            for (int i = 0; i < dimensions; ++i) {
+                sum += codes1[i] * codes2[i];
+                if ((i & 0xFFFF) == 0xFFFF) {
+                    dot += sum;
+                    sum = 0;
+                }
+            }
+            codeDot = dot + sum;
+        }
+        else {
+            short[] codes1 = halfCodes[row1];
+            short[] codes2 = halfCodes[row2];
+            float dot = 0;
+            for (int i = 0; i < dimensions; ++i)
+                dot += HALF_TO_FLOAT[codes1[i] & 0xFFFF]
+                    * HALF_TO_FLOAT[codes2[i] & 0xFFFF];
+            codeDot = dot;
+        }
+        // (o1 + s1*a) . (o2 + s2*b)
+        //     = d*o1*o2 + o1*s2*sum(b) + o2*s1*sum(a) + s1*s2*(a . b)
+        double o1 = offsets[row1], s1 = scales[row1];
+        double o2 = offsets[row2], s2 = scales[row2];
+        double dot = dimensions * o1 * o2 + o1 * s2 * codeSums[row2]
+            + o2 * s1 * codeSums[row1] + s1 * s2 * codeDot;
+        return dot / (magnitudes[row1] * magnitudes[row2]);
+    }
+
+    /**
+     * A function that scores a row of the space.
+     */
+    private interface RowScorer {
+        double score(int row);
+    }
+
+    /**
+     * A bounded min-heap of rows ordered by their similarity, which retains
+     * the rows with the {@code k} highest similarities.
+     */
+    private static class TopK {
+
+        private final double[] similarities;
+
+        private final int[] rows;
+
+        private int size;
+
+        public TopK(int k) {
+            similarities = new double[k];
+            rows = new int[k];
+            size = 0;
+        }
+
+        /**
+         * Adds the row if its similarity is among the {@code k} highest seen
+         * so far.
+         */
+        public void offer(double similarity, int row) {
+            int k = rows.length;
+            if (size < k) {
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (similarities[parent] <= similarity)
+                        break;
+                    similarities[i] = similarities[parent];
+                    rows[i] = rows[parent];
+                    i = parent;
+                }
+                similarities[i] = similarity;
+                rows[i] = row;
+            }
+            else if (similarity > similarities[0]) {
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= k)
+                        break;
+                    if (child + 1 < k
+                            && similarities[child + 1] < similarities[child])
+                        child++;
+                    if (similarities[child] >= similarity)
+                        break;
+                    similarities[i] = similarities[child];
+                    rows[i] = rows[child];
+                    i = child;
+                }
+                similarities[i] = similarity;
+                rows[i] = row;
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int row(int i) {
+            return rows[i];
+        }
+
+        public double similarity(int i) {
+            return similarities[i];
+        }
+    }
+}
@@ -0,0 +1,619 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.common;
+
+import edu.ucla.sspace.util.BoundedSortedMultiMap;
+import edu.ucla.sspace.util.SortedMultiMap;
+import edu.ucla.sspace.util.WorkQueue;
+
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.SparseVector;
+import edu.ucla.sspace.vector.Vector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Set;
+
+import java.util.logging.Logger;
+
+
+/**
+ * A {@link NearestNeighborFinder} that uses random-projection locality
+ * sensitive hashing to find the approximate nearest neighbors of a word.  Each
+ * word's vector is projected onto a set of random hyperplanes and the signs of
+ * the projections form a bit signature, so that vectors with a small angle
+ * between them are likely to share a signature.  The index is made of several
+ * independent hash tables, each of which uses a different set of hyperplanes.
+ * A query is compared only to the words that share a signature with it in at
+ * least one table; these candidates are then ranked using the requested {@link
+ * Similarity.SimType}.<p>
+ *
+ * The trade-off between recall and query time is controlled by three
+ * parameters:
+ *
+ * <ul>
+ *
+ *   <li> The number of tables.  More tables increase the number of candidates
+ *        and therefore the recall, at the cost of a larger index.
+ *
+ *   <li> The number of bits per table.  More bits make each bucket smaller,
+ *        which reduces the number of candidates and the query time.
+ *
+ *   <li> The number of probes per table, which may be changed after the index
+ *        is built using {@link #setNumProbes(int)}.  In addition to the
+ *        query's own bucket, each probe also examines the bucket that differs
+ *        from the query's signature in one of the bits whose projection was
+ *        closest to zero, and is therefore the most likely to have been hashed
+ *        differently than a near neighbor.
+ *
+ * </ul>
+ *
+ * The hyperplanes are not stored.  Instead, the coordinates of each hyperplane
+ * are {@code +1} or {@code -1}, chosen by a hash of the seed, the hyperplane
+ * and the dimension.  This keeps the memory required by the index independent
+ * of the number of dimensions, which is important for spaces such as {@link
+ * edu.ucla.sspace.hal.HyperspaceAnalogueToLanguage HAL} that have hundreds of
+ * thousands of dimensions.  Sparse vectors are projected using only their
+ * non-zero values.<p>
+ *
+ * The hash signatures approximate the angle between vectors, so the best
+ * recall is achieved with {@link Similarity.SimType#COSINE COSINE} and with
+ * measures that are closely related to it.  Any measure may be used to rank
+ * the candidates.<p>
+ *
+ * An index may be saved with {@link #save(File)} and loaded with {@link
+ * #load(File,SemanticSpace)}.  By convention, the index for a {@code .sspace}
+ * file is stored next to it in the file returned by {@link
+ * #getIndexFile(File)}.  The {@link SemanticSpace} is not saved as part of the
+ * index and must be provided when the index is loaded.<p>
+ *
+ * This class is thread-safe.
+ *
+ * @see WordComparator
+ */
+public class RandomProjectionNearestNeighborFinder
+        implements NearestNeighborFinder {
+
+    /**
+     * The suffix appended to the name of a {@code .sspace} file to create the
+     * name of its index file.
+     */
+    public static final String INDEX_FILE_SUFFIX = ".lsh";
+
+    /**
+     * The default number of hash tables.
+     */
+    public static final int DEFAULT_NUM_TABLES = 10;
+
+    /**
+     * The default number of bits in the signature for each table.
+     */
+    public static final int DEFAULT_BITS_PER_TABLE = 12;
+
+    /**
+     * The default number of additional buckets examined in each table.
+     */
+    public static final int DEFAULT_NUM_PROBES = 2;
+
+    /**
+     * The largest number of bits that may be used per table.
+     */
+    public static final int MAX_BITS_PER_TABLE = 32;
+
+    /**
+     * A value written at the start of each index file to detect files that are
+     * not indices.
+     */
+    private static final int INDEX_FILE_MAGIC = 0x4C534831;
+
+    private static final Logger LOGGER =
+        Logger.getLogger(RandomProjectionNearestNeighborFinder.class.getName());
+
+    /**
+     * The semantic space whose words are indexed.
+     */
+    private final SemanticSpace sspace;
+
+    /**
+     * The number of hash tables in the index.
+     */
+    private final int numTables;
+
+    /**
+     * The number of bits in each table's signature.
+     */
+    private final int bitsPerTable;
+
+    /**
+     * The seed from which the hyperplanes are generated.
+     */
+    private final long seed;
+
+    /**
+     * The number of dimensions in the semantic space's vectors.
+     */
+    private final int dimensions;
+
+    /**
+     * The indexed words, where each word's position is its identifier in the
+     * hash tables.
+     */
+    private final String[] words;
+
+    /**
+     * The hash tables.  Each table is a sorted array in which each element
+     * contains a word's signature in the upper 32 bits and the word's
+     * identifier in the lower 32 bits, so that all of the words in a bucket
+     * are in a contiguous range.
+     */
+    private final long[][] tables;
+
+    /**
+     * The number of additional buckets examined in each table.
+     */
+    private volatile int numProbes;
+
+    /**
+     * Builds an index of all the words in the semantic space using the
+     * default parameters and as many threads as processors.
+     */
+    public RandomProjectionNearestNeighborFinder(SemanticSpace sspace) {
+        this(sspace, DEFAULT_NUM_TABLES, DEFAULT_BITS_PER_TABLE,
+             System.currentTimeMillis(),
+             Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Builds an index of all the words in the semantic space.
+     *
+     * @param sspace the semantic space whose words should be indexed
+     * @param numTables the number of hash tables to use
+     * @param bitsPerTable the number of hash bits in each table's signature,
+     *        which must be between 1 and {@value #MAX_BITS_PER_TABLE}
+     * @param seed the seed from which the random hyperplanes are generated
+     * @param numThreads the number of threads used to build the index, which
+     *        are drawn from the shared {@link WorkQueue} if more than one
+     *
+     * @throws IllegalArgumentException if any of the parameters are out of
+     *         range
+     */
+    public RandomProjectionNearestNeighborFinder(SemanticSpace sspace,
+                                                 int numTables,
+                                                 int bitsPerTable,
+                                                 long seed,
+                                                 int numThreads) {
+        checkParameters(numTables, bitsPerTable);
+        if (numThreads < 1)
+            throw new IllegalArgumentException(
+                "Must use at least one thread: " + numThreads);
+        this.sspace = sspace;
+        this.numTables = numTables;
+        this.bitsPerTable = bitsPerTable;
+        this.seed = seed;
+        this.dimensions = sspace.getVectorLength();
+        this.numProbes = Math.min(DEFAULT_NUM_PROBES, bitsPerTable);
+
+        Set<String> wordSet = sspace.getWords();
+        words = wordSet.toArray(new String[wordSet.size()]);
+        tables = new long[numTables][words.length];
+        buildTables(numThreads);
+    }
+
+    /**
+     * Creates a finder from an index that was loaded from a file.
+     */
+    private RandomProjectionNearestNeighborFinder(SemanticSpace sspace,
+                                                  int numTables,
+                                                  int bitsPerTable,
+                                                  long seed,
+                                                  String[] words,
+                                                  long[][] tables) {
+        this.sspace = sspace;
+        this.numTables = numTables;
+        this.bitsPerTable = bitsPerTable;
+        this.seed = seed;
+        this.dimensions = sspace.getVectorLength();
+        this.words = words;
+        this.tables = tables;
+        this.numProbes = Math.min(DEFAULT_NUM_PROBES, bitsPerTable);
+    }
+
+    /**
+     * Throws an {@link IllegalArgumentException} if the table parameters are
+     * out of range.
+     */
+    private static void checkParameters(int numTables, int bitsPerTable) {
+        if (numTables < 1)
+            throw new IllegalArgumentException(
+                "Must use at least one table: " + numTables);
+        if (bitsPerTable < 1 || bitsPerTable > MAX_BITS_PER_TABLE)
+            throw new IllegalArgumentException(
+                "The number of bits per table must be between 1 and " +
+                MAX_BITS_PER_TABLE + ": " + bitsPerTable);
+    }
+
+    /**
+     * Computes the signatures of every word using the specified number of
+     * threads and then sorts each table.
+     */
+    private void buildTables(int numThreads) {
+        LOGGER.fine("Building LSH index of " + words.length + " words with " +
+                    numTables + " tables of " + bitsPerTable + " bits");
+        int numTasks = Math.min(numThreads * 4, Math.max(words.length, 1));
+        int wordsPerTask = (words.length + numTasks - 1) / numTasks;
+        Collection<Runnable> tasks = new ArrayList<Runnable>();
+        for (int t = 0; t < numTasks; ++t) {
+            final int start = t * wordsPerTask;
+            final int end = Math.min(start + wordsPerTask, words.length);
+            if (start >= end)
+                break;
+            tasks.add(new Runnable() {
+                    public void run() {
+                        double[] projections =
+                            new double[numTables * bitsPerTable];
+                        for (int i = start; i < end; ++i) {
+                            Vector v = sspace.getVector(words[i]);
+                            project(v, projections);
+                            for (int table = 0; table < numTables; ++table)
+                                tables[table][i] = pack(
+                                    signature(projections, table), i);
+                        }
+                    }
+                });
+        }
+
+        if (numThreads == 1) {
+            for (Runnable r : tasks)
+                r.run();
+        }
+        else
+            WorkQueue.getWorkQueue().run(tasks);
+
+        for (long[] table : tables)
+            Arrays.sort(table);
+        LOGGER.fine("Finished building LSH index");
+    }
+
+    /**
+     * Returns the file in which the index for the {@code .sspace} file is
+     * stored by convention.
+     */
+    public static File getIndexFile(File sspaceFile) {
+        return new File(sspaceFile.getPath() + INDEX_FILE_SUFFIX);
+    }
+
+    /**
+     * Returns the number of additional buckets examined in each table.
+     */
+    public int getNumProbes() {
+        return numProbes;
+    }
+
+    /**
+     * Returns the number of words in the index.
+     */
+    public int size() {
+        return words.length;
+    }
+
+    /**
+     * Sets the number of additional buckets examined in each table when
+     * answering a query.  Increasing the number of probes increases the recall
+     * and the query time.
+     *
+     * @throws IllegalArgumentException if {@code numProbes} is negative or
+     *         greater than the number of bits per table
+     */
+    public void setNumProbes(int numProbes) {
+        if (numProbes < 0 || numProbes > bitsPerTable)
+            throw new IllegalArgumentException(
+                "The number of probes must be between 0 and " + bitsPerTable +
+                ": " + numProbes);
+        this.numProbes = numProbes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SortedMultiMap<Double,String> getMostSimilar(
+            String word, int numberOfSimilarWords,
+            Similarity.SimType similarityType) {
+        Vector v = sspace.getVector(word);
+        // if the semantic space did not have the word, then return null
+        if (v == null)
+            return null;
+        return getMostSimilar(v, word, numberOfSimilarWords, similarityType);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public SortedMultiMap<Double,String> getMostSimilar(
+            Vector vector, int numberOfSimilarWords,
+            Similarity.SimType similarityType) {
+        if (vector.length() != dimensions)
+            throw new IllegalArgumentException(
+                "The vector length (" + vector.length() + ") does not match " +
+                "the number of dimensions in the index (" + dimensions + ")");
+        return getMostSimilar(vector, null, numberOfSimilarWords,
+                              similarityType);
+    }
+
+    /**
+     * Ranks the words that share a bucket with the vector in at least one
+     * probed bucket, excluding the specified word if it is non-{@code null}.
+     */
+    private SortedMultiMap<Double,String> getMostSimilar(
+            Vector vector, String excluded, int numberOfSimilarWords,
+            Similarity.SimType similarityType) {
+
+        double[] projections = new double[numTables * bitsPerTable];
+        project(vector, projections);
+
+        BitSet candidates = new BitSet(words.length);
+        int probes = numProbes;
+        int[] probeBits = new int[probes];
+        for (int table = 0; table < numTables; ++table) {
+            long sig = signature(projections, table);
+            addBucket(tables[table], sig, candidates);
+            int numProbeBits = leastCertainBits(projections, table, probeBits);
+            for (int i = 0; i < numProbeBits; ++i)
+                addBucket(tables[table], sig ^ (1L << probeBits[i]),
+                          candidates);
+        }
+
+        // the most-similar set will automatically retain only a fixed number
+        // of elements
+        SortedMultiMap<Double,String> mostSimilar =
+            new BoundedSortedMultiMap<Double,String>(numberOfSimilarWords,
+                                                     false);
+        for (int i = candidates.nextSetBit(0); i >= 0;
+                 i = candidates.nextSetBit(i + 1)) {
+            String other = words[i];
+            if (other.equals(excluded))
+                continue;
+            Vector otherV = sspace.getVector(other);
+            if (otherV == null)
+                continue;
+            mostSimilar.put(Similarity.getSimilarity(
+                                similarityType, vector, otherV), other);
+        }
+        return mostSimilar;
+    }
+
+    /**
+     * Marks the identifiers of every word in the table's bucket for the
+     * signature as candidates.
+     */
+    private static void addBucket(long[] table, long sig, BitSet candidates) {
+        long low = sig << 32;
+        long high = low | 0xFFFFFFFFL;
+        // Find the first element that is not less than the lowest element in
+        // the bucket
+        int lo = 0;
+        int hi = table.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (table[mid] < low)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        for (int i = lo; i < table.length && table[i] <= high; ++i)
+            candidates.set((int)table[i]);
+    }
+
+    /**
+     * Fills {@code bits} with the positions in the table's signature whose
+     * projections are closest to zero, in order of increasing distance, and
+     * returns the number of positions that were filled.
+     */
+    private int leastCertainBits(double[] projections, int table, int[] bits) {
+        int offset = table * bitsPerTable;
+        int n = 0;
+        for (int b = 0; b < bitsPerTable; ++b) {
+            double margin = Math.abs(projections[offset + b]);
+            int i;
+            if (n < bits.length)
+                i = n++;
+            else if (n > 0
+                     && margin < Math.abs(projections[offset + bits[n - 1]]))
+                i = n - 1;
+            else
+                continue;
+            // Insertion sort into the short list of the closest bits
+            while (i > 0 &&
+                   Math.abs(projections[offset + bits[i - 1]]) > margin) {
+                bits[i] = bits[i - 1];
+                i--;
+            }
+            bits[i] = b;
+        }
+        return n;
+    }
+
+    /**
+     * Returns the signature of the table for the projections.
+     */
+    private long signature(double[] projections, int table) {
+        int offset = table * bitsPerTable;
+        long sig = 0;
+        for (int b = 0; b < bitsPerTable; ++b) {
+            if (projections[offset + b] > 0)
+                sig |= 1L << b;
+        }
+        return sig;
+    }
+
+    /**
+     * Returns a table element for the signature and word identifier.
+     */
+    private static long pack(long sig, int id) {
+        return (sig << 32) | (id & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Projects the vector onto every hyperplane, storing the results in {@code
+     * projections}.
+     */
+    private void project(Vector v, double[] projections) {
+        Arrays.fill(projections, 0);
+        if (v instanceof SparseVector) {
+            for (int dim : ((SparseVector)v).getNonZeroIndices())
+                addProjection(dim, v.getValue(dim).doubleValue(),
+                              projections);
+        }
+        else if (v instanceof DoubleVector) {
+            DoubleVector dv = (DoubleVector)v;
+            int length = dv.length();
+            for (int dim = 0; dim < length; ++dim) {
+                double value = dv.get(dim);
+                if (value != 0)
+                    addProjection(dim, value, projections);
+            }
+        }
+        else {
+            int length = v.length();
+            for (int dim = 0; dim < length; ++dim) {
+                double value = v.getValue(dim).doubleValue();
+                if (value != 0)
+                    addProjection(dim, value, projections);
+            }
+        }
+    }
+
+    /**
+     * Adds the contribution of a single dimension's value to the projection
+     * onto every hyperplane.  The sign of each hyperplane's coordinate for the
+     * dimension is taken from a bit of a hash of the dimension, so a single
+     * hash provides the coordinates for 64 hyperplanes.
+     */
+    private void addProjection(int dim, double value, double[] projections) {
+        int numPlanes = projections.length;
+        for (int base = 0; base < numPlanes; base += 64) {
+            long bits = mix(seed + (base + 1) * 0x9E3779B97F4A7C15L
+                            + dim * 0xC2B2AE3D27D4EB4FL);
+            int end = Math.min(base + 64, numPlanes);
+            for (int p = base; p < end; ++p, bits >>>= 1)
+                projections[p] += ((bits & 1) != 0) ? value : -value;
+        }
+    }
+
+    /**
+     * Returns a well-distributed 64-bit hash of the value.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    /**
+     * Writes this index to the file.  The semantic space is not written.
+     */
+    public void save(File indexFile) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(indexFile)));
+        try {
+            dos.writeInt(INDEX_FILE_MAGIC);
+            dos.writeInt(numTables);
+            dos.writeInt(bitsPerTable);
+            dos.writeLong(seed);
+            dos.writeInt(dimensions);
+            dos.writeInt(words.length);
+            for (String word : words)
+                dos.writeUTF(word);
+            for (long[] table : tables) {
+                for (long element : table)
+                    dos.writeLong(element);
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    /**
+     * Loads an index that was written by {@link #save(File)} for the provided
+     * semantic space.
+     *
+     * @throws IOException if the file is not an index or if the number of
+     *         dimensions or the words in the index do not match the semantic
+     *         space, which indicates that the index was built for a different
+     *         version of the space
+     */
+    public static RandomProjectionNearestNeighborFinder load(
+            File indexFile, SemanticSpace sspace) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(indexFile)));
+        try {
+            if (dis.readInt() != INDEX_FILE_MAGIC)
+                throw new IOException("not an LSH index file: " + indexFile);
+            int numTables = dis.readInt();
+            int bitsPerTable = dis.readInt();
+            long seed = dis.readLong();
+            int dimensions = dis.readInt();
+            try {
+                checkParameters(numTables, bitsPerTable);
+            } catch (IllegalArgumentException iae) {
+                throw new IOException("corrupt LSH index file: " + indexFile);
+            }
+            if (dimensions != sspace.getVectorLength())
+                throw new IOException(
+                    "The index has " + dimensions + " dimensions but the " +
+                    "semantic space has " + sspace.getVectorLength());
+            Set<String> sspaceWords = sspace.getWords();
+            int numWords = dis.readInt();
+            if (numWords != sspaceWords.size())
+                throw new IOException(
+                    "The index has " + numWords + " words but the " +
+                    "semantic space has " + sspaceWords.size());
+            String[] words = new String[numWords];
+            for (int i = 0; i < numWords; ++i) {
+                words[i] = dis.readUTF();
+                if (!sspaceWords.contains(words[i]))
+                    throw new IOException(
+                        "The index contains \"" + words[i] + "\", which is " +
+                        "not in the semantic space");
+            }
+            long[][] tables = new long[numTables][numWords];
+            for (long[] table : tables) {
+                for (int i = 0; i < numWords; ++i)
+                    table[i] = dis.readLong();
+            }
+            return new RandomProjectionNearestNeighborFinder(
+                sspace, numTables, bitsPerTable, seed, words, tables);
+        } finally {
+            dis.close();
+        }
+    }
+}
@@ -22,15 +22,14 @@
 package edu.ucla.sspace.common;
 
 import edu.ucla.sspace.util.SerializableUtil;
+import edu.ucla.sspace.util.WorkQueue;
 
 import edu.ucla.sspace.vector.DoubleVector;
-import edu.ucla.sspace.vector.SparseDoubleVector;
 import edu.ucla.sspace.vector.SparseVector;
 import edu.ucla.sspace.vector.Vector;
-import edu.ucla.sspace.vector.VectorIO;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
@@ -42,13 +41,18 @@ import java.io.IOError;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
 
-import java.util.Set;
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import java.util.logging.Logger;
 
@@ -63,7 +67,16 @@ import java.util.logging.Logger;
  * try to determine whether its data will fit into memory.  If loading the space
  * would exceed the available memory, the space is only partially loaded and its
  * data stays on disk.  This allows users to load several semantic spaces at
- * once.
+ * once.  Spaces in the {@link SSpaceFormat#BINARY BINARY} and {@link
+ * SSpaceFormat#SPARSE_BINARY SPARSE_BINARY} formats are memory-mapped using a
+ * {@link MappedSemanticSpace}, while text-based spaces are read from disk using
+ * an {@link OnDiskSemanticSpace}.  Spaces in the {@link SSpaceFormat#QUANTIZED
+ * QUANTIZED} format are always loaded as a {@link QuantizedSemanticSpace},
+ * whose compact codes are kept in memory.
+ *
+ * <p>Spaces in the text formats are loaded by splitting the file into chunks
+ * that are parsed in parallel.  When a space is saved, batches of its vectors
+ * are encoded in parallel and then written to the file in order.
  *
  * <p>All of the {@code SemanticSpace} instances return by this class are thread
  * safe.  In addition they are all unmodifiable due to the limitations of
@@ -74,12 +87,26 @@ import java.util.logging.Logger;
  * @see SemanticSpace
  * @see StaticSemanticSpace
  * @see OnDiskSemanticSpace
+ * @see MappedSemanticSpace
+ * @see QuantizedSemanticSpace
  */
 public class SemanticSpaceIO {
 
     private static final Logger LOGGER =
         Logger.getLogger(SemanticSpaceIO.class.getName());
 
+    /**
+     * The number of words whose vectors are encoded together by a single task
+     * when a semantic space is saved.
+     */
+    static final int WRITE_BATCH_SIZE = 256;
+
+    /**
+     * The line separator used by the text formats.
+     */
+    private static final String LINE_SEPARATOR = 
+        System.getProperty("line.separator");
+
     /**
      * The type of formatting to use when writing a semantic space to a file.
      * See <a
@@ -87,7 +114,7 @@ public class SemanticSpaceIO {
      * for file format specifications.
      */
     public enum SSpaceFormat 
-        { TEXT, BINARY, SPARSE_TEXT, SPARSE_BINARY, SERIALIZE }
+        { TEXT, BINARY, SPARSE_TEXT, SPARSE_BINARY, SERIALIZE, QUANTIZED }
 
     /**
      * Uninstantiable
@@ -151,6 +178,7 @@ public class SemanticSpaceIO {
         case BINARY: // fallthrough
         case SPARSE_BINARY:
         case SERIALIZE:
+        case QUANTIZED:
             inMemory = sspaceFileSize < available;
             break;
         case TEXT:
@@ -269,6 +297,12 @@ public class SemanticSpaceIO {
             LOGGER.fine("Loading serialized SemanticSpace from " + sspaceFile);
             return SerializableUtil.load(sspaceFile);
         }
+        // Quantized spaces are already compact, so their codes are always
+        // loaded into memory
+        else if (format.equals(SSpaceFormat.QUANTIZED)) {
+            LOGGER.fine("Loading QuantizedSemanticSpace from " + sspaceFile);
+            return new QuantizedSemanticSpace(sspaceFile);
+        }
         // For SemanticSpace instances that have not been serialized, decide
         // whether they fit into memory before determing how to represent their
         // data
@@ -286,6 +320,15 @@ public class SemanticSpaceIO {
                     return new StaticSemanticSpace(sspaceFile);
             }
             else {
+                // Binary formats with a header can be mapped directly into
+                // memory, which avoids serializing access to the file
+                if (!manuallySpecifiedFormat
+                        && (format.equals(SSpaceFormat.BINARY)
+                            || format.equals(SSpaceFormat.SPARSE_BINARY))) {
+                    LOGGER.fine(format + "-formatted .sspace file will not fit "
+                                + "into memory; creating MappedSemanticSpace");
+                    return new MappedSemanticSpace(sspaceFile);
+                }
                 LOGGER.fine(format + "-formatted .sspace file will not fit into"
                             + "memory; creating OnDiskSemanticSpace");
                 if (manuallySpecifiedFormat) {
@@ -349,6 +392,9 @@ public class SemanticSpaceIO {
         case SPARSE_BINARY:
             writeSparseBinary(sspace, output);
             break;
+        case QUANTIZED:
+            QuantizedSemanticSpace.write(sspace, output);
+            break;
         case SERIALIZE: 
             LOGGER.fine("Saving " + sspace + " to disk as serialized object");
             SerializableUtil.save(sspace, output);
@@ -389,25 +435,22 @@ public class SemanticSpaceIO {
      */
     private static void writeText(SemanticSpace sspace, File output) 
             throws IOException {
-        
-        OutputStream os = new FileOutputStream(output);
-        PrintWriter pw = new PrintWriter(os);
-        Set<String> words = sspace.getWords();
-        // determine how many dimensions are used by the vectors
-        int dimensions = 0;
-        if (words.size() > 0) {
-            dimensions = sspace.getVectorLength();
-        }
-        writeHeader(os, SSpaceFormat.TEXT);
-        // write out how many vectors there are and the number of dimensions
-        pw.println(words.size() + " " + dimensions);
-        LOGGER.fine("saving text S-Space with " + words.size() + 
-                    " words with " + dimensions + "-dimensional vectors");
-
-        for (String word : words) {
-            pw.println(word + "|" + VectorIO.toString(sspace.getVector(word)));
-        }
-        pw.close();
+        writeVectors(sspace, output, SSpaceFormat.TEXT, new VectorEncoder() {
+                public byte[] encode(String[] words, Vector[] vectors) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int w = 0; w < words.length; ++w) {
+                        sb.append(words[w]).append('|');
+                        Vector v = vectors[w];
+                        for (int i = 0; i < v.length(); ++i) {
+                            if (i > 0)
+                                sb.append(' ');
+                            sb.append(getValue(v, i));
+                        }
+                        sb.append(LINE_SEPARATOR);
+                    }
+                    return sb.toString().getBytes();
+                }
+            });
     }
 
     /**
@@ -421,30 +464,20 @@ public class SemanticSpaceIO {
      */
     private static void writeBinary(SemanticSpace sspace, File output) 
             throws IOException {
-
-        DataOutputStream dos = new DataOutputStream(
-            new BufferedOutputStream(new FileOutputStream(output)));
-        Set<String> words = sspace.getWords();
-        // determine how many dimensions are used by the vectors
-        int dimensions = 0;
-        if (words.size() > 0) {
-            dimensions = sspace.getVectorLength();
-        }
-        writeHeader(dos, SSpaceFormat.BINARY);
-        // write out how many vectors there are and the number of dimensions
-        dos.writeInt(words.size());
-        dos.writeInt(dimensions);
-        LOGGER.fine("saving binary S-Space with " + words.size() + 
-                    " words with " + dimensions + "-dimensional vectors");
-
-        for (String word : words) {
-            dos.writeUTF(word);
-        Vector v = sspace.getVector(word);
-        for (int i = 0; i < v.length(); ++i) {
-            dos.writeDouble(v.getValue(i).doubleValue());
-            }
-        }
-        dos.close();
+        writeVectors(sspace, output, SSpaceFormat.BINARY, new VectorEncoder() {
+                public byte[] encode(String[] words, Vector[] vectors) 
+                        throws IOException {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    DataOutputStream dos = new DataOutputStream(bytes);
+                    for (int w = 0; w < words.length; ++w) {
+                        dos.writeUTF(words[w]);
+                        Vector v = vectors[w];
+                        for (int i = 0; i < v.length(); ++i)
+                            dos.writeDouble(getValue(v, i));
+                    }
+                    return bytes.toByteArray();
+                }
+            });
     }
 
     /**
@@ -459,72 +492,28 @@ public class SemanticSpaceIO {
      */
     private static void writeSparseText(SemanticSpace sspace, File output) 
             throws IOException {
-        OutputStream os = new FileOutputStream(output);
-        PrintWriter pw = new PrintWriter(os);
-        Set<String> words = sspace.getWords();
-        // determine how many dimensions are used by the vectors
-        int dimensions = 0;
-        if (words.size() > 0) {
-            dimensions = sspace.getVectorLength();
-        }
-
-        writeHeader(os, SSpaceFormat.SPARSE_TEXT);
-        // print out how many vectors there are and the number of dimensions
-        pw.println(words.size() + " " + dimensions);
-
-        LOGGER.fine("saving sparse-text S-Space with " + words.size() + 
-                    " words with " + dimensions + "-dimensional vectors");
-
-        for (String word : words) {
-            pw.print(word + "|");
-            // for each vector, write all the non-zero elements and their
-            // indices
-            Vector vector = sspace.getVector(word);
-            StringBuilder sb = null;
-            if (vector instanceof SparseVector) {
-                if (vector instanceof DoubleVector) {
-                    SparseDoubleVector sdv = (SparseDoubleVector)vector;
-                    int[] nz = sdv.getNonZeroIndices();
-                    sb = new StringBuilder(nz.length * 4);
-                    // special case the first
-                    sb.append(nz[0]).append(",").append(sdv.get(nz[0]));
-                    for (int i = 1; i < nz.length; ++i)
-                        sb.append(",").append(nz[i]).append(",").
-                            append(sdv.getValue(nz[i]).doubleValue());
-                }
-                else {
-                    SparseVector sv = (SparseVector)vector;
-                    int[] nz = sv.getNonZeroIndices();                    
-                    sb = new StringBuilder(nz.length * 4);
-                    // special case the first
-                    sb.append(nz[0]).append(",")
-                        .append(sv.getValue(nz[0]).doubleValue());
-                    for (int i = 1; i < nz.length; ++i)
-                        sb.append(",").append(nz[i]).append(",").
-                            append(sv.getValue(nz[i]).doubleValue());
-                }
-            }
-            
-            else {
-                boolean first = true;
-                sb = new StringBuilder(dimensions / 2);
-                for (int i = 0; i < vector.length(); ++i) {
-                    double d = vector.getValue(i).doubleValue();
-                    if (d != 0d) {
-                        if (first) {
-                            sb.append(i).append(",").append(d);
+        writeVectors(sspace, output, SSpaceFormat.SPARSE_TEXT, 
+                     new VectorEncoder() {
+                public byte[] encode(String[] words, Vector[] vectors) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int w = 0; w < words.length; ++w) {
+                        sb.append(words[w]).append('|');
+                        // for each vector, write all the non-zero elements
+                        // and their indices
+                        Vector v = vectors[w];
+                        boolean first = true;
+                        for (int i : getNonZeroIndices(v)) {
+                            double d = getValue(v, i);
+                            if (!first)
+                                sb.append(',');
+                            sb.append(i).append(',').append(d);
                             first = false;
                         }
-                        else {
-                            sb.append(",").append(i).append(",").append(d);
-                        }
+                        sb.append(LINE_SEPARATOR);
                     }
+                    return sb.toString().getBytes();
                 }
-            }
-            pw.println(sb.toString());
-        }
-        pw.flush();
-        pw.close();
+            });
     }
 
     /**
@@ -539,64 +528,233 @@ public class SemanticSpaceIO {
      */
     private static void writeSparseBinary(SemanticSpace sspace, File output) 
             throws IOException {
+        writeVectors(sspace, output, SSpaceFormat.SPARSE_BINARY, 
+                     new VectorEncoder() {
+                public byte[] encode(String[] words, Vector[] vectors) 
+                        throws IOException {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    DataOutputStream dos = new DataOutputStream(bytes);
+                    for (int w = 0; w < words.length; ++w) {
+                        dos.writeUTF(words[w]);
+                        Vector v = vectors[w];
+                        int[] nz = getNonZeroIndices(v);
+                        dos.writeInt(nz.length);
+                        for (int i : nz) {
+                            dos.writeInt(i);
+                            dos.writeDouble(getValue(v, i));
+                        }
+                    }
+                    return bytes.toByteArray();
+                }
+            });
+    }
+
+    /**
+     * Returns the value of the vector at the index.
+     */
+    private static double getValue(Vector v, int index) {
+        return (v instanceof DoubleVector)
+            ? ((DoubleVector)v).get(index)
+            : v.getValue(index).doubleValue();
+    }
+
+    /**
+     * Returns the indices of the non-zero values in the vector in increasing
+     * order, which is required by the sparse loaders.
+     */
+    private static int[] getNonZeroIndices(Vector v) {
+        if (v instanceof SparseVector) {
+            int[] nz = ((SparseVector)v).getNonZeroIndices().clone();
+            Arrays.sort(nz);
+            return nz;
+        }
+        int nonZero = 0;
+        for (int i = 0; i < v.length(); ++i) {
+            if (getValue(v, i) != 0d)
+                nonZero++;
+        }
+        int[] nz = new int[nonZero];
+        for (int i = 0, j = 0; i < v.length(); ++i) {
+            if (getValue(v, i) != 0d)
+                nz[j++] = i;
+        }
+        return nz;
+    }
 
-        DataOutputStream dos = new DataOutputStream(
-            new BufferedOutputStream(new FileOutputStream(output)));
-        Set<String> words = sspace.getWords();
+    /**
+     * Writes the header, the number of words and dimensions, and then the
+     * encoded vectors of the semantic space to the file.  Batches of vectors
+     * are encoded in parallel by the shared {@link WorkQueue}, while the
+     * calling thread writes the finished batches to the file in order.  The
+     * next round of batches is encoded while the current round is being
+     * written.<p>
+     *
+     * The vectors themselves are retrieved from the semantic space by the
+     * calling thread, so the space does not need to support concurrent calls
+     * to {@code getVector}.
+     *
+     * @param sspace the semantic space to be written
+     * @param output the file into which the space will be written
+     * @param format the format of the file
+     * @param encoder the encoder for the vectors in the specified format
+     *
+     * @throws IOException if any I/O exception occurs when writing the semantic
+     *         space data to the file
+     */
+    private static void writeVectors(SemanticSpace sspace, File output,
+                                     SSpaceFormat format,
+                                     VectorEncoder encoder)
+            throws IOException {
+        List<String> words = new ArrayList<String>(sspace.getWords());
         // determine how many dimensions are used by the vectors
         int dimensions = 0;
         if (words.size() > 0) {
             dimensions = sspace.getVectorLength();
         }
+        LOGGER.fine("saving " + format + " S-Space with " + words.size() + 
+                    " words with " + dimensions + "-dimensional vectors");
 
-        writeHeader(dos, SSpaceFormat.SPARSE_BINARY);
-        // print out how many vectors there are and the number of dimensions
-        dos.writeInt(words.size());
-        dos.writeInt(dimensions);
+        // write out how many vectors there are and the number of dimensions
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        writeHeader(header, format);
+        if (format == SSpaceFormat.TEXT || format == SSpaceFormat.SPARSE_TEXT)
+            header.write((words.size() + " " + dimensions + LINE_SEPARATOR)
+                         .getBytes());
+        else {
+            DataOutputStream dos = new DataOutputStream(header);
+            dos.writeInt(words.size());
+            dos.writeInt(dimensions);
+        }
 
-        LOGGER.fine("saving sparse-binary S-Space with " + words.size() + 
-                    " words with " + dimensions + "-dimensional vectors");
+        FileOutputStream fos = new FileOutputStream(output);
+        try {
+            FileChannel channel = fos.getChannel();
+            write(channel, header.toByteArray());
+            int roundSize =
+                2 * WorkQueue.getWorkQueue().numThreads() * WRITE_BATCH_SIZE;
+            EncodingRound round = (words.isEmpty()) ? null
+                : new EncodingRound(sspace, words, 0, roundSize, encoder);
+            while (round != null) {
+                EncodingRound next = (round.end < words.size())
+                    ? new EncodingRound(sspace, words, round.end, roundSize,
+                                        encoder)
+                    : null;
+                round.writeTo(channel);
+                round = next;
+            }
+        } finally {
+            fos.close();
+        }
+    }
 
-        for (String word : words) {
-            dos.writeUTF(word);
-            Vector vector = sspace.getVector(word);
-            if (vector instanceof SparseVector) {
-                if (vector instanceof DoubleVector) {
-                    SparseDoubleVector sdv = (SparseDoubleVector)vector;
-                    int[] nz = sdv.getNonZeroIndices();
-                    dos.writeInt(nz.length);
-                    for (int i : nz) {
-                        dos.writeInt(i);
-                        dos.writeDouble(sdv.get(i));
-                    }
-                }
-                else {
-                    SparseVector sv = (SparseVector)vector;
-                    int[] nz = sv.getNonZeroIndices();
-                    dos.writeInt(nz.length);
-                    for (int i : nz) {
-                        dos.writeInt(i);
-                        dos.writeDouble(sv.getValue(i).doubleValue());
-                    }
-                }
+    /**
+     * Writes all of the bytes to the channel.
+     */
+    private static void write(FileChannel channel, byte[] bytes)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining())
+            channel.write(buf);
+    }
+
+    /**
+     * An encoder for the words and vectors of a semantic space in a particular
+     * format.  Implementations must be safe to call from several threads at
+     * once.
+     */
+    private interface VectorEncoder {
+
+        /**
+         * Returns the bytes that represent the words and their vectors.
+         */
+        byte[] encode(String[] words, Vector[] vectors) throws IOException;
+    }
+
+    /**
+     * A consecutive range of words whose vectors are encoded in batches by
+     * the shared {@link WorkQueue}.
+     */
+    private static class EncodingRound {
+
+        /**
+         * The index after the last word in this round.
+         */
+        final int end;
+
+        /**
+         * The task group of the batches.
+         */
+        private final Object taskGroup;
+
+        /**
+         * The encoded bytes of each batch.
+         */
+        private final byte[][] encoded;
+
+        /**
+         * The first exception or error thrown by any batch.
+         */
+        private Throwable error;
+
+        /**
+         * Retrieves the vectors of up to {@code size} words starting at {@code
+         * start} and submits batches of them to be encoded.
+         */
+        public EncodingRound(SemanticSpace sspace, List<String> words,
+                             int start, int size, 
+                             final VectorEncoder encoder) {
+            end = Math.min(words.size(), start + size);
+            int numBatches = 
+                (end - start + WRITE_BATCH_SIZE - 1) / WRITE_BATCH_SIZE;
+            encoded = new byte[numBatches][];
+            taskGroup = WorkQueue.getWorkQueue().registerTaskGroup(numBatches);
+            for (int b = 0; b < numBatches; ++b) {
+                int from = start + b * WRITE_BATCH_SIZE;
+                int to = Math.min(end, from + WRITE_BATCH_SIZE);
+                final String[] batchWords = 
+                    words.subList(from, to).toArray(new String[to - from]);
+                final Vector[] batchVectors = new Vector[batchWords.length];
+                for (int i = 0; i < batchWords.length; ++i)
+                    batchVectors[i] = sspace.getVector(batchWords[i]);
+                final int batch = b;
+                WorkQueue.getWorkQueue().add(taskGroup, new Runnable() {
+                        public void run() {
+                            try {
+                                encoded[batch] = encoder.encode(
+                                    batchWords, batchVectors);
+                            } catch (Throwable t) {
+                                // Errors are also recorded, since otherwise
+                                // the batch would be missing when written
+                                setError(t);
+                            }
+                        }
+                    });
             }
-            else {
-                // count how many are non-zero
-                int nonZero = 0;
-                for (int i = 0; i < vector.length(); ++i) {
-                    if (vector.getValue(i).doubleValue() != 0d)
-                        nonZero++;
-                }
-                dos.writeInt(nonZero);
-                for (int i = 0; i < vector.length(); ++i) {
-                    double d = vector.getValue(i).doubleValue();
-                    if (d != 0d) {
-                        dos.writeInt(i);
-                        dos.writeDouble(d);
-                    }
-                }
+        }
+
+        private synchronized void setError(Throwable t) {
+            if (error == null)
+                error = t;
+        }
+
+        /**
+         * Waits for every batch to be encoded and then writes them to the
+         * channel in order.
+         */
+        public void writeTo(FileChannel channel) throws IOException {
+            WorkQueue.getWorkQueue().await(taskGroup);
+            synchronized (this) {
+                if (error instanceof IOException)
+                    throw (IOException)error;
+                else if (error instanceof RuntimeException)
+                    throw (RuntimeException)error;
+                else if (error instanceof Error)
+                    throw (Error)error;
+                else if (error != null)
+                    throw new IOException(error);
             }
+            for (byte[] bytes : encoded)
+                write(channel, bytes);
         }
-        dos.close();
     }
 }
@@ -33,6 +33,7 @@ import edu.ucla.sspace.vector.Vector;
 import edu.ucla.sspace.vector.Vectors;
 
 import edu.ucla.sspace.util.IntegerMap;
+import edu.ucla.sspace.util.TokenDictionary;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
@@ -47,8 +48,6 @@ import java.io.InputStreamReader;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -91,7 +90,14 @@ public class StaticSemanticSpace
      * A mapping of terms to row indexes.  Also serves as a quick means of
      * retrieving the words known by this {@link SemanticSpace}.
      */
-    private Map<String, Integer> termToIndex ;
+    private TokenDictionary termToIndex;
+
+    /**
+     * The row of the word with each index in {@link #termToIndex}, or {@code
+     * null} if every word's index is its row, which is the case unless a word
+     * appears more than once in the file.
+     */
+    private int[] indexToRow;
 
     /**
      * The name of this semantic space.
@@ -125,6 +131,11 @@ public class StaticSemanticSpace
         if (format == null)
             throw new Error("Unrecognzied format in " +
                             "file: " + file.getName());
+        // Text formats are split into chunks and parsed in parallel
+        if (format == SSpaceFormat.TEXT || format == SSpaceFormat.SPARSE_TEXT) {
+            loadInParallel(file, format);
+            return;
+        }
         DataInputStream dis = new DataInputStream(
             new BufferedInputStream(new FileInputStream(file)));
         // Read off the four byte header from the stream so the loading methods
@@ -163,11 +174,11 @@ public class StaticSemanticSpace
      */
     private void loadFromFormat(InputStream is, SSpaceFormat format)
             throws IOException {
-        // NOTE: Use a LinkedHashMap here because this will ensure that the
-        // words are returned in the same row-order as the matrix.  This
-        // generates better disk I/O behavior for accessing the matrix since
-        // each word is directly after the previous on disk.
-        termToIndex = new LinkedHashMap<String, Integer>();
+        // NOTE: The dictionary returns words in the order they were added,
+        // which will be the same row-order as the matrix.  This generates
+        // better disk I/O behavior for accessing the matrix since each word is
+        // directly after the previous on disk.
+        termToIndex = new TokenDictionary();
         Matrix m = null;
         long start = System.currentTimeMillis();
 
@@ -198,6 +209,31 @@ public class StaticSemanticSpace
         wordSpace = m;
     }
 
+    /**
+     * Loads the semantic space data from a file in one of the text formats
+     * using a {@link ParallelTextLoader}.
+     *
+     * @param file a file in either {@link SSpaceFormat#TEXT} or {@link
+     *        SSpaceFormat#SPARSE_TEXT} format, including its header
+     * @param format the format of the file
+     */
+    private void loadInParallel(File file, SSpaceFormat format)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        ParallelTextLoader loader = new ParallelTextLoader(file, format);
+        termToIndex = new TokenDictionary();
+        String[] words = loader.getWords();
+        for (int row = 0; row < words.length; ++row)
+            addTerm(words[row], row);
+        wordSpace = (format == SSpaceFormat.TEXT)
+            ? Matrices.synchronizedMatrix(loader.getMatrix())
+            : loader.getMatrix();
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("loaded " + format + " .sspace file in " +
+                (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+
     /**
      * Loads the {@link SemanticSpace} from the text formatted file, adding its
      * words to {@link #termToIndex} and returning the {@code Matrix} containing
@@ -229,7 +265,7 @@ public class StaticSemanticSpace
                 throw new IOException("More rows than specified");
             String[] termVectorPair = line.split("\\|");
             String[] values = termVectorPair[1].split("\\s");
-            termToIndex.put(termVectorPair[0], index);
+            addTerm(termVectorPair[0], index);
             if (values.length != columns) {
                 throw new IOException(
                             "improperly formated semantic space file");
@@ -275,7 +311,7 @@ public class StaticSemanticSpace
         while ((line = br.readLine()) != null) {
             String[] termVectorPair = line.split("\\|");
             String[] values = termVectorPair[1].split(",");
-            termToIndex.put(termVectorPair[0], row);
+            addTerm(termVectorPair[0], row);
 
             // even indicies are columns, odd are the values
             for (int i = 0; i < values.length; i +=2 ) {
@@ -305,7 +341,7 @@ public class StaticSemanticSpace
         double[] d = new double[cols];
         for (int row = 0; row < rows; ++row) {
             String word = dis.readUTF();
-            termToIndex.put(word, row);
+            addTerm(word, row);
 
             for (int col = 0; col < cols; ++col) {
                 d[col] = dis.readDouble();
@@ -333,7 +369,7 @@ public class StaticSemanticSpace
 
         for (int row = 0; row < rows; ++row) {
             String word = dis.readUTF();
-            termToIndex.put(word, row);
+            addTerm(word, row);
             
             int nonZero = dis.readInt();
             int[] indices = new int[nonZero];
@@ -349,6 +385,28 @@ public class StaticSemanticSpace
         return Matrices.asSparseMatrix(Arrays.asList(rowVectors));
     }
 
+    /**
+     * Adds the term to {@link #termToIndex} as the word for the specified row.
+     * If the term was already in an earlier row, the later row is used as its
+     * vector.
+     */
+    private void addTerm(String term, int row) {
+        int index = termToIndex.getDimension(term);
+        if (indexToRow == null) {
+            if (index == row)
+                return;
+            // The term was repeated, so the indices of the words after it no
+            // longer match their rows.  Every earlier word's index is its row.
+            indexToRow = new int[row + 1];
+            for (int i = 0; i < row; ++i)
+                indexToRow[i] = i;
+        }
+        if (index >= indexToRow.length)
+            indexToRow = Arrays.copyOf(indexToRow,
+                Math.max(index + 1, indexToRow.length * 2));
+        indexToRow[index] = row;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -360,10 +418,11 @@ public class StaticSemanticSpace
      * {@inheritDoc}
      */
     public Vector getVector(String term) {
-        Integer index = termToIndex.get(term);
-        return (index == null)
-            ? null
-            : wordSpace.getRowVector(index.intValue());
+        int index = termToIndex.indexOf(term);
+        if (index < 0)
+            return null;
+        return wordSpace.getRowVector(
+            (indexToRow == null) ? index : indexToRow[index]);
     }
 
     /**
@@ -48,7 +48,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * A utility class for finding the {@code k} most-similar words to a provided
  * word in a {@link SemanticSpace}.  The comparisons required for generating the
  * list maybe be run in parallel by configuring an instance of this class to use
- * multiple threads. <p>
+ * multiple threads.  If the space is a {@link QuantizedSemanticSpace}, the
+ * comparisons are instead delegated to the space, which compares the compact
+ * codes of each word directly.<p>
  *
  * All instances of this class are thread-safe.
  * 
@@ -90,6 +92,12 @@ public class WordComparator {
             final String word, final SemanticSpace sspace,
             int numberOfSimilarWords, Similarity.SimType similarityType) {
 
+        // Quantized spaces are faster to compare using their codes than by
+        // dequantizing every vector
+        if (sspace instanceof QuantizedSemanticSpace)
+            return ((QuantizedSemanticSpace)sspace).getMostSimilar(
+                word, numberOfSimilarWords, similarityType);
+
         Vector v = sspace.getVector(word);
 
         // if the semantic space did not have the word, then return null
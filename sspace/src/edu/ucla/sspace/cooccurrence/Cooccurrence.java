@@ -0,0 +1,109 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.cooccurrence;
+
+
+/**
+ * The number of times that a word occurred at a fixed distance from a focus
+ * word, as read from a {@link CooccurrenceFile}.  In addition to the words
+ * themselves, this class provides the indices of the words in the file's
+ * vocabulary, which may be used as row and column indices without any
+ * additional lookups.
+ *
+ * @see CooccurrenceFile
+ */
+public class Cooccurrence {
+
+    private final String[] words;
+
+    private final int focusIndex;
+
+    private final int relativeIndex;
+
+    private final int distance;
+
+    private final int count;
+
+    /**
+     * Creates a co-occurrence between the words with the specified indices in
+     * the vocabulary.
+     */
+    Cooccurrence(String[] words, int focusIndex, int relativeIndex,
+                 int distance, int count) {
+        this.words = words;
+        this.focusIndex = focusIndex;
+        this.relativeIndex = relativeIndex;
+        this.distance = distance;
+        this.count = count;
+    }
+
+    /**
+     * Returns the word that was in focus.
+     */
+    public String focusWord() {
+        return words[focusIndex];
+    }
+
+    /**
+     * Returns the index of the focus word in the vocabulary.
+     */
+    public int focusIndex() {
+        return focusIndex;
+    }
+
+    /**
+     * Returns the word that co-occurred with the focus word.
+     */
+    public String relativeWord() {
+        return words[relativeIndex];
+    }
+
+    /**
+     * Returns the index of the co-occurring word in the vocabulary.
+     */
+    public int relativeIndex() {
+        return relativeIndex;
+    }
+
+    /**
+     * Returns the position of the co-occurring word relative to the focus
+     * word, which is negative if it occurred before the focus word.
+     */
+    public int getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns the number of times the words co-occurred at this distance.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String toString() {
+        return focusWord() + " " + relativeWord() + " " + distance + " " +
+            count;
+    }
+}
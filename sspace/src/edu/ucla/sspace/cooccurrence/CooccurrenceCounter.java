@@ -0,0 +1,919 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.cooccurrence;
+
+import edu.ucla.sspace.text.Document;
+import edu.ucla.sspace.text.IteratorFactory;
+
+import edu.ucla.sspace.util.TokenDictionary;
+import edu.ucla.sspace.util.WorkQueue;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Properties;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A single-machine engine for counting the co-occurrences of words in a corpus
+ * that may be larger than memory.  This class performs the same extraction as
+ * the Hadoop {@code CooccurrenceExtractor}, where every word within a
+ * symmetric window of the focus word is counted along with its distance from
+ * the focus word, but uses the threads of one machine rather than a
+ * cluster.<p>
+ *
+ * Documents are tokenized concurrently by one worker per thread.  Each
+ * co-occurrence is packed into a single {@code long} and partitioned by the
+ * focus word into one of several shards, where it is counted in an
+ * open-addressing hash table of primitives.  When a shard's table fills, its
+ * counts are sorted and spilled to a temporary file.  Once every document has
+ * been processed, the runs of each shard are merged in parallel and the
+ * results are written as a single {@link CooccurrenceFile}.  Because all of a
+ * focus word's co-occurrences fall in the same shard, each word's
+ * co-occurrences are written as one contiguous row.<p>
+ *
+ * This class defines the following configurable properties:
+ *
+ * <dl style="margin-left: 1em">
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #WINDOW_SIZE_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> {@value #DEFAULT_WINDOW_SIZE}
+ *
+ * <dd style="padding-top: .5em">This property sets the number of words before
+ *      and after that are counted as co-occurring.  The window may be at most
+ *      {@value #MAX_WINDOW_SIZE} words. <p>
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #SHARDS_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> four times the number of threads
+ *
+ * <dd style="padding-top: .5em">This property sets the number of shards into
+ *      which the co-occurrences are partitioned.  More shards reduce the
+ *      contention between workers. <p>
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #MEMORY_BUDGET_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> a quarter of the maximum heap size
+ *
+ * <dd style="padding-top: .5em">This property sets the number of bytes that
+ *      may be used by the counts of all shards before they are spilled to
+ *      disk. <p>
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #TEMP_DIR_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> the value of {@code java.io.tmpdir}
+ *
+ * <dd style="padding-top: .5em">This property sets the directory in which the
+ *      spilled runs are written. <p>
+ *
+ * </dl> <p>
+ *
+ * The vocabulary is limited to 2<sup>27</sup> distinct words.
+ *
+ * @see CooccurrenceFile
+ */
+public class CooccurrenceCounter {
+
+    /**
+     * The prefix for naming public properties.
+     */
+    private static final String PROPERTY_PREFIX =
+        "edu.ucla.sspace.cooccurrence.CooccurrenceCounter";
+
+    /**
+     * The property to specify the number of words to view before and after each
+     * word in focus.
+     */
+    public static final String WINDOW_SIZE_PROPERTY =
+        PROPERTY_PREFIX + ".windowSize";
+
+    /**
+     * The property to specify the number of shards.
+     */
+    public static final String SHARDS_PROPERTY =
+        PROPERTY_PREFIX + ".shards";
+
+    /**
+     * The property to specify the number of bytes used for counting before
+     * spilling to disk.
+     */
+    public static final String MEMORY_BUDGET_PROPERTY =
+        PROPERTY_PREFIX + ".memoryBudget";
+
+    /**
+     * The property to specify the directory for the spilled runs.
+     */
+    public static final String TEMP_DIR_PROPERTY =
+        PROPERTY_PREFIX + ".tempDir";
+
+    /**
+     * The default number of words to view before and after each word in focus.
+     */
+    public static final int DEFAULT_WINDOW_SIZE = 2;
+
+    /**
+     * The largest window size whose distances fit in the packed keys.
+     */
+    public static final int MAX_WINDOW_SIZE = 127;
+
+    /**
+     * The largest number of distinct words that may be counted.
+     */
+    static final int MAX_WORDS = 1 << 27;
+
+    /**
+     * The number of co-occurrences each worker buffers before adding them to
+     * the shards.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The fewest entries a shard's table may have.
+     */
+    private static final int MIN_SHARD_CAPACITY = 1 << 10;
+
+    /**
+     * The number of bytes used by each entry of a shard's table.
+     */
+    private static final int BYTES_PER_ENTRY = 12;
+
+    /**
+     * The logger used to record the progress of counting.
+     */
+    private static final Logger LOGGER =
+        Logger.getLogger(CooccurrenceCounter.class.getName());
+
+    /**
+     * The number of words to view before and after each word in focus.
+     */
+    private final int windowSize;
+
+    /**
+     * The number of shards.
+     */
+    private final int numShards;
+
+    /**
+     * The number of bytes used for counting before spilling to disk.
+     */
+    private final long memoryBudget;
+
+    /**
+     * The directory for the spilled runs.
+     */
+    private final File tempDir;
+
+    /**
+     * Creates a counter configured with the system properties.
+     */
+    public CooccurrenceCounter() {
+        this(System.getProperties());
+    }
+
+    /**
+     * Creates a counter configured with the provided properties.
+     */
+    public CooccurrenceCounter(Properties props) {
+        String windowProp = props.getProperty(WINDOW_SIZE_PROPERTY);
+        windowSize = (windowProp != null)
+            ? Integer.parseInt(windowProp)
+            : DEFAULT_WINDOW_SIZE;
+        if (windowSize < 1 || windowSize > MAX_WINDOW_SIZE)
+            throw new IllegalArgumentException(
+                "Window size must be between 1 and " + MAX_WINDOW_SIZE);
+
+        String shardsProp = props.getProperty(SHARDS_PROPERTY);
+        numShards = (shardsProp != null)
+            ? Integer.parseInt(shardsProp)
+            : 4 * WorkQueue.getWorkQueue().numThreads();
+        if (numShards < 1)
+            throw new IllegalArgumentException(
+                "Number of shards must be positive");
+
+        String budgetProp = props.getProperty(MEMORY_BUDGET_PROPERTY);
+        memoryBudget = (budgetProp != null)
+            ? Long.parseLong(budgetProp)
+            : Runtime.getRuntime().maxMemory() / 4;
+
+        String tempDirProp = props.getProperty(TEMP_DIR_PROPERTY);
+        tempDir = new File((tempDirProp != null)
+                           ? tempDirProp
+                           : System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * Counts the co-occurrences in the documents and writes them to the output
+     * file in the format read by {@link CooccurrenceFile}.
+     *
+     * @param documents the documents to process, which are read by several
+     *        threads at once
+     * @param output the file to which the co-occurrences are written
+     *
+     * @throws IOException if any I/O exception occurs when reading the
+     *         documents or writing the spilled runs or output
+     */
+    public void execute(Iterator<Document> documents, File output)
+            throws IOException {
+        int capacity = MIN_SHARD_CAPACITY;
+        long perShard = memoryBudget / numShards / BYTES_PER_ENTRY;
+        while ((long) capacity * 2 <= perShard && capacity < (1 << 30))
+            capacity *= 2;
+
+        final Shard[] shards = new Shard[numShards];
+        for (int i = 0; i < numShards; ++i)
+            shards[i] = new Shard(capacity);
+        final TokenDictionary dictionary = new TokenDictionary();
+        final Iterator<Document> docs = documents;
+        final IOException[] error = new IOException[1];
+
+        WorkQueue workQueue = WorkQueue.getWorkQueue();
+        try {
+            // Extract the co-occurrences with one worker per thread, each of
+            // which pulls documents until none remain
+            Collection<Runnable> tasks = new ArrayList<Runnable>();
+            for (int t = 0; t < workQueue.numThreads(); ++t) {
+                tasks.add(new Runnable() {
+                        public void run() {
+                            try {
+                                new Extractor(dictionary, shards).extract(
+                                    docs, error);
+                            } catch (IOException ioe) {
+                                setError(error, ioe);
+                            } catch (IOError ioe) {
+                                setError(error, new IOException(ioe));
+                            } catch (RuntimeException re) {
+                                setError(error, new IOException(re));
+                            }
+                        }
+                    });
+            }
+            workQueue.run(tasks);
+            if (error[0] != null)
+                throw error[0];
+
+            LOGGER.fine("Merging the co-occurrences of " + dictionary.size() +
+                        " words");
+
+            // Merge the runs of each shard into a segment of complete rows
+            tasks.clear();
+            for (int s = 0; s < numShards; ++s) {
+                final Shard shard = shards[s];
+                tasks.add(new Runnable() {
+                        public void run() {
+                            try {
+                                shard.merge();
+                            } catch (IOException ioe) {
+                                setError(error, ioe);
+                            } catch (RuntimeException re) {
+                                setError(error, new IOException(re));
+                            }
+                        }
+                    });
+            }
+            workQueue.run(tasks);
+            if (error[0] != null)
+                throw error[0];
+
+            writeOutput(output, dictionary, shards);
+        } finally {
+            for (Shard shard : shards)
+                shard.deleteFiles();
+        }
+    }
+
+    /**
+     * Writes the vocabulary followed by the merged segments of every shard.
+     */
+    private static void writeOutput(File output, TokenDictionary dictionary,
+                                    Shard[] shards) throws IOException {
+        int numRows = 0;
+        for (Shard shard : shards)
+            numRows += shard.numRows;
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(
+            new FileOutputStream(output)));
+        try {
+            int numWords = dictionary.size();
+            dos.writeInt(numWords);
+            for (int i = 0; i < numWords; ++i)
+                dos.writeUTF(dictionary.getToken(i));
+            dos.writeInt(numRows);
+        } finally {
+            dos.close();
+        }
+
+        // Append the segments directly from their files
+        RandomAccessFile out = new RandomAccessFile(output, "rw");
+        try {
+            FileChannel outChannel = out.getChannel();
+            outChannel.position(outChannel.size());
+            for (Shard shard : shards) {
+                if (shard.segment == null)
+                    continue;
+                FileInputStream in = new FileInputStream(shard.segment);
+                try {
+                    FileChannel inChannel = in.getChannel();
+                    long size = inChannel.size();
+                    long copied = 0;
+                    while (copied < size)
+                        copied += inChannel.transferTo(
+                            copied, size - copied, outChannel);
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Records the first error reported by any task.
+     */
+    private static void setError(IOException[] error, IOException ioe) {
+        synchronized (error) {
+            if (error[0] == null)
+                error[0] = ioe;
+        }
+    }
+
+    /**
+     * Packs a co-occurrence into a single positive, non-zero key.  Sorting the
+     * keys orders them by focus word, then co-occurring word, then distance.
+     */
+    static long pack(int focus, int relative, int distance) {
+        return ((long) focus << 36) | ((long) relative << 8) | (distance + 128);
+    }
+
+    /**
+     * Returns the focus word of a packed key.
+     */
+    static int focusOf(long key) {
+        return (int) (key >>> 36);
+    }
+
+    /**
+     * Returns the co-occurring word of a packed key.
+     */
+    static int relativeOf(long key) {
+        return (int) ((key >>> 8) & 0xFFFFFFF);
+    }
+
+    /**
+     * Returns the distance of a packed key.
+     */
+    static int distanceOf(long key) {
+        return (int) (key & 0xFF) - 128;
+    }
+
+    /**
+     * A worker that tokenizes documents and buffers their co-occurrences
+     * before adding them to the shards in batches.
+     */
+    private class Extractor {
+
+        private final TokenDictionary dictionary;
+
+        private final Shard[] shards;
+
+        /**
+         * The co-occurrences seen since the last flush.
+         */
+        private final long[] buffer;
+
+        /**
+         * The buffered co-occurrences, grouped by shard.
+         */
+        private final long[] partitioned;
+
+        /**
+         * The number of co-occurrences in the buffer.
+         */
+        private int size;
+
+        public Extractor(TokenDictionary dictionary, Shard[] shards) {
+            this.dictionary = dictionary;
+            this.shards = shards;
+            buffer = new long[BUFFER_SIZE];
+            partitioned = new long[BUFFER_SIZE];
+            size = 0;
+        }
+
+        /**
+         * Processes documents until none remain or another worker fails.
+         */
+        public void extract(Iterator<Document> docs, IOException[] error)
+                throws IOException {
+            int span = 2 * windowSize + 1;
+            int[] window = new int[span];
+            while (true) {
+                Document doc = null;
+                synchronized (docs) {
+                    if (error[0] != null || !docs.hasNext())
+                        break;
+                    doc = docs.next();
+                }
+
+                // Slide the window over the tokens, processing each focus word
+                // once every word after it in the window has been read
+                Iterator<String> tokens =
+                    IteratorFactory.tokenizeOrdered(doc.reader());
+                int read = 0;
+                while (tokens.hasNext()) {
+                    window[read % span] = indexOf(tokens.next());
+                    read++;
+                    int focus = read - 1 - windowSize;
+                    if (focus >= 0)
+                        emit(window, focus, read);
+                }
+                for (int focus = Math.max(0, read - windowSize);
+                         focus < read; ++focus)
+                    emit(window, focus, read);
+            }
+            flush();
+        }
+
+        /**
+         * Returns the index of the token, or {@code -1} if it was filtered.
+         */
+        private int indexOf(String token) {
+            if (token.equals(IteratorFactory.EMPTY_TOKEN))
+                return -1;
+            int index = dictionary.getDimension(token);
+            if (index >= MAX_WORDS)
+                throw new IllegalStateException(
+                    "Too many distinct words: " + index);
+            return index;
+        }
+
+        /**
+         * Buffers the co-occurrences of the word at position {@code focus},
+         * where {@code read} tokens have been read so far.
+         */
+        private void emit(int[] window, int focus, int read)
+                throws IOException {
+            int span = window.length;
+            int focusIndex = window[focus % span];
+            if (focusIndex < 0)
+                return;
+            int end = Math.min(read - 1, focus + windowSize);
+            for (int i = Math.max(0, focus - windowSize); i <= end; ++i) {
+                int relative = window[i % span];
+                if (i == focus || relative < 0)
+                    continue;
+                if (size == BUFFER_SIZE)
+                    flush();
+                buffer[size++] = pack(focusIndex, relative, i - focus);
+            }
+        }
+
+        /**
+         * Adds the buffered co-occurrences to their shards, locking each shard
+         * only once.
+         */
+        private void flush() throws IOException {
+            int[] offsets = new int[shards.length + 1];
+            for (int i = 0; i < size; ++i)
+                offsets[shardOf(buffer[i]) + 1]++;
+            for (int s = 0; s < shards.length; ++s)
+                offsets[s + 1] += offsets[s];
+            int[] next = offsets.clone();
+            for (int i = 0; i < size; ++i)
+                partitioned[next[shardOf(buffer[i])]++] = buffer[i];
+            for (int s = 0; s < shards.length; ++s) {
+                if (offsets[s] == offsets[s + 1])
+                    continue;
+                synchronized (shards[s]) {
+                    shards[s].add(partitioned, offsets[s], offsets[s + 1]);
+                }
+            }
+            size = 0;
+        }
+
+        private int shardOf(long key) {
+            return focusOf(key) % shards.length;
+        }
+    }
+
+    /**
+     * The counts for a partition of the focus words.  Co-occurrences are
+     * counted in an open-addressing hash table until it is full, at which
+     * point the table is sorted and spilled to disk as a run.
+     */
+    private class Shard {
+
+        /**
+         * The packed co-occurrences, where {@code 0} marks an empty slot.
+         */
+        private final long[] keys;
+
+        /**
+         * The count for each key.
+         */
+        private final int[] counts;
+
+        /**
+         * The number of keys in the table.
+         */
+        private int size;
+
+        /**
+         * The number of keys at which the table is spilled.
+         */
+        private final int threshold;
+
+        /**
+         * The runs spilled to disk.
+         */
+        private final List<File> runs;
+
+        /**
+         * The file of merged rows, once the runs have been merged.
+         */
+        File segment;
+
+        /**
+         * The number of rows in the merged segment.
+         */
+        int numRows;
+
+        public Shard(int capacity) {
+            keys = new long[capacity];
+            counts = new int[capacity];
+            threshold = capacity / 4 * 3;
+            runs = new ArrayList<File>();
+            size = 0;
+        }
+
+        /**
+         * Counts the keys in the specified range of the array.
+         */
+        public void add(long[] toAdd, int from, int to) throws IOException {
+            int mask = keys.length - 1;
+            for (int i = from; i < to; ++i) {
+                long key = toAdd[i];
+                int slot = hash(key) & mask;
+                while (keys[slot] != 0 && keys[slot] != key)
+                    slot = (slot + 1) & mask;
+                if (keys[slot] == 0) {
+                    keys[slot] = key;
+                    counts[slot] = 1;
+                    if (++size >= threshold)
+                        spill();
+                }
+                else
+                    counts[slot]++;
+            }
+        }
+
+        /**
+         * Moves every entry to the front of the table in sorted order, which
+         * leaves the table unusable until it is cleared.
+         */
+        private void sortEntries() {
+            int n = 0;
+            for (int i = 0; i < keys.length; ++i) {
+                if (keys[i] != 0) {
+                    keys[n] = keys[i];
+                    counts[n] = counts[i];
+                    n++;
+                }
+            }
+            sort(keys, counts, 0, n);
+        }
+
+        /**
+         * Writes the sorted entries to a new run and empties the table.
+         */
+        private void spill() throws IOException {
+            sortEntries();
+            File run = File.createTempFile("cooccurrence-run", ".dat", tempDir);
+            run.deleteOnExit();
+            runs.add(run);
+            DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run)));
+            try {
+                for (int i = 0; i < size; ++i) {
+                    dos.writeLong(keys[i]);
+                    dos.writeInt(counts[i]);
+                }
+            } finally {
+                dos.close();
+            }
+            if (LOGGER.isLoggable(Level.FINE))
+                LOGGER.fine("Spilled " + size + " co-occurrences to " + run);
+            Arrays.fill(keys, 0L);
+            size = 0;
+        }
+
+        /**
+         * Merges the spilled runs with the entries still in memory and writes
+         * the summed counts as rows to this shard's segment.
+         */
+        public void merge() throws IOException {
+            sortEntries();
+            PriorityQueue<Run> queue = new PriorityQueue<Run>();
+            Run memory = new MemoryRun(keys, counts, size);
+            if (memory.advance())
+                queue.add(memory);
+            try {
+                for (File file : runs) {
+                    Run run = new FileRun(file);
+                    if (run.advance())
+                        queue.add(run);
+                }
+                if (queue.isEmpty())
+                    return;
+
+                segment = File.createTempFile(
+                    "cooccurrence-segment", ".dat", tempDir);
+                segment.deleteOnExit();
+                RowWriter writer = new RowWriter(segment);
+                try {
+                    while (!queue.isEmpty()) {
+                        Run run = queue.poll();
+                        long key = run.key;
+                        int count = run.count;
+                        if (run.advance())
+                            queue.add(run);
+                        while (!queue.isEmpty() && queue.peek().key == key) {
+                            run = queue.poll();
+                            count += run.count;
+                            if (run.advance())
+                                queue.add(run);
+                        }
+                        writer.add(key, count);
+                    }
+                } finally {
+                    writer.close();
+                }
+                numRows = writer.numRows;
+            } finally {
+                for (Run run : queue)
+                    run.close();
+            }
+        }
+
+        /**
+         * Deletes any files written by this shard.
+         */
+        public void deleteFiles() {
+            for (File run : runs)
+                run.delete();
+            if (segment != null)
+                segment.delete();
+        }
+    }
+
+    /**
+     * Mixes the bits of a key so that nearby keys fall in distant slots.
+     */
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Sorts the keys in the range {@code [from, to)}, moving each count with
+     * its key.
+     */
+    static void sort(long[] keys, int[] counts, int from, int to) {
+        while (to - from > 16) {
+            long pivot = medianOfThree(keys[from], keys[(from + to) >>> 1],
+                                       keys[to - 1]);
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (keys[i] < pivot)
+                    i++;
+                while (keys[j] > pivot)
+                    j--;
+                if (i <= j) {
+                    swap(keys, counts, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse on the smaller half to bound the stack depth
+            if (j - from < to - i) {
+                sort(keys, counts, from, j + 1);
+                from = i;
+            }
+            else {
+                sort(keys, counts, i, to);
+                to = j + 1;
+            }
+        }
+        for (int i = from + 1; i < to; ++i) {
+            for (int j = i; j > from && keys[j - 1] > keys[j]; --j)
+                swap(keys, counts, j, j - 1);
+        }
+    }
+
+    private static long medianOfThree(long a, long b, long c) {
+        if (a < b)
+            return (b < c) ? b : (a < c) ? c : a;
+        return (a < c) ? a : (b < c) ? c : b;
+    }
+
+    private static void swap(long[] keys, int[] counts, int i, int j) {
+        long k = keys[i];
+        keys[i] = keys[j];
+        keys[j] = k;
+        int c = counts[i];
+        counts[i] = counts[j];
+        counts[j] = c;
+    }
+
+    /**
+     * A sorted sequence of keys and counts that is consumed during a merge.
+     */
+    private abstract static class Run implements Comparable<Run> {
+
+        long key;
+
+        int count;
+
+        /**
+         * Moves to the next entry, returning {@code false} and releasing any
+         * resources if there are none.
+         */
+        abstract boolean advance() throws IOException;
+
+        void close() throws IOException { }
+
+        public int compareTo(Run other) {
+            return (key < other.key) ? -1 : (key == other.key) ? 0 : 1;
+        }
+    }
+
+    /**
+     * A run of the entries that were still in a shard's table.
+     */
+    private static class MemoryRun extends Run {
+
+        private final long[] keys;
+
+        private final int[] counts;
+
+        private final int size;
+
+        private int next;
+
+        public MemoryRun(long[] keys, int[] counts, int size) {
+            this.keys = keys;
+            this.counts = counts;
+            this.size = size;
+            next = 0;
+        }
+
+        boolean advance() {
+            if (next == size)
+                return false;
+            key = keys[next];
+            count = counts[next];
+            next++;
+            return true;
+        }
+    }
+
+    /**
+     * A run that was spilled to disk.
+     */
+    private static class FileRun extends Run {
+
+        private final DataInputStream dis;
+
+        public FileRun(File file) throws IOException {
+            dis = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)));
+        }
+
+        boolean advance() throws IOException {
+            try {
+                key = dis.readLong();
+            } catch (EOFException eofe) {
+                dis.close();
+                return false;
+            }
+            count = dis.readInt();
+            return true;
+        }
+
+        void close() throws IOException {
+            dis.close();
+        }
+    }
+
+    /**
+     * Groups sorted keys into rows and writes them in the format of {@link
+     * CooccurrenceFile}.
+     */
+    private static class RowWriter {
+
+        private final DataOutputStream dos;
+
+        private int focus;
+
+        private int rowSize;
+
+        private int[] relatives;
+
+        private byte[] distances;
+
+        private int[] rowCounts;
+
+        int numRows;
+
+        public RowWriter(File file) throws IOException {
+            dos = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+            focus = -1;
+            rowSize = 0;
+            relatives = new int[64];
+            distances = new byte[64];
+            rowCounts = new int[64];
+            numRows = 0;
+        }
+
+        /**
+         * Adds the next key in sorted order.
+         */
+        public void add(long key, int count) throws IOException {
+            int keyFocus = focusOf(key);
+            if (keyFocus != focus) {
+                writeRow();
+                focus = keyFocus;
+            }
+            if (rowSize == relatives.length) {
+                int length = rowSize * 2;
+                relatives = Arrays.copyOf(relatives, length);
+                distances = Arrays.copyOf(distances, length);
+                rowCounts = Arrays.copyOf(rowCounts, length);
+            }
+            relatives[rowSize] = relativeOf(key);
+            distances[rowSize] = (byte) distanceOf(key);
+            rowCounts[rowSize] = count;
+            rowSize++;
+        }
+
+        private void writeRow() throws IOException {
+            if (rowSize == 0)
+                return;
+            dos.writeInt(focus);
+            dos.writeInt(rowSize);
+            for (int i = 0; i < rowSize; ++i) {
+                dos.writeInt(relatives[i]);
+                dos.writeByte(distances[i]);
+                dos.writeInt(rowCounts[i]);
+            }
+            numRows++;
+            rowSize = 0;
+        }
+
+        public void close() throws IOException {
+            writeRow();
+            dos.close();
+        }
+    }
+}
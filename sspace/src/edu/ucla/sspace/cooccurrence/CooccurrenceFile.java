@@ -0,0 +1,204 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.cooccurrence;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOError;
+import java.io.IOException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ * A reader for the binary co-occurrence files produced by {@link
+ * CooccurrenceCounter}.  The file begins with the vocabulary, followed by one
+ * row for each word that was in focus at least once.  The format is:
+ *
+ * <pre>
+ *   int numWords
+ *   numWords x UTF-8 word, in index order
+ *   int numRows
+ *   numRows x {
+ *       int focusIndex
+ *       int numEntries
+ *       numEntries x { int relativeIndex, byte distance, int count }
+ *   }
+ * </pre>
+ *
+ * All of the co-occurrences for a focus word are stored in a single row and
+ * are sorted by the index of the co-occurring word and then by distance.  The
+ * rows themselves are not in any particular order.  Therefore, consumers that
+ * build a vector for each focus word, such as {@link
+ * edu.ucla.sspace.hal.HyperspaceAnalogueToLanguage HAL}-style or random
+ * indexing models, may finish each word's vector as soon as its row ends.<p>
+ *
+ * Each call to {@link #iterator()} reads the file again from the start, so
+ * several iterators may be used at once.  Iterators close the file once they
+ * have returned every co-occurrence.
+ *
+ * @see CooccurrenceCounter
+ */
+public class CooccurrenceFile implements Iterable<Cooccurrence> {
+
+    /**
+     * The file containing the co-occurrences.
+     */
+    private final File file;
+
+    /**
+     * The vocabulary of the file, in index order.
+     */
+    private final String[] words;
+
+    /**
+     * The number of focus words that have rows in the file.
+     */
+    private final int numRows;
+
+    /**
+     * Opens the co-occurrence file and reads its vocabulary.
+     *
+     * @throws IOException if any I/O exception occurs when reading the file
+     */
+    public CooccurrenceFile(File file) throws IOException {
+        this.file = file;
+        DataInputStream dis = open();
+        try {
+            words = readWords(dis);
+            numRows = dis.readInt();
+        } finally {
+            dis.close();
+        }
+    }
+
+    private DataInputStream open() throws IOException {
+        return new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+    }
+
+    private static String[] readWords(DataInputStream dis) throws IOException {
+        String[] words = new String[dis.readInt()];
+        for (int i = 0; i < words.length; ++i)
+            words[i] = dis.readUTF();
+        return words;
+    }
+
+    /**
+     * Returns the vocabulary of the file, where the word at index {@code i}
+     * has the index {@code i} in every {@link Cooccurrence}.
+     */
+    public String[] getWords() {
+        return words.clone();
+    }
+
+    /**
+     * Returns the number of words that have a row of co-occurrences.
+     */
+    public int numRows() {
+        return numRows;
+    }
+
+    /**
+     * Returns an iterator over every co-occurrence in the file, in the order
+     * they are stored.
+     *
+     * @throws IOError if any I/O exception occurs when reading the file
+     */
+    public Iterator<Cooccurrence> iterator() {
+        try {
+            return new CooccurrenceIterator();
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+    }
+
+    /**
+     * An iterator that reads the co-occurrences one row at a time.
+     */
+    private class CooccurrenceIterator implements Iterator<Cooccurrence> {
+
+        private final DataInputStream dis;
+
+        private int rowsRemaining;
+
+        private int entriesRemaining;
+
+        private int focusIndex;
+
+        private Cooccurrence next;
+
+        public CooccurrenceIterator() throws IOException {
+            dis = open();
+            readWords(dis);
+            rowsRemaining = dis.readInt();
+            entriesRemaining = 0;
+            advance();
+        }
+
+        /**
+         * Reads the next co-occurrence, closing the file if there are none.
+         */
+        private void advance() throws IOException {
+            while (entriesRemaining == 0 && rowsRemaining > 0) {
+                focusIndex = dis.readInt();
+                entriesRemaining = dis.readInt();
+                rowsRemaining--;
+            }
+            if (entriesRemaining == 0) {
+                next = null;
+                dis.close();
+                return;
+            }
+            int relativeIndex = dis.readInt();
+            int distance = dis.readByte();
+            int count = dis.readInt();
+            entriesRemaining--;
+            next = new Cooccurrence(words, focusIndex, relativeIndex,
+                                    distance, count);
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Cooccurrence next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            Cooccurrence cur = next;
+            try {
+                advance();
+            } catch (IOException ioe) {
+                throw new IOError(ioe);
+            }
+            return cur;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException(
+                "Cannot remove from a co-occurrence file");
+        }
+    }
+}
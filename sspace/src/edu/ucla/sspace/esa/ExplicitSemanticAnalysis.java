@@ -31,7 +31,7 @@ import edu.ucla.sspace.matrix.MatrixBuilder;
 import edu.ucla.sspace.matrix.MatrixFile;
 import edu.ucla.sspace.matrix.MatrixIO;
 import edu.ucla.sspace.matrix.MatrixIO.Format;
-import edu.ucla.sspace.matrix.SvdlibcSparseBinaryMatrixBuilder;
+import edu.ucla.sspace.matrix.ParallelSvdlibcSparseBinaryMatrixBuilder;
 import edu.ucla.sspace.matrix.TfIdfTransform;
 
 import edu.ucla.sspace.util.GrowableArrayList;
@@ -87,7 +87,7 @@ public class ExplicitSemanticAnalysis extends GenericTermDocumentVectorSpace {
      */
     public ExplicitSemanticAnalysis() throws IOException {
         super(true, new StringBasisMapping(), 
-              new SvdlibcSparseBinaryMatrixBuilder());
+              new ParallelSvdlibcSparseBinaryMatrixBuilder());
 
         // We use a synchronized and growable array list in order to save space.
         // Since the GrowableArrayList does the growing whenever set is called,
@@ -31,8 +31,10 @@ import edu.ucla.sspace.matrix.YaleSparseMatrix;
 import edu.ucla.sspace.text.IteratorFactory;
 
 import edu.ucla.sspace.util.BoundedSortedMultiMap;
+import edu.ucla.sspace.util.LongDoubleMap;
+import edu.ucla.sspace.util.LossyCounter;
 import edu.ucla.sspace.util.MultiMap;
-import edu.ucla.sspace.util.Pair;
+import edu.ucla.sspace.util.TokenDictionary;
 
 import edu.ucla.sspace.vector.CompactSparseVector;
 import edu.ucla.sspace.vector.SparseHashDoubleVector;
@@ -42,22 +44,19 @@ import edu.ucla.sspace.vector.Vector;
 import java.io.BufferedReader;
 import java.io.IOException;
 
-import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.Properties;
-import java.util.Queue;
 import java.util.Set;
 
 import java.util.logging.Logger;
 
-import java.util.concurrent.ConcurrentHashMap;
-
 
 /**
  * A {@code SemanticSpace} implementation of the Hyperspace Analogue to Language
@@ -93,7 +92,7 @@ import java.util.concurrent.ConcurrentHashMap;
  * importance.  Using this ranking, either a fixed number of columns may be
  * retained, or a threshold may be set to filter out low-entropy columns.<p>
  *
- * This class provides four parameters that may be set:
+ * This class provides six parameters that may be set:
  *
  *
  * <dl style="margin-left: 1em">
@@ -139,6 +138,31 @@ import java.util.concurrent.ConcurrentHashMap;
  *      not be set concurrently with {@value #RETAIN_PROPERTY}, and will throw
  *      an exception if done so.
  *
+ * <dt> <i>Property:</i> <code><b>{@value #PRUNING_EPSILON_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> unset
+ *
+ * <dd style="padding-top: .5em">This optional property enables the pruning of
+ *      rare words while documents are processed, which bounds the memory used
+ *      by the co-occurrence matrix when processing an unbounded stream of
+ *      documents.  The frequency of each word is tracked with a {@link
+ *      LossyCounter}, and once a word is evicted from the counter, all of its
+ *      co-occurrences are removed from the matrix.  The value is the
+ *      counter's error bound as a fraction of all tokens seen; any word that
+ *      occurs more often than this fraction is never pruned.  Pruned words are
+ *      not returned by {@link #getWords()}.  If only {@value
+ *      #PRUNING_MAX_WORDS_PROPERTY} is set, the error bound is {@value
+ *      #DEFAULT_PRUNING_EPSILON}.
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #PRUNING_MAX_WORDS_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> unset
+ *
+ * <dd style="padding-top: .5em">This optional property enables pruning, as
+ *      described for {@value #PRUNING_EPSILON_PROPERTY}, and sets a hard limit
+ *      on the number of words whose co-occurrences are retained.  When the
+ *      limit is exceeded, the least frequent words are pruned.
+ *
  * </dl><p>
  *
  * Note that the weight function can also be used to create special cases of the
@@ -188,6 +212,26 @@ public class HyperspaceAnalogueToLanguage implements SemanticSpace {
     public static final String WEIGHTING_FUNCTION_PROPERTY =
         "edu.ucla.sspace.hal.weighting";
     
+    /**
+     * The property to specify the error bound of the frequency tracker used to
+     * prune rare words while processing documents.
+     */
+    public static final String PRUNING_EPSILON_PROPERTY =
+        PROPERTY_PREFIX + ".pruningEpsilon";
+
+    /**
+     * The property to specify the maximum number of words whose co-occurrences
+     * are retained while processing documents.
+     */
+    public static final String PRUNING_MAX_WORDS_PROPERTY =
+        PROPERTY_PREFIX + ".pruningMaxWords";
+
+    /**
+     * The default error bound used when pruning is enabled by setting only the
+     * maximum number of words.
+     */
+    public static final double DEFAULT_PRUNING_EPSILON = 1e-6;
+
     /**
      * The default number of words before and after the focus word to include
      */
@@ -205,10 +249,16 @@ public class HyperspaceAnalogueToLanguage implements SemanticSpace {
     private static final Logger LOGGER = 
         Logger.getLogger(HyperspaceAnalogueToLanguage.class.getName());
 
+    /**
+     * The value stored in a document window for tokens that were not accepted
+     * by the filter
+     */
+    private static final int FILTERED_TOKEN = -1;
+
     /**
      * Map that pairs the word with it's position in the matrix
      */
-    private final Map<String,Integer> termToIndex;       
+    private final TokenDictionary termToIndex;       
 
     /**
      * The number of words to consider in one direction to create the symmetric
@@ -223,9 +273,27 @@ public class HyperspaceAnalogueToLanguage implements SemanticSpace {
     private final WeightingFunction weighting;
 
     /**
-     * The number that keeps track of the index values of words
+     * The weight of a word at a distance of {@code i + 1} after the focus word
+     */
+    private final double[] afterWeights;
+
+    /**
+     * The weight of a word at a distance of {@code -(i + 1)} before the focus
+     * word
+     */
+    private final double[] beforeWeights;
+
+    /**
+     * The buffers used by each thread to process a document, which are reused
+     * for each document that the thread processes
+     */
+    private final ThreadLocal<DocumentBuffers> documentBuffers;
+
+    /**
+     * The tracker of word frequencies used to prune the co-occurrences of rare
+     * words, or {@code null} if pruning is disabled.
      */
-    private int wordIndexCounter;
+    private final LossyCounter<Integer> wordFrequencies;
 
     /**
      * The matrix used for storing weight co-occurrence statistics of those
@@ -252,9 +320,7 @@ public class HyperspaceAnalogueToLanguage implements SemanticSpace {
     public HyperspaceAnalogueToLanguage(Properties properties) {
         cooccurrenceMatrix = new AtomicGrowingSparseHashMatrix();
         reduced = null;
-        termToIndex = new ConcurrentHashMap<String,Integer>();
-        
-        wordIndexCounter = 0;
+        termToIndex = new TokenDictionary();
 
         String windowSizeProp = properties.getProperty(WINDOW_SIZE_PROPERTY);
         windowSize = (windowSizeProp != null)
@@ -266,6 +332,30 @@ public class HyperspaceAnalogueToLanguage implements SemanticSpace {
         weighting = (weightFuncProp == null) 
             ? DEFAULT_WEIGHTING
             : loadWeightingFunction(weightFuncProp);
+
+        afterWeights = new double[windowSize];
+        beforeWeights = new double[windowSize];
+        for (int i = 0; i < windowSize; ++i) {
+            afterWeights[i] = weighting.weight(i + 1, windowSize);
+            beforeWeights[i] = weighting.weight(-(i + 1), windowSize);
+        }
+        String epsilonProp = properties.getProperty(PRUNING_EPSILON_PROPERTY);
+        String maxWordsProp = 
+            properties.getProperty(PRUNING_MAX_WORDS_PROPERTY);
+        wordFrequencies = (epsilonProp == null && maxWordsProp == null)
+            ? null
+            : new LossyCounter<Integer>(
+                  (epsilonProp == null) 
+                      ? DEFAULT_PRUNING_EPSILON 
+                      : Double.parseDouble(epsilonProp),
+                  (maxWordsProp == null) 
+                      ? 0 : Integer.parseInt(maxWordsProp));
+
+        documentBuffers = new ThreadLocal<DocumentBuffers>() {
+            protected DocumentBuffers initialValue() {
+                return new DocumentBuffers(2 * windowSize + 1);
+            }
+        };
     }
 
     /**
@@ -289,101 +379,129 @@ public class HyperspaceAnalogueToLanguage implements SemanticSpace {
      * {@inheritDoc}
      */
     public void  processDocument(BufferedReader document) throws IOException {
-        Queue<String> nextWords = new ArrayDeque<String>();
-        Queue<String> prevWords = new ArrayDeque<String>();
-            
         Iterator<String> documentTokens = 
             IteratorFactory.tokenizeOrdered(document);
-            
-        String focus = null;
 
         // Rather than updating the matrix every time an occurrence is seen,
         // keep a thread-local count of what needs to be modified in the matrix
         // and update after the document has been processed.  This saves
-        // potential contention from concurrent writes.
-        Map<Pair<Integer>,Double> matrixEntryToCount = 
-            new HashMap<Pair<Integer>,Double>();
-            
-        //Load the first windowSize words into the Queue        
-        for(int i = 0;  i < windowSize && documentTokens.hasNext(); i++)
-            nextWords.offer(documentTokens.next());
-            
-        while(!nextWords.isEmpty()) {
-            
-            // Load the top of the nextWords Queue into the focus word
-            focus = nextWords.remove();
-
-            // Add the next word to nextWords queue (if possible)
-            if (documentTokens.hasNext()) {        
-                String windowEdge = documentTokens.next();
-                nextWords.offer(windowEdge);
-            }            
+        // potential contention from concurrent writes.  The buffers are reused
+        // across documents, so processing allocates no per-occurrence objects
+        DocumentBuffers buffers = documentBuffers.get();
+        int[] window = buffers.window;
+        LongDoubleMap matrixEntryToCount = buffers.matrixEntryToCount;
+        int windowLength = window.length;
+
+        // Discard any counts left over from a previous document whose
+        // processing was interrupted by an exception, so that they are not
+        // attributed to this document
+        matrixEntryToCount.clear();
+        buffers.wordCounts.clear();
+
+        // The window holds the indices of the windowSize tokens on either side
+        // of the focus at positions modulo its length, with FILTERED_TOKEN
+        // marking those tokens not accepted by the filter
+        int numTokens = 0;
+        for (int focusPos = 0; ; ++focusPos) {
+
+            // Read ahead so the window contains the words after the focus
+            while (numTokens <= focusPos + windowSize 
+                       && documentTokens.hasNext()) {
+                String token = documentTokens.next();
+                window[numTokens % windowLength] = 
+                    (token.equals(IteratorFactory.EMPTY_TOKEN))
+                    ? FILTERED_TOKEN
+                    : getIndexFor(token);
+                numTokens++;
+            }
+            if (focusPos >= numTokens)
+                break;
 
             // If the filter does not accept this word, skip the semantic
             // processing, continue with the next word
-            if (focus.equals(IteratorFactory.EMPTY_TOKEN)) {
-            // shift the window
-                prevWords.offer(focus);
-                if (prevWords.size() > windowSize)
-                    prevWords.remove();
+            int focusIndex = window[focusPos % windowLength];
+            if (focusIndex == FILTERED_TOKEN)
                 continue;
+            if (wordFrequencies != null)
+                buffers.wordCounts.add(focusIndex, 1);
+
+            // Iterate through the words occurring after and add values,
+            // skipping those words that are not accepted by the filter
+            int lastAfter = Math.min(focusPos + windowSize, numTokens - 1);
+            for (int pos = focusPos + 1; pos <= lastAfter; ++pos) {
+                int index = window[pos % windowLength];
+                if (index != FILTERED_TOKEN) 
+                    matrixEntryToCount.add(
+                        pack(focusIndex, index), 
+                        afterWeights[pos - focusPos - 1]);
             }
-            
-            int focusIndex = getIndexFor(focus);
-            
-            // Iterate through the words occurring after and add values
-            int wordDistance = 1;
-            for (String after : nextWords) {
-                // skip adding co-occurence values for words that are not
-                // accepted by the filter
-                if (!after.equals(IteratorFactory.EMPTY_TOKEN)) {
-                    int index = getIndexFor(after);
-                    
-                    // Get the current number of times that the focus word has
-                    // co-occurred with this word appearing after it.  Weightb
-                    // the word appropriately baed on distance
-                    Pair<Integer> p = new Pair<Integer>(focusIndex, index);
-                    double value = weighting.weight(wordDistance, windowSize);
-                    Double curCount = matrixEntryToCount.get(p);
-                    matrixEntryToCount.put(p, (curCount == null)
-                                           ? value : value + curCount);
-                }
-             
-                wordDistance++;        
+
+            // Iterate through the words occurring before, starting with the
+            // word furthest from the focus, which is weighted as being at a
+            // distance of -1
+            int firstBefore = Math.max(0, focusPos - windowSize);
+            for (int pos = firstBefore; pos < focusPos; ++pos) {
+                int index = window[pos % windowLength];
+                if (index != FILTERED_TOKEN)
+                    matrixEntryToCount.add(
+                        pack(index, focusIndex),
+                        beforeWeights[pos - firstBefore]);
             }
+        }
 
-            wordDistance = -1; // in front of the focus word
-            for (String before : prevWords) {
-                // skip adding co-occurence values for words that are not
-                // accepted by the filter
-                if (!before.equals(IteratorFactory.EMPTY_TOKEN)) {
-                    int index = getIndexFor(before);
-
-                    // Get the current number of times that the focus word has
-                    // co-occurred with this word before after it.  Weight the
-                    // word appropriately baed on distance
-                    Pair<Integer> p = new Pair<Integer>(index, focusIndex);
-                    double value = weighting.weight(wordDistance, windowSize);
-                    Double curCount = matrixEntryToCount.get(p);
-                    matrixEntryToCount.put(p, (curCount == null)
-                                           ? value : value + curCount);
-                }
-                wordDistance--;
+        // Once the document has been processed, update the co-occurrence
+        // matrix.  Since the packed keys place the row in the high bits,
+        // sorting the keys orders the updates by row
+        int numEntries = matrixEntryToCount.size();
+        long[] entries = matrixEntryToCount.keys(buffers.entries);
+        buffers.entries = entries;
+        Arrays.sort(entries, 0, numEntries);
+        for (int i = 0; i < numEntries; ++i) {
+            long entry = entries[i];
+            cooccurrenceMatrix.addAndGet((int)(entry >>> 32), (int)entry,
+                                         matrixEntryToCount.get(entry));
+        }
+        matrixEntryToCount.clear();
+
+        if (wordFrequencies != null)
+            pruneRareWords(buffers);
+    }
+
+    /**
+     * Adds the counts of the words in the most recent document to the word
+     * frequencies and removes the co-occurrences of any words that are evicted
+     * as a result.
+     */
+    private void pruneRareWords(DocumentBuffers buffers) {
+        LongDoubleMap wordCounts = buffers.wordCounts;
+        int numWords = wordCounts.size();
+        long[] words = wordCounts.keys(buffers.entries);
+        buffers.entries = words;
+        BitSet evicted = null;
+        for (int i = 0; i < numWords; ++i) {
+            Integer word = Integer.valueOf((int)words[i]);
+            int count = (int)wordCounts.get(words[i]);
+            for (Integer index : wordFrequencies.add(word, count)) {
+                if (evicted == null)
+                    evicted = new BitSet();
+                evicted.set(index);
             }
-                    
-            // last, put this focus word in the prev words and shift off the
-            // front if it is larger than the window
-            prevWords.offer(focus);
-            if (prevWords.size() > windowSize)
-                prevWords.remove();
         }
+        wordCounts.clear();
+        if (evicted != null) {
+            int removed = 
+                cooccurrenceMatrix.clearRowsAndColumns(evicted, evicted);
+            LOGGER.fine("pruned " + evicted.cardinality() + " words and " +
+                        removed + " co-occurrences");
+        }
+    }
 
-        // Once the document has been processed, update the co-occurrence matrix
-        // accordingly.
-        for (Map.Entry<Pair<Integer>,Double> e : matrixEntryToCount.entrySet()){
-            Pair<Integer> p = e.getKey();
-            cooccurrenceMatrix.addAndGet(p.x, p.y, e.getValue());
-        }                    
+    /**
+     * Returns the matrix row and column packed into a single {@code long},
+     * with the row in the high-order bits.
+     */
+    private static long pack(int row, int col) {
+        return ((long)row << 32) | (col & 0xFFFFFFFFL);
     }
 
     /**
@@ -392,21 +510,7 @@ public class HyperspaceAnalogueToLanguage implements SemanticSpace {
      * returns that index.
      */
     private final int getIndexFor(String word) {
-        Integer index = termToIndex.get(word);
-        if (index == null) {     
-            synchronized(this) {
-                // recheck to see if the term was added while blocking
-                index = termToIndex.get(word);
-                // if another thread has not already added this word while the
-                // current thread was blocking waiting on the lock, then add it.
-                if (index == null) {
-                    int i = wordIndexCounter++;
-                    termToIndex.put(word, i);
-                    return i; // avoid the auto-boxing to assign i to index
-                }
-            }
-        }
-        return index;
+        return termToIndex.getDimension(word);
     }
     
     /**
@@ -414,15 +518,26 @@ public class HyperspaceAnalogueToLanguage implements SemanticSpace {
      */
     public Set<String> getWords() {
         // If no documents have been processed, it will be empty        
-        return Collections.unmodifiableSet(termToIndex.keySet());            
+        if (wordFrequencies == null)
+            return Collections.unmodifiableSet(termToIndex.keySet());
+
+        // Otherwise, only return those words that have not been pruned
+        Set<String> words = new LinkedHashSet<String>();
+        int numWords = termToIndex.size();
+        for (int i = 0; i < numWords; ++i) {
+            if (wordFrequencies.contains(i))
+                words.add(termToIndex.getToken(i));
+        }
+        return Collections.unmodifiableSet(words);
     }        
 
     /**
      * {@inheritDoc}
      */
     public Vector getVector(String word) {
-        Integer index = termToIndex.get(word);
-        if (index == null)
+        int index = termToIndex.indexOf(word);
+        if (index < 0 || (wordFrequencies != null 
+                          && !wordFrequencies.contains(index)))
             return null;
         // If the matrix hasn't had columns dropped then the returned vector
         // will be the combination of the word's row and column
@@ -625,4 +740,40 @@ public class HyperspaceAnalogueToLanguage implements SemanticSpace {
     public String getSpaceName() {
         return "hal-semantic-space";
     }
+
+    /**
+     * The state used by a single thread to process a document.
+     */
+    private static class DocumentBuffers {
+
+        /**
+         * The matrix indices of the tokens in the window around the focus word
+         */
+        final int[] window;
+
+        /**
+         * The weights of the co-occurrences seen in the current document, with
+         * the row and column packed into a single {@code long}
+         */
+        final LongDoubleMap matrixEntryToCount;
+
+        /**
+         * The number of times each word occurred in the current document,
+         * which is only used if pruning is enabled
+         */
+        final LongDoubleMap wordCounts;
+
+        /**
+         * The array into which the co-occurrences are sorted before updating
+         * the matrix
+         */
+        long[] entries;
+
+        public DocumentBuffers(int windowLength) {
+            window = new int[windowLength];
+            matrixEntryToCount = new LongDoubleMap(1024);
+            wordCounts = new LongDoubleMap();
+            entries = new long[1024];
+        }
+    }
 }
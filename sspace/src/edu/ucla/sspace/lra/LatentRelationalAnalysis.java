@@ -39,6 +39,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
+import java.io.IOError;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.ObjectInputStream;
@@ -145,7 +146,10 @@ import org.apache.lucene.store.FSDirectory;
  * Lucune Search Engine</a> for optimal indexing and filtering of word pairs
  * using any given corpus.  This class also uses Wordnet through the <a
  * href="http://lyle.smu.edu/~tspell/jaws/index.html">JAWS</a> interface in
- * order to find alternate word pairs from given input pairs.
+ * order to find alternate word pairs from given input pairs.  The phrase
+ * frequencies and intervening-word patterns used to filter the pairs and build
+ * the matrix are counted in parallel with a {@link PhraseIndex} that is built
+ * from the corpus once, the first time it is needed.
  *
  *
  * @author Sky Lin
@@ -163,6 +167,8 @@ public class LatentRelationalAnalysis {
 	"edu.ucla.sspace.lra.LRA.readMatrixFile";
     public static final String LRA_WRITE_MATRIX_FILE =
 	"edu.ucla.sspace.lra.LRA.writeMatrixFile";
+    public static final String LRA_SVD_ALGORITHM_PROPERTY =
+	"edu.ucla.sspace.lra.LRA.svdAlgorithm";
 
     private static final int NUM_SIM = 10; 
     private static final int MAX_PHRASE = 5; 
@@ -180,6 +186,7 @@ public class LatentRelationalAnalysis {
 
     private String INDEX_DIR;
     private String DATA_DIR;
+    private PhraseIndex phraseIndex;
 
     /**
      * Constructor for {@code LatentRelationalAnalysis}.
@@ -216,6 +223,17 @@ public class LatentRelationalAnalysis {
         matrix_row_map = new HashMap<Integer, String>();
     } 
 
+    /**
+     * Returns the index of the corpus, building it the first time it is
+     * needed.
+     */
+    private synchronized PhraseIndex getPhraseIndex() throws IOException {
+        if (phraseIndex == null) {
+            phraseIndex = new PhraseIndex(new File(DATA_DIR));
+        }
+        return phraseIndex;
+    }
+
     /**
      * Loads the analogies from an input file.
      * The file must contain word pairs in the form of A:B separated by newlines.
@@ -241,7 +259,7 @@ public class LatentRelationalAnalysis {
                     Synset[] B_prime = findAlternatives(B);
                     
                     //2. Filter phrases
-                    ArrayList<String> tmp = new ArrayList<String>(filterPhrases(INDEX_DIR,A,B,A_prime,B_prime));
+                    ArrayList<String> tmp = new ArrayList<String>(filterPhrases(getPhraseIndex(),A,B,A_prime,B_prime));
                     filtered_phrases.addAll(tmp);
                     original_to_alternates.put(A+":"+B, tmp);
                 }
@@ -309,55 +327,6 @@ public class LatentRelationalAnalysis {
         return numIndexed;
     }
 
-    /**
-     * recursive method that finds interleving patterns between A and B in all files
-     * within a given directory
-     **/
-    private static HashSet<String> searchDirectoryForPattern(File dir,String A, String B) 
-        throws Exception {
-        
-        File[] files = dir.listFiles();
-
-        HashSet<String> pattern_set = new HashSet<String>();
-
-        for (int i = 0; i < files.length; i++) {
-            File f = files[i];
-            if (f.isDirectory()) {
-                pattern_set.addAll(searchDirectoryForPattern(f, A, B));
-            } else if (f.getName().endsWith(".txt")) {
-                Scanner sc = new Scanner(f);
-                while (sc.hasNext()) {
-                    if (A.equals(sc.next())) {
-                        String pattern = "";
-                        int count = 0;
-                        while (count <= MAX_INTER && sc.hasNext()) { 
-                            String curr = sc.next();
-                            if (count >= MIN_INTER && B.equals(curr)) {
-                                //add the String onto a Set of Strings containing the patterns
-                                //System.err.println("adding pattern: " + pattern);
-                                pattern_set.add(pattern);
-                                break;
-                                /*
-                                for (int j = 0; j < count; j++) {
-                                    System.err.print(pattern[j] + " ");
-                                }
-                                    System.err.print("\n");
-                                */
-                            } else {
-                                if (count > 0) {
-                                    pattern += " ";
-                                }
-                                pattern += curr;
-                                count++;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return pattern_set;
-    }
-
     /**
      * recursive method that calls itself when it finds a directory, or indexes if
      * it is at a file ending in ".txt"
@@ -501,9 +470,43 @@ public class LatentRelationalAnalysis {
      */
     public static ArrayList<String> filterPhrases (String INDEX_DIR, String A, String B, Synset[] A_prime, Synset[] B_prime) {
         HashMultiMap<Float,Pair<String>> phrase_frequencies  = new HashMultiMap<Float,Pair<String>>();
-        //Search corpus... A:B
-        //phrase_frequencies.put(new Float(countPhraseFrequencies(INDEX_DIR, A, B)),new Pair<String>(A,B)); 
-        //System.err.println("Top 10 Similar words:");
+        for (Pair<String> pair : findAlternatePairs(A, B, A_prime, B_prime)) {
+            Float score = new Float(countPhraseFrequencies(INDEX_DIR, pair.x, pair.y));
+            phrase_frequencies.put(score, pair);
+        }
+        return selectTopPhrases(A, B, phrase_frequencies);
+    }
+
+    /**
+     * Returns an ArrayList of phrases with the greatest frequencies in the
+     * corpus, as with {@link #filterPhrases(String,String,String,Synset[],Synset[])},
+     * but counts the phrases for all the alternate pairs at once using a
+     * {@link PhraseIndex} rather than sending one query to the Lucene search
+     * engine for each pair.
+     *
+     * @param index the index of the corpus
+     * @param A a {@code String} containing the first member in the original pair 
+     * @param B a {@code String} containing the second member in the original pair 
+     * @param A_prime a {@code Synset} array containing the alternates for A 
+     * @param B_prime a {@code Synset} array containing the alternates for B 
+     * @return  an ArrayList of {@code String} with the top NUM_FILTER pairs along with the original pairs 
+     */
+    public static ArrayList<String> filterPhrases (PhraseIndex index, String A, String B, Synset[] A_prime, Synset[] B_prime) {
+        HashMultiMap<Float,Pair<String>> phrase_frequencies  = new HashMultiMap<Float,Pair<String>>();
+        List<Pair<String>> alternates = findAlternatePairs(A, B, A_prime, B_prime);
+        int[] counts = index.countPhrases(alternates, MAX_PHRASE);
+        for (int i = 0; i < counts.length; i++) {
+            phrase_frequencies.put(new Float(counts[i]), alternates.get(i));
+        }
+        return selectTopPhrases(A, B, phrase_frequencies);
+    }
+
+    /**
+     * Returns the pairs A':B and A:B' made from the first NUM_SIM alternates
+     * of each word that differ from the original word.
+     */
+    private static List<Pair<String>> findAlternatePairs(String A, String B, Synset[] A_prime, Synset[] B_prime) {
+        List<Pair<String>> alternates = new ArrayList<Pair<String>>();
         int count = 0;
         for (int i = 0; (i < NUM_SIM && i < A_prime.length); i++) {
             String[] wordForms = A_prime[i].getWordForms();
@@ -511,8 +514,7 @@ public class LatentRelationalAnalysis {
             {
                 if (wordForms[j].compareTo(A) != 0) {
                     //Search corpus... A':B
-                    Float score = new Float(countPhraseFrequencies(INDEX_DIR, wordForms[j], B));
-                    phrase_frequencies.put(score,new Pair<String>(wordForms[j],B)); 
+                    alternates.add(new Pair<String>(wordForms[j],B)); 
                     count++;
                 }
 
@@ -529,8 +531,7 @@ public class LatentRelationalAnalysis {
             {
                 if (wordForms[j].compareTo(B) != 0) {
                     //Search corpus... A:B'
-                    Float score = new Float(countPhraseFrequencies(INDEX_DIR,A, wordForms[j]));
-                    phrase_frequencies.put(score,new Pair<String>(A,wordForms[j])); 
+                    alternates.add(new Pair<String>(A,wordForms[j])); 
                     count++;
                 }
 
@@ -540,7 +541,14 @@ public class LatentRelationalAnalysis {
             if(count >= NUM_SIM)
                 break;
         }
-        
+        return alternates;
+    }
+
+    /**
+     * Returns the NUM_FILTER alternate pairs with the greatest frequencies
+     * along with the original pair.
+     */
+    private static ArrayList<String> selectTopPhrases(String A, String B, HashMultiMap<Float,Pair<String>> phrase_frequencies) {
         // filter out the phrases and add the top 3 to the ArrayList, and return it
         Iterator iter = phrase_frequencies.keySet().iterator();
         //TODO: make number of filters dynamic
@@ -610,34 +618,6 @@ public class LatentRelationalAnalysis {
         return comb_pattern;
     }
 
-    /**
-     * Searches through all the .txt files in a directory and returns the total number
-     * of occurrences of a pattern.
-     */
-    private static int countWildcardPhraseFrequencies(File dir, String pattern)
-        throws Exception {
-        
-        File[] files = dir.listFiles();
-
-        int total = 0;
-
-        for (int i = 0; i < files.length; i++) {
-            File f = files[i];
-            if (f.isDirectory()) {
-                total += countWildcardPhraseFrequencies(f, pattern);
-            } else if (f.getName().endsWith(".txt")) {
-                Scanner sc = new Scanner(f);
-                while (sc.hasNext()) {
-                    String line = sc.nextLine();
-                    if (line.matches(pattern)) {
-                        total++;
-                    }
-                }
-            }
-        }
-        return total;
-    }
-
     /**
      * parses a pair in the form {A, B}
      **/
@@ -657,37 +637,60 @@ public class LatentRelationalAnalysis {
      **/
     public void findPatterns() 
         throws Exception {
-        HashSet<String> patterns = new HashSet<String>();
+        PhraseIndex index = getPhraseIndex();
+        List<Pair<String>> pairs = new ArrayList<Pair<String>>();
         for (String phrase : filtered_phrases) {
             String phrase_arr[] = phrase.split(":");
-            String A = phrase_arr[0];
-            String B = phrase_arr[1];
-            //System.err.println(A + ": " + B);
-
-            patterns.addAll(searchDirectoryForPattern(new File(DATA_DIR), A, B));
+            pairs.add(new Pair<String>(phrase_arr[0], phrase_arr[1]));
         }
+        HashSet<String> patterns = new HashSet<String>();
+        for (Set<String> found : index.findInterveningWords(pairs, MIN_INTER, MAX_INTER)) {
+            patterns.addAll(found);
+        }
+
+        //make all combinatorials of wildcard patterns and count them in one batch
+        List<String> comb_patterns = new ArrayList<String>();
+        List<String[]> queries = new ArrayList<String[]>();
         Iterator iter = patterns.iterator();
         while (iter.hasNext()) {
             String curr_pattern_str = (String)iter.next();
             String[] curr_pattern = curr_pattern_str.split("\\s");
             int curr_length = curr_pattern.length;
-            //System.err.println("length of pattern: " + curr_length);
-            //do a for loop with all combinatorials of wildcard patterns
-            //for each iteration do a wildcard search
-            for (int comb = 0; comb < (int)Math.pow(2.0,(double)curr_length); comb++) {
+            for (int comb = 0; comb < (1 << curr_length); comb++) {
                 String comb_pattern = "\\s" + combinatorialPatternMaker(curr_pattern, curr_length, comb);
-                try {
-                    int score = countWildcardPhraseFrequencies(new File(DATA_DIR), ".*" + comb_pattern + ".*");
-                    InterveningWordsPattern db_pattern = new InterveningWordsPattern(comb_pattern);
-                    db_pattern.setOccurrences(score);
-                    pattern_list.put(db_pattern, score); //insert the pattern into database (only if it has a high enough score)
-
-                    //System.err.println(comb_pattern + ": " + score);
-                } catch (Exception e) {
-                    System.err.println("could not perform wildcard search");
-                }
+                comb_patterns.add(comb_pattern);
+                queries.add(parsePattern(null, comb_pattern, null));
+            }
+        }
+        int[] scores = index.countLines(queries);
+        for (int i = 0; i < scores.length; i++) {
+            InterveningWordsPattern db_pattern = new InterveningWordsPattern(comb_patterns.get(i));
+            db_pattern.setOccurrences(scores[i]);
+            pattern_list.put(db_pattern, scores[i]); //insert the pattern into database (only if it has a high enough score)
+        }
+    }
+
+    /**
+     * Returns the words matched by a pattern made by {@link
+     * #combinatorialPatternMaker(String[],int,int)}, preceded by {@code first}
+     * and followed by {@code last} if they are not {@code null}.  Wildcards
+     * are returned as {@code null}.
+     */
+    private static String[] parsePattern(String first, String pattern, String last) {
+        List<String> words = new ArrayList<String>();
+        if (first != null) {
+            words.add(first);
+        }
+        for (String word : pattern.split("\\\\s")) {
+            if (word.length() == 0) {
+                continue;
             }
+            words.add((word.equals("[\\w]+")) ? null : word);
+        }
+        if (last != null) {
+            words.add(last);
         }
+        return words.toArray(new String[words.size()]);
     }
 
     /**
@@ -741,10 +744,19 @@ public class LatentRelationalAnalysis {
      * returned {@code Matrix} should be used in the SVD process.
      *
      * @return the sparse Matrix.
+     *
+     * @throws IOError if the corpus could not be read
      **/
     public Matrix createSparseMatrix() {
 
         Matrix m = Matrices.create(matrix_row_map.size(), matrix_column_map.size(), false);
+        PhraseIndex index;
+        try {
+            index = getPhraseIndex();
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+        List<String[]> queries = new ArrayList<String[]>();
         for (int row_num = 0; row_num < matrix_row_map.size(); row_num++) { // for each pattern
             String p = matrix_row_map.get(new Integer(row_num));
             String[] p_sp = p.split(":");
@@ -753,19 +765,20 @@ public class LatentRelationalAnalysis {
             for (int col_num = 0; col_num < matrix_column_map.size(); col_num++) { // for each phrase
                 InterveningWordsPattern col_pattern = matrix_column_map.get(new Integer(col_num));
                 String pattern = col_pattern.getPattern();
-                String comb_patterns;
                 if (col_pattern.getReverse()) { //if the column is a reverse pattern...word2 P word1
-                    comb_patterns = ".*\\s" + b + pattern + a + "\\s.*";
+                    queries.add(parsePattern(b, pattern, a));
                 } else {
-                    comb_patterns = ".*\\s" + a + pattern + b + "\\s.*";
-                }
-                try {
-                    m.set(row_num, col_num, (double)countWildcardPhraseFrequencies(new File(DATA_DIR), comb_patterns));
-                } catch (Exception e) {
-                    System.err.println("could not perform wildcard search");
+                    queries.add(parsePattern(a, pattern, b));
                 }
             }
         }
+        int[] counts = index.countLines(queries);
+        int cell = 0;
+        for (int row_num = 0; row_num < m.rows(); row_num++) {
+            for (int col_num = 0; col_num < m.columns(); col_num++) {
+                m.set(row_num, col_num, (double)counts[cell++]);
+            }
+        }
         System.err.println("\nCompleted matrix generation.");
         //System.err.println("Number of rows: " + m.rows());
         //System.err.println("Number of cols: " + m.columns());
@@ -899,16 +912,38 @@ public class LatentRelationalAnalysis {
      * @return a {@code double} containing the cosine similarity value of the analogy 
      **/
     public static Matrix[] computeSVD(Matrix sparse_matrix, int dimensions) {
+        return computeSVD(sparse_matrix, dimensions, SVD.Algorithm.SVDLIBC);
+    }
+
+    /**
+     * Does the Singular Value Decomposition using the generated sparse matrix
+     * and the specified SVD algorithm.  The {@link SVD.Algorithm#RANDOMIZED
+     * RANDOMIZED} algorithm decomposes the matrix in memory; all others write
+     * the matrix to a temporary file first.
+     *
+     * @param sparse_matrix the sparse {@code Matrix}
+     * @param dimensions the number of singular values to calculate
+     * @param algorithm the SVD algorithm to use
+     * @return the U, S and V<sup>T</sup> matrices, or {@code null} if the SVD
+     *         could not be computed
+     **/
+    public static Matrix[] computeSVD(Matrix sparse_matrix, int dimensions,
+                                      SVD.Algorithm algorithm) {
+            if (algorithm.equals(SVD.Algorithm.RANDOMIZED)) {
+                dimensions = Math.min(dimensions, Math.min(
+                    sparse_matrix.rows(), sparse_matrix.columns()));
+                return SVD.svd(sparse_matrix, algorithm, dimensions);
+            }
             try {
             File rawTermDocMatrix = 
                 File.createTempFile("lra-term-document-matrix", ".dat");
             MatrixIO.writeMatrix(sparse_matrix, rawTermDocMatrix, MatrixIO.Format.SVDLIBC_SPARSE_TEXT); 
-            Matrix[] usv = SVD.svd(rawTermDocMatrix, SVD.Algorithm.SVDLIBC, MatrixIO.Format.SVDLIBC_SPARSE_TEXT, dimensions);
+            Matrix[] usv = SVD.svd(rawTermDocMatrix, algorithm, MatrixIO.Format.SVDLIBC_SPARSE_TEXT, dimensions);
 
             if (usv[1].rows() < usv[0].columns()) { //can't do projection, if the dimensions don't match up...redo SVD with updated dimensions
                 dimensions = usv[1].rows();
                 System.err.println("Default dimensions too big...redoing SVD with new dimensions, k" + "=" + dimensions + " ...");
-                usv = SVD.svd(rawTermDocMatrix, SVD.Algorithm.SVDLIBC, MatrixIO.Format.SVDLIBC_SPARSE_TEXT, dimensions);
+                usv = SVD.svd(rawTermDocMatrix, algorithm, MatrixIO.Format.SVDLIBC_SPARSE_TEXT, dimensions);
             }
             return usv;
             } catch (Exception e){
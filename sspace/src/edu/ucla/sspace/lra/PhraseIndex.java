@@ -0,0 +1,582 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.lra;
+
+import edu.ucla.sspace.util.Pair;
+import edu.ucla.sspace.util.TokenDictionary;
+import edu.ucla.sspace.util.WorkQueue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import java.util.logging.Logger;
+
+
+/**
+ * An in-memory positional index over a corpus of text files that answers the
+ * phrase and pattern queries needed by {@link LatentRelationalAnalysis}.  The
+ * corpus is read once and stored as an array of token indices along with a
+ * posting list of positions for every token.  Queries are answered by
+ * visiting the positions of the rarest word in the query and comparing the
+ * neighboring tokens, so no query needs to reread the corpus or open any
+ * files.  The batch methods answer many queries in parallel.<p>
+ *
+ * As with the other searches performed by {@code LatentRelationalAnalysis},
+ * tokens are the whitespace-delimited strings of each line and are matched
+ * case-sensitively.  Every file ending in {@code .txt} in the corpus directory
+ * and its subdirectories is treated as a separate document.  Phrases and
+ * intervening words may span the lines of a document but never span documents,
+ * while patterns are matched within a single line.<p>
+ *
+ * This class is thread-safe.
+ *
+ * @see LatentRelationalAnalysis
+ */
+public class PhraseIndex {
+
+    /**
+     * The logger used to record the progress of building the index.
+     */
+    private static final Logger LOGGER =
+        Logger.getLogger(PhraseIndex.class.getName());
+
+    /**
+     * The mapping from each distinct token to its index.
+     */
+    private final TokenDictionary dictionary;
+
+    /**
+     * The index of every token in the corpus, in the order they occur.
+     */
+    private final int[] tokens;
+
+    /**
+     * The position of the first token of each document, followed by the number
+     * of tokens.
+     */
+    private final int[] docStarts;
+
+    /**
+     * The position of the first token of each line, followed by the number of
+     * tokens.
+     */
+    private final int[] lineStarts;
+
+    /**
+     * The offset into {@link #postings} of the positions for each token index,
+     * followed by the number of tokens.
+     */
+    private final int[] postingStarts;
+
+    /**
+     * The sorted positions of each token, grouped by token index.
+     */
+    private final int[] postings;
+
+    /**
+     * Whether each token consists only of word characters, which allows it to
+     * match a wildcard.
+     */
+    private final boolean[] isWord;
+
+    /**
+     * The number of lines with at least {@code i} consecutive word tokens,
+     * which answers patterns made entirely of wildcards.
+     */
+    private final int[] linesWithWordRun;
+
+    /**
+     * Builds an index over all the {@code .txt} files in the directory and its
+     * subdirectories.
+     *
+     * @throws IOException if {@code corpusDir} is not a directory or if any
+     *         I/O exception occurs when reading the files
+     */
+    public PhraseIndex(File corpusDir) throws IOException {
+        if (!corpusDir.isDirectory())
+            throw new IOException(
+                corpusDir + " does not exist or is not a directory");
+        List<File> files = new ArrayList<File>();
+        findFiles(corpusDir, files);
+        dictionary = new TokenDictionary();
+
+        // Tokenize the files in parallel, which assigns the token indices
+        final TokenizedFile[] tokenized = new TokenizedFile[files.size()];
+        final IOException[] error = new IOException[1];
+        Collection<Runnable> tasks = new ArrayList<Runnable>();
+        for (int i = 0; i < tokenized.length; ++i) {
+            final int fileIndex = i;
+            final File file = files.get(i);
+            tasks.add(new Runnable() {
+                    public void run() {
+                        try {
+                            tokenized[fileIndex] =
+                                new TokenizedFile(file, dictionary);
+                        } catch (IOException ioe) {
+                            setError(error, ioe);
+                        }
+                    }
+                });
+        }
+        WorkQueue.getWorkQueue().run(tasks);
+        if (error[0] != null)
+            throw error[0];
+
+        // Concatenate the files into a single sequence of tokens
+        long numTokens = 0;
+        int numLines = 0;
+        for (TokenizedFile f : tokenized) {
+            numTokens += f.size;
+            numLines += f.numLines;
+        }
+        if (numTokens > Integer.MAX_VALUE)
+            throw new IOException("Corpus is too large to index: " +
+                                  numTokens + " tokens");
+        tokens = new int[(int) numTokens];
+        docStarts = new int[tokenized.length + 1];
+        lineStarts = new int[numLines + 1];
+        int position = 0;
+        int line = 0;
+        for (int d = 0; d < tokenized.length; ++d) {
+            TokenizedFile f = tokenized[d];
+            docStarts[d] = position;
+            System.arraycopy(f.tokens, 0, tokens, position, f.size);
+            for (int i = 0; i < f.numLines; ++i)
+                lineStarts[line++] = position + f.lineStarts[i];
+            position += f.size;
+            tokenized[d] = null;
+        }
+        docStarts[tokenized.length] = position;
+        lineStarts[numLines] = position;
+
+        // Group the positions of each token with a counting sort
+        int numTypes = dictionary.size();
+        postingStarts = new int[numTypes + 1];
+        for (int token : tokens)
+            postingStarts[token + 1]++;
+        for (int t = 0; t < numTypes; ++t)
+            postingStarts[t + 1] += postingStarts[t];
+        postings = new int[tokens.length];
+        int[] next = Arrays.copyOf(postingStarts, numTypes);
+        for (int i = 0; i < tokens.length; ++i)
+            postings[next[tokens[i]]++] = i;
+
+        isWord = new boolean[numTypes];
+        for (int t = 0; t < numTypes; ++t)
+            isWord[t] = isWordToken(dictionary.getToken(t));
+
+        // Record the longest run of word tokens on each line
+        int[] runCounts = new int[1];
+        for (int l = 0; l < numLines; ++l) {
+            int longest = 0;
+            int run = 0;
+            for (int i = lineStarts[l]; i < lineStarts[l + 1]; ++i) {
+                run = (isWord[tokens[i]]) ? run + 1 : 0;
+                longest = Math.max(longest, run);
+            }
+            if (longest >= runCounts.length)
+                runCounts = Arrays.copyOf(runCounts, longest + 1);
+            runCounts[longest]++;
+        }
+        for (int i = runCounts.length - 2; i >= 0; --i)
+            runCounts[i] += runCounts[i + 1];
+        linesWithWordRun = runCounts;
+
+        LOGGER.info(String.format(
+            "Indexed %d tokens of %d types in %d files",
+            tokens.length, numTypes, tokenized.length));
+    }
+
+    /**
+     * Adds every {@code .txt} file in the directory and its subdirectories to
+     * the list, in the order they are listed.
+     */
+    private static void findFiles(File dir, List<File> files) {
+        File[] children = dir.listFiles();
+        if (children == null)
+            return;
+        for (File f : children) {
+            if (f.isDirectory())
+                findFiles(f, files);
+            else if (f.getName().endsWith(".txt"))
+                files.add(f);
+        }
+    }
+
+    /**
+     * Returns {@code true} if every character of the token matches the regular
+     * expression {@code \w}.
+     */
+    static boolean isWordToken(String token) {
+        for (int i = 0; i < token.length(); ++i) {
+            char c = token.charAt(i);
+            if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                  || (c >= '0' && c <= '9') || c == '_'))
+                return false;
+        }
+        return token.length() > 0;
+    }
+
+    /**
+     * Records the first error reported by any task.
+     */
+    private static void setError(IOException[] error, IOException ioe) {
+        synchronized (error) {
+            if (error[0] == null)
+                error[0] = ioe;
+        }
+    }
+
+    /**
+     * Returns the number of tokens in the corpus.
+     */
+    public int numTokens() {
+        return tokens.length;
+    }
+
+    /**
+     * Returns the number of times the token occurs in the corpus.
+     */
+    public int frequency(String token) {
+        int index = dictionary.indexOf(token);
+        return (index < 0)
+            ? 0
+            : postingStarts[index + 1] - postingStarts[index];
+    }
+
+    /**
+     * Returns the index of the document that contains the position.
+     */
+    private int docOf(int position) {
+        return containing(docStarts, position);
+    }
+
+    /**
+     * Returns the index of the line that contains the position.
+     */
+    private int lineOf(int position) {
+        return containing(lineStarts, position);
+    }
+
+    /**
+     * Returns the last index of {@code starts} whose value is at most the
+     * position, skipping over any empty ranges.
+     */
+    private static int containing(int[] starts, int position) {
+        int i = Arrays.binarySearch(starts, position);
+        if (i < 0)
+            return -i - 2;
+        // Empty ranges share a start with the range that follows them
+        while (i + 1 < starts.length - 1 && starts[i + 1] == position)
+            i++;
+        return i;
+    }
+
+    /**
+     * Returns the number of times that {@code first} and {@code last} occur in
+     * the same document within the specified slop of the phrase "{@code first
+     * last}".  This counts each pair of positions whose distance from {@code
+     * first} to {@code last} differs from one by at most {@code slop}, which is
+     * the window matched by a sloppy phrase query.
+     */
+    public int countPhrase(String first, String last, int slop) {
+        int a = dictionary.indexOf(first);
+        int b = dictionary.indexOf(last);
+        if (a < 0 || b < 0)
+            return 0;
+
+        // Visit the positions of the rarer word and check its neighbors
+        boolean fromFirst = postingStarts[a + 1] - postingStarts[a]
+            <= postingStarts[b + 1] - postingStarts[b];
+        int visited = (fromFirst) ? a : b;
+        int other = (fromFirst) ? b : a;
+        int count = 0;
+        for (int i = postingStarts[visited];
+                 i < postingStarts[visited + 1]; ++i) {
+            int p = postings[i];
+            int doc = docOf(p);
+            int docStart = docStarts[doc];
+            int docEnd = docStarts[doc + 1];
+            for (int d = 1 - slop; d <= 1 + slop; ++d) {
+                if (d == 0)
+                    continue;
+                int q = (fromFirst) ? p + d : p - d;
+                if (q >= docStart && q < docEnd && tokens[q] == other)
+                    count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the result of {@link #countPhrase(String,String,int)} for each
+     * pair, where the first and last words of each phrase are the pair's
+     * {@code x} and {@code y} values.  The phrases are counted in parallel.
+     */
+    public int[] countPhrases(final List<Pair<String>> pairs, final int slop) {
+        final int[] counts = new int[pairs.size()];
+        runInBlocks(pairs.size(), new BlockTask() {
+                public void run(int i) {
+                    Pair<String> pair = pairs.get(i);
+                    counts[i] = countPhrase(pair.x, pair.y, slop);
+                }
+            });
+        return counts;
+    }
+
+    /**
+     * Returns the distinct sequences of words that occur between {@code first}
+     * and {@code last}.  For each occurrence of {@code first}, only the
+     * shortest sequence of between {@code minInter} and {@code maxInter} words
+     * that is followed by {@code last} is included.  The words of each sequence
+     * are separated by a single space.
+     */
+    public Set<String> findInterveningWords(String first, String last,
+                                            int minInter, int maxInter) {
+        Set<String> sequences = new LinkedHashSet<String>();
+        int a = dictionary.indexOf(first);
+        int b = dictionary.indexOf(last);
+        if (a < 0 || b < 0)
+            return sequences;
+        for (int i = postingStarts[a]; i < postingStarts[a + 1]; ++i) {
+            int p = postings[i];
+            int docEnd = docStarts[docOf(p) + 1];
+            for (int k = minInter; k <= maxInter; ++k) {
+                int q = p + k + 1;
+                if (q >= docEnd)
+                    break;
+                if (tokens[q] == b) {
+                    StringBuilder sb = new StringBuilder();
+                    for (int j = p + 1; j < q; ++j) {
+                        if (j > p + 1)
+                            sb.append(' ');
+                        sb.append(dictionary.getToken(tokens[j]));
+                    }
+                    sequences.add(sb.toString());
+                    break;
+                }
+            }
+        }
+        return sequences;
+    }
+
+    /**
+     * Returns the result of {@link
+     * #findInterveningWords(String,String,int,int)} for each pair, where the
+     * words before and after the sequences are the pair's {@code x} and {@code
+     * y} values.  The pairs are searched in parallel.
+     */
+    public List<Set<String>> findInterveningWords(
+            final List<Pair<String>> pairs, final int minInter,
+            final int maxInter) {
+        final List<Set<String>> sequences = new ArrayList<Set<String>>(
+            Collections.<Set<String>>nCopies(pairs.size(), null));
+        runInBlocks(pairs.size(), new BlockTask() {
+                public void run(int i) {
+                    Pair<String> pair = pairs.get(i);
+                    Set<String> found = findInterveningWords(
+                        pair.x, pair.y, minInter, maxInter);
+                    synchronized (sequences) {
+                        sequences.set(i, found);
+                    }
+                }
+            });
+        return sequences;
+    }
+
+    /**
+     * Returns the number of lines that contain the pattern as a sequence of
+     * consecutive tokens.  Each element of the pattern must either equal the
+     * token at its position or be {@code null}, which matches any token made
+     * only of word characters.  Each matching line is counted once.
+     */
+    public int countLines(String[] pattern) {
+        if (pattern.length == 0)
+            return 0;
+
+        // Anchor the search on the rarest word in the pattern
+        int[] indices = new int[pattern.length];
+        int anchor = -1;
+        int anchorFrequency = Integer.MAX_VALUE;
+        for (int j = 0; j < pattern.length; ++j) {
+            if (pattern[j] == null) {
+                indices[j] = -1;
+                continue;
+            }
+            indices[j] = dictionary.indexOf(pattern[j]);
+            if (indices[j] < 0)
+                return 0;
+            int frequency =
+                postingStarts[indices[j] + 1] - postingStarts[indices[j]];
+            if (frequency < anchorFrequency) {
+                anchor = j;
+                anchorFrequency = frequency;
+            }
+        }
+        if (anchor < 0)
+            return (pattern.length < linesWithWordRun.length)
+                ? linesWithWordRun[pattern.length]
+                : 0;
+
+        int count = 0;
+        int lineStart = 0;
+        int lineEnd = 0;
+        boolean counted = false;
+        for (int i = postingStarts[indices[anchor]];
+                 i < postingStarts[indices[anchor] + 1]; ++i) {
+            int p = postings[i];
+            if (p >= lineEnd) {
+                int line = lineOf(p);
+                lineStart = lineStarts[line];
+                lineEnd = lineStarts[line + 1];
+                counted = false;
+            }
+            if (counted)
+                continue;
+            int start = p - anchor;
+            if (start < lineStart || start + pattern.length > lineEnd)
+                continue;
+            if (matches(indices, start)) {
+                count++;
+                counted = true;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns {@code true} if the pattern's token indices match the tokens
+     * starting at the position.
+     */
+    private boolean matches(int[] indices, int start) {
+        for (int j = 0; j < indices.length; ++j) {
+            int token = tokens[start + j];
+            if ((indices[j] < 0) ? !isWord[token] : token != indices[j])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the result of {@link #countLines(String[])} for each pattern.
+     * The patterns are counted in parallel.
+     */
+    public int[] countLines(final List<String[]> patterns) {
+        final int[] counts = new int[patterns.size()];
+        runInBlocks(patterns.size(), new BlockTask() {
+                public void run(int i) {
+                    counts[i] = countLines(patterns.get(i));
+                }
+            });
+        return counts;
+    }
+
+    /**
+     * A query that is run for each index of a batch.
+     */
+    private interface BlockTask {
+        void run(int i);
+    }
+
+    /**
+     * Runs the task for each index in {@code [0, size)}, splitting the indices
+     * into contiguous blocks that are run in parallel.
+     */
+    private static void runInBlocks(int size, final BlockTask task) {
+        WorkQueue workQueue = WorkQueue.getWorkQueue();
+        int numBlocks = Math.min(size, workQueue.numThreads() * 4);
+        if (numBlocks == 0)
+            return;
+        final RuntimeException[] error = new RuntimeException[1];
+        Collection<Runnable> tasks = new ArrayList<Runnable>();
+        for (int b = 0; b < numBlocks; ++b) {
+            final int start = (int) ((long) size * b / numBlocks);
+            final int end = (int) ((long) size * (b + 1) / numBlocks);
+            tasks.add(new Runnable() {
+                    public void run() {
+                        try {
+                            for (int i = start; i < end; ++i)
+                                task.run(i);
+                        } catch (RuntimeException re) {
+                            synchronized (error) {
+                                if (error[0] == null)
+                                    error[0] = re;
+                            }
+                        }
+                    }
+                });
+        }
+        workQueue.run(tasks);
+        if (error[0] != null)
+            throw error[0];
+    }
+
+    /**
+     * The token indices of a single file.
+     */
+    private static class TokenizedFile {
+
+        int[] tokens;
+
+        int size;
+
+        int[] lineStarts;
+
+        int numLines;
+
+        public TokenizedFile(File file, TokenDictionary dictionary)
+                throws IOException {
+            tokens = new int[1024];
+            lineStarts = new int[64];
+            size = 0;
+            numLines = 0;
+            BufferedReader br = new BufferedReader(new FileReader(file));
+            try {
+                for (String line = null; (line = br.readLine()) != null; ) {
+                    if (numLines == lineStarts.length)
+                        lineStarts = Arrays.copyOf(
+                            lineStarts, lineStarts.length * 2);
+                    lineStarts[numLines++] = size;
+                    for (String token : line.split("\\s+")) {
+                        if (token.length() == 0)
+                            continue;
+                        if (size == tokens.length)
+                            tokens = Arrays.copyOf(tokens, size * 2);
+                        tokens[size++] = dictionary.getDimension(token);
+                    }
+                }
+            } finally {
+                br.close();
+            }
+        }
+    }
+}
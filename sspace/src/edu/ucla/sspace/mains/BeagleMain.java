@@ -49,6 +49,10 @@ import java.util.Properties;
  * <ul>
  * <li> {@code --dimensions=<int>} how many dimensions to use for the Beagle
  *      vectors.  2048 is the default value.
+ *
+ * <li> {@code --cacheTransforms} caches the Fourier transform of each index
+ *      vector and computes the convolutions in the frequency domain, which is
+ *      much faster but requires the dimension to be a power of two.
  * </ul>
  *
  * <p>
@@ -117,6 +121,11 @@ public class BeagleMain extends GenericMain {
         options.addOption('L', "loadVectors",
                           "load word-to-IndexVector mapping before processing",
                           true, "FILE", "Options");
+        options.addOption('c', "cacheTransforms",
+                          "cache the Fourier transforms of the index vectors " +
+                          "and compute convolutions in the frequency domain " +
+                          "(requires the dimension to be a power of two)",
+                          false, null, "Options");
     }
 
     /**
@@ -162,7 +171,8 @@ public class BeagleMain extends GenericMain {
                     argOptions.getStringOption('s').toUpperCase())
             : SemanticType.COMPOSITE;
 
-        return new Beagle(dimension, type, generatorMap);
+        return new Beagle(dimension, type, generatorMap,
+                          argOptions.hasOption("cacheTransforms"));
     }
 
     /**
@@ -84,6 +84,9 @@ public class CoalsMain extends GenericMain {
                             "Set to true if the co-occurrance matrix should " +
                             "be reduced using the Singluar Value Decomposition",
                             false, null, "Optional");
+          options.addOption('S', "svdAlgorithm", "a specific SVD algorithm " +
+                            "to use when reducing the matrix",
+                            true, "SVD.Algorithm", "Optional");
     }
 
     public static void main(String[] args) {
@@ -127,6 +130,9 @@ public class CoalsMain extends GenericMain {
           if (argOptions.hasOption("maxWords"))
               props.setProperty(Coals.MAX_WORDS_PROPERTY,
                                 argOptions.getStringOption("maxWords"));
+          if (argOptions.hasOption("svdAlgorithm"))
+              props.setProperty(Coals.SVD_ALGORITHM_PROPERTY,
+                                argOptions.getStringOption("svdAlgorithm"));
           return props;
     }
 }
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.mains;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Runtime statistics for the processing of documents by a {@link
+ * DocumentScheduler}.  The statistics include the number of documents
+ * processed, the throughput, the number of documents that have been read but
+ * not yet processed (the queue depth), and a histogram of the time taken to
+ * process each document.<p>
+ *
+ * The latency histogram uses logarithmic buckets: bucket {@code 0} counts
+ * documents that took less than one microsecond, and bucket {@code i} counts
+ * documents that took at least 2<sup>i-1</sup> and less than 2<sup>i</sup>
+ * microseconds.  Percentiles are therefore reported as the upper bound of the
+ * bucket that contains them, which is within a factor of two of the true
+ * value.<p>
+ *
+ * This class is thread-safe.
+ *
+ * @see DocumentScheduler
+ */
+public class DocumentProcessingMetrics {
+
+    /**
+     * The number of buckets in the latency histogram
+     */
+    private static final int NUM_BUCKETS = 64;
+
+    /**
+     * The number of documents for which processing has finished, successfully
+     * or not
+     */
+    private final AtomicLong processed;
+
+    /**
+     * The number of documents whose processing threw an exception
+     */
+    private final AtomicLong failed;
+
+    /**
+     * The number of documents that have been read but not yet processed
+     */
+    private final AtomicInteger queueDepth;
+
+    /**
+     * The largest observed value of {@link #queueDepth}
+     */
+    private final AtomicInteger maxQueueDepth;
+
+    /**
+     * The sum of the processing time of all documents in nanoseconds
+     */
+    private final AtomicLong totalLatency;
+
+    /**
+     * The number of documents in each latency bucket
+     */
+    private final AtomicLongArray latencyHistogram;
+
+    /**
+     * The value of {@link System#nanoTime()} when processing started, or
+     * {@code 0} if it has not started
+     */
+    private volatile long startTime;
+
+    /**
+     * The value of {@link System#nanoTime()} when processing finished, or
+     * {@code 0} if it has not finished
+     */
+    private volatile long endTime;
+
+    /**
+     * Creates an empty set of metrics.
+     */
+    public DocumentProcessingMetrics() {
+        processed = new AtomicLong();
+        failed = new AtomicLong();
+        queueDepth = new AtomicInteger();
+        maxQueueDepth = new AtomicInteger();
+        totalLatency = new AtomicLong();
+        latencyHistogram = new AtomicLongArray(NUM_BUCKETS);
+    }
+
+    /**
+     * Records that processing has started.
+     */
+    public void started() {
+        startTime = System.nanoTime();
+        endTime = 0;
+    }
+
+    /**
+     * Records that processing has finished.
+     */
+    public void finished() {
+        endTime = System.nanoTime();
+    }
+
+    /**
+     * Records that the specified number of documents have been read and are
+     * waiting to be processed.
+     */
+    public void documentsQueued(int numDocuments) {
+        int depth = queueDepth.addAndGet(numDocuments);
+        int max;
+        while (depth > (max = maxQueueDepth.get())
+                   && !maxQueueDepth.compareAndSet(max, depth))
+            ;
+    }
+
+    /**
+     * Records that a queued document has been processed.
+     *
+     * @param latencyNanos the time taken to process the document in
+     *        nanoseconds
+     * @param succeeded {@code false} if processing the document threw an
+     *        exception
+     */
+    public void documentProcessed(long latencyNanos, boolean succeeded) {
+        queueDepth.decrementAndGet();
+        processed.incrementAndGet();
+        if (!succeeded)
+            failed.incrementAndGet();
+        totalLatency.addAndGet(latencyNanos);
+        latencyHistogram.incrementAndGet(bucketFor(latencyNanos));
+    }
+
+    /**
+     * Returns the latency histogram bucket for the number of nanoseconds.
+     */
+    static int bucketFor(long latencyNanos) {
+        long micros = latencyNanos / 1000;
+        return (micros <= 0) 
+            ? 0 
+            : Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    /**
+     * Returns the number of documents that have been processed.
+     */
+    public long getDocumentsProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Returns the number of documents whose processing threw an exception.
+     */
+    public long getFailures() {
+        return failed.get();
+    }
+
+    /**
+     * Returns the number of seconds since processing started, or the total
+     * processing time if it has finished.
+     */
+    public double getElapsedSeconds() {
+        long start = startTime;
+        if (start == 0)
+            return 0;
+        long end = endTime;
+        return (((end == 0) ? System.nanoTime() : end) - start) / 1e9;
+    }
+
+    /**
+     * Returns the counts of the latency histogram's buckets.
+     */
+    public long[] getLatencyHistogram() {
+        long[] counts = new long[NUM_BUCKETS];
+        for (int i = 0; i < NUM_BUCKETS; ++i)
+            counts[i] = latencyHistogram.get(i);
+        return counts;
+    }
+
+    /**
+     * Returns the upper bound, in milliseconds, of the latency bucket that
+     * contains the specified percentile of documents.
+     *
+     * @param percentile a value in {@code (0, 100]}
+     */
+    public double getLatencyPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100)
+            throw new IllegalArgumentException(
+                "Percentile must be in (0, 100]: " + percentile);
+        long[] counts = getLatencyHistogram();
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        if (total == 0)
+            return 0;
+        long rank = (long)Math.ceil(total * percentile / 100);
+        long seen = 0;
+        int bucket = 0;
+        for (; bucket < NUM_BUCKETS - 1; ++bucket) {
+            seen += counts[bucket];
+            if (seen >= rank)
+                break;
+        }
+        // Bucket i contains latencies less than 2^i microseconds
+        return Math.pow(2, bucket) / 1000d;
+    }
+
+    /**
+     * Returns the largest number of documents that were waiting to be
+     * processed at once.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * Returns the mean time taken to process a document in milliseconds.
+     */
+    public double getMeanLatency() {
+        long n = processed.get();
+        return (n == 0) ? 0 : totalLatency.get() / (n * 1e6);
+    }
+
+    /**
+     * Returns the number of documents that have been read but not yet
+     * processed.
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Returns the number of documents processed per second.
+     */
+    public double getThroughput() {
+        double seconds = getElapsedSeconds();
+        return (seconds == 0) ? 0 : processed.get() / seconds;
+    }
+
+    /**
+     * Returns a summary of the metrics.
+     */
+    public String toString() {
+        return String.format(
+            "%d documents (%d failed) in %.3f seconds, %.1f documents/second, "
+            + "latency mean %.3f ms, p50 < %.3f ms, p90 < %.3f ms, "
+            + "p99 < %.3f ms, max queue depth %d",
+            getDocumentsProcessed(), getFailures(), getElapsedSeconds(), 
+            getThroughput(), getMeanLatency(), getLatencyPercentile(50),
+            getLatencyPercentile(90), getLatencyPercentile(99),
+            getMaxQueueDepth());
+    }
+}
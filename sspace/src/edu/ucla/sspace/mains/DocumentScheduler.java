@@ -0,0 +1,64 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.mains;
+
+import edu.ucla.sspace.common.SemanticSpace;
+
+import edu.ucla.sspace.text.Document;
+
+import java.util.Iterator;
+
+
+/**
+ * An interface for strategies that distribute the processing of documents
+ * among multiple threads.  A {@link GenericMain} uses a scheduler to call
+ * {@link SemanticSpace#processDocument(java.io.BufferedReader)
+ * processDocument} once for every document, which allows the threading model
+ * to be selected from the command line without changing the main.<p>
+ *
+ * Implementations must have a public no-argument constructor so that they may
+ * be loaded by name.
+ *
+ * @see GenericMain
+ * @see DocumentProcessingMetrics
+ */
+public interface DocumentScheduler {
+
+    /**
+     * Processes every document returned by the iterator using the semantic
+     * space, returning once all of the documents have been processed.  An
+     * error in processing one document does not prevent the remaining
+     * documents from being processed.
+     *
+     * @param sspace the space to build
+     * @param documents the documents to process
+     * @param numThreads the number of threads to use
+     * @param metrics the metrics to update as documents are processed
+     *
+     * @throws InterruptedException if the calling thread is interrupted while
+     *         waiting for the documents to be processed
+     */
+    void processDocuments(SemanticSpace sspace, 
+                          Iterator<Document> documents,
+                          int numThreads,
+                          DocumentProcessingMetrics metrics) 
+        throws InterruptedException;
+}
@@ -31,6 +31,7 @@ import edu.ucla.sspace.text.Document;
 import edu.ucla.sspace.text.FileListDocumentIterator;
 import edu.ucla.sspace.text.IteratorFactory;
 import edu.ucla.sspace.text.OneLinePerDocumentIterator;
+import edu.ucla.sspace.text.ParallelOneLinePerDocumentIterator;
 
 import edu.ucla.sspace.util.CombinedIterator;
 import edu.ucla.sspace.util.LimitedIterator;
@@ -49,8 +50,6 @@ import java.util.LinkedList;
 import java.util.Properties;
 import java.util.Set;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -91,7 +90,19 @@ import java.util.logging.Logger;
  *
  *   <li> {@code -t}, {@code --threads=INT} how many threads to use when
  *        processing the documents.  The default is one per core.
+ *
+ *   <li> {@code -Q}, {@code --readerThreads=INT} how many threads to use when
+ *        reading each {@code --docFile}.  If specified, each file is split
+ *        into ranges that are read concurrently using a {@link
+ *        ParallelOneLinePerDocumentIterator}, which does not preserve the
+ *        order of the documents.  By default, each file is read sequentially.
  * 
+ *   <li> {@code -X}, {@code --scheduler=CLASSNAME} the {@link
+ *        DocumentScheduler} used to process the documents with multiple
+ *        threads.  The default is a {@link WorkStealingDocumentScheduler}; the
+ *        {@link ThreadedDocumentScheduler} may be used to process documents as
+ *        done previously.
+ *
  *   <li> {@code -w}, {@code --overwrite=BOOL} specifies whether to overwrite
  *        the existing output files.  The default is {@code true}.  If set to
  *        {@code false}, a unique integer is inserted into the file name.
@@ -131,6 +142,11 @@ public abstract class GenericMain {
      */
     protected final boolean isMultiThreaded;
 
+    /**
+     * The metrics of the most recent multi-threaded processing of documents
+     */
+    private DocumentProcessingMetrics documentMetrics;
+
     public GenericMain() {
         this(true);
     }
@@ -258,6 +274,14 @@ public abstract class GenericMain {
             options.addOption('t', "threads", "the number of threads to use",
                               true, "INT", "Program Options");
         }
+        options.addOption('Q', "readerThreads", "the number of threads to " +
+                          "use when reading each document file (default: " +
+                          "read sequentially)", true, "INT", 
+                          "Program Options");
+        options.addOption('X', "scheduler", "the DocumentScheduler used " +
+                          "to process documents with multiple threads " +
+                          "(default: WorkStealingDocumentScheduler)",
+                          true, "CLASSNAME", "Program Options");
         options.addOption('w', "overwrite", "specifies whether to " +
                           "overwrite the existing output", true, "BOOL",
                           "Program Options");
@@ -347,12 +371,21 @@ public abstract class GenericMain {
 
     /**
      * Adds a {@link OneLinePerDocumentIterator} to {@code docIters} for each
-     * file name provided.
+     * file name provided, or a {@link ParallelOneLinePerDocumentIterator} if
+     * the {@code --readerThreads} option was specified.
      */
     protected void addDocIterators(Collection<Iterator<Document>> docIters,
                                    String[] fileNames) throws IOException {
-        for (String s : fileNames)
-            docIters.add(new OneLinePerDocumentIterator(s));
+        if (argOptions.hasOption("readerThreads")) {
+            int readerThreads = argOptions.getIntOption("readerThreads");
+            for (String s : fileNames)
+                docIters.add(new ParallelOneLinePerDocumentIterator(
+                    new File(s), readerThreads));
+        }
+        else {
+            for (String s : fileNames)
+                docIters.add(new OneLinePerDocumentIterator(s));
+        }
     }
 
     /**
@@ -544,9 +577,9 @@ public abstract class GenericMain {
 
     /**
      * Calls {@link SemanticSpace#processDocument(BufferedReader)
-     * processDocument} once for every document in {@code docIter} using a the
-     * specified number thread to call {@code processSpace} on the {@code
-     * SemanticSpace} instance.
+     * processDocument} once for every document in {@code docIter} using the
+     * {@link DocumentScheduler} returned by {@link #getDocumentScheduler()}
+     * with the specified number of threads.
      *
      * @param sspace the space to build
      * @param docIter an iterator over all the documents to process
@@ -557,49 +590,43 @@ public abstract class GenericMain {
                                                int numThreads)        
         throws IOException, InterruptedException {
 
-        Collection<Thread> threads = new LinkedList<Thread>();
+        DocumentScheduler scheduler = getDocumentScheduler();
+        documentMetrics = new DocumentProcessingMetrics();
 
-        final AtomicInteger count = new AtomicInteger(0);
-        
-        for (int i = 0; i < numThreads; ++i) {
-            Thread t = new Thread() {
-                public void run() {
-                    // repeatedly try to process documents while some still
-                    // remain
-                    while (docIter.hasNext()) {
-                        long startTime = System.currentTimeMillis();
-                        Document doc = docIter.next();
-                        int docNumber = count.incrementAndGet();
-                        int terms = 0;
-                        try {
-                            sspace.processDocument(doc.reader());
-                        } catch (Throwable t) {
-                            t.printStackTrace();
-                        }
-                        long endTime = System.currentTimeMillis();
-                        verbose("parsed document #%d in %.3f seconds",
-                                docNumber, ((endTime - startTime) / 1000d));
-                    }
-                }
-            };
-            threads.add(t);
-        }
+        verbose("Beginning processing using %d threads with %s", numThreads,
+                scheduler.getClass().getSimpleName());
 
-        long processStart = System.currentTimeMillis();
-        
-        // start all the threads processing
-        for (Thread t : threads)
-            t.start();
+        scheduler.processDocuments(sspace, docIter, numThreads, 
+                                   documentMetrics);
 
-        verbose("Beginning processing using %d threads", numThreads);
+        verbose("Processed all %d documents in %.3f total seconds",
+                documentMetrics.getDocumentsProcessed(),
+                documentMetrics.getElapsedSeconds());
+        verbose("Document processing: %s", documentMetrics);
+    }
 
-        // wait until all the documents have been parsed
-        for (Thread t : threads)
-            t.join();
+    /**
+     * Returns the {@link DocumentScheduler} used to process documents with
+     * multiple threads.  This is the class named by the {@code --scheduler}
+     * option if specified, or a {@link WorkStealingDocumentScheduler}
+     * otherwise.  Subclasses may override this method to use a different
+     * scheduler.
+     */
+    protected DocumentScheduler getDocumentScheduler() {
+        return (argOptions.hasOption("scheduler"))
+            ? ReflectionUtil.<DocumentScheduler>getObjectInstance(
+                  argOptions.getStringOption("scheduler"))
+            : new WorkStealingDocumentScheduler();
+    }
 
-        verbose("Processed all %d documents in %.3f total seconds",
-                count.get(),
-                ((System.currentTimeMillis() - processStart) / 1000d));            
+    /**
+     * Returns the metrics of the most recent call to {@link
+     * #parseDocumentsMultiThreaded(SemanticSpace,Iterator,int)
+     * parseDocumentsMultiThreaded}, or {@code null} if no documents have been
+     * processed with multiple threads.
+     */
+    public DocumentProcessingMetrics getDocumentMetrics() {
+        return documentMetrics;
     }
 
     /**
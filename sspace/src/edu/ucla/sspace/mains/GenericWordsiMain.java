@@ -40,6 +40,7 @@ import edu.ucla.sspace.vector.SparseDoubleVector;
 import edu.ucla.sspace.wordsi.AssignmentReporter;
 import edu.ucla.sspace.wordsi.ContextExtractor;
 import edu.ucla.sspace.wordsi.ContextGenerator;
+import edu.ucla.sspace.wordsi.ContextSegmentStore;
 import edu.ucla.sspace.wordsi.EvaluationWordsi;
 import edu.ucla.sspace.wordsi.GeneralContextExtractor;
 import edu.ucla.sspace.wordsi.StreamingWordsi;
@@ -155,6 +156,11 @@ import java.util.Set;
  *     5 means that up to 5 words before and after a focus word are used to form
  *     the context. (Default: 5).
  *
+ *     </li> {@code -M}, {@code --contextMemoryBudget=INT} Specifies the number
+ *     of megabytes of context vectors that batch clustering may hold in memory
+ *     before writing them to temporary files.  (Default: keep all contexts in
+ *     memory).
+ *
  *   </ul>
  * </li>
  *
@@ -243,6 +249,12 @@ public abstract class GenericWordsiMain extends GenericMain {
                           "after a focus word are used to form the context. " +
                           "(Default: 5)",
                           true, "INT", "Optional");
+        options.addOption('M', "contextMemoryBudget",
+                          "Specifies the number of megabytes of context " +
+                          "vectors that batch clustering may hold in memory " +
+                          "before writing them to temporary files. " +
+                          "(Default: keep all contexts in memory)",
+                          true, "INT", "Optional");
         options.addOption('h', "useHeaderToken", 
                           "Set to true if the first token in a context " +
                           "should be treated as a document header. Note " +
@@ -419,8 +431,13 @@ public abstract class GenericWordsiMain extends GenericMain {
             // clustering implementation.
             Clustering clustering = 
                 ReflectionUtil.getObjectInstance(options.getStringOption('b'));
+            ContextSegmentStore contextStore = (options.hasOption('M'))
+                ? new ContextSegmentStore(
+                      options.getIntOption('M') * 1024L * 1024L)
+                : null;
             return new WaitingWordsi(getAcceptedWords(), getExtractor(), 
-                                     clustering, reporter, numClusters);
+                                     clustering, reporter, numClusters,
+                                     contextStore);
         } else {
             // None of the required options was provided, report an error and
             // exit.
@@ -27,6 +27,7 @@ import edu.ucla.sspace.common.SemanticSpace;
 import edu.ucla.sspace.matrix.Matrices;
 import edu.ucla.sspace.matrix.Matrix;
 import edu.ucla.sspace.matrix.MatrixIO;
+import edu.ucla.sspace.matrix.SVD;
 
 import edu.ucla.sspace.util.CombinedIterator;
 
@@ -323,7 +324,12 @@ public class LRAMain extends GenericMain {
                             " is not an integer: " + userSpecfiedDims);
                     }
                 }
-                Matrix[] usv = lra.computeSVD(sparse_matrix, dimensions);
+                String svdProp = props.getProperty(
+                        LatentRelationalAnalysis.LRA_SVD_ALGORITHM_PROPERTY);
+                SVD.Algorithm alg = (svdProp == null)
+                    ? SVD.Algorithm.SVDLIBC
+                    : SVD.Algorithm.valueOf(svdProp);
+                Matrix[] usv = lra.computeSVD(sparse_matrix, dimensions, alg);
 
                 //Step 10. Compute projection matrix from U and S.
                 projection = Matrices.multiply(usv[0],usv[1]);
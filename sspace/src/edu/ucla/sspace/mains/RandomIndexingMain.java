@@ -96,6 +96,13 @@ import java.util.logging.Logger;
  *        to use for permuting {@code TernaryVector}s, if permutation is
  *        enabled.
  *
+ *   <li> {@code -a}, {@code --bufferedAccumulation=BOOL} whether each thread
+ *        should buffer its semantic changes and merge them in batches, which
+ *        reduces lock contention when running with many threads
+ *
+ *   <li> {@code -A}, {@code --accumulationBufferSize=INT} the maximum number
+ *        of words whose changes a thread buffers before merging them
+ *
  *   </ul>
  *
  * <li><u>Program Options</u>:
@@ -170,6 +177,13 @@ public class RandomIndexingMain extends GenericMain {
         options.addOption('s', "windowSize", "how many words to consider " +
                          "in each direction", true,
                          "INT", "Algorithm Options");
+        options.addOption('a', "bufferedAccumulation", "whether each thread " +
+                          "should buffer semantic changes and merge them in " +
+                          "batches", true, "BOOL", 
+                          "Advanced Algorithm Options");
+        options.addOption('A', "accumulationBufferSize", "the maximum number " +
+                          "of words whose changes are buffered by a thread", 
+                          true, "INT", "Advanced Algorithm Options");
         options.addOption('S', "saveVectors", "save word-to-IndexVector mapping"
                           + " after processing", true,
                           "FILE", "Algorithm Options");
@@ -221,6 +235,18 @@ public class RandomIndexingMain extends GenericMain {
                               argOptions.getStringOption("useSparseSemantics"));
         }
 
+        if (argOptions.hasOption("bufferedAccumulation")) {
+            props.setProperty(
+                    RandomIndexing.USE_BUFFERED_ACCUMULATION_PROPERTY,
+                    argOptions.getStringOption("bufferedAccumulation"));
+        }
+
+        if (argOptions.hasOption("accumulationBufferSize")) {
+            props.setProperty(
+                    RandomIndexing.ACCUMULATION_BUFFER_SIZE_PROPERTY,
+                    argOptions.getStringOption("accumulationBufferSize"));
+        }
+
         return props;
     }
 
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.mains;
+
+import edu.ucla.sspace.common.SemanticSpace;
+
+import edu.ucla.sspace.text.Document;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A {@link DocumentScheduler} that starts one thread per requested thread, each
+ * of which repeatedly takes the next document from the shared iterator until
+ * no documents remain.  This was the behavior of {@link GenericMain} prior to
+ * the introduction of schedulers.  Since each thread takes a single document
+ * at a time, the iterator must be thread-safe.
+ *
+ * @see WorkStealingDocumentScheduler
+ */
+public class ThreadedDocumentScheduler implements DocumentScheduler {
+
+    private static final Logger LOGGER = 
+        Logger.getLogger(ThreadedDocumentScheduler.class.getName());
+
+    /**
+     * {@inheritDoc}
+     */
+    public void processDocuments(final SemanticSpace sspace, 
+                                 final Iterator<Document> docIter,
+                                 int numThreads,
+                                 final DocumentProcessingMetrics metrics) 
+            throws InterruptedException {
+
+        Collection<Thread> threads = new LinkedList<Thread>();
+
+        final AtomicInteger count = new AtomicInteger(0);
+        
+        for (int i = 0; i < numThreads; ++i) {
+            Thread t = new Thread() {
+                public void run() {
+                    // repeatedly try to process documents while some still
+                    // remain
+                    while (docIter.hasNext()) {
+                        long startTime = System.nanoTime();
+                        Document doc = docIter.next();
+                        metrics.documentsQueued(1);
+                        int docNumber = count.incrementAndGet();
+                        boolean succeeded = false;
+                        try {
+                            sspace.processDocument(doc.reader());
+                            succeeded = true;
+                        } catch (Throwable t) {
+                            t.printStackTrace();
+                        }
+                        long elapsed = System.nanoTime() - startTime;
+                        metrics.documentProcessed(elapsed, succeeded);
+                        if (LOGGER.isLoggable(Level.FINE))
+                            LOGGER.fine(String.format(
+                                "parsed document #%d in %.3f seconds",
+                                docNumber, elapsed / 1e9));
+                    }
+                }
+            };
+            threads.add(t);
+        }
+
+        metrics.started();
+        
+        // start all the threads processing
+        for (Thread t : threads)
+            t.start();
+
+        // wait until all the documents have been parsed
+        try {
+            for (Thread t : threads)
+                t.join();
+        } finally {
+            metrics.finished();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.mains;
+
+import edu.ucla.sspace.common.SemanticSpace;
+
+import edu.ucla.sspace.text.Document;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A {@link DocumentScheduler} that processes batches of documents using a
+ * work-stealing {@link ForkJoinPool}.  The calling thread reads documents from
+ * the iterator in batches and submits each batch to the pool as a task that
+ * recursively splits itself in half.  An idle worker can therefore steal half
+ * of the remaining documents of a busy worker's batch, which keeps all of the
+ * workers busy even if a few documents take much longer to process than the
+ * others.<p>
+ *
+ * The number of documents that have been read but not yet processed is
+ * bounded, which provides backpressure: once the bound is reached, the
+ * calling thread stops reading documents until some have been processed.
+ * This limits the memory used for documents whose text is held in memory,
+ * such as those read by a {@link
+ * edu.ucla.sspace.text.OneLinePerDocumentIterator}.  Because only the calling
+ * thread reads from the iterator, the iterator need not be thread-safe.
+ *
+ * @see ThreadedDocumentScheduler
+ */
+public class WorkStealingDocumentScheduler implements DocumentScheduler {
+
+    private static final Logger LOGGER = 
+        Logger.getLogger(WorkStealingDocumentScheduler.class.getName());
+
+    /**
+     * The default number of documents read from the iterator at once
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * The default number of batches per thread that may be read but not yet
+     * processed
+     */
+    public static final int DEFAULT_BATCHES_PER_THREAD = 4;
+
+    /**
+     * The number of documents read from the iterator at once
+     */
+    private final int batchSize;
+
+    /**
+     * The number of batches per thread that may be read but not yet processed
+     */
+    private final int batchesPerThread;
+
+    /**
+     * Creates a scheduler with the default batch size and bound on the number
+     * of documents read ahead of processing.
+     */
+    public WorkStealingDocumentScheduler() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_BATCHES_PER_THREAD);
+    }
+
+    /**
+     * Creates a scheduler that reads {@code batchSize} documents at a time and
+     * allows at most {@code batchesPerThread * batchSize * numThreads}
+     * documents to wait for processing.
+     */
+    public WorkStealingDocumentScheduler(int batchSize, int batchesPerThread) {
+        if (batchSize < 1 || batchesPerThread < 1)
+            throw new IllegalArgumentException(
+                "Batch size and batches per thread must be positive");
+        this.batchSize = batchSize;
+        this.batchesPerThread = batchesPerThread;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void processDocuments(SemanticSpace sspace, 
+                                 Iterator<Document> docIter,
+                                 int numThreads,
+                                 DocumentProcessingMetrics metrics) 
+            throws InterruptedException {
+        int maxInFlight = batchSize * batchesPerThread * numThreads;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicInteger count = new AtomicInteger(0);
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        metrics.started();
+        try {
+            while (docIter.hasNext()) {
+                // Wait for space before reading the batch so that at most
+                // maxInFlight documents are held in memory
+                inFlight.acquire(batchSize);
+                List<Document> batch = new ArrayList<Document>(batchSize);
+                while (batch.size() < batchSize && docIter.hasNext())
+                    batch.add(docIter.next());
+                if (batch.size() < batchSize)
+                    inFlight.release(batchSize - batch.size());
+                if (batch.isEmpty())
+                    break;
+                metrics.documentsQueued(batch.size());
+                pool.execute(new BatchTask(sspace, batch, 0, batch.size(),
+                                           inFlight, count, metrics));
+            }
+            // Wait until every document has been processed
+            inFlight.acquire(maxInFlight);
+        } finally {
+            pool.shutdown();
+            metrics.finished();
+        }
+    }
+
+    /**
+     * A task that processes a contiguous range of a batch of documents,
+     * splitting the range in half until only one document remains.
+     */
+    @SuppressWarnings("serial")
+    private static class BatchTask extends RecursiveAction {
+
+        private final SemanticSpace sspace;
+
+        private final List<Document> batch;
+
+        private final int start;
+
+        private final int end;
+
+        private final Semaphore inFlight;
+
+        private final AtomicInteger count;
+
+        private final DocumentProcessingMetrics metrics;
+
+        public BatchTask(SemanticSpace sspace, List<Document> batch, 
+                         int start, int end, Semaphore inFlight,
+                         AtomicInteger count, 
+                         DocumentProcessingMetrics metrics) {
+            this.sspace = sspace;
+            this.batch = batch;
+            this.start = start;
+            this.end = end;
+            this.inFlight = inFlight;
+            this.count = count;
+            this.metrics = metrics;
+        }
+
+        protected void compute() {
+            if (end - start > 1) {
+                int mid = (start + end) >>> 1;
+                invokeAll(new BatchTask(sspace, batch, start, mid, inFlight,
+                                        count, metrics),
+                          new BatchTask(sspace, batch, mid, end, inFlight,
+                                        count, metrics));
+                return;
+            }
+
+            long startTime = System.nanoTime();
+            Document doc = batch.get(start);
+            // Release the reference so the document's text may be collected
+            // while the rest of the batch is processed
+            batch.set(start, null);
+            int docNumber = count.incrementAndGet();
+            boolean succeeded = false;
+            try {
+                sspace.processDocument(doc.reader());
+                succeeded = true;
+            } catch (Throwable t) {
+                t.printStackTrace();
+            } finally {
+                long elapsed = System.nanoTime() - startTime;
+                metrics.documentProcessed(elapsed, succeeded);
+                inFlight.release();
+                if (LOGGER.isLoggable(Level.FINE))
+                    LOGGER.fine(String.format(
+                        "parsed document #%d in %.3f seconds",
+                        docNumber, elapsed / 1e9));
+            }
+        }
+    }
+}
@@ -21,8 +21,10 @@
 
 package edu.ucla.sspace.matrix;
 
+import edu.ucla.sspace.common.RandomProjectionNearestNeighborFinder;
 import edu.ucla.sspace.common.Similarity;
 import edu.ucla.sspace.common.Similarity.SimType;
+import edu.ucla.sspace.common.VectorMapSemanticSpace;
 
 import edu.ucla.sspace.matrix.MatrixIO.Format;
 import edu.ucla.sspace.matrix.Matrix.Type;
@@ -30,23 +32,33 @@ import edu.ucla.sspace.matrix.Matrix.Type;
 import edu.ucla.sspace.util.BoundedSortedMultiMap;
 import edu.ucla.sspace.util.MultiMap;
 import edu.ucla.sspace.util.Duple;
+import edu.ucla.sspace.util.SortedMultiMap;
+import edu.ucla.sspace.util.WorkQueue;
 
+import edu.ucla.sspace.vector.CompactSparseVector;
 import edu.ucla.sspace.vector.SparseDoubleVector;
 import edu.ucla.sspace.vector.Vector;
 import edu.ucla.sspace.vector.VectorMath;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.InputStreamReader;
 import java.io.IOError;
 import java.io.IOException;
 import java.io.PrintWriter;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -63,8 +75,19 @@ import java.util.logging.Logger;
  * matrix should be computed both in terms of the number of neighbors and the
  * weights of the edges to those neighbors.
  *
- * <p> Due to the full density of the affinity matrix, the matrix is always
- * written to disk, rather than stored in memory.  This class also provides
+ * <p> The {@link #calculateInMemory(Matrix,SimType,EdgeType,double,
+ * EdgeWeighting,double,NeighborSearch) calculateInMemory} methods return the
+ * affinity matrix as a {@link SparseMatrix}.  The rows are divided into blocks
+ * that are compared in parallel, and each block of rows is compared with each
+ * other row in turn so that the other row is only accessed once per block.
+ * When the {@code k} nearest neighbors are found using {@link
+ * SimType#COSINE}, the neighbors are found with a {@link
+ * BlockedRowComparator}.  The nearest neighbors may also be approximated with
+ * a {@link RandomProjectionNearestNeighborFinder}, which avoids comparing all
+ * pairs of rows.
+ *
+ * <p> The {@code calculate} methods write the affinity matrix to disk, in the
+ * {@link Format#MATLAB_SPARSE MATLAB_SPARSE} format.  This class also provides
  * support for computing the affinity matrix off-core, i.e. without needing to
  * load the matrix entirely into memory.  If the off-core method is specified,
  * the returned matrix will also be on disk.
@@ -129,9 +152,54 @@ public class AffinityMatrixCreator {
         COSINE_SIMILARITY,
     }
 
+    /**
+     * Methods for finding the nearest neighbors of each row when the {@link
+     * EdgeType#NEAREST_NEIGHBORS} edge type is used.
+     */
+    public enum NeighborSearch {
+        /**
+         * Each row is compared with every other row, which finds the exact
+         * nearest neighbors.
+         */
+        EXACT,
+
+        /**
+         * Each row is only compared with the rows that share a bucket with it
+         * in a {@link RandomProjectionNearestNeighborFinder}.  The neighbors
+         * are approximate, but far fewer rows are compared.  The hash
+         * signatures approximate the angle between rows, so the neighbors are
+         * most accurate with {@link SimType#COSINE}.
+         */
+        RANDOM_PROJECTION
+    }
+
     private static final Logger LOGGER = 
 	Logger.getLogger(AffinityMatrixCreator.class.getName());
 
+    /**
+     * The number of rows whose affinities are computed as a single task
+     */
+    private static final int ROW_BLOCK_SIZE = 64;
+
+    /**
+     * The seed used to generate the hyperplanes when approximating the nearest
+     * neighbors, which makes the affinity matrix reproducible
+     */
+    private static final long RANDOM_PROJECTION_SEED = 0;
+
+    /**
+     * The minimum expected number of rows in each bucket of the approximate
+     * nearest neighbor index, as a multiple of the number of neighbors
+     */
+    private static final int MIN_ROWS_PER_BUCKET = 4;
+
+    /**
+     * The comparator used to find the exact nearest neighbors by cosine
+     * similarity
+     */
+    private static final BlockedRowComparator COSINE_COMPARATOR =
+        new BlockedRowComparator();
+
     private AffinityMatrixCreator() {}
 
     /**
@@ -165,70 +233,361 @@ public class AffinityMatrixCreator {
                                        double edgeTypeParam,
                                        EdgeWeighting weighting,
                                        double edgeWeightParam) {
+        SparseMatrix affinities = calculateInMemory(
+            input, dataSimilarityMetric, edgeType, edgeTypeParam,
+            weighting, edgeWeightParam);
         try {
             File affMatrixFile = 
                 File.createTempFile("affinty-matrix",".dat");
-            PrintWriter affMatrixWriter = new PrintWriter(affMatrixFile);
-            
-            int rows = input.rows();
-            LOGGER.fine("Calculating the affinity matrix");
-            switch (edgeType) {
-            case NEAREST_NEIGHBORS: {
-                RowComparator rc = new RowComparator();
-                for (int i = 0; i < rows; ++i) {
-                    LOGGER.fine("computing affinity for row " + i);
-                    MultiMap<Double,Integer> neighborMap = 
-                        rc.getMostSimilar(input, i, (int)edgeTypeParam, 
-                                          dataSimilarityMetric);
-                    Vector row = input.getRowVector(i);
-                    for (int n : neighborMap.values()) {
-                        double edgeWeight = 
-                            getWeight(row, input.getRowVector(n),
-                                      weighting, edgeWeightParam);
-                        affMatrixWriter.println((i + 1) +  " " 
-                                                + (n + 1) + " " +edgeWeight);
+            writeMatlabSparse(affinities, affMatrixFile);
+            return new MatrixFile(affMatrixFile, MatrixIO.Format.MATLAB_SPARSE);
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+    }
+
+    /**
+     * Computes the affinity matrix for the input matrix according to the
+     * specified similarity metrics, returning the result as a sparse matrix in
+     * memory.  The exact nearest neighbors are found if the {@link
+     * EdgeType#NEAREST_NEIGHBORS} edge type is used.
+     *
+     * @see #calculateInMemory(Matrix,SimType,EdgeType,double,EdgeWeighting,
+     *      double,NeighborSearch)
+     */
+    public static SparseMatrix calculateInMemory(Matrix input,
+                                                 SimType dataSimilarityMetric,
+                                                 EdgeType edgeType,
+                                                 double edgeTypeParam,
+                                                 EdgeWeighting weighting,
+                                                 double edgeWeightParam) {
+        return calculateInMemory(input, dataSimilarityMetric, edgeType,
+                                 edgeTypeParam, weighting, edgeWeightParam,
+                                 NeighborSearch.EXACT);
+    }
+
+    /**
+     * Computes the affinity matrix for the input matrix according to the
+     * specified similarity metrics, returning the result as a sparse matrix in
+     * memory.  Blocks of rows are compared in parallel, so the input matrix
+     * must support concurrent reads.
+     *
+     * @param dataSimilarityMetric the metric by which two data points should be
+     *        compared when constructing the affinity matrix.
+     * @param edgeType the process to use when deciding whether two data points
+     *        are connected by an edge in the affinity matrix.
+     * @param edgeTypeParam an optional parameter to the {@link EdgeType}
+     *        selection process.  If the selected {@code EdgeType} does not take
+     *        a parameter, this value is unused.
+     * @param weighting the weighting scheme to use for edges in the affinity
+     *        matrix
+     * @param edgeWeightParam an optional parameter to the {@link EdgeWeighting}
+     *        when deciding on the weighting for an edge.  If the selected
+     *        {@code EdgeWeight} does not take a parameter, this value is
+     *        unused.
+     * @param search the method used to find the nearest neighbors of each
+     *        row, which is only used with {@link EdgeType#NEAREST_NEIGHBORS}
+     *
+     * @return the affinity matrix, whose rows and columns correspond to the
+     *         rows of the input matrix
+     */
+    public static SparseMatrix calculateInMemory(Matrix input,
+                                                 SimType dataSimilarityMetric,
+                                                 EdgeType edgeType,
+                                                 double edgeTypeParam,
+                                                 EdgeWeighting weighting,
+                                                 double edgeWeightParam,
+                                                 NeighborSearch search) {
+        int rows = input.rows();
+        SparseDoubleVector[] affinities = new SparseDoubleVector[rows];
+        LOGGER.fine("Calculating the affinity matrix");
+        switch (edgeType) {
+        case NEAREST_NEIGHBORS: {
+            int k = (int)edgeTypeParam;
+            if (k < 1)
+                throw new IllegalArgumentException(
+                    "Must request at least one neighbor: " + edgeTypeParam);
+            int[][] neighbors = (search == NeighborSearch.RANDOM_PROJECTION)
+                ? findApproximateNeighbors(input, k, dataSimilarityMetric)
+                : findNeighbors(input, k, dataSimilarityMetric);
+            weightNeighbors(input, neighbors, weighting, edgeWeightParam,
+                            affinities);
+            break;
+        }
+        case MIN_SIMILARITY:
+            findSimilarRows(input, dataSimilarityMetric, edgeTypeParam,
+                            weighting, edgeWeightParam, affinities);
+            break;
+        default:
+            assert false : 
+                "Cannot construct matrix due to unknown edge type: " + edgeType;
+        }
+        return Matrices.asSparseMatrix(Arrays.asList(affinities), rows);
+    }
+
+    /**
+     * Runs a task for each block of {@value #ROW_BLOCK_SIZE} rows and waits
+     * for all of them to finish.
+     */
+    private static void runBlocks(int rows, final BlockTask task) {
+        Collection<Runnable> tasks = new ArrayList<Runnable>();
+        for (int start = 0; start < rows; start += ROW_BLOCK_SIZE) {
+            final int block = start / ROW_BLOCK_SIZE;
+            final int blockStart = start;
+            final int blockEnd = Math.min(start + ROW_BLOCK_SIZE, rows);
+            tasks.add(new Runnable() {
+                    public void run() {
+                        task.run(block, blockStart, blockEnd);
+                    }
+                });
+        }
+        WorkQueue.getWorkQueue().run(tasks);
+    }
+
+    /**
+     * Returns the rows of the matrix from {@code start}, inclusive, to {@code
+     * end}, exclusive.
+     */
+    private static Vector[] getRows(Matrix m, int start, int end) {
+        Vector[] vectors = new Vector[end - start];
+        for (int i = start; i < end; ++i)
+            vectors[i - start] = m.getRowVector(i);
+        return vectors;
+    }
+
+    /**
+     * Returns the {@code k} rows most similar to each row, in increasing
+     * order, by comparing every pair of rows.
+     */
+    private static int[][] findNeighbors(final Matrix input, final int k,
+                                         final SimType similarity) {
+        final int rows = input.rows();
+        final int[][] neighbors = new int[rows][];
+        if (similarity == SimType.COSINE) {
+            // Like the pairwise comparisons below, the comparator reports k
+            // neighbors for every row, even if some have a similarity of zero
+            COSINE_COMPARATOR.getMostSimilar(input, k, 
+                new BlockedRowComparator.NeighborHandler() {
+                    public void handle(int row, 
+                                       SortedMultiMap<Double,Integer> sim) {
+                        int[] n = new int[sim.range()];
+                        int i = 0;
+                        for (Integer other : sim.values())
+                            n[i++] = other;
+                        Arrays.sort(n);
+                        neighbors[row] = n;
                     }
+                });
+            return neighbors;
+        }
+        
+        runBlocks(rows, new BlockTask() {
+                public void run(int block, int start, int end) {
+                    Vector[] queries = getRows(input, start, end);
+                    BlockedRowComparator.TopK[] heaps = 
+                        new BlockedRowComparator.TopK[end - start];
+                    for (int i = 0; i < heaps.length; ++i)
+                        heaps[i] = new BlockedRowComparator.TopK(k);
+                    // Load each other row once for the whole block
+                    for (int j = 0; j < rows; ++j) {
+                        Vector other = input.getRowVector(j);
+                        for (int i = start; i < end; ++i) {
+                            if (i == j)
+                                continue;
+                            heaps[i - start].offer(Similarity.getSimilarity(
+                                similarity, queries[i - start], other), j);
+                        }
+                    }
+                    for (int i = start; i < end; ++i)
+                        neighbors[i] = heaps[i - start].getRows();
                 }
-                break;
-            }
-            case MIN_SIMILARITY: {
-                for (int i = 0; i < rows; ++i) {
-                    LOGGER.fine("computing affinity for row " + i);
-                    Vector row1 = input.getRowVector(i);
-                    // NOTE: we can compute the upper triangular and report the
-                    // symmetric values.
-                    for (int j = i+1; j < rows; ++j) {
-                        Vector row2 = input.getRowVector(j);
-
-                        double dataSimilarity = Similarity.getSimilarity(
-                            dataSimilarityMetric, row1, row2);
+            });
+        return neighbors;
+    }
 
-                        if (dataSimilarity > edgeTypeParam) {
-                            double edgeWeight = 
-                                getWeight(row1, row2, 
-                                          weighting, edgeWeightParam);
-                            // Print out the symmetric edges
-                            affMatrixWriter.println(
-                                (i + 1) + " " + (j + 1) + " " + edgeWeight);
-                            affMatrixWriter.println(
-                                (j + 1) + " " + (i + 1) + " " + edgeWeight);
+    /**
+     * Returns approximately the {@code k} rows most similar to each row, in
+     * increasing order, by only comparing the rows that are hashed to the same
+     * buckets by a {@link RandomProjectionNearestNeighborFinder}.
+     */
+    private static int[][] findApproximateNeighbors(Matrix input, final int k,
+                                                    final SimType similarity) {
+        int rows = input.rows();
+        // Index the rows as the "words" of a semantic space, where each row's
+        // word is its number
+        Map<String,Vector> rowMap = new HashMap<String,Vector>(rows * 2);
+        for (int r = 0; r < rows; ++r)
+            rowMap.put(String.valueOf(r), input.getRowVector(r));
+        final RandomProjectionNearestNeighborFinder finder =
+            new RandomProjectionNearestNeighborFinder(
+                new VectorMapSemanticSpace<Vector>(
+                    rowMap, "affinity-rows", input.columns()),
+                RandomProjectionNearestNeighborFinder.DEFAULT_NUM_TABLES,
+                getBitsPerTable(rows, k), RANDOM_PROJECTION_SEED,
+                WorkQueue.getWorkQueue().numThreads());
+
+        final int[][] neighbors = new int[rows][];
+        runBlocks(rows, new BlockTask() {
+                public void run(int block, int start, int end) {
+                    for (int i = start; i < end; ++i) {
+                        SortedMultiMap<Double,String> sim = 
+                            finder.getMostSimilar(String.valueOf(i), k,
+                                                  similarity);
+                        int[] n = new int[sim.range()];
+                        int j = 0;
+                        for (String other : sim.values())
+                            n[j++] = Integer.parseInt(other);
+                        Arrays.sort(n);
+                        neighbors[i] = n;
+                    }
+                }
+            });
+        return neighbors;
+    }
+
+    /**
+     * Returns the number of bits in each hash table's signature such that
+     * each bucket is expected to contain at least {@value
+     * #MIN_ROWS_PER_BUCKET} times as many rows as the number of neighbors.
+     * Smaller matrices would otherwise have almost every row in its own
+     * bucket.
+     */
+    private static int getBitsPerTable(int rows, int k) {
+        int buckets = rows / (MIN_ROWS_PER_BUCKET * k);
+        int bits = 31 - Integer.numberOfLeadingZeros(Math.max(buckets, 2));
+        return Math.min(bits, 
+            RandomProjectionNearestNeighborFinder.DEFAULT_BITS_PER_TABLE);
+    }
+
+    /**
+     * Creates the affinity vector for each row from the weights of the edges
+     * to its neighbors.
+     */
+    private static void weightNeighbors(final Matrix input, 
+                                        final int[][] neighbors,
+                                        final EdgeWeighting weighting,
+                                        final double edgeWeightParam,
+                                        final SparseDoubleVector[] affinities) {
+        final int rows = input.rows();
+        runBlocks(rows, new BlockTask() {
+                public void run(int block, int start, int end) {
+                    for (int i = start; i < end; ++i) {
+                        Vector row = input.getRowVector(i);
+                        int[] n = neighbors[i];
+                        double[] weights = new double[n.length];
+                        for (int j = 0; j < n.length; ++j)
+                            weights[j] = getWeight(
+                                row, input.getRowVector(n[j]), 
+                                weighting, edgeWeightParam);
+                        affinities[i] = new CompactSparseVector(
+                            n, weights, rows);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Creates the affinity vector for each row by connecting it to every
+     * other row whose similarity is greater than the threshold.  Since the
+     * similarity is symmetric, each block of rows is only compared with the
+     * rows after it.
+     */
+    private static void findSimilarRows(final Matrix input,
+                                        final SimType similarity,
+                                        final double threshold,
+                                        final EdgeWeighting weighting,
+                                        final double edgeWeightParam,
+                                        SparseDoubleVector[] affinities) {
+        final int rows = input.rows();
+        int numBlocks = (rows + ROW_BLOCK_SIZE - 1) / ROW_BLOCK_SIZE;
+        final EdgeList[] blockEdges = new EdgeList[numBlocks];
+        runBlocks(rows, new BlockTask() {
+                public void run(int block, int start, int end) {
+                    Vector[] queries = getRows(input, start, end);
+                    EdgeList edges = new EdgeList();
+                    // Load each later row once for the whole block, which
+                    // also adds the edges of each row in column order
+                    for (int j = start + 1; j < rows; ++j) {
+                        Vector other = input.getRowVector(j);
+                        int last = Math.min(end, j);
+                        for (int i = start; i < last; ++i) {
+                            Vector row = queries[i - start];
+                            double dataSimilarity = Similarity.getSimilarity(
+                                similarity, row, other);
+                            if (dataSimilarity > threshold) 
+                                edges.add(i, j, getWeight(
+                                    row, other, weighting, edgeWeightParam));
                         }
                     }
+                    blockEdges[block] = edges;
                 }
-                break;
+            });
+
+        // Count the edges of each row so that their arrays can be allocated
+        // exactly
+        int[] degree = new int[rows];
+        for (EdgeList edges : blockEdges) {
+            for (int e = 0; e < edges.size; ++e) {
+                degree[edges.from[e]]++;
+                degree[edges.to[e]]++;
             }
-            default:
-                assert false : 
-                "Cannot construct matrix due to unknown edge type: " + edgeType;
+        }
+        int[][] columns = new int[rows][];
+        double[][] values = new double[rows][];
+        for (int r = 0; r < rows; ++r) {
+            columns[r] = new int[degree[r]];
+            values[r] = new double[degree[r]];
+        }
+        // Add the symmetric edges to the earlier rows first, and then the
+        // edges to the later rows, which leaves each row's columns in
+        // increasing order
+        int[] filled = new int[rows];
+        for (EdgeList edges : blockEdges) {
+            for (int e = 0; e < edges.size; ++e) {
+                int r = edges.to[e];
+                columns[r][filled[r]] = edges.from[e];
+                values[r][filled[r]++] = edges.weights[e];
             }
+        }
+        for (EdgeList edges : blockEdges) {
+            for (int e = 0; e < edges.size; ++e) {
+                int r = edges.from[e];
+                columns[r][filled[r]] = edges.to[e];
+                values[r][filled[r]++] = edges.weights[e];
+            }
+        }
+        for (int r = 0; r < rows; ++r)
+            affinities[r] = new CompactSparseVector(columns[r], values[r], rows);
+    }
 
-            // Finish writing the affinity matrix so it can be sent to matlab
-            affMatrixWriter.close();    
-            return new MatrixFile(affMatrixFile, MatrixIO.Format.MATLAB_SPARSE);
-
-        } catch (IOException ioe) {
-            throw new IOError(ioe);
+    /**
+     * Writes the non-zero values of the affinity matrix to the file in the
+     * {@link Format#MATLAB_SPARSE MATLAB_SPARSE} format.
+     */
+    private static void writeMatlabSparse(SparseMatrix affinities, File file)
+            throws IOException {
+        PrintWriter pw = new PrintWriter(
+            new BufferedWriter(new FileWriter(file)));
+        int rows = affinities.rows();
+        int maxRowSeen = -1;
+        int maxColSeen = -1;
+        for (int r = 0; r < rows; ++r) {
+            SparseDoubleVector row = affinities.getRowVector(r);
+            for (int c : row.getNonZeroIndices()) {
+                pw.println((r + 1) + " " + (c + 1) + " " + row.get(c));
+                maxRowSeen = r;
+                if (c > maxColSeen)
+                    maxColSeen = c;
+            }
         }
+        // Matlab infers the size of a sparse matrix from its largest indices,
+        // so write a zero to extend the matrix if the last row or column has
+        // no edges
+        if (maxRowSeen + 1 != rows || maxColSeen + 1 != rows)
+            pw.println(rows + " " + rows + " 0");
+        pw.close();
+        if (pw.checkError())
+            throw new IOException("Unable to write the affinity matrix");
     }
 
     /**
@@ -505,4 +864,42 @@ public class AffinityMatrixCreator {
             "unhandled edge weighting type: " + w);
     }
 
+    /**
+     * A computation over a block of rows.
+     */
+    private interface BlockTask {
+
+        /**
+         * Processes the rows from {@code start}, inclusive, to {@code end},
+         * exclusive, which are the {@code block}-th block of rows.
+         */
+        void run(int block, int start, int end);
+    }
+
+    /**
+     * A growable list of weighted edges.
+     */
+    private static class EdgeList {
+
+        int[] from = new int[16];
+
+        int[] to = new int[16];
+
+        double[] weights = new double[16];
+
+        int size;
+
+        public void add(int row, int col, double weight) {
+            if (size == from.length) {
+                int newLength = from.length * 2;
+                from = Arrays.copyOf(from, newLength);
+                to = Arrays.copyOf(to, newLength);
+                weights = Arrays.copyOf(weights, newLength);
+            }
+            from[size] = row;
+            to[size] = col;
+            weights[size] = weight;
+            size++;
+        }
+    }
 }
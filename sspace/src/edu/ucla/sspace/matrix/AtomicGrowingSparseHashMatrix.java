@@ -31,6 +31,7 @@ import edu.ucla.sspace.vector.Vectors;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -417,6 +418,32 @@ public class AtomicGrowingSparseHashMatrix
         lockedEntries.remove(e);
     }
 
+    /**
+     * Removes every entry whose row is set in {@code rowsToClear} or whose
+     * column is set in {@code columnsToClear}, which sets those entries to
+     * zero.  The dimensions of the matrix are unchanged.  This operation
+     * requires a scan of all the non-zero entries in the matrix.  Entries that
+     * are concurrently added to the cleared rows or columns may be retained.
+     *
+     * @return the number of entries that were removed
+     */
+    public int clearRowsAndColumns(BitSet rowsToClear, BitSet columnsToClear) {
+        int removed = 0;
+        for (Entry e : matrixEntries.keySet()) {
+            if (!rowsToClear.get(e.row) && !columnsToClear.get(e.col))
+                continue;
+            // Spin waiting for the entry to be unlocked
+            while (lockedEntries.putIfAbsent(e, new Object()) != null)
+                ;
+            if (matrixEntries.remove(e) != null)
+                removed++;
+            lockedEntries.remove(e);
+        }
+        if (removed > 0)
+            modifications.incrementAndGet();
+        return removed;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,649 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.util.BoundedSortedMultiMap;
+import edu.ucla.sspace.util.SortedMultiMap;
+import edu.ucla.sspace.util.WorkQueue;
+
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.SparseVector;
+import edu.ucla.sspace.vector.Vector;
+import edu.ucla.sspace.vector.VectorMath;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+
+/**
+ * A utility class for finding the {@code k} rows with the highest cosine
+ * similarity to every row of a {@link Matrix} or list of vectors.  Unlike
+ * {@link RowComparator}, which compares one pair of rows at a time, this class
+ * normalizes every row once and then computes the similarities of a block of
+ * rows to all other rows as a matrix product, which is much faster when the
+ * neighbors of all rows are needed.<p>
+ *
+ * Dense rows are copied into a single array and compared in blocks of
+ * candidate rows that are sized to fit in the processor's cache, so that each
+ * candidate row is loaded once for a whole block of query rows.  If the copy
+ * would not fit in the available memory, the rows are instead compared where
+ * they are.  Sparse rows are compared using an inverted index from each column
+ * to the rows with a non-zero value in it, so only rows that share at least
+ * one non-zero column with a query row are ever examined; the index is also
+ * traversed in cache-sized blocks of candidate rows.  As with {@link
+ * RowComparator}, rows that share no columns with a sparse query row are still
+ * reported with a similarity of zero if fewer than {@code k} rows are more
+ * similar.<p>
+ *
+ * The {@code k} most similar rows to each row are kept in a bounded heap of
+ * primitive values while the row is being compared.  Results are passed to a
+ * {@link NeighborHandler} in row order as soon as each group of blocks has
+ * finished, so the neighbors of all rows never need to be held in memory at
+ * once.<p>
+ *
+ * All instances of this class are thread-safe.
+ *
+ * @see RowComparator
+ */
+public class BlockedRowComparator {
+
+    /**
+     * An interface for receiving the most similar rows to each row as they are
+     * computed.
+     */
+    public interface NeighborHandler {
+
+        /**
+         * Processes the most similar rows to {@code row}.  This method is
+         * called once for each row, in increasing row order, from the thread
+         * that invoked {@link BlockedRowComparator#getMostSimilar(Matrix,int,
+         * NeighborHandler) getMostSimilar}.
+         *
+         * @param row the row whose neighbors were found
+         * @param mostSimilar a mapping from similarity to the most similar rows
+         */
+        void handle(int row, SortedMultiMap<Double,Integer> mostSimilar);
+    }
+
+    /**
+     * The number of query rows compared as a single task.
+     */
+    private static final int QUERY_BLOCK_SIZE = 64;
+
+    /**
+     * The approximate number of bytes of candidate data that are compared with
+     * a block of query rows before moving on to the next candidates.
+     */
+    private static final int CACHE_BLOCK_BYTES = 1 << 18;
+
+    /**
+     * The work queue on which blocks of rows are compared
+     */
+    private final WorkQueue workQueue;
+
+    /**
+     * Creates this {@code BlockedRowComparator} using the shared {@link
+     * WorkQueue}.
+     */
+    public BlockedRowComparator() {
+        this(WorkQueue.getWorkQueue());
+    }
+
+    /**
+     * Creates this {@code BlockedRowComparator} using the provided work queue
+     * to compare blocks of rows.
+     */
+    public BlockedRowComparator(WorkQueue workQueue) {
+        if (workQueue == null)
+            throw new NullPointerException("workQueue cannot be null");
+        this.workQueue = workQueue;
+    }
+
+    /**
+     * Returns the {@code k} most similar rows to each row of the matrix,
+     * according to cosine similarity.  The returned list contains one mapping
+     * for each row of the matrix.
+     */
+    public List<SortedMultiMap<Double,Integer>> getMostSimilar(Matrix m,
+                                                               int k) {
+        final List<SortedMultiMap<Double,Integer>> mostSimilar =
+            new ArrayList<SortedMultiMap<Double,Integer>>(m.rows());
+        getMostSimilar(m, k, new NeighborHandler() {
+                public void handle(int row,
+                                   SortedMultiMap<Double,Integer> neighbors) {
+                    mostSimilar.add(neighbors);
+                }
+            });
+        return mostSimilar;
+    }
+
+    /**
+     * Finds the {@code k} most similar rows to each row of the matrix,
+     * according to cosine similarity, and passes them to the handler in row
+     * order.
+     */
+    public void getMostSimilar(final Matrix m, int k,
+                               NeighborHandler handler) {
+        List<Vector> rows = new AbstractList<Vector>() {
+            public Vector get(int row) {
+                return m.getRowVector(row);
+            }
+            public int size() {
+                return m.rows();
+            }
+        };
+        getMostSimilar(rows, k, handler);
+    }
+
+    /**
+     * Finds the {@code k} most similar vectors to each vector in the list,
+     * according to cosine similarity, and passes them to the handler in the
+     * order of the list.  The row numbers passed to the handler are the
+     * indices of the vectors in the list.  All vectors must have the same
+     * length.
+     */
+    public void getMostSimilar(List<? extends Vector> vectors, int k,
+                               NeighborHandler handler) {
+        boolean copyDense = vectors.isEmpty()
+            || fitsInMemory(vectors.size(), vectors.get(0).length());
+        getMostSimilar(vectors, k, handler, copyDense);
+    }
+
+    /**
+     * Finds the most similar vectors to each vector in the list, copying dense
+     * vectors into a single array only if {@code copyDense} is {@code true}.
+     */
+    void getMostSimilar(List<? extends Vector> vectors, int k,
+                        NeighborHandler handler, boolean copyDense) {
+        if (k < 1)
+            throw new IllegalArgumentException(
+                "Must request at least one neighbor: " + k);
+        if (vectors.isEmpty())
+            return;
+
+        boolean isSparse = true;
+        for (Vector v : vectors) {
+            if (!(v instanceof SparseVector)) {
+                isSparse = false;
+                break;
+            }
+        }
+        NormalizedRows rows = null;
+        if (isSparse)
+            rows = new SparseRows(vectors);
+        else if (copyDense)
+            rows = new DenseRows(vectors);
+        else
+            rows = new VectorRows(vectors);
+        compareAll(rows, k, handler);
+    }
+
+    /**
+     * Returns {@code true} if the values of a {@code rows} by {@code cols}
+     * matrix can be copied into a single array that uses at most half of the
+     * memory that is still available.
+     */
+    static boolean fitsInMemory(int rows, int cols) {
+        long size = (long)rows * cols;
+        if (size > Integer.MAX_VALUE - 8)
+            return false;
+        Runtime r = Runtime.getRuntime();
+        long available = r.maxMemory() - (r.totalMemory() - r.freeMemory());
+        return size * 8 <= available / 2;
+    }
+
+    /**
+     * Compares all of the rows, processing the query blocks in groups so that
+     * the results can be passed to the handler in order without holding the
+     * results for every row.
+     */
+    private void compareAll(final NormalizedRows rows, final int k,
+                            NeighborHandler handler) {
+        int numRows = rows.numRows();
+        int numBlocks = (numRows + QUERY_BLOCK_SIZE - 1) / QUERY_BLOCK_SIZE;
+        int blocksPerGroup = workQueue.numThreads() * 4;
+
+        for (int group = 0; group < numBlocks; group += blocksPerGroup) {
+            int groupEnd = Math.min(group + blocksPerGroup, numBlocks);
+            final TopK[][] results = new TopK[groupEnd - group][];
+            Collection<Runnable> tasks = new ArrayList<Runnable>();
+            for (int b = group; b < groupEnd; ++b) {
+                final int index = b - group;
+                final int start = b * QUERY_BLOCK_SIZE;
+                final int end = Math.min(start + QUERY_BLOCK_SIZE, numRows);
+                tasks.add(new Runnable() {
+                        public void run() {
+                            TopK[] heaps = new TopK[end - start];
+                            for (int i = 0; i < heaps.length; ++i)
+                                heaps[i] = new TopK(k);
+                            rows.compare(start, end, heaps);
+                            results[index] = heaps;
+                        }
+                    });
+            }
+            workQueue.run(tasks);
+
+            for (int b = group; b < groupEnd; ++b) {
+                TopK[] heaps = results[b - group];
+                int start = b * QUERY_BLOCK_SIZE;
+                for (int i = 0; i < heaps.length; ++i)
+                    handler.handle(start + i, heaps[i].toMultiMap());
+            }
+        }
+    }
+
+    /**
+     * A bounded min-heap of row indices ordered by their similarity, which
+     * retains the rows with the {@code k} highest similarities.
+     */
+    static class TopK {
+
+        private final double[] similarities;
+
+        private final int[] rows;
+
+        private int size;
+
+        public TopK(int k) {
+            similarities = new double[k];
+            rows = new int[k];
+            size = 0;
+        }
+
+        /**
+         * Adds the row if its similarity is among the {@code k} highest seen
+         * so far.
+         */
+        public void offer(double similarity, int row) {
+            int k = rows.length;
+            if (size < k) {
+                // Sift the new element up from the bottom of the heap
+                int i = size++;
+                while (i > 0) {
+                    int parent = (i - 1) >>> 1;
+                    if (similarities[parent] <= similarity)
+                        break;
+                    similarities[i] = similarities[parent];
+                    rows[i] = rows[parent];
+                    i = parent;
+                }
+                similarities[i] = similarity;
+                rows[i] = row;
+            }
+            else if (similarity > similarities[0]) {
+                // Replace the least similar row and sift it down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= k)
+                        break;
+                    if (child + 1 < k
+                            && similarities[child + 1] < similarities[child])
+                        child++;
+                    if (similarities[child] >= similarity)
+                        break;
+                    similarities[i] = similarities[child];
+                    rows[i] = rows[child];
+                    i = child;
+                }
+                similarities[i] = similarity;
+                rows[i] = row;
+            }
+        }
+
+        /**
+         * Returns {@code true} if a row with a similarity of zero would be
+         * retained if it were offered.
+         */
+        public boolean acceptsZero() {
+            return size < rows.length || similarities[0] < 0;
+        }
+
+        /**
+         * Returns the retained rows in increasing order.
+         */
+        public int[] getRows() {
+            int[] sorted = Arrays.copyOf(rows, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        /**
+         * Returns the retained rows as a mapping from similarity to row.
+         */
+        public SortedMultiMap<Double,Integer> toMultiMap() {
+            SortedMultiMap<Double,Integer> map =
+                new BoundedSortedMultiMap<Double,Integer>(rows.length, false);
+            for (int i = 0; i < size; ++i)
+                map.put(similarities[i], rows[i]);
+            return map;
+        }
+    }
+
+    /**
+     * A set of rows that have been scaled to unit length so that the dot
+     * product of two rows is their cosine similarity.
+     */
+    private interface NormalizedRows {
+
+        /**
+         * Returns the number of rows.
+         */
+        int numRows();
+
+        /**
+         * Compares the rows from {@code start}, inclusive, to {@code end},
+         * exclusive, with all other rows, offering each similarity to the heap
+         * of the query row.
+         */
+        void compare(int start, int end, TopK[] heaps);
+    }
+
+    /**
+     * Returns the value of the vector at the index.
+     */
+    private static double get(Vector v, int index) {
+        return (v instanceof DoubleVector)
+            ? ((DoubleVector)v).get(index)
+            : v.getValue(index).doubleValue();
+    }
+
+    /**
+     * Dense rows stored contiguously in a single row-major array.
+     */
+    private static class DenseRows implements NormalizedRows {
+
+        private final int rows;
+
+        private final int cols;
+
+        private final double[] values;
+
+        /**
+         * The number of candidate rows compared at a time.
+         */
+        private final int candidateBlockSize;
+
+        public DenseRows(List<? extends Vector> vectors) {
+            rows = vectors.size();
+            cols = vectors.get(0).length();
+            values = new double[rows * cols];
+            for (int r = 0; r < rows; ++r) {
+                Vector v = vectors.get(r);
+                if (v.length() != cols)
+                    throw new IllegalArgumentException(
+                        "Row " + r + " has length " + v.length() +
+                        " instead of " + cols);
+                int offset = r * cols;
+                double sumOfSquares = 0;
+                for (int c = 0; c < cols; ++c) {
+                    double value = get(v, c);
+                    values[offset + c] = value;
+                    sumOfSquares += value * value;
+                }
+                if (sumOfSquares > 0) {
+                    double scale = 1 / Math.sqrt(sumOfSquares);
+                    for (int c = 0; c < cols; ++c)
+                        values[offset + c] *= scale;
+                }
+            }
+            candidateBlockSize =
+                Math.max(16, CACHE_BLOCK_BYTES / (8 * Math.max(cols, 1)));
+        }
+
+        public int numRows() {
+            return rows;
+        }
+
+        public void compare(int start, int end, TopK[] heaps) {
+            for (int c0 = 0; c0 < rows; c0 += candidateBlockSize) {
+                int c1 = Math.min(c0 + candidateBlockSize, rows);
+                for (int i = start; i < end; ++i) {
+                    TopK heap = heaps[i - start];
+                    int qOffset = i * cols;
+                    for (int j = c0; j < c1; ++j) {
+                        if (i == j)
+                            continue;
+                        int cOffset = j * cols;
+                        double dot = 0;
+                        for (int c = 0; c < cols; ++c)
+                            dot += values[qOffset + c] * values[cOffset + c];
+                        heap.offer(dot, j);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rows that are too large to copy, which are compared where they are using
+     * the precomputed length of each row.
+     */
+    private static class VectorRows implements NormalizedRows {
+
+        private final List<? extends Vector> vectors;
+
+        /**
+         * The inverse of the length of each row, or zero if the row has no
+         * non-zero values.
+         */
+        private final double[] scales;
+
+        public VectorRows(List<? extends Vector> vectors) {
+            this.vectors = vectors;
+            int cols = vectors.get(0).length();
+            scales = new double[vectors.size()];
+            for (int r = 0; r < scales.length; ++r) {
+                Vector v = vectors.get(r);
+                if (v.length() != cols)
+                    throw new IllegalArgumentException(
+                        "Row " + r + " has length " + v.length() +
+                        " instead of " + cols);
+                double length = v.magnitude();
+                scales[r] = (length > 0) ? 1 / length : 0;
+            }
+        }
+
+        public int numRows() {
+            return scales.length;
+        }
+
+        public void compare(int start, int end, TopK[] heaps) {
+            Vector[] queries = new Vector[end - start];
+            for (int i = start; i < end; ++i)
+                queries[i - start] = vectors.get(i);
+            // Load each candidate row once for the whole block of queries
+            for (int j = 0; j < scales.length; ++j) {
+                Vector candidate = vectors.get(j);
+                for (int i = start; i < end; ++i) {
+                    if (i == j)
+                        continue;
+                    double dot = VectorMath.dotProduct(queries[i - start],
+                                                       candidate);
+                    heaps[i - start].offer(dot * scales[i] * scales[j], j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sparse rows stored in compressed row form, along with an inverted index
+     * from each column to the rows that have a non-zero value in it.
+     */
+    private static class SparseRows implements NormalizedRows {
+
+        private final int rows;
+
+        private final int[] rowStarts;
+
+        private final int[] rowColumns;
+
+        private final double[] rowValues;
+
+        private final int[] colStarts;
+
+        private final int[] colRows;
+
+        private final double[] colValues;
+
+        /**
+         * The number of candidate rows compared at a time.
+         */
+        private final int candidateBlockSize;
+
+        public SparseRows(List<? extends Vector> vectors) {
+            rows = vectors.size();
+            int cols = vectors.get(0).length();
+            rowStarts = new int[rows + 1];
+            int[][] nonZeros = new int[rows][];
+            for (int r = 0; r < rows; ++r) {
+                Vector v = vectors.get(r);
+                if (v.length() != cols)
+                    throw new IllegalArgumentException(
+                        "Row " + r + " has length " + v.length() +
+                        " instead of " + cols);
+                nonZeros[r] = ((SparseVector)v).getNonZeroIndices();
+                rowStarts[r + 1] = rowStarts[r] + nonZeros[r].length;
+            }
+
+            int nz = rowStarts[rows];
+            rowColumns = new int[nz];
+            rowValues = new double[nz];
+            int[] colCounts = new int[cols + 1];
+            for (int r = 0; r < rows; ++r) {
+                Vector v = vectors.get(r);
+                int offset = rowStarts[r];
+                double sumOfSquares = 0;
+                for (int i = 0; i < nonZeros[r].length; ++i) {
+                    int col = nonZeros[r][i];
+                    double value = get(v, col);
+                    rowColumns[offset + i] = col;
+                    rowValues[offset + i] = value;
+                    sumOfSquares += value * value;
+                    colCounts[col + 1]++;
+                }
+                if (sumOfSquares > 0) {
+                    double scale = 1 / Math.sqrt(sumOfSquares);
+                    for (int i = offset; i < rowStarts[r + 1]; ++i)
+                        rowValues[i] *= scale;
+                }
+                nonZeros[r] = null;
+            }
+
+            // Build the inverted index.  Since rows are visited in order, the
+            // rows for each column are sorted, which allows the index to be
+            // traversed in blocks of rows.
+            for (int c = 0; c < cols; ++c)
+                colCounts[c + 1] += colCounts[c];
+            colStarts = colCounts;
+            colRows = new int[nz];
+            colValues = new double[nz];
+            int[] next = Arrays.copyOf(colStarts, cols);
+            for (int r = 0; r < rows; ++r) {
+                for (int i = rowStarts[r]; i < rowStarts[r + 1]; ++i) {
+                    int pos = next[rowColumns[i]]++;
+                    colRows[pos] = r;
+                    colValues[pos] = rowValues[i];
+                }
+            }
+            candidateBlockSize = Math.max(1024, CACHE_BLOCK_BYTES / 12);
+        }
+
+        public int numRows() {
+            return rows;
+        }
+
+        public void compare(int start, int end, TopK[] heaps) {
+            int blockSize = Math.min(candidateBlockSize, rows);
+            double[] sums = new double[blockSize];
+            // The query row that last touched each candidate, plus one
+            int[] touchedBy = new int[blockSize];
+            int[] touched = new int[blockSize];
+
+            // The position in each column's list of rows at which the next
+            // candidate block starts, for every non-zero of the query rows
+            int queryStart = rowStarts[start];
+            int[] cursors = new int[rowStarts[end] - queryStart];
+            for (int p = 0; p < cursors.length; ++p)
+                cursors[p] = colStarts[rowColumns[queryStart + p]];
+
+            for (int c0 = 0; c0 < rows; c0 += blockSize) {
+                int c1 = Math.min(c0 + blockSize, rows);
+                // Reset the marks since the candidate indices are reused for
+                // each block
+                Arrays.fill(touchedBy, 0);
+                for (int i = start; i < end; ++i) {
+                    int numTouched = 0;
+                    for (int p = rowStarts[i]; p < rowStarts[i + 1]; ++p) {
+                        double value = rowValues[p];
+                        int colEnd = colStarts[rowColumns[p] + 1];
+                        int pos = cursors[p - queryStart];
+                        for (; pos < colEnd && colRows[pos] < c1; ++pos) {
+                            int candidate = colRows[pos] - c0;
+                            if (touchedBy[candidate] != i + 1) {
+                                touchedBy[candidate] = i + 1;
+                                sums[candidate] = 0;
+                                touched[numTouched++] = candidate;
+                            }
+                            sums[candidate] += value * colValues[pos];
+                        }
+                        cursors[p - queryStart] = pos;
+                    }
+                    TopK heap = heaps[i - start];
+                    for (int t = 0; t < numTouched; ++t) {
+                        int candidate = touched[t];
+                        if (candidate + c0 != i)
+                            heap.offer(sums[candidate], candidate + c0);
+                    }
+                }
+            }
+
+            // Fill the remaining neighbors with rows that share no columns
+            // with the query row, whose similarity is zero
+            int[] sharedBy = null;
+            for (int i = start; i < end; ++i) {
+                TopK heap = heaps[i - start];
+                if (!heap.acceptsZero())
+                    continue;
+                if (sharedBy == null)
+                    sharedBy = new int[rows];
+                for (int p = rowStarts[i]; p < rowStarts[i + 1]; ++p) {
+                    int col = rowColumns[p];
+                    for (int pos = colStarts[col]; pos < colStarts[col + 1];
+                             ++pos)
+                        sharedBy[colRows[pos]] = i + 1;
+                }
+                int offered = 0;
+                int k = heap.rows.length;
+                for (int j = 0; j < rows && offered < k; ++j) {
+                    if (j != i && sharedBy[j] != i + 1) {
+                        heap.offer(0, j);
+                        offered++;
+                    }
+                }
+            }
+        }
+    }
+}
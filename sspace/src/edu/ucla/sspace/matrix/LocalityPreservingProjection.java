@@ -51,8 +51,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * A Java wrapper around the Matlab implementation of the Spectral Regression
- * form of Locality Preserving Projection (LPP), which is a linear-time subspace
+ * A wrapper around the implementations of the Spectral Regression form of
+ * Locality Preserving Projection (LPP), which is a linear-time subspace
  * projection.  Details on LPP may be found in the paper by He and Niyogi: <ul>
  *
  *   <li style="font-family:Garamond, Georgia, serif">Xiaofei He and Partha
@@ -64,12 +64,15 @@ import java.util.logging.Logger;
  *
  * Further information about the Spectral Regression version of the algorithm
  * may be found on Deng Cai's <a
- * href="http://www.zjucadcg.cn/dengcai/Data/data.html">webpage</a>.  This class
- * requires that the following Matlab files availabe on the aforementioned
- * webpage be made available in the root directory of the calling code: {@code
- * SR_caller.m}, {@code SR.m}, {@code lsqr2.m}, and {@code lars.m}.
+ * href="http://www.zjucadcg.cn/dengcai/Data/data.html">webpage</a>.
  *
- * <p> This class requires the availability of Matlab or Octave.
+ * <p> By default, the projection is computed in-process by {@link
+ * SpectralRegression}, which requires no external software.  The projection
+ * may also be computed by Matlab or Octave by specifying the {@link
+ * Algorithm}, which requires that the following Matlab files availabe on the
+ * aforementioned webpage be made available in the root directory of the
+ * calling code: {@code SR_caller.m}, {@code SR.m}, {@code lsqr2.m}, and {@code
+ * lars.m}.
  *
  * <p> Each of the projection methods requires the prior calculation of the
  * affinity matrix.  This matrix identifies which rows in the input matrix have
@@ -86,6 +89,27 @@ public class LocalityPreservingProjection {
     private static final Logger LOGGER = 
 	Logger.getLogger(LocalityPreservingProjection.class.getName());
 
+    /**
+     * The implementations by which the projection may be computed.
+     */
+    public enum Algorithm {
+        /**
+         * The in-process {@link SpectralRegression} implementation
+         */
+        JAVA,
+
+        /**
+         * The Matlab implementation by Deng Cai, which is run by Octave if
+         * Matlab is not available
+         */
+        MATLAB,
+
+        /**
+         * The Matlab implementation by Deng Cai, run by Octave
+         */
+        OCTAVE
+    }
+
     /**
      * The generic Matlab/Octave implementation of SR-LPP where the files and
      * language-specific I/O calls have been left open as printf formatting
@@ -264,10 +288,42 @@ public class LocalityPreservingProjection {
     public static MatrixFile project(MatrixFile inputMatrix,
                                      MatrixFile affinityMatrix,
                                      int dimensions) {
+        return project(inputMatrix, affinityMatrix, dimensions, Algorithm.JAVA);
+    }
+
+    /**
+     * Projects the rows of the input matrix into a lower dimensional subspace
+     * using the specified implementation of the Locality Preserving Projection
+     * (LPP) algorithm and the affinity matrix as a guide to locality.
+     *
+     * @param inputMatrix a matrix file whose rows will be projected
+     * @param affinityMatrix a square matrix whose entries denote locality
+     *        between the rows of the inputMatrix.  Note that this matrix's
+     *        dimensions must be equal to the number of rows in the input
+     *        matrix.
+     * @param dimensions the number of dimensions into which the inputMatrix
+     *        should be projected
+     * @param alg the implementation used to compute the projection
+     *
+     * @return a file containing the LPP-reduced data in {@code DENSE_TEXT}
+     *         format.
+     *
+     * @throws IOError if any exception occurrs during processing
+     */
+    public static MatrixFile project(MatrixFile inputMatrix,
+                                     MatrixFile affinityMatrix,
+                                     int dimensions, Algorithm alg) {
         try {
             File outputFile = File.createTempFile("lcc-output-matrix", ".dat");
-            execute(inputMatrix.getFile(), affinityMatrix.getFile(), dimensions,
-                    outputFile);
+            if (alg == Algorithm.JAVA) {
+                Matrix projection = SpectralRegression.project(
+                    inputMatrix.load(), affinityMatrix.load(), dimensions);
+                MatrixIO.writeMatrix(projection, outputFile, 
+                                     MatrixIO.Format.DENSE_TEXT);
+            }
+            else
+                execute(inputMatrix.getFile(), affinityMatrix.getFile(),
+                        dimensions, outputFile, alg);
             return new MatrixFile(outputFile, MatrixIO.Format.DENSE_TEXT);
         } catch (IOException ioe) { 
             throw new IOError(ioe);
@@ -294,8 +350,35 @@ public class LocalityPreservingProjection {
      */
     public static Matrix project(Matrix m, MatrixFile affinityMatrix,
                                  int dimensions) {        
+        return project(m, affinityMatrix, dimensions, Algorithm.JAVA);
+    }
+
+    /**
+     * Projects the rows of the input matrix into a lower dimensional subspace
+     * using the specified implementation of the Locality Preserving Projection
+     * (LPP) algorithm and the affinity matrix as a guide to locality.
+     *
+     * @param m a matrix whose rows will be projected
+     * @param affinityMatrix a square matrix whose entries denote locality
+     *        between the rows of the inputMatrix.  Note that this matrix's
+     *        dimensions must be equal to the number of rows in the input
+     *        matrix.
+     * @param dimensions the number of dimensions into which the inputMatrix
+     *        should be projected
+     * @param alg the implementation used to compute the projection
+     *
+     * @return a {@code Matrix} that contains the rows of {@code m} projected
+     *         into the specified number of dimensions
+     *
+     * @throws IOError if any exception occurrs during processing
+     */
+    public static Matrix project(Matrix m, MatrixFile affinityMatrix,
+                                 int dimensions, Algorithm alg) {        
         try {
-            return execute(m, affinityMatrix, dimensions);
+            if (alg == Algorithm.JAVA)
+                return SpectralRegression.project(
+                    m, affinityMatrix.load(), dimensions);
+            return execute(m, affinityMatrix, dimensions, alg);
         } catch (IOException ioe) {
             throw new IOError(ioe);
         }        
@@ -321,6 +404,34 @@ public class LocalityPreservingProjection {
      */
     public static Matrix project(Matrix m, Matrix affinityMatrix,
                                  int dimensions) {        
+        return project(m, affinityMatrix, dimensions, Algorithm.JAVA);
+    }
+
+    /**
+     * Projects the rows of the input matrix into a lower dimensional subspace
+     * using the specified implementation of the Locality Preserving Projection
+     * (LPP) algorithm and the affinity matrix as a guide to locality.  The
+     * {@link Algorithm#JAVA JAVA} implementation uses the matrices directly,
+     * without writing them to disk.
+     *
+     * @param m a matrix whose rows will be projected
+     * @param affinityMatrix a square matrix whose entries denote locality
+     *        between the rows of the inputMatrix.  Note that this matrix's
+     *        dimensions must be equal to the number of rows in the input
+     *        matrix.
+     * @param dimensions the number of dimensions into which the inputMatrix
+     *        should be projected
+     * @param alg the implementation used to compute the projection
+     *
+     * @return a {@code Matrix} that contains the rows of {@code m} projected
+     *         into the specified number of dimensions
+     *
+     * @throws IOError if any exception occurrs during processing
+     */
+    public static Matrix project(Matrix m, Matrix affinityMatrix,
+                                 int dimensions, Algorithm alg) {        
+        if (alg == Algorithm.JAVA)
+            return SpectralRegression.project(m, affinityMatrix, dimensions);
         try {
             File affMatrixFile = 
                 File.createTempFile("affinity-matrix", ".dat");
@@ -328,7 +439,7 @@ public class LocalityPreservingProjection {
                                  MatrixIO.Format.MATLAB_SPARSE);
             return execute(m, new MatrixFile(affMatrixFile, 
                                              MatrixIO.Format.MATLAB_SPARSE), 
-                           dimensions);
+                           dimensions, alg);
         } catch (IOException ioe) {
             throw new IOError(ioe);
         }        
@@ -346,9 +457,10 @@ public class LocalityPreservingProjection {
      *        connects data points in the {@code dataMatrixFile}
      * @param dims the number of dimensions to which the matrix should be
      *        reduced
+     * @param alg the external program used to compute the projection
      */
     private static Matrix execute(Matrix dataMatrix, MatrixFile affMatrixFile,
-                                  int dims) throws IOException {
+                                  int dims, Algorithm alg) throws IOException {
         // Write the input matrix to a file for Matlab/Octave to use
         File mInput = File.createTempFile("lpp-input-data-matrix",".dat");
         mInput.deleteOnExit();
@@ -359,7 +471,7 @@ public class LocalityPreservingProjection {
         File output = File.createTempFile("lpp-output-matrix",".dat");
 
         // Exceute the LPP code
-        execute(mInput, affMatrixFile.getFile(), dims, output);
+        execute(mInput, affMatrixFile.getFile(), dims, output, alg);
 
         // Upon finishing, read the matrix back into memory.
         return MatrixIO.readMatrix(output, MatrixIO.Format.DENSE_TEXT);
@@ -379,20 +491,23 @@ public class LocalityPreservingProjection {
      *        reduced
      * @param outputMatrix the file to which the output matrix should be written
      *        in DENSE_TEXT format
+     * @param alg the external program used to compute the projection
      */
     private static void execute(File dataMatrixFile, 
                                 File affMatrixFile,
-                                int dims, File outputMatrix) 
+                                int dims, File outputMatrix,
+                                Algorithm alg) 
             throws IOException {
-        // Decide whether to use Matlab or Octave
-        if (isMatlabAvailable())
+        if (alg == Algorithm.MATLAB && isMatlabAvailable())
             invokeMatlab(dataMatrixFile, affMatrixFile, dims, outputMatrix);
-            // Ensure that if Matlab isn't present that we can at least use Octave
+        // Ensure that if Matlab isn't present that we can at least use Octave
         else if (isOctaveAvailable())
             invokeOctave(dataMatrixFile, affMatrixFile, dims, outputMatrix);
         else
             throw new IllegalStateException(
-                "Cannot find Matlab or Octave to invoke LPP");
+                "Cannot find " + ((alg == Algorithm.MATLAB)
+                                  ? "Matlab or Octave" : "Octave") +
+                " to invoke LPP");
     }
 
     /**
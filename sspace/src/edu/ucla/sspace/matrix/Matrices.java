@@ -115,8 +115,8 @@ public class Matrices {
             if (isDense) {
                 if (size > Integer.MAX_VALUE) {
                     LOGGER.finer("too big for ArrayMatrix; creating new " + 
-                         "OnDiskMatrix");
-                    return new OnDiskMatrix(rows, cols);
+                         "MemoryMappedMatrix");
+                    return new MemoryMappedMatrix(rows, cols);
                 } else {
                     LOGGER.finer("creating new (in memory) ArrayMatrix");
                     return new ArrayMatrix(rows, cols);
@@ -128,8 +128,9 @@ public class Matrices {
             }
         } else { 
             // won't fit into memory
-            LOGGER.finer("cannot fit in memory; creating new OnDiskMatrix");
-            return new OnDiskMatrix(rows, cols);
+            LOGGER.finer("cannot fit in memory; creating new " +
+                         "MemoryMappedMatrix");
+            return new MemoryMappedMatrix(rows, cols);
         }
     }
 
@@ -215,7 +216,7 @@ public class Matrices {
                 // REMDINER: implement me
                 return new OnDiskMatrix(rows, cols);
             case DENSE_ON_DISK:
-                return new OnDiskMatrix(rows, cols);
+                return new MemoryMappedMatrix(rows, cols);
         }
         throw new IllegalArgumentException(
                 "Unknown matrix type: " + matrixType);
@@ -258,7 +259,7 @@ public class Matrices {
         
         switch (fastest) {
         case SVDLIBC:
-            return new SvdlibcSparseBinaryMatrixBuilder(transpose);
+            return new ParallelSvdlibcSparseBinaryMatrixBuilder(transpose);
 
         // In all other cases, use the sparse Matlab format, as it covers both
         // Matlab and Octave.  This format doesn't matter much for Jama or Colt,
@@ -0,0 +1,747 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.vector.DenseVector;
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.SparseVector;
+
+import java.io.File;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+
+/**
+ * A dense {@link Matrix} whose values are stored in a memory-mapped file that
+ * may be reopened after the matrix is created.  Unlike {@link OnDiskMatrix},
+ * whose backing files are temporary, a matrix created with {@link
+ * #create(File,int,int,Layout) create} is persistent: the file begins with a
+ * header recording the matrix's dimensions and layout, and the matrix may be
+ * later reopened with {@link #open(File) open} without reading or copying its
+ * values.<p>
+ *
+ * The values may be stored in one of two {@link Layout layouts}.  {@link
+ * Layout#ROW_MAJOR} stores each row contiguously, which makes row access
+ * sequential and allows {@link #getRowVector(int) getRowVector} to return a
+ * view of the row's values in the file rather than a copy.  {@link
+ * Layout#TILED} stores the matrix as square tiles, each of which is stored
+ * contiguously in row-major order.  Accessing a column of a tiled matrix reads
+ * one short run of values from each tile in the column, rather than one value
+ * from every row, which makes column access much faster for large matrices at
+ * a small cost to row access.<p>
+ *
+ * Since a single mapping is limited to {@code Integer.MAX_VALUE} bytes, the
+ * values are mapped as a series of regions, each of which contains a whole
+ * number of rows (or of rows of tiles).  No row is split across regions.<p>
+ *
+ * All reads and writes use the absolute methods of the mapped buffers, which
+ * do not modify any shared state, so any number of threads may read from the
+ * matrix concurrently.  Concurrent writes to different elements are also
+ * safe; however, as with {@link ArrayMatrix}, a read of an element that is
+ * concurrently written may see either value.  Values written to the matrix
+ * are only guaranteed to be saved to the file after calling {@link #force()}.
+ *
+ * <p>
+ *
+ * If a {@link IOException} is ever raised as a part of executing an the methods
+ * of an instance, the exception is rethrown as a {@link IOError}.
+ *
+ * @see OnDiskMatrix
+ */
+public class MemoryMappedMatrix implements Matrix {
+
+    /**
+     * The order in which a matrix's values are stored in its file.
+     */
+    public enum Layout {
+
+        /**
+         * Each row is stored contiguously, in order of increasing row.
+         */
+        ROW_MAJOR,
+
+        /**
+         * The matrix is divided into square tiles that are stored in row-major
+         * order, where the values of each tile are stored contiguously, also
+         * in row-major order.
+         */
+        TILED
+    }
+
+    /**
+     * The default number of rows and columns of each tile in a matrix with
+     * the {@link Layout#TILED} layout.  Each tile contains 32KB of values.
+     */
+    public static final int DEFAULT_TILE_SIZE = 64;
+
+    /**
+     * The value at the start of every file, which identifies the file as a
+     * matrix
+     */
+    static final int MAGIC = 0x53534D4D;
+
+    /**
+     * The version of the file format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The number of bytes before the values, which keeps the values aligned
+     * within the file
+     */
+    static final int HEADER_BYTES = 64;
+
+    /**
+     * The number of bytes in a double.
+     */
+    private static final int BYTES_PER_DOUBLE = 8;
+
+    /**
+     * The maximum number of bytes that may be mapped in a single region
+     */
+    private static final long MAX_REGION_BYTES = Integer.MAX_VALUE;
+
+    /**
+     * The file that contains this matrix
+     */
+    private final File file;
+
+    /**
+     * The regions of the matrix's values
+     */
+    private final DoubleBuffer[] regions;
+
+    /**
+     * The mapped buffers of each region, which are retained to support {@link
+     * #force()}.
+     */
+    private final MappedByteBuffer[] mappedRegions;
+
+    /**
+     * The number of rows stored in this {@code Matrix}.
+     */
+    private final int rows;
+
+    /**
+     * The number of columns stored in this {@code Matrix}.
+     */
+    private final int cols;
+
+    /**
+     * The layout of the values
+     */
+    private final Layout layout;
+
+    /**
+     * The number of rows and columns in each tile, or {@code 1} if the matrix
+     * is not tiled
+     */
+    private final int tileSize;
+
+    /**
+     * The number of tiles in each row of tiles
+     */
+    private final int tilesPerRow;
+
+    /**
+     * The number of values stored for each row, which includes any padding of
+     * the last tile in the row
+     */
+    private final int rowStride;
+
+    /**
+     * The number of rows in every region except possibly the last
+     */
+    private final int rowsPerRegion;
+
+    /**
+     * Whether the matrix may be modified
+     */
+    private final boolean readOnly;
+
+    /**
+     * Creates a row-major matrix of the provided size that is backed by a
+     * temporary file, which is deleted when the JVM exits.
+     *
+     * @throws IOError if the backing file for this matrix cannot be created
+     */
+    public MemoryMappedMatrix(int rows, int cols) {
+        this(rows, cols, Layout.ROW_MAJOR);
+    }
+
+    /**
+     * Creates a matrix of the provided size and layout that is backed by a
+     * temporary file, which is deleted when the JVM exits.
+     *
+     * @throws IOError if the backing file for this matrix cannot be created
+     */
+    public MemoryMappedMatrix(int rows, int cols, Layout layout) {
+        this(createTempFile(), rows, cols, layout, defaultTileSize(layout),
+             MAX_REGION_BYTES);
+    }
+
+    /**
+     * Creates a new matrix in the file, overwriting any existing contents.
+     */
+    private MemoryMappedMatrix(File file, int rows, int cols, Layout layout,
+                               int tileSize, long maxRegionBytes) {
+        if (rows <= 0 || cols <= 0) 
+            throw new IllegalArgumentException("dimensions must be positive");
+        if (tileSize <= 0)
+            throw new IllegalArgumentException("tile size must be positive");
+        this.file = file;
+        this.rows = rows;
+        this.cols = cols;
+        this.layout = layout;
+        this.tileSize = tileSize;
+        this.readOnly = false;
+        tilesPerRow = (cols + tileSize - 1) / tileSize;
+        rowStride = tilesPerRow * tileSize;
+
+        // Fit as many rows (or rows of tiles) into each region as possible
+        long bytesPerRowUnit = (long)rowStride * tileSize * BYTES_PER_DOUBLE;
+        long unitsPerRegion = maxRegionBytes / bytesPerRowUnit;
+        if (unitsPerRegion == 0)
+            throw new IllegalArgumentException(
+                "Too many columns to map a row: " + cols);
+        rowsPerRegion = (int)Math.min(unitsPerRegion * tileSize, 
+                                      roundUp(rows, tileSize));
+
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(0);
+                raf.setLength(HEADER_BYTES + 
+                              (long)roundUp(rows, tileSize) 
+                              * rowStride * BYTES_PER_DOUBLE);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                header.putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN 
+                            ? 0 : 1)
+                    .putInt(layout.ordinal())
+                    .putInt(rows)
+                    .putInt(cols)
+                    .putInt(tileSize)
+                    .putInt(rowsPerRegion);
+                header.rewind();
+                raf.getChannel().write(header, 0);
+                mappedRegions = new MappedByteBuffer[numRegions()];
+                regions = map(raf.getChannel(), MapMode.READ_WRITE, 
+                              ByteOrder.nativeOrder());
+            } finally {
+                raf.close();
+            }
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+    }
+
+    /**
+     * Opens the matrix stored in the file.
+     */
+    private MemoryMappedMatrix(File file, boolean readOnly) 
+            throws IOException {
+        this.file = file;
+        this.readOnly = readOnly;
+        RandomAccessFile raf = new RandomAccessFile(file, (readOnly) 
+                                                    ? "r" : "rw");
+        try {
+            FileChannel fc = raf.getChannel();
+            if (fc.size() < HEADER_BYTES)
+                throw new MatrixIOException(
+                    "File is too short to contain a matrix: " + file);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining()) {
+                if (fc.read(header, header.position()) < 0)
+                    throw new MatrixIOException("Unexpected end of file");
+            }
+            header.rewind();
+            if (header.getInt() != MAGIC)
+                throw new MatrixIOException("File is not a matrix: " + file);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new MatrixIOException(
+                    "Unsupported matrix file version: " + version);
+            ByteOrder order = (header.getInt() == 0) 
+                ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            int layoutIndex = header.getInt();
+            if (layoutIndex < 0 || layoutIndex >= Layout.values().length)
+                throw new MatrixIOException("Unknown layout: " + layoutIndex);
+            layout = Layout.values()[layoutIndex];
+            rows = header.getInt();
+            cols = header.getInt();
+            tileSize = header.getInt();
+            rowsPerRegion = header.getInt();
+            if (rows <= 0 || cols <= 0 || tileSize <= 0 || rowsPerRegion <= 0)
+                throw new MatrixIOException("Invalid matrix header: " + file);
+            tilesPerRow = (cols + tileSize - 1) / tileSize;
+            rowStride = tilesPerRow * tileSize;
+            long expected = HEADER_BYTES + (long)roundUp(rows, tileSize) 
+                * rowStride * BYTES_PER_DOUBLE;
+            if (fc.size() < expected)
+                throw new MatrixIOException(
+                    "File is too short for a " + rows + "x" + cols + 
+                    " matrix: " + file);
+            mappedRegions = new MappedByteBuffer[numRegions()];
+            regions = map(fc, (readOnly) ? MapMode.READ_ONLY 
+                                         : MapMode.READ_WRITE, order);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Creates a new, persistent row-major matrix in the file, overwriting any
+     * existing contents.  All of the matrix's values are initially zero.
+     */
+    public static MemoryMappedMatrix create(File file, int rows, int cols) 
+            throws IOException {
+        return create(file, rows, cols, Layout.ROW_MAJOR);
+    }
+
+    /**
+     * Creates a new, persistent matrix with the specified layout in the file,
+     * overwriting any existing contents.  All of the matrix's values are
+     * initially zero.
+     */
+    public static MemoryMappedMatrix create(File file, int rows, int cols,
+                                            Layout layout) 
+            throws IOException {
+        return create(file, rows, cols, layout, defaultTileSize(layout));
+    }
+
+    /**
+     * Creates a new, persistent matrix with the specified layout in the file,
+     * overwriting any existing contents.  All of the matrix's values are
+     * initially zero.
+     *
+     * @param tileSize the number of rows and columns in each tile, which must
+     *        be {@code 1} if the layout is not {@link Layout#TILED}
+     */
+    public static MemoryMappedMatrix create(File file, int rows, int cols,
+                                            Layout layout, int tileSize) 
+            throws IOException {
+        return create(file, rows, cols, layout, tileSize, MAX_REGION_BYTES);
+    }
+
+    /**
+     * Creates a new matrix whose regions contain at most the specified number
+     * of bytes, which allows the handling of multiple regions to be tested
+     * without creating very large files.
+     */
+    static MemoryMappedMatrix create(File file, int rows, int cols,
+                                     Layout layout, int tileSize, 
+                                     long maxRegionBytes) 
+            throws IOException {
+        if (layout != Layout.TILED && tileSize != 1)
+            throw new IllegalArgumentException(
+                "Only tiled matrices may have a tile size other than 1");
+        try {
+            return new MemoryMappedMatrix(file, rows, cols, layout, tileSize,
+                                          maxRegionBytes);
+        } catch (IOError ioe) {
+            throw (IOException)ioe.getCause();
+        }
+    }
+
+    /**
+     * Opens the matrix stored in the file for reading and writing.
+     *
+     * @throws MatrixIOException if the file does not contain a matrix
+     */
+    public static MemoryMappedMatrix open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * Opens the matrix stored in the file.  If {@code readOnly} is {@code
+     * true}, any attempt to modify the matrix will throw a {@link
+     * java.nio.ReadOnlyBufferException}.
+     *
+     * @throws MatrixIOException if the file does not contain a matrix
+     */
+    public static MemoryMappedMatrix open(File file, boolean readOnly) 
+            throws IOException {
+        return new MemoryMappedMatrix(file, readOnly);
+    }
+
+    /**
+     * Returns a temporary file that is deleted when the JVM exits.
+     */
+    private static File createTempFile() {
+        try {
+            File f = File.createTempFile("MemoryMappedMatrix", ".matrix");
+            f.deleteOnExit();
+            return f;
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+    }
+
+    /**
+     * Returns the tile size used by default for the layout.
+     */
+    private static int defaultTileSize(Layout layout) {
+        return (layout == Layout.TILED) ? DEFAULT_TILE_SIZE : 1;
+    }
+
+    /**
+     * Returns the value rounded up to the next multiple of {@code multiple}.
+     */
+    private static int roundUp(int value, int multiple) {
+        return (int)(((long)value + multiple - 1) / multiple * multiple);
+    }
+
+    /**
+     * Returns the number of regions needed to store all of the rows.
+     */
+    private int numRegions() {
+        return (int)(((long)rows + rowsPerRegion - 1) / rowsPerRegion);
+    }
+
+    /**
+     * Maps each region of the file and returns the regions' values.
+     */
+    private DoubleBuffer[] map(FileChannel fc, MapMode mode, ByteOrder order) 
+            throws IOException {
+        int numRegions = mappedRegions.length;
+        DoubleBuffer[] buffers = new DoubleBuffer[numRegions];
+        long regionBytes = (long)rowsPerRegion * rowStride * BYTES_PER_DOUBLE;
+        for (int i = 0; i < numRegions; ++i) {
+            int regionRows = (i + 1 < numRegions)
+                ? rowsPerRegion
+                : roundUp(rows - i * rowsPerRegion, tileSize);
+            long size = (long)regionRows * rowStride * BYTES_PER_DOUBLE;
+            mappedRegions[i] = fc.map(mode, HEADER_BYTES + i * regionBytes, 
+                                      size);
+            mappedRegions[i].order(order);
+            buffers[i] = mappedRegions[i].asDoubleBuffer();
+        }
+        return buffers;
+    }
+
+    /**
+     * Checks that the indices are within the bounds of the matrix and throws an
+     * exception if they are not.
+     */
+    private void checkIndices(int row, int col) {
+        if (row < 0 || row >= rows)
+            throw new ArrayIndexOutOfBoundsException("row: " + row);
+        else if (col < 0 || col >= cols)
+            throw new ArrayIndexOutOfBoundsException("column: " + col);
+    }
+
+    /**
+     * Returns the index of the element within its region.
+     */
+    private int offset(int row, int col) {
+        int localRow = row % rowsPerRegion;
+        if (layout == Layout.ROW_MAJOR)
+            return localRow * cols + col;
+        int tileRow = localRow / tileSize;
+        int tileCol = col / tileSize;
+        return (tileRow * tilesPerRow + tileCol) * tileSize * tileSize
+            + (localRow % tileSize) * tileSize + (col % tileSize);
+    }
+
+    /**
+     * Returns the region that contains the row.
+     */
+    private DoubleBuffer region(int row) {
+        return regions[row / rowsPerRegion];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int columns() {
+        return cols;
+    }
+
+    /**
+     * Writes any changes to the matrix's values to its file.
+     */
+    public void force() {
+        if (readOnly)
+            return;
+        for (MappedByteBuffer b : mappedRegions)
+            b.force();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double get(int row, int col) {
+        checkIndices(row, col);
+        return region(row).get(offset(row, col));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double[] getColumn(int column) {
+        checkIndices(0, column);
+        double[] values = new double[rows];
+        if (layout == Layout.ROW_MAJOR) {
+            for (int row = 0; row < rows; ++row)
+                values[row] = region(row).get(offset(row, column));
+        }
+        else {
+            // The column's values within a tile are a fixed stride apart, so
+            // only the offset of each tile's first value is computed
+            for (int tileStart = 0; tileStart < rows; tileStart += tileSize) {
+                DoubleBuffer region = region(tileStart);
+                int index = offset(tileStart, column);
+                int tileEnd = Math.min(tileStart + tileSize, rows);
+                for (int row = tileStart; row < tileEnd; ++row) {
+                    values[row] = region.get(index);
+                    index += tileSize;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public DoubleVector getColumnVector(int column) {
+        return new DenseVector(getColumn(column));
+    }
+
+    /**
+     * Returns the file that contains this matrix.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the layout of the matrix's values.
+     */
+    public Layout getLayout() {
+        return layout;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double[] getRow(int row) {
+        checkIndices(row, 0);
+        double[] values = new double[cols];
+        if (layout == Layout.ROW_MAJOR)
+            rowBuffer(row).get(values);
+        else {
+            // Copy the row's run of values from each tile
+            DoubleBuffer region = region(row).duplicate();
+            for (int col = 0; col < cols; col += tileSize) {
+                region.position(offset(row, col));
+                region.get(values, col, Math.min(tileSize, cols - col));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the values of the row in this matrix.  If the layout is {@link
+     * Layout#ROW_MAJOR}, the returned vector is a view of the row's values in
+     * the mapped file, so no values are copied and any changes to the vector
+     * are made to the matrix, and vice versa.  Otherwise, the returned vector
+     * is a copy of the row.
+     */
+    public DoubleVector getRowVector(int row) {
+        if (layout == Layout.ROW_MAJOR) {
+            checkIndices(row, 0);
+            return new BufferVector(rowBuffer(row));
+        }
+        return new DenseVector(getRow(row));
+    }
+
+    /**
+     * Returns {@code true} if the matrix may not be modified.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Returns a buffer that contains only the values of the row, which must
+     * be stored contiguously.
+     */
+    private DoubleBuffer rowBuffer(int row) {
+        DoubleBuffer b = region(row).duplicate();
+        int start = offset(row, 0);
+        b.limit(start + cols);
+        b.position(start);
+        return b.slice();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void set(int row, int col, double val) {
+        checkIndices(row, col);
+        region(row).put(offset(row, col), val);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setColumn(int column, double[] values) {
+        if (values.length != rows)
+            throw new IllegalArgumentException(
+                "The number of values does not match the number of rows");
+        for (int row = 0; row < rows; ++row)
+            set(row, column, values[row]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setColumn(int column, DoubleVector values) {
+        if (values.length() != rows)
+            throw new IllegalArgumentException(
+                "The number of values does not match the number of rows");
+        for (int row = 0; row < rows; ++row)
+            set(row, column, values.get(row));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setRow(int row, double[] values) {
+        checkIndices(row, 0);
+        if (values.length != cols)
+            throw new IllegalArgumentException(
+                "The number of values does not match the number of columns");
+        if (layout == Layout.ROW_MAJOR)
+            rowBuffer(row).put(values);
+        else {
+            DoubleBuffer region = region(row).duplicate();
+            for (int col = 0; col < cols; col += tileSize) {
+                region.position(offset(row, col));
+                region.put(values, col, Math.min(tileSize, cols - col));
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setRow(int row, DoubleVector values) {
+        if (values.length() != cols)
+            throw new IllegalArgumentException(
+                "The number of values does not match the number of columns");
+        if (values instanceof SparseVector) {
+            checkIndices(row, 0);
+            // Clear the row before setting its non-zero values
+            setRow(row, new double[cols]);
+            SparseVector sv = (SparseVector)values;
+            for (int i : sv.getNonZeroIndices())
+                set(row, i, values.get(i));
+        }
+        else 
+            setRow(row, values.toArray());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public double[][] toDenseArray() {
+        double[][] m = new double[rows][];
+        for (int row = 0; row < rows; ++row) 
+            m[row] = getRow(row);
+        return m;
+    }
+
+    /**
+     * A {@link DoubleVector} whose values are stored in a {@link
+     * DoubleBuffer}.
+     */
+    private static class BufferVector implements DoubleVector {
+
+        private final DoubleBuffer values;
+
+        public BufferVector(DoubleBuffer values) {
+            this.values = values;
+        }
+
+        public double add(int index, double delta) {
+            double value = values.get(index) + delta;
+            values.put(index, value);
+            return value;
+        }
+
+        public double get(int index) {
+            return values.get(index);
+        }
+
+        public Double getValue(int index) {
+            return values.get(index);
+        }
+
+        public int length() {
+            return values.capacity();
+        }
+
+        public double magnitude() {
+            double m = 0;
+            int length = values.capacity();
+            for (int i = 0; i < length; ++i) {
+                double d = values.get(i);
+                m += d * d;
+            }
+            return Math.sqrt(m);
+        }
+
+        public void set(int index, double value) {
+            values.put(index, value);
+        }
+
+        public void set(int index, Number value) {
+            values.put(index, value.doubleValue());
+        }
+
+        public double[] toArray() {
+            double[] array = new double[values.capacity()];
+            values.duplicate().get(array);
+            return array;
+        }
+    }
+}
@@ -0,0 +1,786 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.matrix.MatrixIO.Format;
+
+import edu.ucla.sspace.util.SparseArray;
+import edu.ucla.sspace.util.WorkQueue;
+
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.SparseVector;
+import edu.ucla.sspace.vector.Vector;
+import edu.ucla.sspace.vector.Vectors;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import java.util.logging.Logger;
+
+
+/**
+ * A {@code MatrixBuilder} implementation for creating matrix files in the <a
+ * href="http://tedlab.mit.edu/~dr/svdlibc/SVD_F_SB.html">SVDLIBC sparse
+ * binary</a> matrix format that allows many threads to add columns at once.
+ *
+ * <p> Unlike {@link SvdlibcSparseBinaryMatrixBuilder}, which serializes every
+ * column through a single stream, each thread that adds columns writes them to
+ * its own segment file, so adding a column never waits on another thread.  The
+ * index of each column is assigned when it is added.  When {@link #finish()}
+ * is called, the segments are merged in parallel into the final matrix file.
+ * If the data is to be transposed, the transpose is performed by the same
+ * merge in Java, rather than by invoking SVDLIBC.  The merge places the values
+ * of a range of the final columns in memory, sorts each column by its row
+ * indices, and writes the columns at their offsets in the file.  The ranges
+ * are sized so that their values fit within a quarter of the maximum heap
+ * size, with additional passes over the segments for larger matrices.
+ *
+ * <p> The {@code addColumn} and {@code finish} methods are capable of throwing
+ * an {@code IOError} if any {@code IOException} occurs while operating on the
+ * underlying matrix files.
+ *
+ * <p> This class is thread-safe.  A call to {@code finish} waits for any
+ * calls to {@code addColumn} that are in progress to return, and any call to
+ * {@code addColumn} made after the matrix is finished throws an {@code
+ * IllegalStateException}.
+ *
+ * @see SvdlibcSparseBinaryMatrixBuilder
+ */
+public class ParallelSvdlibcSparseBinaryMatrixBuilder implements MatrixBuilder {
+
+    /**
+     * Logger for the {@code ParallelSvdlibcSparseBinaryMatrixBuilder} class
+     */
+    private static final Logger LOGGER = Logger.getLogger(
+        ParallelSvdlibcSparseBinaryMatrixBuilder.class.getName());
+
+    /**
+     * The number of bytes read from a segment at a time, which is a multiple
+     * of the size of each value.
+     */
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The number of bytes written to the matrix file at a time.
+     */
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+
+    /**
+     * The number of bytes in the header of the matrix file.
+     */
+    private static final int HEADER_SIZE = 12;
+
+    /**
+     * The file to which the matrix will be written
+     */
+    private final File matrixFile;
+
+    /**
+     * Whether the inputted matrix columns should be transposed as rows in the
+     * final matrix data file.
+     */
+    private final boolean transposeData;
+
+    /**
+     * The number of bytes of values that may be held in memory at once while
+     * merging the segments.
+     */
+    private final long memoryBudget;
+
+    /**
+     * The index of the column that will next be assigned.  Once this matrix
+     * has been finished, this value will reflect the total number of columns
+     * that were added.
+     */
+    private final AtomicInteger nextColumn;
+
+    /**
+     * The segments of all threads that have added columns.
+     */
+    private final List<Segment> segments;
+
+    /**
+     * The segment to which the current thread adds its columns.  This is set
+     * to {@code null} once the matrix is finished so that the segments of
+     * threads that are still alive may be reclaimed.
+     */
+    private ThreadLocal<Segment> threadSegment;
+
+    /**
+     * The lock that is held for reading while a column is added and for
+     * writing while the matrix is finished, so that no column can be added
+     * while or after the segments are merged.
+     */
+    private final ReadWriteLock lock;
+
+    /**
+     * Whether the builder has finished adding data to the matrix array
+     */
+    private volatile boolean isFinished;
+
+    /**
+     * Creates a builder for a matrix in the {@link
+     * MatrixIO.Format#SVDLIBC_SPARSE_BINARY SVDLIBC_SPARSE_BINARY} format to be
+     * stored in a temporary file.
+     */
+    public ParallelSvdlibcSparseBinaryMatrixBuilder() {
+        this(getTempMatrixFile(), false);
+    }
+
+    /**
+     * Creates a builder for a matrix in the {@link
+     * MatrixIO.Format#SVDLIBC_SPARSE_BINARY SVDLIBC_SPARSE_BINARY} format to be
+     * stored in a temporary file.
+     *
+     * @param transposeData {@code true} if the input matrix columns should be
+     *        tranposed in the backing matrix file
+     */
+    public ParallelSvdlibcSparseBinaryMatrixBuilder(boolean transposeData) {
+        this(getTempMatrixFile(), transposeData);
+    }
+
+    /**
+     * Creates a builder for a matrix in the {@link
+     * MatrixIO.Format#SVDLIBC_SPARSE_BINARY SVDLIBC_SPARSE_BINARY} format,
+     * which will be stored in the specified file.
+     *
+     * @param backingFile the file to which the matrix should be written
+     */
+    public ParallelSvdlibcSparseBinaryMatrixBuilder(File backingFile) {
+        this(backingFile, false);
+    }
+
+    /**
+     * Creates a builder for a matrix in the {@link
+     * MatrixIO.Format#SVDLIBC_SPARSE_BINARY SVDLIBC_SPARSE_BINARY} format,
+     * which will be stored in the specified file.
+     *
+     * @param backingFile the file to which the matrix should be written
+     * @param transposeData {@code true} if the input matrix columns should be
+     *        tranposed in the backing matrix file
+     */
+    public ParallelSvdlibcSparseBinaryMatrixBuilder(File backingFile,
+                                                    boolean transposeData) {
+        this(backingFile, transposeData,
+             Runtime.getRuntime().maxMemory() / 4);
+    }
+
+    /**
+     * Creates a builder that holds at most {@code memoryBudget} bytes of
+     * values in memory while merging the segments.
+     */
+    ParallelSvdlibcSparseBinaryMatrixBuilder(File backingFile,
+                                             boolean transposeData,
+                                             long memoryBudget) {
+        this.matrixFile = backingFile;
+        this.transposeData = transposeData;
+        this.memoryBudget = memoryBudget;
+        nextColumn = new AtomicInteger(0);
+        segments = new ArrayList<Segment>();
+        threadSegment = new ThreadLocal<Segment>();
+        lock = new ReentrantReadWriteLock();
+        isFinished = false;
+    }
+
+    /**
+     * Returns a temporary file that will be deleted on JVM exit.
+     *
+     * @return a temporary file used to store a matrix
+     */
+    private static File getTempMatrixFile() {
+        try {
+            File tmp =
+                File.createTempFile("svdlibc-sparse-binary-matrix", ".dat");
+            tmp.deleteOnExit();
+            return tmp;
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+    }
+
+    /**
+     * Returns the segment of the current thread, creating it if this thread
+     * has not yet added a column.  This method must be called while holding
+     * the read lock.
+     */
+    private Segment getSegment() {
+        if (isFinished)
+            throw new IllegalStateException(
+                "Cannot add columns to a MatrixBuilder that is finished");
+        Segment segment = threadSegment.get();
+        if (segment == null) {
+            try {
+                segment = new Segment();
+            } catch (IOException ioe) {
+                throw new IOError(ioe);
+            }
+            threadSegment.set(segment);
+            synchronized (segments) {
+                segments.add(segment);
+            }
+        }
+        return segment;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int addColumn(double[] column) {
+        lock.readLock().lock();
+        try {
+            return writeColumn(column);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the column to the current thread's segment.  This method must be
+     * called while holding the read lock.
+     */
+    private int writeColumn(double[] column) {
+        Segment segment = getSegment();
+        int nonZero = 0;
+        for (int i = 0; i < column.length; ++i) {
+            if (column[i] != 0d)
+                nonZero++;
+        }
+
+        int col = nextColumn.getAndIncrement();
+        try {
+            segment.startColumn(col, nonZero, column.length);
+            for (int i = 0; i < column.length; ++i) {
+                if (column[i] != 0d)
+                    segment.add(i, (float) column[i]);
+            }
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+        return col;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int addColumn(SparseArray<? extends Number> column) {
+        lock.readLock().lock();
+        try {
+            return writeColumn(column);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the column to the current thread's segment.  This method must be
+     * called while holding the read lock.
+     */
+    private int writeColumn(SparseArray<? extends Number> column) {
+        Segment segment = getSegment();
+
+        // See SvdlibcSparseBinaryMatrixBuilder for why the length is checked
+        assert column.length() != Integer.MAX_VALUE : "adding a column whose " +
+            "length is Integer.MAX_VALUE (was likley left unspecified in the " +
+            " constructor).";
+
+        int[] nonZero = column.getElementIndices();
+        int col = nextColumn.getAndIncrement();
+        try {
+            segment.startColumn(col, nonZero.length, column.length());
+            for (int i : nonZero)
+                segment.add(i, column.get(i).floatValue());
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+        return col;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int addColumn(Vector col) {
+        lock.readLock().lock();
+        try {
+            return writeColumn(col);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Writes the column to the current thread's segment.  This method must be
+     * called while holding the read lock.
+     */
+    private int writeColumn(Vector col) {
+        Segment segment = getSegment();
+        DoubleVector column = Vectors.asDouble(col);
+
+        assert column.length() != Integer.MAX_VALUE : "adding a column whose " +
+            "length is Integer.MAX_VALUE (was likley left unspecified in the " +
+            " constructor).";
+
+        int index = nextColumn.getAndIncrement();
+        try {
+            // Special case for sparse Vectors, for which we already know the
+            // non-zero indices for the column
+            if (column instanceof SparseVector) {
+                int[] nonZero = ((SparseVector) column).getNonZeroIndices();
+                segment.startColumn(index, nonZero.length, column.length());
+                for (int i : nonZero)
+                    segment.add(i, (float) column.get(i));
+            }
+            else {
+                int nonZero = 0;
+                for (int i = 0; i < column.length(); ++i) {
+                    if (column.get(i) != 0d)
+                        nonZero++;
+                }
+                segment.startColumn(index, nonZero, column.length());
+                for (int i = 0; i < column.length(); ++i) {
+                    double value = column.get(i);
+                    if (value != 0d)
+                        segment.add(i, (float) value);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+        return index;
+    }
+
+    /**
+     * {@inheritDoc} Once this method has been called, any subsequent calls will
+     * have no effect and will not throw an exception.
+     */
+    public synchronized void finish() {
+        lock.writeLock().lock();
+        try {
+            if (isFinished)
+                return;
+            isFinished = true;
+            for (Segment segment : segments)
+                segment.close();
+            merge();
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        } finally {
+            releaseSegments();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the segment files and discards the segments, which may still be
+     * referenced by the thread-local values of the threads that added columns.
+     */
+    private void releaseSegments() {
+        for (Segment segment : segments) {
+            segment.file.delete();
+            segment.release();
+        }
+        segments.clear();
+        if (threadSegment != null) {
+            threadSegment.remove();
+            threadSegment = null;
+        }
+    }
+
+    /**
+     * Merges the segments into the matrix file, transposing them if needed.
+     * Each column of the final matrix is called a <i>major</i> index, and each
+     * of its row indices a <i>minor</i> index.
+     */
+    private void merge() throws IOException {
+        int numColumns = nextColumn.get();
+        int numRows = 0;
+        long nonZeroValues = 0;
+        for (Segment segment : segments) {
+            numRows = Math.max(numRows, segment.numRows);
+            nonZeroValues += segment.nonZeroValues;
+        }
+        if (nonZeroValues > Integer.MAX_VALUE)
+            throw new IOException("Too many non-zero values for the " +
+                                  "SVDLIBC format: " + nonZeroValues);
+
+        // Count the values in each column of the final matrix
+        final int numMajor = (transposeData) ? numRows : numColumns;
+        final int[] majorSizes = new int[numMajor];
+        for (Segment segment : segments) {
+            if (transposeData) {
+                int rows = Math.min(segment.rowCounts.length, numMajor);
+                for (int r = 0; r < rows; ++r)
+                    majorSizes[r] += segment.rowCounts[r];
+            }
+            else {
+                for (int k = 0; k < segment.numColumns; ++k)
+                    majorSizes[segment.columns[k]] = segment.columnSizes[k];
+            }
+        }
+        final long[] offsets = new long[numMajor + 1];
+        offsets[0] = HEADER_SIZE;
+        for (int m = 0; m < numMajor; ++m)
+            offsets[m + 1] = offsets[m] + 4 + 8L * majorSizes[m];
+
+        RandomAccessFile raf = new RandomAccessFile(matrixFile, "rw");
+        try {
+            raf.setLength(0);
+            final FileChannel out = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt((transposeData) ? numColumns : numRows);
+            header.putInt(numMajor);
+            header.putInt((int) nonZeroValues);
+            header.flip();
+            write(out, header, 0);
+
+            // Merge as many of the final columns at once as fit in memory
+            int passes = 0;
+            for (int start = 0; start < numMajor; ) {
+                long bytes = 8L * majorSizes[start];
+                int end = start + 1;
+                while (end < numMajor
+                       && bytes + 8L * majorSizes[end] <= memoryBudget
+                       && bytes + 8L * majorSizes[end] <= Integer.MAX_VALUE)
+                    bytes += 8L * majorSizes[end++];
+                mergeRange(start, end, majorSizes, offsets, out);
+                start = end;
+                passes++;
+            }
+            LOGGER.fine(String.format(
+                "merged %d segments into a %d x %d matrix in %d passes",
+                segments.size(), (transposeData) ? numColumns : numRows,
+                numMajor, passes));
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the values of the final columns in {@code [start, end)} from
+     * every segment, then sorts and writes each column.
+     */
+    private void mergeRange(final int start, final int end,
+                            int[] majorSizes, final long[] offsets,
+                            final FileChannel out) throws IOException {
+        // Give each column a cursor into a shared array of packed values
+        int total = 0;
+        final int[] firsts = new int[end - start + 1];
+        for (int m = start; m < end; ++m) {
+            firsts[m - start] = total;
+            total += majorSizes[m];
+        }
+        firsts[end - start] = total;
+        final AtomicIntegerArray cursors = new AtomicIntegerArray(firsts);
+        final long[] values = new long[total];
+
+        final IOException[] error = new IOException[1];
+        Collection<Runnable> tasks = new ArrayList<Runnable>();
+        for (final Segment segment : segments) {
+            tasks.add(new Runnable() {
+                    public void run() {
+                        try {
+                            scatter(segment, start, end, values, cursors);
+                        } catch (IOException ioe) {
+                            setError(error, ioe);
+                        }
+                    }
+                });
+        }
+        WorkQueue.getWorkQueue().run(tasks);
+        if (error[0] != null)
+            throw error[0];
+
+        // Sort and write blocks of the columns in parallel
+        tasks.clear();
+        WorkQueue workQueue = WorkQueue.getWorkQueue();
+        int numBlocks = Math.min(end - start, workQueue.numThreads() * 4);
+        for (int b = 0; b < numBlocks; ++b) {
+            final int blockStart =
+                start + (int) ((long) (end - start) * b / numBlocks);
+            final int blockEnd =
+                start + (int) ((long) (end - start) * (b + 1) / numBlocks);
+            tasks.add(new Runnable() {
+                    public void run() {
+                        try {
+                            writeColumns(blockStart, blockEnd, start, firsts,
+                                         values, offsets, out);
+                        } catch (IOException ioe) {
+                            setError(error, ioe);
+                        }
+                    }
+                });
+        }
+        workQueue.run(tasks);
+        if (error[0] != null)
+            throw error[0];
+    }
+
+    /**
+     * Packs the values of the segment that belong to the final columns in
+     * {@code [start, end)} at their columns' cursors.  Each value is packed
+     * with its row index in the upper 32 bits, so that sorting the packed
+     * values orders them by row.
+     */
+    private void scatter(Segment segment, int start, int end, long[] values,
+                         AtomicIntegerArray cursors) throws IOException {
+        FileInputStream fis = new FileInputStream(segment.file);
+        try {
+            FileChannel channel = fis.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            buffer.limit(0);
+            long position = 0;
+            for (int k = 0; k < segment.numColumns; ++k) {
+                int col = segment.columns[k];
+                int size = segment.columnSizes[k];
+
+                // Skip over columns that are not in this range
+                if (!transposeData && (col < start || col >= end)) {
+                    int buffered = buffer.remaining() / 8;
+                    if (size <= buffered)
+                        buffer.position(buffer.position() + 8 * size);
+                    else {
+                        position += 8L * (size - buffered);
+                        buffer.limit(0);
+                    }
+                    continue;
+                }
+
+                for (int i = 0; i < size; ++i) {
+                    if (!buffer.hasRemaining()) {
+                        buffer.clear();
+                        int read = 0;
+                        while (buffer.hasRemaining()
+                               && (read = channel.read(buffer, position)) > 0)
+                            position += read;
+                        buffer.flip();
+                        if (buffer.remaining() < 8)
+                            throw new IOException(
+                                "Unexpected end of segment " + segment.file);
+                    }
+                    int row = buffer.getInt();
+                    int bits = buffer.getInt();
+                    int major = (transposeData) ? row : col;
+                    int minor = (transposeData) ? col : row;
+                    if (major < start || major >= end)
+                        continue;
+                    values[cursors.getAndIncrement(major - start)] =
+                        ((long) minor << 32) | (bits & 0xFFFFFFFFL);
+                }
+            }
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Sorts and writes the final columns in {@code [blockStart, blockEnd)},
+     * whose values begin in {@code values} at {@code firsts[m - start]}.
+     */
+    private static void writeColumns(int blockStart, int blockEnd, int start,
+                                     int[] firsts, long[] values,
+                                     long[] offsets, FileChannel out)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        long position = offsets[blockStart];
+        for (int m = blockStart; m < blockEnd; ++m) {
+            int from = firsts[m - start];
+            int to = firsts[m - start + 1];
+            Arrays.sort(values, from, to);
+            if (buffer.remaining() < 4)
+                position = flush(out, buffer, position);
+            buffer.putInt(to - from);
+            for (int i = from; i < to; ++i) {
+                if (buffer.remaining() < 8)
+                    position = flush(out, buffer, position);
+                buffer.putInt((int) (values[i] >>> 32));
+                buffer.putInt((int) values[i]);
+            }
+        }
+        flush(out, buffer, position);
+    }
+
+    /**
+     * Writes the contents of the buffer at the position and clears it,
+     * returning the position after the written bytes.
+     */
+    private static long flush(FileChannel out, ByteBuffer buffer,
+                              long position) throws IOException {
+        buffer.flip();
+        position = write(out, buffer, position);
+        buffer.clear();
+        return position;
+    }
+
+    /**
+     * Writes all of the buffer at the position, returning the position after
+     * the written bytes.
+     */
+    private static long write(FileChannel out, ByteBuffer buffer,
+                              long position) throws IOException {
+        while (buffer.hasRemaining())
+            position += out.write(buffer, position);
+        return position;
+    }
+
+    /**
+     * Records the first error reported by any task.
+     */
+    private static void setError(IOException[] error, IOException ioe) {
+        synchronized (error) {
+            if (error[0] == null)
+                error[0] = ioe;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized File getFile() {
+        if (!isFinished)
+            throw new IllegalStateException(
+                "Cannot access matrix file until finished has been called");
+        return matrixFile;
+    }
+
+    /**
+     * Returns {@link MatrixIO.Format#SVDLIBC_SPARSE_BINARY
+     * SVDLIBC_SPARSE_BINARY}.
+     */
+    public Format getMatrixFormat() {
+        return MatrixIO.Format.SVDLIBC_SPARSE_BINARY;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public MatrixFile getMatrixFile() {
+        return new MatrixFile(getFile(), getMatrixFormat());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isFinished() {
+        return isFinished;
+    }
+
+    /**
+     * The columns added by a single thread.  The values are written to a file
+     * as pairs of an {@code int} row index and a {@code float} value, while the
+     * index and size of each column and the number of values in each row are
+     * kept in memory.
+     */
+    private static class Segment {
+
+        final File file;
+
+        private final DataOutputStream dos;
+
+        int[] columns;
+
+        int[] columnSizes;
+
+        int numColumns;
+
+        int[] rowCounts;
+
+        int numRows;
+
+        long nonZeroValues;
+
+        public Segment() throws IOException {
+            file = File.createTempFile(
+                "svdlibc-sparse-binary-segment", ".dat");
+            file.deleteOnExit();
+            dos = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+            columns = new int[64];
+            columnSizes = new int[64];
+            numColumns = 0;
+            rowCounts = new int[0];
+            numRows = 0;
+            nonZeroValues = 0;
+        }
+
+        /**
+         * Records a column whose values will be added next.
+         */
+        public void startColumn(int col, int size, int length) {
+            if (numColumns == columns.length) {
+                columns = Arrays.copyOf(columns, numColumns * 2);
+                columnSizes = Arrays.copyOf(columnSizes, numColumns * 2);
+            }
+            columns[numColumns] = col;
+            columnSizes[numColumns] = size;
+            numColumns++;
+            if (length > numRows)
+                numRows = length;
+        }
+
+        /**
+         * Adds a value to the most recently started column.
+         */
+        public void add(int row, float value) throws IOException {
+            if (row >= rowCounts.length)
+                rowCounts = Arrays.copyOf(
+                    rowCounts, Math.max(row + 1, rowCounts.length * 2));
+            rowCounts[row]++;
+            nonZeroValues++;
+            dos.writeInt(row);
+            dos.writeFloat(value);
+        }
+
+        public void close() throws IOException {
+            dos.close();
+        }
+
+        /**
+         * Discards the record of the columns and rows in this segment once it
+         * has been merged.
+         */
+        public void release() {
+            columns = null;
+            columnSizes = null;
+            rowCounts = null;
+        }
+    }
+}
@@ -0,0 +1,681 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.matrix.MatrixIO.Format;
+
+import edu.ucla.sspace.util.WorkQueue;
+
+import edu.ucla.sspace.vector.SparseDoubleVector;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Random;
+
+import java.util.logging.Logger;
+
+
+/**
+ * A pure-Java, multi-threaded implementation of the randomized SVD described
+ * by Halko, Martinsson and Tropp.  See the following paper for details:
+ *
+ * <ul> <li style="font-family:Garamond, Georgia, serif"> N. Halko,
+ * P. G. Martinsson, and J. A. Tropp.  Finding structure with randomness:
+ * Probabilistic algorithms for constructing approximate matrix
+ * decompositions. <i>SIAM Review</i>, 53(2):217-288, 2011.</li> </ul>
+ *
+ * The algorithm multiplies the matrix by a small Gaussian random matrix to find
+ * an orthonormal basis for (approximately) the range of the matrix's top
+ * singular vectors.  A few power iterations sharpen the basis when the
+ * singular values decay slowly, as they do for most term-document matrices.
+ * The matrix is then projected onto the basis and the SVD of the resulting
+ * small matrix is computed directly.  In total, the algorithm needs only
+ * {@code 2 + 2q} passes over the matrix, where {@code q} is the number of power
+ * iterations, and each pass is a sparse matrix product that is computed in
+ * parallel.<p>
+ *
+ * The input matrix is held in memory in a compressed sparse row form along with
+ * its transpose, which requires about 24 bytes per non-zero value.  The dense
+ * intermediate matrices require {@code 8 * (rows + columns) * (k + p)} bytes,
+ * where {@code k} is the number of requested singular values and {@code p} is
+ * the number of oversamples.  Matrices in {@link
+ * Format#SVDLIBC_SPARSE_BINARY} files are read directly from the file without
+ * any intermediate conversion.<p>
+ *
+ * The accuracy of the returned singular values is controlled by the number of
+ * oversamples and power iterations; the defaults of {@value
+ * #DEFAULT_OVERSAMPLES} and {@value #DEFAULT_POWER_ITERATIONS} are
+ * sufficient for the top singular values of most term-document matrices to be
+ * accurate to several digits.
+ *
+ * @see SVD
+ */
+public class RandomizedSvd {
+
+    /**
+     * The default number of additional random samples used when finding the
+     * range of the matrix.
+     */
+    public static final int DEFAULT_OVERSAMPLES = 10;
+
+    /**
+     * The default number of power iterations.
+     */
+    public static final int DEFAULT_POWER_ITERATIONS = 2;
+
+    /**
+     * The relative norm below which a column is considered to be linearly
+     * dependent on the previous columns during orthonormalization.
+     */
+    private static final double DEPENDENT_COLUMN_TOLERANCE = 1e-10;
+
+    /**
+     * The maximum number of sweeps used by the Jacobi SVD of the small matrix.
+     */
+    private static final int MAX_JACOBI_SWEEPS = 60;
+
+    /**
+     * The number of rows below which an operation is run in the calling
+     * thread, rather than in parallel.
+     */
+    private static final int MIN_PARALLEL_ROWS = 2048;
+
+    private static final Logger LOGGER =
+        Logger.getLogger(RandomizedSvd.class.getName());
+
+    /**
+     * Uninstantiable
+     */
+    private RandomizedSvd() { }
+
+    /**
+     * Computes the SVD of the matrix using the default parameters.
+     *
+     * @param m the matrix to be decomposed
+     * @param dimensions the number of singular values to return
+     *
+     * @return the decomposed matrices: U, S, V<sup>T</sup> in that order.
+     */
+    public static Matrix[] svd(Matrix m, int dimensions) {
+        return svd(m, dimensions, DEFAULT_OVERSAMPLES,
+                   DEFAULT_POWER_ITERATIONS, new Random());
+    }
+
+    /**
+     * Computes the SVD of the matrix.
+     *
+     * @param m the matrix to be decomposed
+     * @param dimensions the number of singular values to return
+     * @param oversamples the number of additional random samples to use when
+     *        finding the range of the matrix
+     * @param powerIterations the number of power iterations to perform
+     * @param random the source of randomness for the sampling matrix
+     *
+     * @return the decomposed matrices: U, S, V<sup>T</sup> in that order.
+     *
+     * @throws IllegalArgumentException if the parameters are out of range or
+     *         if the dense factors of the matrix would have more elements than
+     *         can be stored in an array
+     */
+    public static Matrix[] svd(Matrix m, int dimensions, int oversamples,
+                               int powerIterations, Random random) {
+        return svd(CompressedRows.fromMatrix(m), dimensions, oversamples,
+                   powerIterations, random);
+    }
+
+    /**
+     * Computes the SVD of the matrix in the provided file in the specified
+     * format using the default parameters.  Matrices in the {@link
+     * Format#SVDLIBC_SPARSE_BINARY} format are streamed directly from the
+     * file; all other formats are first read into memory with {@link
+     * MatrixIO#readMatrix(File,Format)}.
+     *
+     * @param matrix the file containing the matrix to be decomposed
+     * @param format the format of the data in the file
+     * @param dimensions the number of singular values to return
+     *
+     * @return the decomposed matrices: U, S, V<sup>T</sup> in that order.
+     */
+    public static Matrix[] svd(File matrix, Format format, int dimensions)
+            throws IOException {
+        CompressedRows a = (format.equals(Format.SVDLIBC_SPARSE_BINARY))
+            ? CompressedRows.fromSvdlibcSparseBinary(matrix)
+            : CompressedRows.fromMatrix(MatrixIO.readMatrix(matrix, format));
+        return svd(a, dimensions, DEFAULT_OVERSAMPLES,
+                   DEFAULT_POWER_ITERATIONS, new Random());
+    }
+
+    /**
+     * Computes the SVD of the compressed matrix.
+     */
+    static Matrix[] svd(CompressedRows a, int dimensions, int oversamples,
+                        int powerIterations, Random random) {
+        if (dimensions < 1)
+            throw new IllegalArgumentException(
+                "Must request at least one dimension: " + dimensions);
+        if (oversamples < 0 || powerIterations < 0)
+            throw new IllegalArgumentException(
+                "The number of oversamples and power iterations must be " +
+                "non-negative");
+        int m = a.rows;
+        int n = a.cols;
+        int k = Math.min(dimensions, Math.min(m, n));
+        int l = Math.min(k + oversamples, Math.min(m, n));
+
+        // Check that the largest dense matrices fit in an array before
+        // doing any work
+        denseSize(m, l);
+        denseSize(n, l);
+        denseSize(l, l);
+
+        LOGGER.fine(String.format(
+            "Computing randomized SVD of %d x %d matrix with %d non-zeros " +
+            "using %d samples", m, n, a.rowStarts[m], l));
+
+        CompressedRows at = a.transpose();
+
+        // Sample the range of A with a Gaussian random matrix
+        double[] omega = new double[denseSize(n, l)];
+        for (int i = 0; i < omega.length; ++i)
+            omega[i] = random.nextGaussian();
+        double[] q = multiply(a, omega, l);
+        omega = null;
+        orthonormalize(q, m, l, null);
+
+        // Use power iterations to emphasize the top singular vectors,
+        // orthonormalizing after each product to preserve accuracy
+        for (int i = 0; i < powerIterations; ++i) {
+            LOGGER.fine("Power iteration " + (i + 1));
+            double[] z = multiply(at, q, l);
+            orthonormalize(z, n, l, null);
+            q = multiply(a, z, l);
+            z = null;
+            orthonormalize(q, m, l, null);
+        }
+
+        // Project A onto the basis.  Rather than computing B = Q^T A, compute
+        // B^T = A^T Q and its QR decomposition, B^T = Q2 R.
+        double[] q2 = multiply(at, q, l);
+        at = null;
+        double[] r = new double[denseSize(l, l)];
+        orthonormalize(q2, n, l, r);
+
+        // Compute the SVD of the small matrix, R = Ur S Vr^T.  Since B^T = Q2
+        // Ur S Vr^T, A ~= Q B = (Q Vr) S (Q2 Ur)^T.
+        double[] ur = new double[denseSize(l, l)];
+        double[] vr = new double[denseSize(l, l)];
+        double[] singularValues = jacobiSvd(r, l, ur, vr);
+
+        double[] u = multiply(q, m, l, vr, k);
+        q = null;
+        double[] v = multiply(q2, n, l, ur, k);
+        q2 = null;
+
+        // Transpose V into V^T
+        double[] vt = new double[denseSize(k, n)];
+        for (int row = 0; row < n; ++row) {
+            for (int col = 0; col < k; ++col)
+                vt[col * n + row] = v[row * k + col];
+        }
+
+        return new Matrix[] {
+            new ArrayMatrix(m, k, u),
+            new DiagonalMatrix(Arrays.copyOf(singularValues, k)),
+            new ArrayMatrix(k, n, vt) };
+    }
+
+    /**
+     * Returns the product of the sparse matrix and the dense row-major matrix
+     * with {@code l} columns as a dense row-major matrix.
+     */
+    static double[] multiply(final CompressedRows a,
+                             final double[] x, final int l) {
+        final double[] result = new double[denseSize(a.rows, l)];
+        forEachRowRange(a.rows, new RowTask() {
+                public void run(int start, int end) {
+                    for (int row = start; row < end; ++row) {
+                        int offset = row * l;
+                        for (int i = a.rowStarts[row];
+                                 i < a.rowStarts[row + 1]; ++i) {
+                            double value = a.values[i];
+                            int xOffset = a.columns[i] * l;
+                            for (int c = 0; c < l; ++c)
+                                result[offset + c] += value * x[xOffset + c];
+                        }
+                    }
+                }
+            });
+        return result;
+    }
+
+    /**
+     * Returns the first {@code k} columns of the product of the dense
+     * row-major matrix with {@code l} columns and the row-major {@code l x l}
+     * matrix.
+     */
+    static double[] multiply(final double[] x, int rows, final int l,
+                             final double[] small, final int k) {
+        final double[] result = new double[denseSize(rows, k)];
+        forEachRowRange(rows, new RowTask() {
+                public void run(int start, int end) {
+                    for (int row = start; row < end; ++row) {
+                        int xOffset = row * l;
+                        int offset = row * k;
+                        for (int i = 0; i < l; ++i) {
+                            double value = x[xOffset + i];
+                            if (value == 0)
+                                continue;
+                            int smallOffset = i * l;
+                            for (int c = 0; c < k; ++c)
+                                result[offset + c] +=
+                                    value * small[smallOffset + c];
+                        }
+                    }
+                }
+            });
+        return result;
+    }
+
+    /**
+     * Returns the number of elements in a dense row-major matrix with the
+     * specified dimensions.
+     *
+     * @throws IllegalArgumentException if the matrix has more elements than
+     *         can be stored in an array
+     */
+    static int denseSize(int rows, int cols) {
+        long size = (long)rows * cols;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException(
+                "A dense " + rows + " x " + cols + " matrix has " + size +
+                " elements, which exceeds the maximum array size of " +
+                Integer.MAX_VALUE + "; request fewer dimensions or use " +
+                "another SVD algorithm");
+        return (int)size;
+    }
+
+    /**
+     * Orthonormalizes the columns of the dense row-major matrix in place using
+     * classical Gram-Schmidt with reorthogonalization, which is as accurate as
+     * modified Gram-Schmidt but allows each step to be computed in parallel
+     * over the rows.  Columns that are linearly dependent on the previous
+     * columns are set to zero.  If {@code r} is non-{@code null}, it is filled
+     * with the upper triangular {@code l x l} factor such that the original
+     * matrix is equal to the orthonormalized matrix times {@code r}.
+     */
+    static void orthonormalize(final double[] y, int rows, final int l,
+                               double[] r) {
+        for (int j = 0; j < l; ++j) {
+            final int col = j;
+            double originalNorm = Math.sqrt(columnDots(y, rows, l, col, 0)[0]);
+            for (int pass = 0; pass < 2 && col > 0; ++pass) {
+                final double[] dots = columnDots(y, rows, l, col, col);
+                forEachRowRange(rows, new RowTask() {
+                        public void run(int start, int end) {
+                            for (int row = start; row < end; ++row) {
+                                int offset = row * l;
+                                double sum = 0;
+                                for (int i = 0; i < col; ++i)
+                                    sum += dots[i] * y[offset + i];
+                                y[offset + col] -= sum;
+                            }
+                        }
+                    });
+                if (r != null) {
+                    for (int i = 0; i < col; ++i)
+                        r[i * l + col] += dots[i];
+                }
+            }
+
+            double norm = Math.sqrt(columnDots(y, rows, l, col, 0)[0]);
+            final double scale = (norm > 0 && norm >
+                                  DEPENDENT_COLUMN_TOLERANCE * originalNorm)
+                ? 1 / norm : 0;
+            if (r != null)
+                r[col * l + col] = (scale == 0) ? 0 : norm;
+            forEachRowRange(rows, new RowTask() {
+                    public void run(int start, int end) {
+                        for (int row = start; row < end; ++row)
+                            y[row * l + col] *= scale;
+                    }
+                });
+        }
+    }
+
+    /**
+     * Returns the dot products of column {@code col} with each of the first
+     * {@code numPrevious} columns of the dense row-major matrix.  If {@code
+     * numPrevious} is {@code 0}, returns the dot product of the column with
+     * itself.
+     */
+    private static double[] columnDots(final double[] y, int rows, final int l,
+                                       final int col, final int numPrevious) {
+        final double[] dots = new double[Math.max(numPrevious, 1)];
+        forEachRowRange(rows, new RowTask() {
+                public void run(int start, int end) {
+                    double[] partial = new double[dots.length];
+                    for (int row = start; row < end; ++row) {
+                        int offset = row * l;
+                        double value = y[offset + col];
+                        if (value == 0)
+                            continue;
+                        if (numPrevious == 0)
+                            partial[0] += value * value;
+                        else {
+                            for (int i = 0; i < numPrevious; ++i)
+                                partial[i] += value * y[offset + i];
+                        }
+                    }
+                    synchronized(dots) {
+                        for (int i = 0; i < dots.length; ++i)
+                            dots[i] += partial[i];
+                    }
+                }
+            });
+        return dots;
+    }
+
+    /**
+     * Computes the SVD of the row-major {@code l x l} matrix using one-sided
+     * Jacobi rotations, returning the singular values in descending order and
+     * filling {@code u} and {@code v} with the corresponding row-major left and
+     * right singular vectors.
+     */
+    static double[] jacobiSvd(double[] a, int l, double[] u, double[] v) {
+        // Store the columns of the matrix and of V contiguously
+        double[][] cols = new double[l][l];
+        double[][] vCols = new double[l][l];
+        for (int i = 0; i < l; ++i) {
+            vCols[i][i] = 1;
+            for (int j = 0; j < l; ++j)
+                cols[j][i] = a[i * l + j];
+        }
+
+        for (int sweep = 0; sweep < MAX_JACOBI_SWEEPS; ++sweep) {
+            boolean rotated = false;
+            for (int p = 0; p < l - 1; ++p) {
+                for (int q = p + 1; q < l; ++q) {
+                    double[] x = cols[p];
+                    double[] y = cols[q];
+                    double alpha = 0;
+                    double beta = 0;
+                    double gamma = 0;
+                    for (int i = 0; i < l; ++i) {
+                        alpha += x[i] * x[i];
+                        beta += y[i] * y[i];
+                        gamma += x[i] * y[i];
+                    }
+                    if (gamma == 0 ||
+                            Math.abs(gamma) <= 1e-15 * Math.sqrt(alpha * beta))
+                        continue;
+                    rotated = true;
+                    double zeta = (beta - alpha) / (2 * gamma);
+                    double t = Math.signum(zeta)
+                        / (Math.abs(zeta) + Math.sqrt(1 + zeta * zeta));
+                    if (zeta == 0)
+                        t = 1;
+                    double c = 1 / Math.sqrt(1 + t * t);
+                    double s = c * t;
+                    rotate(x, y, c, s);
+                    rotate(vCols[p], vCols[q], c, s);
+                }
+            }
+            if (!rotated)
+                break;
+        }
+
+        // The singular values are the norms of the rotated columns
+        final double[] norms = new double[l];
+        Integer[] order = new Integer[l];
+        for (int j = 0; j < l; ++j) {
+            double sum = 0;
+            for (int i = 0; i < l; ++i)
+                sum += cols[j][i] * cols[j][i];
+            norms[j] = Math.sqrt(sum);
+            order[j] = j;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer i, Integer j) {
+                    return Double.compare(norms[j], norms[i]);
+                }
+            });
+
+        double[] singularValues = new double[l];
+        for (int j = 0; j < l; ++j) {
+            int src = order[j];
+            singularValues[j] = norms[src];
+            for (int i = 0; i < l; ++i) {
+                u[i * l + j] = (norms[src] > 0)
+                    ? cols[src][i] / norms[src] : 0;
+                v[i * l + j] = vCols[src][i];
+            }
+        }
+        return singularValues;
+    }
+
+    /**
+     * Applies the plane rotation to the pair of vectors.
+     */
+    private static void rotate(double[] x, double[] y, double c, double s) {
+        for (int i = 0; i < x.length; ++i) {
+            double xi = x[i];
+            double yi = y[i];
+            x[i] = c * xi - s * yi;
+            y[i] = s * xi + c * yi;
+        }
+    }
+
+    /**
+     * Runs the task over contiguous ranges of rows, in parallel if there are
+     * enough rows, and returns once every row has been processed.
+     */
+    static void forEachRowRange(int rows, final RowTask task) {
+        if (rows < MIN_PARALLEL_ROWS) {
+            task.run(0, rows);
+            return;
+        }
+        WorkQueue workQueue = WorkQueue.getWorkQueue();
+        int numTasks = workQueue.numThreads() * 4;
+        int rowsPerTask = (rows + numTasks - 1) / numTasks;
+        Collection<Runnable> tasks = new ArrayList<Runnable>(numTasks);
+        for (int start = 0; start < rows; start += rowsPerTask) {
+            final int s = start;
+            final int e = Math.min(start + rowsPerTask, rows);
+            tasks.add(new Runnable() {
+                    public void run() {
+                        task.run(s, e);
+                    }
+                });
+        }
+        workQueue.run(tasks);
+    }
+
+    /**
+     * A unit of work that processes a range of rows.
+     */
+    interface RowTask {
+
+        /**
+         * Processes the rows from {@code start}, inclusive, to {@code end},
+         * exclusive.
+         */
+        void run(int start, int end);
+    }
+
+    /**
+     * An immutable sparse matrix stored in compressed sparse row form.
+     */
+    static class CompressedRows {
+
+        /**
+         * The number of rows.
+         */
+        final int rows;
+
+        /**
+         * The number of columns.
+         */
+        final int cols;
+
+        /**
+         * The offset into {@code columns} and {@code values} at which each
+         * row's non-zero values start, with a final element for the total
+         * number of non-zero values.
+         */
+        final int[] rowStarts;
+
+        /**
+         * The column of each non-zero value.
+         */
+        final int[] columns;
+
+        /**
+         * The non-zero values.
+         */
+        final double[] values;
+
+        CompressedRows(int rows, int cols, int[] rowStarts, int[] columns,
+                       double[] values) {
+            this.rows = rows;
+            this.cols = cols;
+            this.rowStarts = rowStarts;
+            this.columns = columns;
+            this.values = values;
+        }
+
+        /**
+         * Returns the non-zero values of the matrix in compressed form.
+         */
+        static CompressedRows fromMatrix(Matrix m) {
+            int rows = m.rows();
+            int cols = m.columns();
+            int[] rowStarts = new int[rows + 1];
+            int[] columns = new int[Math.max(rows, 16)];
+            double[] values = new double[columns.length];
+            int nz = 0;
+            for (int row = 0; row < rows; ++row) {
+                if (m instanceof SparseMatrix) {
+                    SparseDoubleVector v =
+                        ((SparseMatrix)m).getRowVector(row);
+                    int[] nonZero = v.getNonZeroIndices();
+                    if (nz + nonZero.length > columns.length) {
+                        int size = Math.max(columns.length * 2,
+                                            nz + nonZero.length);
+                        columns = Arrays.copyOf(columns, size);
+                        values = Arrays.copyOf(values, size);
+                    }
+                    for (int col : nonZero) {
+                        double value = v.get(col);
+                        if (value != 0) {
+                            columns[nz] = col;
+                            values[nz++] = value;
+                        }
+                    }
+                }
+                else {
+                    for (int col = 0; col < cols; ++col) {
+                        double value = m.get(row, col);
+                        if (value == 0)
+                            continue;
+                        if (nz == columns.length) {
+                            columns = Arrays.copyOf(columns, nz * 2);
+                            values = Arrays.copyOf(values, nz * 2);
+                        }
+                        columns[nz] = col;
+                        values[nz++] = value;
+                    }
+                }
+                rowStarts[row + 1] = nz;
+            }
+            return new CompressedRows(rows, cols, rowStarts,
+                                      Arrays.copyOf(columns, nz),
+                                      Arrays.copyOf(values, nz));
+        }
+
+        /**
+         * Reads the matrix in the {@link Format#SVDLIBC_SPARSE_BINARY
+         * SVDLIBC_SPARSE_BINARY} file.  Since the format is stored by column,
+         * the transpose is read first and then transposed.
+         */
+        static CompressedRows fromSvdlibcSparseBinary(File matrix)
+                throws IOException {
+            DataInputStream header = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(matrix)));
+            int rows = header.readInt();
+            int cols = header.readInt();
+            int nz = header.readInt();
+            header.close();
+
+            int[] colStarts = new int[cols + 1];
+            int[] rowIndices = new int[nz];
+            double[] values = new double[nz];
+            SvdlibcSparseBinaryFileRowIterator it =
+                new SvdlibcSparseBinaryFileRowIterator(matrix);
+            int offset = 0;
+            for (int col = 0; col < cols; ++col) {
+                if (it.hasNext()) {
+                    SparseDoubleVector column = it.next();
+                    int[] nonZero = column.getNonZeroIndices();
+                    Arrays.sort(nonZero);
+                    for (int row : nonZero) {
+                        rowIndices[offset] = row;
+                        values[offset++] = column.get(row);
+                    }
+                }
+                colStarts[col + 1] = offset;
+            }
+            return new CompressedRows(cols, rows, colStarts,
+                                      rowIndices, values).transpose();
+        }
+
+        /**
+         * Returns the transpose of this matrix.
+         */
+        CompressedRows transpose() {
+            int nz = rowStarts[rows];
+            int[] starts = new int[cols + 1];
+            for (int i = 0; i < nz; ++i)
+                starts[columns[i] + 1]++;
+            for (int c = 0; c < cols; ++c)
+                starts[c + 1] += starts[c];
+            int[] next = Arrays.copyOf(starts, cols);
+            int[] rowIndices = new int[nz];
+            double[] vals = new double[nz];
+            for (int row = 0; row < rows; ++row) {
+                for (int i = rowStarts[row]; i < rowStarts[row + 1]; ++i) {
+                    int pos = next[columns[i]]++;
+                    rowIndices[pos] = row;
+                    vals[pos] = values[i];
+                }
+            }
+            return new CompressedRows(cols, rows, starts, rowIndices, vals);
+        }
+    }
+}
@@ -63,11 +63,17 @@ import java.util.logging.Logger;
  *
  * <p>
  *
- * Five different SVD algorithms are possible:
+ * Seven different SVD algorithms are possible:
  * <ol>
  *
  * <li> <a href="http://tedlab.mit.edu/~dr/svdlibc/">SVDLIBC</a> </li>
  *
+ * <li> SVDLIBJ, a Java port of SVDLIBC </li>
+ *
+ * <li> {@link RandomizedSvd}, a multi-threaded, pure-Java randomized SVD that
+ * operates directly on sparse matrices and {@link
+ * Format#SVDLIBC_SPARSE_BINARY SVDLIBC sparse binary} files </li>
+ *
  * <li> Matlab <a
  * href="http://www.mathworks.com/access/helpdesk/help/techdoc/index.html?/access/helpdesk/help/techdoc/ref/svds.html">svds</a>
  * </li>
@@ -128,6 +134,7 @@ public class SVD {
         OCTAVE,
         JAMA,
         COLT,
+        RANDOMIZED,
         ANY
     }
 
@@ -214,6 +221,8 @@ public class SVD {
         // into arrays first.
         case SVDLIBJ:
             return SvdlibjDriver.svd(m, dimensions);
+        case RANDOMIZED:
+            return RandomizedSvd.svd(m, dimensions);
         case COLT:
             return coltSVD(m.toDenseArray(), !(m instanceof SparseMatrix), 
                            dimensions);
@@ -342,6 +351,9 @@ public class SVD {
             case SVDLIBJ: {
                 return SvdlibjDriver.svd(matrix, format, dimensions);
             }
+            case RANDOMIZED: {
+                return RandomizedSvd.svd(matrix, format, dimensions);
+            }
             case JAMA: {
                 @SuppressWarnings("deprecation")
                 double[][] inputMatrix = 
@@ -0,0 +1,487 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.matrix.RandomizedSvd.CompressedRows;
+import edu.ucla.sspace.matrix.RandomizedSvd.RowTask;
+
+import java.util.Random;
+
+import java.util.logging.Logger;
+
+
+/**
+ * A pure-Java, multi-threaded implementation of the Spectral Regression form of
+ * Locality Preserving Projection (LPP).  See the following paper for details:
+ *
+ * <ul> <li style="font-family:Garamond, Georgia, serif"> Deng Cai, Xiaofei He
+ * and Jiawei Han.  Spectral Regression for Efficient Regularized Subspace
+ * Learning.  In <i>Proceedings of the 11th International Conference on
+ * Computer Vision (ICCV'07)</i>, 2007.</li> </ul>
+ *
+ * The projection is computed in two steps.  First, the generalized eigenproblem
+ * {@code W y = lambda D y} is solved for the affinity matrix {@code W} and its
+ * diagonal degree matrix {@code D}.  The problem is solved as the equivalent
+ * symmetric eigenproblem for {@code D^-1/2 W D^-1/2} using block subspace
+ * iteration with periodic Rayleigh-Ritz projections, where each iteration is
+ * a sparse matrix product that is computed in parallel.  The eigenvector with
+ * the largest eigenvalue is constant over each connected component of the
+ * graph and is discarded.  Second, the data matrix {@code X} is regressed onto each
+ * of the remaining eigenvectors by solving the ridge regression {@code min ||X
+ * a - y||^2 + alpha ||a||^2} with conjugate gradients.  The rows of the data
+ * matrix are projected by multiplying them with the regression
+ * coefficients.<p>
+ *
+ * The affinity matrix is symmetrized as {@code (W + W^T) / 2} so that the
+ * asymmetric affinities of a nearest neighbor graph may be used directly.  Rows
+ * with no affinity to any other row are ignored when solving the
+ * eigenproblem.<p>
+ *
+ * Both matrices are held in memory in a compressed sparse row form along with
+ * their transposes, which requires about 24 bytes per non-zero value.  The
+ * dense intermediate matrices require {@code 8 * (rows + columns) * (d + p)}
+ * bytes, where {@code d} is the number of dimensions and {@code p} is the
+ * number of additional vectors iterated to speed convergence.
+ *
+ * @see LocalityPreservingProjection
+ */
+public class SpectralRegression {
+
+    /**
+     * The default weight of the ridge penalty in the regression, which is the
+     * same as used by the Matlab implementation.
+     */
+    public static final double DEFAULT_REGULARIZATION = 0.01;
+
+    /**
+     * The maximum number of products of the affinity matrix with the subspace
+     * used to find the eigenvectors.
+     */
+    private static final int MAX_EIGEN_ITERATIONS = 1000;
+
+    /**
+     * The maximum number of conjugate gradient iterations used by the
+     * regression.
+     */
+    private static final int MAX_REGRESSION_ITERATIONS = 200;
+
+    /**
+     * The norm of the residual {@code S q - theta q} below which an
+     * eigenvector {@code q} of the shifted and scaled normalized affinity
+     * matrix is considered to have converged.
+     */
+    private static final double EIGEN_TOLERANCE = 1e-6;
+
+    /**
+     * The norm of the gradient, relative to its initial norm, below which the
+     * regression is considered to have converged.
+     */
+    private static final double REGRESSION_TOLERANCE = 1e-6;
+
+    /**
+     * The number of additional vectors iterated beyond those needed, which
+     * speeds the convergence of the last needed eigenvectors.
+     */
+    private static final int EXTRA_VECTORS = 10;
+
+    /**
+     * The number of products of the affinity matrix with the subspace between
+     * each Rayleigh-Ritz projection.  The projection and orthonormalization
+     * cost as much as a product, so they are only performed periodically.
+     */
+    private static final int POWER_STEPS = 4;
+
+    /**
+     * The seed for the starting vectors of the subspace iteration, which makes
+     * the projection reproducible
+     */
+    private static final long SEED = 0;
+
+    private static final Logger LOGGER =
+        Logger.getLogger(SpectralRegression.class.getName());
+
+    /**
+     * Uninstantiable
+     */
+    private SpectralRegression() { }
+
+    /**
+     * Projects the rows of the data matrix into the specified number of
+     * dimensions using the default regularization.
+     *
+     * @param data a matrix whose rows will be projected
+     * @param affinity a square matrix of non-negative affinities between the
+     *        rows of the data matrix
+     * @param dimensions the number of dimensions into which the rows should be
+     *        projected
+     *
+     * @return a dense matrix with a row for each row of the data matrix
+     */
+    public static Matrix project(Matrix data, Matrix affinity,
+                                 int dimensions) {
+        return project(data, affinity, dimensions, DEFAULT_REGULARIZATION);
+    }
+
+    /**
+     * Projects the rows of the data matrix into the specified number of
+     * dimensions.
+     *
+     * @param data a matrix whose rows will be projected
+     * @param affinity a square matrix of non-negative affinities between the
+     *        rows of the data matrix
+     * @param dimensions the number of dimensions into which the rows should be
+     *        projected.  At most one fewer dimension than the number of rows
+     *        will be returned.
+     * @param alpha the weight of the ridge penalty in the regression
+     *
+     * @return a dense matrix with a row for each row of the data matrix
+     *
+     * @throws IllegalArgumentException if the affinity matrix's dimensions do
+     *         not match the number of rows in the data matrix
+     */
+    public static Matrix project(Matrix data, Matrix affinity, int dimensions,
+                                 double alpha) {
+        if (affinity.rows() != data.rows() 
+                || affinity.columns() != data.rows())
+            throw new IllegalArgumentException(
+                "The affinity matrix must be a square matrix with a row for " +
+                "each row of the data matrix");
+        if (dimensions < 1)
+            throw new IllegalArgumentException(
+                "Must request at least one dimension: " + dimensions);
+        if (alpha < 0)
+            throw new IllegalArgumentException(
+                "The regularization must be non-negative: " + alpha);
+        int rows = data.rows();
+        int d = Math.min(dimensions, rows - 1);
+        if (d < 1)
+            return new ArrayMatrix(rows, 0);
+
+        LOGGER.fine("Computing the eigenvectors of the affinity matrix");
+        double[] responses =
+            embed(CompressedRows.fromMatrix(affinity), d, null);
+
+        LOGGER.fine("Regressing the data onto the eigenvectors");
+        CompressedRows x = CompressedRows.fromMatrix(data);
+        double[] coefficients = regress(x, x.transpose(), responses, d, alpha);
+        return new ArrayMatrix(
+            rows, d, RandomizedSvd.multiply(x, coefficients, d));
+    }
+
+    /**
+     * Returns the {@code d} generalized eigenvectors of {@code W y = lambda D
+     * y} with the largest eigenvalues, excluding the largest, as the columns of
+     * a dense row-major matrix.  Each eigenvector has unit length.  If {@code
+     * eigenvalues} is non-{@code null}, it is filled with the eigenvalues of
+     * the returned eigenvectors.
+     */
+    static double[] embed(CompressedRows w, int d, double[] eigenvalues) {
+        final int n = w.rows;
+        final CompressedRows wt = w.transpose();
+
+        // Compute the degree of each row in the symmetrized matrix and the
+        // scaling used to normalize it
+        final double[] invSqrtDegree = new double[n];
+        for (int i = 0; i < n; ++i) {
+            double degree = 0;
+            for (int j = w.rowStarts[i]; j < w.rowStarts[i + 1]; ++j)
+                degree += w.values[j];
+            for (int j = wt.rowStarts[i]; j < wt.rowStarts[i + 1]; ++j)
+                degree += wt.values[j];
+            degree /= 2;
+            invSqrtDegree[i] = (degree > 0) ? 1 / Math.sqrt(degree) : 0;
+        }
+
+        // Bound the magnitude of the eigenvalues of the normalized matrix, S,
+        // by its largest absolute row sum.  The iteration uses (S + bI) / 2b,
+        // whose eigenvalues are in [0, 1] and whose largest eigenvalues are
+        // those of S.
+        double bound = 0;
+        for (int i = 0; i < n; ++i) {
+            double sum = 0;
+            for (int j = w.rowStarts[i]; j < w.rowStarts[i + 1]; ++j)
+                sum += Math.abs(w.values[j]) * invSqrtDegree[w.columns[j]];
+            for (int j = wt.rowStarts[i]; j < wt.rowStarts[i + 1]; ++j)
+                sum += Math.abs(wt.values[j]) * invSqrtDegree[wt.columns[j]];
+            bound = Math.max(bound, sum * invSqrtDegree[i] / 2);
+        }
+        final double shift = (bound > 0) ? bound : 1;
+
+        // Find one more eigenvector than requested to account for the
+        // discarded eigenvector
+        int k = Math.min(d + 1, n);
+        final int l = Math.min(k + EXTRA_VECTORS, n);
+        Random random = new Random(SEED);
+        double[] q = new double[n * l];
+        for (int i = 0; i < q.length; ++i)
+            q[i] = random.nextGaussian();
+        RandomizedSvd.orthonormalize(q, n, l, null);
+
+        double[] ritzValues = null;
+        double[] ritzVectors = null;
+        for (int iter = 0; iter < MAX_EIGEN_ITERATIONS; iter += POWER_STEPS) {
+            // Project the operator onto the subspace and rotate the basis
+            // onto the Ritz vectors
+            double[] z = apply(w, wt, invSqrtDegree, shift, q, l);
+            double[] h = transposeMultiply(q, z, n, l);
+            double[] v = new double[l * l];
+            ritzValues = symmetricEigen(h, l, v);
+            ritzVectors = RandomizedSvd.multiply(q, n, l, v, l);
+            z = RandomizedSvd.multiply(z, n, l, v, l);
+
+            // Check whether the needed vectors have converged
+            double[] residuals = new double[k];
+            for (int row = 0; row < n; ++row) {
+                int offset = row * l;
+                for (int c = 0; c < k; ++c) {
+                    double r = z[offset + c] 
+                        - ritzValues[c] * ritzVectors[offset + c];
+                    residuals[c] += r * r;
+                }
+            }
+            double maxResidual = 0;
+            for (double r : residuals)
+                maxResidual = Math.max(maxResidual, Math.sqrt(r));
+            if (maxResidual < EIGEN_TOLERANCE) {
+                LOGGER.fine("Eigenvectors converged after " + 
+                            (iter + POWER_STEPS) + " products");
+                break;
+            }
+            if (iter + POWER_STEPS >= MAX_EIGEN_ITERATIONS) {
+                LOGGER.warning("Eigenvectors did not converge after " + 
+                               MAX_EIGEN_ITERATIONS + " products; the " +
+                               "largest residual is " + maxResidual);
+                break;
+            }
+            // The eigenvalues of the operator are in [0, 1], so several
+            // products can be taken before the basis loses its conditioning
+            for (int step = 1; step < POWER_STEPS; ++step)
+                z = apply(w, wt, invSqrtDegree, shift, z, l);
+            RandomizedSvd.orthonormalize(z, n, l, null);
+            q = z;
+        }
+
+        // Convert the eigenvectors of S to the generalized eigenvectors,
+        // skipping the first
+        double[] y = new double[n * d];
+        double[] norms = new double[d];
+        for (int row = 0; row < n; ++row) {
+            for (int c = 0; c < d; ++c) {
+                double value = 
+                    ritzVectors[row * l + c + 1] * invSqrtDegree[row];
+                y[row * d + c] = value;
+                norms[c] += value * value;
+            }
+        }
+        for (int c = 0; c < d; ++c)
+            norms[c] = (norms[c] > 0) ? 1 / Math.sqrt(norms[c]) : 0;
+        for (int i = 0; i < y.length; ++i)
+            y[i] *= norms[i % d];
+        if (eigenvalues != null) {
+            for (int c = 0; c < d; ++c)
+                eigenvalues[c] = ritzValues[c + 1] * 2 * shift - shift;
+        }
+        return y;
+    }
+
+    /**
+     * Returns the product of {@code (S + bI) / 2b} with the dense row-major
+     * matrix with {@code l} columns, where {@code S} is the normalized
+     * symmetrized affinity matrix and {@code b} is the shift.
+     */
+    private static double[] apply(CompressedRows w, CompressedRows wt,
+                                  final double[] invSqrtDegree, 
+                                  final double shift, final double[] q, 
+                                  final int l) {
+        final int n = w.rows;
+        final double[] scaled = new double[q.length];
+        RandomizedSvd.forEachRowRange(n, new RowTask() {
+                public void run(int start, int end) {
+                    for (int row = start; row < end; ++row) {
+                        double s = invSqrtDegree[row];
+                        for (int c = row * l; c < (row + 1) * l; ++c)
+                            scaled[c] = q[c] * s;
+                    }
+                }
+            });
+        final double[] wq = RandomizedSvd.multiply(w, scaled, l);
+        final double[] wtq = RandomizedSvd.multiply(wt, scaled, l);
+        RandomizedSvd.forEachRowRange(n, new RowTask() {
+                public void run(int start, int end) {
+                    for (int row = start; row < end; ++row) {
+                        double s = invSqrtDegree[row] / 2;
+                        for (int c = row * l; c < (row + 1) * l; ++c) {
+                            double sq = (wq[c] + wtq[c]) * s;
+                            wq[c] = (sq + shift * q[c]) / (2 * shift);
+                        }
+                    }
+                }
+            });
+        return wq;
+    }
+
+    /**
+     * Returns the symmetric {@code l x l} row-major product of the transpose
+     * of {@code q} with {@code z}, where both are dense row-major matrices with
+     * {@code l} columns.
+     */
+    private static double[] transposeMultiply(final double[] q, 
+                                              final double[] z,
+                                              int rows, final int l) {
+        final double[] result = new double[l * l];
+        RandomizedSvd.forEachRowRange(rows, new RowTask() {
+                public void run(int start, int end) {
+                    double[] partial = new double[l * l];
+                    for (int row = start; row < end; ++row) {
+                        int offset = row * l;
+                        for (int i = 0; i < l; ++i) {
+                            double value = q[offset + i];
+                            if (value == 0)
+                                continue;
+                            int pOffset = i * l;
+                            for (int j = 0; j < l; ++j)
+                                partial[pOffset + j] += value * z[offset + j];
+                        }
+                    }
+                    synchronized(result) {
+                        for (int i = 0; i < partial.length; ++i)
+                            result[i] += partial[i];
+                    }
+                }
+            });
+        // Remove any asymmetry due to rounding
+        for (int i = 0; i < l; ++i) {
+            for (int j = i + 1; j < l; ++j) {
+                double avg = (result[i * l + j] + result[j * l + i]) / 2;
+                result[i * l + j] = avg;
+                result[j * l + i] = avg;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the eigenvalues of the symmetric row-major {@code l x l} matrix
+     * in descending order and fills {@code v} with the corresponding row-major
+     * eigenvectors.  The matrix is shifted to be positive semi-definite, so
+     * that its eigendecomposition is its singular value decomposition.
+     */
+    private static double[] symmetricEigen(double[] h, int l, double[] v) {
+        double bound = 0;
+        for (int i = 0; i < l; ++i) {
+            double sum = 0;
+            for (int j = 0; j < l; ++j)
+                sum += Math.abs(h[i * l + j]);
+            bound = Math.max(bound, sum);
+        }
+        double[] shifted = h.clone();
+        for (int i = 0; i < l; ++i)
+            shifted[i * l + i] += bound;
+        double[] u = new double[l * l];
+        double[] values = RandomizedSvd.jacobiSvd(shifted, l, u, v);
+        for (int i = 0; i < l; ++i)
+            values[i] -= bound;
+        return values;
+    }
+
+    /**
+     * Returns the ridge regression coefficients of the sparse matrix {@code x}
+     * for each of the {@code d} columns of the dense row-major response matrix,
+     * as the columns of a dense row-major matrix.  The regressions are solved
+     * together using conjugate gradients on the normal equations {@code (X^T X
+     * + alpha I) a = X^T y}, so that each iteration requires only one product
+     * with {@code X} and one with its transpose for all of the responses.
+     */
+    static double[] regress(CompressedRows x, CompressedRows xt, double[] y,
+                            int d, double alpha) {
+        int n = x.rows;
+        int f = x.cols;
+        double[] a = new double[f * d];
+        double[] s = y.clone();
+        double[] r = RandomizedSvd.multiply(xt, s, d);
+        double[] p = r.clone();
+        double[] gamma = columnNorms(r, d);
+        double[] initialGamma = gamma.clone();
+        boolean[] converged = new boolean[d];
+        int remaining = d;
+        for (int c = 0; c < d; ++c) {
+            if (gamma[c] == 0) {
+                converged[c] = true;
+                remaining--;
+            }
+        }
+
+        for (int iter = 0; iter < MAX_REGRESSION_ITERATIONS && remaining > 0;
+                 ++iter) {
+            double[] q = RandomizedSvd.multiply(x, p, d);
+            double[] qNorms = columnNorms(q, d);
+            double[] pNorms = columnNorms(p, d);
+            double[] step = new double[d];
+            for (int c = 0; c < d; ++c) {
+                double delta = qNorms[c] + alpha * pNorms[c];
+                if (!converged[c] && delta > 0)
+                    step[c] = gamma[c] / delta;
+            }
+            for (int i = 0; i < a.length; ++i)
+                a[i] += step[i % d] * p[i];
+            for (int i = 0; i < s.length; ++i)
+                s[i] -= step[i % d] * q[i];
+
+            r = RandomizedSvd.multiply(xt, s, d);
+            for (int i = 0; i < r.length; ++i)
+                r[i] -= alpha * a[i];
+            double[] newGamma = columnNorms(r, d);
+            double[] beta = new double[d];
+            for (int c = 0; c < d; ++c) {
+                if (converged[c])
+                    continue;
+                if (newGamma[c] <= REGRESSION_TOLERANCE * REGRESSION_TOLERANCE
+                        * initialGamma[c]) {
+                    converged[c] = true;
+                    remaining--;
+                }
+                beta[c] = newGamma[c] / gamma[c];
+            }
+            gamma = newGamma;
+            for (int i = 0; i < p.length; ++i) {
+                int c = i % d;
+                p[i] = (converged[c]) ? 0 : r[i] + beta[c] * p[i];
+            }
+        }
+        if (remaining > 0)
+            LOGGER.fine("Regression did not converge for " + remaining + 
+                        " dimensions after " + MAX_REGRESSION_ITERATIONS +
+                        " iterations");
+        return a;
+    }
+
+    /**
+     * Returns the squared norm of each column of the dense row-major matrix
+     * with {@code l} columns.
+     */
+    private static double[] columnNorms(double[] m, int l) {
+        double[] norms = new double[l];
+        for (int i = 0; i < m.length; ++i)
+            norms[i % l] += m[i] * m[i];
+        return norms;
+    }
+}
@@ -36,7 +36,6 @@ import edu.ucla.sspace.matrix.GrowingSparseMatrix;
 import edu.ucla.sspace.matrix.LocalityPreservingProjection;
 import edu.ucla.sspace.matrix.Matrices;
 import edu.ucla.sspace.matrix.Matrix;
-import edu.ucla.sspace.matrix.MatrixFile;
 import edu.ucla.sspace.matrix.SparseMatrix;
 import edu.ucla.sspace.matrix.YaleSparseMatrix;
 
@@ -457,7 +456,7 @@ public class LocalityPreservingCooccurrenceSpace implements SemanticSpace {
         }
 
         // Calculate the affinity matrix for the cooccurrence matrix
-        MatrixFile affinityMatrix = AffinityMatrixCreator.calculate(
+        Matrix affinityMatrix = AffinityMatrixCreator.calculateInMemory(
             cooccurrenceMatrix, Similarity.SimType.COSINE, 
             edgeType, edgeTypeParam, weighting, edgeWeightParam);
         
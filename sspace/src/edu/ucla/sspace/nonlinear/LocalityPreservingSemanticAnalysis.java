@@ -35,7 +35,7 @@ import edu.ucla.sspace.matrix.Matrix;
 import edu.ucla.sspace.matrix.MatrixFile;
 import edu.ucla.sspace.matrix.MatrixIO;
 import edu.ucla.sspace.matrix.MatrixIO.Format;
-import edu.ucla.sspace.matrix.SvdlibcSparseBinaryMatrixBuilder;
+import edu.ucla.sspace.matrix.ParallelSvdlibcSparseBinaryMatrixBuilder;
 import edu.ucla.sspace.matrix.Transform;
 
 import edu.ucla.sspace.util.LoggerUtil;
@@ -199,7 +199,7 @@ public class LocalityPreservingSemanticAnalysis
      */
     public LocalityPreservingSemanticAnalysis() throws IOException {
         super(false, new StringBasisMapping(),
-              new SvdlibcSparseBinaryMatrixBuilder(true));
+              new ParallelSvdlibcSparseBinaryMatrixBuilder(true));
     }
 
     /**
@@ -289,7 +289,7 @@ public class LocalityPreservingSemanticAnalysis
                 Matrix.Type.SPARSE_IN_MEMORY, true);
 
             // Calculate the affinity matrix for the term-doc matrix
-            MatrixFile affinityMatrix = AffinityMatrixCreator.calculate(
+            Matrix affinityMatrix = AffinityMatrixCreator.calculateInMemory(
                 termDocMatrix, Similarity.SimType.COSINE, 
                 edgeType, edgeTypeParam, weighting, edgeWeightParam);
 
@@ -32,6 +32,10 @@ import edu.ucla.sspace.index.TernaryPermutationFunction;
 import edu.ucla.sspace.text.IteratorFactory;
 
 import edu.ucla.sspace.util.GeneratorMap;
+import edu.ucla.sspace.util.IntegerEntry;
+import edu.ucla.sspace.util.LossyCounter;
+import edu.ucla.sspace.util.SparseIntArray;
+import edu.ucla.sspace.util.StringIntMap;
 
 import edu.ucla.sspace.vector.CompactSparseIntegerVector;
 import edu.ucla.sspace.vector.DenseIntVector;
@@ -47,6 +51,7 @@ import java.lang.reflect.Constructor;
 
 import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
@@ -161,6 +166,57 @@ import java.util.concurrent.ConcurrentHashMap;
  *       in a large saving in memory, while requiring more time to process each
  *       document.<p>
  *
+ * <dt> <i>Property:</i> <code><b>{@value #USE_BUFFERED_ACCUMULATION_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> {@code false} 
+ *
+ * <dd style="padding-top: .5em">This property specifies whether each thread
+ *       should accumulate the index vectors for a document into its own
+ *       private buffer, which is then merged into the shared semantic vectors
+ *       in a single batch.  Without buffering, every co-occurrence requires
+ *       acquiring the lock on the focus word's semantic vector, which causes
+ *       frequent words to become contention points when processing with many
+ *       threads.  Enabling this option trades a small amount of per-thread
+ *       memory for much lower lock contention.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #ACCUMULATION_BUFFER_SIZE_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> {@value #DEFAULT_ACCUMULATION_BUFFER_SIZE} 
+ *
+ * <dd style="padding-top: .5em">This property sets the maximum number of
+ *       distinct focus words whose changes a thread will buffer before merging
+ *       them into the shared semantic vectors.  Buffers are always merged once
+ *       a document has been processed, so this value only bounds the memory
+ *       used for very long documents.  If the {@value
+ *       #USE_BUFFERED_ACCUMULATION_PROPERTY} is set to {@code false}, the value
+ *       of this property has no effect.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #PRUNING_EPSILON_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> unset
+ *
+ * <dd style="padding-top: .5em">This optional property enables the pruning of
+ *       the semantic vectors of rare words while documents are processed,
+ *       which bounds the memory used by the semantic vectors when processing
+ *       an unbounded stream of documents.  The frequency of each focus word is
+ *       tracked with a {@link LossyCounter}, and once a word is evicted from
+ *       the counter, its semantic vector is discarded.  The value is the
+ *       counter's error bound as a fraction of all focus words seen; any word
+ *       that occurs more often than this fraction is never pruned.  Index
+ *       vectors are never pruned, so that a word always contributes the same
+ *       index vector to the semantics of other words.  If only {@value
+ *       #PRUNING_MAX_WORDS_PROPERTY} is set, the error bound is {@value
+ *       #DEFAULT_PRUNING_EPSILON}.<p>
+ *
+ * <dt> <i>Property:</i> <code><b>{@value #PRUNING_MAX_WORDS_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> unset
+ *
+ * <dd style="padding-top: .5em">This optional property enables pruning, as
+ *       described for {@value #PRUNING_EPSILON_PROPERTY}, and sets a hard
+ *       limit on the number of words whose semantic vectors are retained.
+ *       When the limit is exceeded, the least frequent words are pruned.<p>
+ *
  * </dl> <p>
  *
  * This class implements {@link Filterable}, which allows for fine-grained
@@ -232,6 +288,41 @@ public class RandomIndexing implements SemanticSpace, Filterable {
     public static final String USE_SPARSE_SEMANTICS_PROPERTY = 
         PROPERTY_PREFIX + ".sparseSemantics";
 
+    /**
+     * Specifies whether each thread should buffer its changes to the semantic
+     * vectors and merge them in batches, rather than locking the semantic
+     * vector for every co-occurrence.
+     */
+    public static final String USE_BUFFERED_ACCUMULATION_PROPERTY = 
+        PROPERTY_PREFIX + ".bufferedAccumulation";
+
+    /**
+     * The property to specify the maximum number of focus words whose changes
+     * are buffered by a single thread before being merged.
+     */
+    public static final String ACCUMULATION_BUFFER_SIZE_PROPERTY = 
+        PROPERTY_PREFIX + ".accumulationBufferSize";
+
+    /**
+     * The property to specify the error bound of the frequency tracker used to
+     * prune the semantic vectors of rare words while processing documents.
+     */
+    public static final String PRUNING_EPSILON_PROPERTY = 
+        PROPERTY_PREFIX + ".pruningEpsilon";
+
+    /**
+     * The property to specify the maximum number of words whose semantic
+     * vectors are retained while processing documents.
+     */
+    public static final String PRUNING_MAX_WORDS_PROPERTY = 
+        PROPERTY_PREFIX + ".pruningMaxWords";
+
+    /**
+     * The default error bound used when pruning is enabled by setting only the
+     * maximum number of words.
+     */
+    public static final double DEFAULT_PRUNING_EPSILON = 1e-6;
+
     /**
      * The default number of words to view before and after each word in focus.
      */
@@ -242,6 +333,12 @@ public class RandomIndexing implements SemanticSpace, Filterable {
      * vectors.
      */
     public static final int DEFAULT_VECTOR_LENGTH = 4000;
+
+    /**
+     * The default number of focus words whose changes are buffered by a thread
+     * before being merged into the semantic vectors.
+     */
+    public static final int DEFAULT_ACCUMULATION_BUFFER_SIZE = 1024;
     
     /**
      * A private source of randomization used for creating the index vectors.
@@ -298,6 +395,19 @@ public class RandomIndexing implements SemanticSpace, Filterable {
      */
     private final Set<String> semanticFilter;
 
+    /**
+     * The per-thread buffers used to accumulate semantic changes if buffered
+     * accumulation is enabled, or {@code null} if every change should be added
+     * directly to the semantic vectors.
+     */
+    private final ThreadLocal<SemanticBuffer> semanticBuffers;
+
+    /**
+     * The tracker of word frequencies used to prune the semantic vectors of
+     * rare words, or {@code null} if pruning is disabled.
+     */
+    private final LossyCounter<String> wordFrequencies;
+
     /**
      * Creates a new {@code RandomIndexing} instance using the current {@code
      * System} properties for configuration.
@@ -343,6 +453,41 @@ public class RandomIndexing implements SemanticSpace, Filterable {
             ? Boolean.parseBoolean(useSparseProp)
             : true;
 
+        String useBufferedProp = 
+            properties.getProperty(USE_BUFFERED_ACCUMULATION_PROPERTY);
+        boolean useBufferedAccumulation = (useBufferedProp != null)
+            ? Boolean.parseBoolean(useBufferedProp)
+            : false;
+
+        String bufferSizeProp = 
+            properties.getProperty(ACCUMULATION_BUFFER_SIZE_PROPERTY);
+        final int bufferSize = (bufferSizeProp != null)
+            ? Integer.parseInt(bufferSizeProp)
+            : DEFAULT_ACCUMULATION_BUFFER_SIZE;
+        if (bufferSize < 1)
+            throw new IllegalArgumentException(
+                "The accumulation buffer size must be positive: " + bufferSize);
+
+        semanticBuffers = (useBufferedAccumulation)
+            ? new ThreadLocal<SemanticBuffer>() {
+                  protected SemanticBuffer initialValue() {
+                      return new SemanticBuffer(bufferSize);
+                  }
+              }
+            : null;
+
+        String epsilonProp = properties.getProperty(PRUNING_EPSILON_PROPERTY);
+        String maxWordsProp = 
+            properties.getProperty(PRUNING_MAX_WORDS_PROPERTY);
+        wordFrequencies = (epsilonProp == null && maxWordsProp == null)
+            ? null
+            : new LossyCounter<String>(
+                  (epsilonProp == null) 
+                      ? DEFAULT_PRUNING_EPSILON 
+                      : Double.parseDouble(epsilonProp),
+                  (maxWordsProp == null) 
+                      ? 0 : Integer.parseInt(maxWordsProp));
+
         wordToIndexVector = new GeneratorMap<TernaryVector>(
                 indexVectorGenerator);
         wordToMeaning = new ConcurrentHashMap<String,IntegerVector>();
@@ -468,6 +613,16 @@ public class RandomIndexing implements SemanticSpace, Filterable {
 
         String focusWord = null;
 
+        // If buffering is enabled, all the changes for this document are
+        // accumulated locally and then merged once the document is finished
+        SemanticBuffer buffer = (semanticBuffers == null)
+            ? null : semanticBuffers.get();
+
+        // If pruning is enabled, count the focus words in this document so
+        // that the frequency tracker is updated once per distinct word
+        StringIntMap wordCounts = (wordFrequencies == null)
+            ? null : new StringIntMap();
+
         // prefetch the first windowSize words 
         for (int i = 0; i < windowSize && documentTokens.hasNext(); ++i)
             nextWords.offer(documentTokens.next());
@@ -490,7 +645,19 @@ public class RandomIndexing implements SemanticSpace, Filterable {
                 && !focusWord.equals(IteratorFactory.EMPTY_TOKEN);
             
             if (calculateSemantics) {
-                IntegerVector focusMeaning = getSemanticVector(focusWord);
+                if (wordCounts != null)
+                    wordCounts.increment(focusWord, 1);
+
+                // Avoid creating the semantic vector until the buffer is
+                // merged so that the shared map is not touched for every word.
+                // The focus word is still added to the buffer even if it has
+                // no context, so that it receives a semantic vector.
+                IntegerVector focusMeaning = null;
+                SparseIntArray focusDelta = null;
+                if (buffer == null)
+                    focusMeaning = getSemanticVector(focusWord);
+                else
+                    focusDelta = buffer.getDelta(focusWord);
 
                 // Sum up the index vector for all the surrounding words.  If
                 // permutations are enabled, permute the index vector based on
@@ -513,7 +680,10 @@ public class RandomIndexing implements SemanticSpace, Filterable {
                         ++permutations;
                     }
                     
-                    add(focusMeaning, iv);
+                    if (buffer == null)
+                        add(focusMeaning, iv);
+                    else
+                        add(focusDelta, iv);
                 }
             
                 // Repeat for the words in the forward window.
@@ -535,7 +705,10 @@ public class RandomIndexing implements SemanticSpace, Filterable {
                         ++permutations;
                     }
 
-                    add(focusMeaning, iv);
+                    if (buffer == null)
+                        add(focusMeaning, iv);
+                    else
+                        add(focusDelta, iv);
                 }
             }
 
@@ -548,8 +721,27 @@ public class RandomIndexing implements SemanticSpace, Filterable {
             }
         }    
 
+        if (buffer != null)
+            buffer.flush();
+
+        if (wordCounts != null)
+            pruneRareWords(wordCounts);
+
         document.close();
     }
+
+    /**
+     * Adds the counts of the words in the most recent document to the word
+     * frequencies and discards the semantic vectors of any words that are
+     * evicted as a result.
+     */
+    private void pruneRareWords(StringIntMap wordCounts) {
+        for (String word : wordCounts.keySet()) {
+            for (String evicted : 
+                     wordFrequencies.add(word, wordCounts.get(word)))
+                wordToMeaning.remove(evicted);
+        }
+    }
     
     /**
      * Does nothing.
@@ -601,4 +793,78 @@ public class RandomIndexing implements SemanticSpace, Filterable {
                 semantics.add(n, -1);
         }
     }
+
+    /**
+     * Adds the values of the index vector to the buffered changes of a focus
+     * word, which are not shared with other threads.
+     */
+    private static void add(SparseIntArray delta, TernaryVector index) {
+        for (int p : index.positiveDimensions())
+            delta.addPrimitive(p, 1);
+        for (int n : index.negativeDimensions())
+            delta.addPrimitive(n, -1);
+    }
+
+    /**
+     * A thread-confined buffer of the changes to the semantic vectors of a set
+     * of focus words.  The changes to each word are stored in a {@link
+     * SparseIntArray} that holds only the dimensions touched by the index
+     * vectors of its co-occurring words, so accumulating a document requires
+     * no locking and the memory used by each word is proportional to the
+     * number of dimensions that changed rather than to the vector length.  Each
+     * buffered word's changes are merged into its shared semantic vector while
+     * holding the vector's lock only once per merge, rather than once per
+     * co-occurrence.
+     */
+    private class SemanticBuffer {
+
+        /**
+         * The maximum number of distinct words whose changes will be buffered
+         * before they are merged.
+         */
+        private final int maxWords;
+
+        /**
+         * The mapping from each buffered focus word to the change in its
+         * semantics.
+         */
+        private final Map<String,SparseIntArray> wordToDelta;
+
+        public SemanticBuffer(int maxWords) {
+            this.maxWords = maxWords;
+            wordToDelta = new HashMap<String,SparseIntArray>();
+        }
+
+        /**
+         * Returns the buffered changes for the focus word, merging the buffer
+         * first if it is already full and does not contain the word.
+         */
+        public SparseIntArray getDelta(String focusWord) {
+            SparseIntArray delta = wordToDelta.get(focusWord);
+            if (delta == null) {
+                if (wordToDelta.size() >= maxWords)
+                    flush();
+                delta = new SparseIntArray(vectorLength);
+                wordToDelta.put(focusWord, delta);
+            }
+            return delta;
+        }
+
+        /**
+         * Merges all of the buffered changes into the shared semantic vectors
+         * and clears the buffer.
+         */
+        public void flush() {
+            for (Map.Entry<String,SparseIntArray> e : wordToDelta.entrySet()) {
+                IntegerVector semantics = getSemanticVector(e.getKey());
+                SparseIntArray delta = e.getValue();
+                // Only the dimensions whose values changed are stored
+                synchronized(semantics) {
+                    for (IntegerEntry d : delta)
+                        semantics.add(d.index(), d.value());
+                }
+            }
+            wordToDelta.clear();
+        }
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.text;
+
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A {@link Stemmer} decorator that memoizes the stems returned by another
+ * stemmer.  Since word frequencies are highly skewed, most of the tokens in a
+ * corpus are occurrences of a small number of words, whose stems are computed
+ * once rather than once per occurrence.<p>
+ *
+ * The cache is bounded by keeping two generations of stems.  New stems are
+ * added to the current generation; once it holds the maximum number of stems,
+ * it replaces the previous generation and a new, empty generation is started.
+ * A stem found only in the previous generation is copied into the current
+ * one, so frequently used stems survive each turnover, while the stems of
+ * rare words are discarded.  At most twice the maximum number of stems are
+ * cached at any time.<p>
+ *
+ * The wrapped stemmer must be a function of its input; that is, it must
+ * always return the same stem for the same token.  This class is thread-safe
+ * if the wrapped stemmer is thread-safe.
+ */
+public class CachingStemmer implements Stemmer {
+
+    /**
+     * The default number of stems in each generation of the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 100000;
+
+    /**
+     * The stemmer whose stems are cached
+     */
+    private final Stemmer stemmer;
+
+    /**
+     * The number of stems in each generation
+     */
+    private final int maxSize;
+
+    /**
+     * The generation to which new stems are added
+     */
+    private volatile Map<String,String> current;
+
+    /**
+     * The generation of stems that was most recently filled, whose stems are
+     * moved to the current generation when used
+     */
+    private volatile Map<String,String> previous;
+
+    /**
+     * Creates a cache of {@link #DEFAULT_CACHE_SIZE} stems for the stemmer.
+     */
+    public CachingStemmer(Stemmer stemmer) {
+        this(stemmer, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Creates a cache of the stems from the stemmer that keeps {@code maxSize}
+     * stems in each of its two generations.
+     */
+    public CachingStemmer(Stemmer stemmer, int maxSize) {
+        if (stemmer == null)
+            throw new NullPointerException("stemmer cannot be null");
+        if (maxSize < 1)
+            throw new IllegalArgumentException(
+                "The cache size must be positive: " + maxSize);
+        this.stemmer = stemmer;
+        this.maxSize = maxSize;
+        current = new ConcurrentHashMap<String,String>();
+        previous = new ConcurrentHashMap<String,String>();
+    }
+
+    /**
+     * Returns the stemmer whose stems are cached.
+     */
+    public Stemmer getStemmer() {
+        return stemmer;
+    }
+
+    /**
+     * Returns the stem of the token, computing it with the wrapped stemmer
+     * only if it is not cached.
+     */
+    public String stem(String token) {
+        Map<String,String> cur = current;
+        String stem = cur.get(token);
+        if (stem != null)
+            return stem;
+        stem = previous.get(token);
+        if (stem == null)
+            stem = stemmer.stem(token);
+        cur.put(token, stem);
+        if (cur.size() >= maxSize)
+            turnOver(cur);
+        return stem;
+    }
+
+    /**
+     * Starts a new generation if the current generation is still the one that
+     * was found to be full.
+     */
+    private synchronized void turnOver(Map<String,String> full) {
+        if (current == full) {
+            previous = full;
+            current = new ConcurrentHashMap<String,String>();
+        }
+    }
+}
@@ -22,21 +22,14 @@
 package edu.ucla.sspace.text;
 
 import java.io.BufferedReader;
-import java.io.IOError;
-import java.io.IOException;
 import java.io.StringReader;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
-import edu.ucla.sspace.util.Duple;
-
 
 /**
  * An iterator over all the tokens in a stream, which supports tokenizing
@@ -45,10 +38,12 @@ import edu.ucla.sspace.util.Duple;
  *
  * <p>
  *
- * Note that unlike other iterators, the {@link #next() next} method is {@code
- * O(n)} in complexity where {@code n} is the number of unique words starting
- * the set of compound tokens recognized by this iterator.  This may result in a
- * noticeable performance penalty when a large set of compound words is used.
+ * The compound words are compiled into a {@link TokenTrie} whose entries are
+ * the tokens of each compound separated by a single space.  A compound is
+ * matched by stepping through the trie one character at a time over the
+ * current token and the tokens that follow it, so the {@link #next() next}
+ * method only examines as many characters as share a prefix with some
+ * compound, regardless of how many compounds are recognized.
  *
  * <p>
  *
@@ -63,11 +58,23 @@ import edu.ucla.sspace.util.Duple;
 public class CompoundWordIterator implements Iterator<String> {
 
     /**
-     * A mapping from the first token in a compound n-gram to a list of all the
-     * possible following tokens that would result in a grouping.  For example,
-     * "white" might be mapped to both "house" and "castle".
+     * The compiled compound words, where the tokens of each compound are
+     * separated by a single space.  For example, both "white house" and "white
+     * castle" share the states for "white ".
+     */
+    private final TokenTrie compoundTokens;
+
+    /**
+     * The original form of each compound word, indexed by the index of its
+     * entry in {@link #compoundTokens}
+     */
+    private final String[] compoundForms;
+
+    /**
+     * The maximum number of tokens that may follow the first token of any
+     * compound
      */
-    private final Map<String,CompoundTokens> compoundTokens;
+    private final int maxFollowingTokens;
 
     /**
      * The underlying tokenizer that is used for look-ahead when finding
@@ -80,44 +87,40 @@ public class CompoundWordIterator implements Iterator<String> {
     }
 
     public CompoundWordIterator(BufferedReader br, Set<String> compoundWords) {
-	tokenizer = new BufferedIterator(br);
-	compoundTokens = new LinkedHashMap<String,CompoundTokens>();
-	initializeMapping(compoundWords);
+	this(new WordIterator(br), compoundWords);
     }
 
-
     public CompoundWordIterator(Iterator<String> tokens, 
                                 Set<String> compoundWords) {
 	tokenizer = new BufferedIterator(tokens);
-	compoundTokens = new LinkedHashMap<String,CompoundTokens>();
-	initializeMapping(compoundWords);
-    }
 
-    /**
-     * Fills the {@link #compoundTokens} mapping based on the set of compound
-     * words.
-     */
-    private void initializeMapping(Set<String> compoundWords) {
+	// Normalize the white space of each compound so that it can be
+	// matched by joining the tokens with a single space
+	List<String> normalized = new ArrayList<String>(compoundWords.size());
+	List<String> forms = new ArrayList<String>(compoundWords.size());
+	int maxTokens = 0;
 	for (String s : compoundWords) {
-	    String[] tokens  = s.split("\\s+");
+	    String[] parts = s.trim().split("\\s+");
 	    // skip any compound tokens that are actually just single tokens
-	    if (tokens.length == 1)
+	    if (parts.length == 1)
 		continue;
-
-	    CompoundTokens compounds = compoundTokens.get(tokens[0]);
-	    if (compounds == null) {
-		// use the linked version since we will be iterating over
-		// this very frequently
-		compounds = new CompoundTokens();
-		compoundTokens.put(tokens[0], compounds);
+	    StringBuilder sb = new StringBuilder(s.length());
+	    for (int i = 0; i < parts.length; ++i) {
+		if (i > 0)
+		    sb.append(' ');
+		sb.append(parts[i]);
 	    }
-
-	    // Copy the remaining tokens in the compound into a a List and then 
-	    // add that to the set of valid tokens to create the compound
-	    List<String> tokenList = 
-		Arrays.asList(Arrays.copyOfRange(tokens, 1, tokens.length));
-	    compounds.addCompound(tokenList, s);
+	    normalized.add(sb.toString());
+	    forms.add(s);
+	    if (parts.length - 1 > maxTokens)
+		maxTokens = parts.length - 1;
 	}
+	maxFollowingTokens = maxTokens;
+	compoundTokens = new TokenTrie(normalized);
+	compoundForms = new String[compoundTokens.size()];
+	for (int i = 0; i < normalized.size(); ++i)
+	    compoundForms[compoundTokens.indexOf(normalized.get(i))] = 
+		forms.get(i);
     }
 
     /**
@@ -127,12 +130,9 @@ public class CompoundWordIterator implements Iterator<String> {
 	return tokenizer.hasNext();
     }
 
-
     /**
-     * Returns the next token in the stream.  Note that unlike other iterators,
-     * this method is {@code O(n)} in complexity where {@code n} is the number
-     * of unique words starting the set of compound tokens recognized by this
-     * iterator.
+     * Returns the next token in the stream, or the longest compound word that
+     * starts with the next token.
      */
     public String next() {
 	if (!hasNext()) {
@@ -141,27 +141,38 @@ public class CompoundWordIterator implements Iterator<String> {
 
 	String token = tokenizer.next();
 
-	// Determine whether the next token to return could be the start of a
-	// recognized compound token
-	CompoundTokens compounds = compoundTokens.get(token);
-	
-	// Determine how many tokens are needed at most and see if any grouping
-	// exists
-	if (compounds != null) {
-	    List<String> nextTokens = tokenizer.peek(compounds.maxTokens());
-	    Duple<Integer,String> compound = compounds.findMatch(nextTokens);
-	    if (compound != null) {
-		// shift off the number of extra tokens in the compound
-		for (int i = 0; i < compound.x; ++i) 
-		    tokenizer.next();
-		return compound.y;
+	// Determine whether the token could be the start of a recognized
+	// compound token
+	int state = compoundTokens.walk(TokenTrie.ROOT, token);
+	if (state == TokenTrie.NO_STATE 
+	        || compoundTokens.step(state, ' ') == TokenTrie.NO_STATE)
+	    return token;
+
+	// Continue matching over the following tokens, keeping the longest
+	// compound that was matched
+	List<String> nextTokens = tokenizer.peek(maxFollowingTokens);
+	int match = -1;
+	int matchedTokens = 0;
+	for (int i = 0; i < nextTokens.size(); ++i) {
+	    state = compoundTokens.step(state, ' ');
+	    if (state == TokenTrie.NO_STATE)
+		break;
+	    state = compoundTokens.walk(state, nextTokens.get(i));
+	    if (state == TokenTrie.NO_STATE)
+		break;
+	    int index = compoundTokens.getIndex(state);
+	    if (index >= 0) {
+		match = index;
+		matchedTokens = i + 1;
 	    }
-	    else return token;
 	}
-	
-	// If there was no possibility of grouping this token, then return it by
-	// itself
-	return token;
+	if (match < 0)
+	    return token;
+
+	// shift off the number of extra tokens in the compound
+	for (int i = 0; i < matchedTokens; ++i) 
+	    tokenizer.next();
+	return compoundForms[match];
     }
 
     /**
@@ -187,70 +198,4 @@ public class CompoundWordIterator implements Iterator<String> {
     public void reset(Iterator<String> tokens) {
 	tokenizer = new BufferedIterator(tokens);
     }
-
-    /**
-     * A utility class for mapping the remaining part of a multi-token compound.
-     * This class internall wraps all of the possibility of token groups from a
-     * head token and keeps track of the original string that makes up the
-     * compound.  This avoid the need to rebuild the compound should a match be
-     * found.
-     */
-    private static class CompoundTokens {
-	
-	/**
-	 * A mapping from a list of tokens making up a compound to the combined
-	 * string form of the compound word.
-	 */
-	private final Map<List<String>,String> compounds;
-
-	/**
-	 * The maximum number of tokens used by any compound in this instance
-	 */
-	private int maxTokens;
-
-	public CompoundTokens() {
-	    maxTokens = 0;
-	    compounds = new LinkedHashMap<List<String>,String>();
-	}
-
-	/**
-	 * Adds the remaining tokens from a compound (less the first token) and
-	 * the combined compound word from which all the tokens are derived.
-	 */
-	public void addCompound(List<String> tokens, String compoundToken) {
-	    compounds.put(tokens, compoundToken);
-	    if (tokens.size() > maxTokens)
-		maxTokens = tokens.size();
-	}
-
-	/**
-	 * Returns the maximum number of tokens used by this portion of the
-	 * compound word.
-	 */
-	public int maxTokens() {
-	    return maxTokens;
-	}
-
-	/**
-	 * Finds a match for the provided tokens in the remaining part of the
-	 * this compound word and returns the entire compound word if a match is
-	 * found.
-	 */
-	public Duple<Integer,String> findMatch(List<String> tokens) {
-	    String match = null;
-	    int num = -1;
-	    for (Map.Entry<List<String>,String> e : compounds.entrySet()) {
-		if (e.getKey().equals(tokens)) {
-		    // Perform a greedy match for the longest possible compound
-		    if (match == null || match.length() < e.getValue().length()) {
-			match = e.getValue();
-			num = e.getKey().size();
-		    }
-		}
-	    }
-	    return (match == null) 
-		? null : new Duple<Integer,String>(num, match);
-	}
-    }
-    
 }
@@ -74,6 +74,15 @@ import java.util.Set;
  *      The property value should be the fully qualified class name of a {@code
  *      Stemmer} class implementation.<p>
  *
+ * <dt> <i>Property:</i> <code><b>{@value #STEM_CACHE_SIZE_PROPERTY}
+ *      </b></code> <br>
+ *      <i>Default:</i> {@value CachingStemmer#DEFAULT_CACHE_SIZE}
+ *
+ * <dd style="padding-top: .5em">This property sets the number of stems in
+ *      each generation of the {@link CachingStemmer} that memoizes the stems
+ *      of the configured {@code Stemmer}.  A value of {@code 0} disables the
+ *      cache.  This property has no effect if stemming is not enabled.<p>
+ *
  * <dt> <i>Property:</i> <code><b>{@value #TOKEN_COUNT_LIMIT_PROPERTY}
  *      </b></code> <br>
  *      <i>Default:</i> <i>unset</i>
@@ -98,6 +107,10 @@ import java.util.Set;
  * Therefore if filtering is enabled, any compound token should also be
  * permitted by the word filter.<p>
  *
+ * If neither compound tokens nor token replacement are enabled, the filter is
+ * applied by the {@link WordIterator} to the characters of each token as it is
+ * scanned, which avoids creating a {@code String} for each rejected token.<p>
+ *
  * Note that this class provides two distinct ways to access the token streams
  * if filtering is enabled.  The {@link #tokenize(BufferedReader) tokenize}
  * method will filter out any tokens without any indication.  This can
@@ -147,6 +160,13 @@ public class IteratorFactory {
     public static final String STEMMER_PROPERTY =
         PROPERTY_PREFIX + ".stemmer";
 
+    /**
+     * Specifies the number of stems in each generation of the cache of stems.
+     * If set to {@code 0}, stems are not cached.
+     */
+    public static final String STEM_CACHE_SIZE_PROPERTY =
+        PROPERTY_PREFIX + ".stemCacheSize";
+
     /**
      * Specifies the name of a file that contains all the recognized compound
      * tokens
@@ -182,6 +202,8 @@ public class IteratorFactory {
                 IteratorFactory.TOKEN_FILTER_PROPERTY);
         ITERATOR_FACTORY_PROPERTIES.add(
                 IteratorFactory.STEMMER_PROPERTY);
+        ITERATOR_FACTORY_PROPERTIES.add(
+                IteratorFactory.STEM_CACHE_SIZE_PROPERTY);
         ITERATOR_FACTORY_PROPERTIES.add(
                 IteratorFactory.COMPOUND_TOKENS_FILE_PROPERTY);
         ITERATOR_FACTORY_PROPERTIES.add(
@@ -256,8 +278,16 @@ public class IteratorFactory {
         // NOTE: future implementations may interpret the value of this property
         // to decide which stemmer to use
         String stemmerProp = props.getProperty(STEMMER_PROPERTY);
-        if (stemmerProp != null)
+        if (stemmerProp != null) {
             stemmer = ReflectionUtil.<Stemmer>getObjectInstance(stemmerProp);
+            int cacheSize = Integer.parseInt(props.getProperty(
+                STEM_CACHE_SIZE_PROPERTY, 
+                String.valueOf(CachingStemmer.DEFAULT_CACHE_SIZE)));
+            if (cacheSize > 0)
+                stemmer = new CachingStemmer(stemmer, cacheSize);
+        }
+        else
+            stemmer = null;
 
         String compoundTokensProp = 
             props.getProperty(COMPOUND_TOKENS_FILE_PROPERTY);
@@ -419,10 +449,20 @@ public class IteratorFactory {
     private static Iterator<String> getBaseIterator(BufferedReader reader,
                                                     boolean keepOrdering) {
 
+        // If the tokens are not replaced or combined before filtering, filter
+        // the characters of each token while scanning the stream.  Limiting
+        // the tokens is applied after filtering in this case, which only
+        // returns the same tokens if rejected tokens keep their position.
+        boolean filterWhileScanning = filter != null 
+            && replacementMap == null && compoundTokens == null
+            && (keepOrdering || wordLimit <= 0);
+
         // The final iterator is how the stream will be tokenized after all the
         // tokenizing options have been applied.  This value is iteratively set
         // as the options are applied
-        Iterator<String> finalIterator = new WordIterator(reader);
+        Iterator<String> finalIterator = (filterWhileScanning)
+            ? new WordIterator(reader, filter, keepOrdering)
+            : new WordIterator(reader);
 
         // STEP 1: APPLY TOKEN REPLACEMENT
         if (replacementMap != null)
@@ -457,7 +497,7 @@ public class IteratorFactory {
                     finalIterator, wordLimit);
 
         // STEP 4: APPLY TOKEN FILTERING
-        if (filter != null) {
+        if (filter != null && !filterWhileScanning) {
             finalIterator = (keepOrdering)
                 ? new OrderPreservingFilteredIterator(finalIterator, filter)
                 : new FilteredIterator(finalIterator, filter);
@@ -0,0 +1,650 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.text;
+
+import java.io.File;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * An iterator over a file that contains one document per line, which reads
+ * separate parts of the file concurrently.  Unlike {@link
+ * OneLinePerDocumentIterator}, which decodes every line on the thread that
+ * calls {@link #next()} while holding a lock, this class splits the file into
+ * contiguous byte ranges and assigns each range its own reader thread.  The
+ * readers decode lines into batches of {@link Document} instances and place
+ * the batches on a bounded queue, which limits the number of documents that
+ * are read ahead of their processing.<p>
+ *
+ * Each range is aligned to line boundaries using the following rule: a reader
+ * discards the partial line at the start of its range, unless the range starts
+ * the file, and reads every line that starts at or before the end of its
+ * range.  Therefore, each line is read exactly once, even if it spans several
+ * ranges.<p>
+ *
+ * The file may be compressed with gzip.  If the file is in the <a
+ * href="http://samtools.github.io/hts-specs/SAMv1.pdf">BGZF</a> format, i.e.
+ * a series of independently compressed gzip blocks whose headers record their
+ * size (as produced by {@code bgzip}), the ranges are aligned to block
+ * boundaries and decompressed concurrently.  Any other gzip file is
+ * decompressed by a single reader thread, which still overlaps reading with
+ * the processing of documents.  Files compressed with bzip2 are not
+ * supported.<p>
+ *
+ * Since the ranges are read concurrently, the documents are <i>not</i>
+ * returned in the order that they appear in the file.  The reader threads are
+ * started by the first call to {@link #hasNext()} or {@link #next()}.  Lines
+ * are decoded using the platform's default character set unless otherwise
+ * specified, which matches the behavior of {@link
+ * OneLinePerDocumentIterator}.<p>
+ *
+ * This class is thread-safe.
+ *
+ * @see OneLinePerDocumentIterator
+ */
+public class ParallelOneLinePerDocumentIterator implements Iterator<Document> {
+
+    /**
+     * The default number of documents passed from a reader thread at once
+     */
+    public static final int DEFAULT_BATCH_SIZE = 256;
+
+    /**
+     * The default number of batches that may be read ahead of processing
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+    /**
+     * The smallest number of bytes that is assigned its own reader, which
+     * avoids starting threads for small files
+     */
+    static final long MIN_RANGE_SIZE = 1 << 20;
+
+    /**
+     * The size of the buffer used by each reader
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The batch that a reader thread places on the queue once it has finished
+     * its range
+     */
+    private static final List<Document> END_OF_RANGE = 
+        Collections.<Document>emptyList();
+
+    /**
+     * The file containing the documents
+     */
+    private final File documentsFile;
+
+    /**
+     * The character set used to decode lines
+     */
+    private final Charset charset;
+
+    /**
+     * The maximum number of reader threads
+     */
+    private final int numThreads;
+
+    /**
+     * The number of documents in each batch
+     */
+    private final int batchSize;
+
+    /**
+     * The batches of documents that have been read but not yet returned
+     */
+    private final BlockingQueue<List<Document>> batches;
+
+    /**
+     * The channel from which all readers read, or {@code null} if the readers
+     * have not been started
+     */
+    private FileChannel channel;
+
+    /**
+     * The number of reader threads that were started
+     */
+    private int numReaders;
+
+    /**
+     * The number of reader threads that have finished their range
+     */
+    private int finishedReaders;
+
+    /**
+     * The batch from which documents are currently being returned
+     */
+    private List<Document> current;
+
+    /**
+     * The index of the next document to return from {@link #current}
+     */
+    private int currentIndex;
+
+    /**
+     * The first error encountered by a reader thread
+     */
+    private volatile Throwable readerError;
+
+    /**
+     * Constructs an {@code Iterator} for the documents contained in the
+     * provided file that uses one reader thread per available processor.
+     *
+     * @param documentsFile a file that contains one document per line
+     *
+     * @throws IOException if {@code documentsFile} cannot be read
+     */
+    public ParallelOneLinePerDocumentIterator(String documentsFile) 
+            throws IOException {
+        this(new File(documentsFile), 
+             Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs an {@code Iterator} for the documents contained in the
+     * provided file that uses at most {@code numThreads} reader threads.
+     *
+     * @param documentsFile a file that contains one document per line
+     * @param numThreads the maximum number of threads that read the file
+     *
+     * @throws IOException if {@code documentsFile} cannot be read
+     */
+    public ParallelOneLinePerDocumentIterator(File documentsFile, 
+                                              int numThreads)
+            throws IOException {
+        this(documentsFile, numThreads, DEFAULT_BATCH_SIZE, 
+             DEFAULT_QUEUE_CAPACITY, Charset.defaultCharset());
+    }
+
+    /**
+     * Constructs an {@code Iterator} for the documents contained in the
+     * provided file.
+     *
+     * @param documentsFile a file that contains one document per line
+     * @param numThreads the maximum number of threads that read the file
+     * @param batchSize the number of documents passed from a reader thread at
+     *        once
+     * @param queueCapacity the maximum number of batches that may be read
+     *        ahead of the documents being returned
+     * @param charset the character set used to decode each line
+     *
+     * @throws IOException if {@code documentsFile} cannot be read
+     */
+    public ParallelOneLinePerDocumentIterator(File documentsFile, 
+                                              int numThreads,
+                                              int batchSize,
+                                              int queueCapacity,
+                                              Charset charset)
+            throws IOException {
+        if (numThreads < 1)
+            throw new IllegalArgumentException(
+                "Must use at least one thread: " + numThreads);
+        if (batchSize < 1 || queueCapacity < 1)
+            throw new IllegalArgumentException(
+                "Batch size and queue capacity must be positive");
+        if (!documentsFile.canRead())
+            throw new IOException("Cannot read " + documentsFile);
+        this.documentsFile = documentsFile;
+        this.numThreads = numThreads;
+        this.batchSize = batchSize;
+        this.charset = charset;
+        batches = new ArrayBlockingQueue<List<Document>>(queueCapacity);
+        current = END_OF_RANGE;
+        currentIndex = 0;
+    }
+
+    /**
+     * Returns {@code true} if there are more documents in the provided file.
+     *
+     * @throws IOError if any reader thread was unable to read the file
+     */
+    public synchronized boolean hasNext() { 
+        if (channel == null)
+            startReaders();
+        while (currentIndex >= current.size()) {
+            if (finishedReaders == numReaders) {
+                closeChannel();
+                if (readerError != null)
+                    throw new IOError(readerError);
+                return false;
+            }
+            try {
+                current = batches.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(
+                    "Interrupted while waiting for documents", ie);
+            }
+            currentIndex = 0;
+            if (current == END_OF_RANGE)
+                finishedReaders++;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the next document from the file.
+     */
+    public synchronized Document next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return current.get(currentIndex++);
+    }
+
+    /**
+     * Throws an {@link UnsupportedOperationException} if called.
+     */
+    public void remove() {
+        throw new UnsupportedOperationException(
+            "removing documents is not supported");
+    }
+
+    /**
+     * Splits the file into ranges and starts a reader thread for each.
+     */
+    private void startReaders() {
+        List<Range> ranges = null;
+        try {
+            channel = new RandomAccessFile(documentsFile, "r").getChannel();
+            ranges = split(channel, numThreads);
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+        numReaders = ranges.size();
+        int i = 0;
+        for (final Range range : ranges) {
+            Thread t = new Thread(
+                "ParallelOneLinePerDocumentIterator-" + (i++)) {
+                public void run() {
+                    try {
+                        read(range);
+                    } catch (Throwable t) {
+                        readerError = t;
+                    } finally {
+                        // The consumer waits for the marker from every
+                        // reader, so it must be queued even if this thread
+                        // is interrupted
+                        putUninterruptibly(END_OF_RANGE);
+                    }
+                }
+            };
+            // Do not keep the JVM alive if the documents are never consumed
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Closes the channel once all of the readers have finished.
+     */
+    private void closeChannel() {
+        if (channel.isOpen()) {
+            try {
+                channel.close();
+            } catch (IOException ioe) {
+                throw new IOError(ioe);
+            }
+        }
+    }
+
+    /**
+     * Places the batch on the queue, waiting for space if necessary.
+     */
+    private void put(List<Document> batch) {
+        try {
+            batches.put(batch);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ie);
+        }
+    }
+
+    /**
+     * Places the batch on the queue, waiting for space if necessary even if
+     * the current thread is interrupted.  If an interrupt occurs, the thread's
+     * interrupted status is restored once the batch has been queued.
+     */
+    private void putUninterruptibly(List<Document> batch) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    batches.put(batch);
+                    return;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the lines that start within the range and places them on the queue
+     * in batches.
+     */
+    private void read(Range range) throws IOException {
+        InputStream in = range.open();
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            boolean skipping = range.skipFirstLine;
+            long position = range.start;
+            List<Document> batch = new ArrayList<Document>(batchSize);
+            int read;
+            outer:
+            while ((read = in.read(buffer, 0, buffer.length)) != -1) {
+                for (int i = 0; i < read; ++i) {
+                    byte b = buffer[i];
+                    position++;
+                    if (b != '\n') {
+                        if (!skipping) {
+                            if (lineLength == line.length)
+                                line = grow(line);
+                            line[lineLength++] = b;
+                        }
+                        continue;
+                    }
+                    if (skipping)
+                        skipping = false;
+                    else {
+                        batch.add(toDocument(line, lineLength));
+                        if (batch.size() == batchSize) {
+                            put(batch);
+                            batch = new ArrayList<Document>(batchSize);
+                        }
+                    }
+                    lineLength = 0;
+                    // The next line belongs to the following range
+                    if (position > range.end)
+                        break outer;
+                }
+            }
+            // Add the final line if the file does not end with a newline
+            if (lineLength > 0 && !skipping && read == -1)
+                batch.add(toDocument(line, lineLength));
+            if (!batch.isEmpty())
+                put(batch);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns a copy of the array with twice the length.
+     */
+    private static byte[] grow(byte[] line) {
+        byte[] larger = new byte[line.length * 2];
+        System.arraycopy(line, 0, larger, 0, line.length);
+        return larger;
+    }
+
+    /**
+     * Decodes the line, removing any carriage return that precedes the line
+     * feed.
+     */
+    private Document toDocument(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r')
+            length--;
+        return new StringDocument(new String(line, 0, length, charset));
+    }
+
+    /**
+     * Divides the contents of the channel into at most {@code numRanges}
+     * ranges based on the file's compression.
+     */
+    static List<Range> split(FileChannel channel, int numRanges) 
+            throws IOException {
+        byte[] header = new byte[18];
+        int headerLength = readFully(channel, 0, header);
+        if (headerLength >= 3 && header[0] == 'B' && header[1] == 'Z' 
+                && header[2] == 'h')
+            throw new IOException("bzip2-compressed files are not supported");
+        if (headerLength >= 2 && (header[0] & 0xFF) == 0x1F 
+                && (header[1] & 0xFF) == 0x8B) {
+            return (blockSize(header, headerLength) > 0)
+                ? splitBgzf(channel, numRanges)
+                : Collections.<Range>singletonList(
+                      new GzipRange(channel, 0, 0, Long.MAX_VALUE, false));
+        }
+        return splitUncompressed(channel, numRanges);
+    }
+
+    /**
+     * Divides an uncompressed file into ranges of equal size.
+     */
+    private static List<Range> splitUncompressed(FileChannel channel, 
+                                                 int numRanges) 
+            throws IOException {
+        long length = channel.size();
+        int n = (int)Math.max(1, Math.min(numRanges, length / MIN_RANGE_SIZE));
+        List<Range> ranges = new ArrayList<Range>(n);
+        for (int i = 0; i < n; ++i) {
+            long start = length * i / n;
+            long end = length * (i + 1) / n;
+            ranges.add(new Range(channel, start, end, i > 0));
+        }
+        return ranges;
+    }
+
+    /**
+     * Divides a BGZF file into ranges of contiguous blocks with roughly equal
+     * compressed sizes.  The start and end of each range are expressed as
+     * offsets into the decompressed data of the range's first block.
+     */
+    private static List<Range> splitBgzf(FileChannel channel, int numRanges)
+            throws IOException {
+        long length = channel.size();
+        List<long[]> blocks = new ArrayList<long[]>();
+        byte[] header = new byte[18];
+        byte[] footer = new byte[4];
+        for (long offset = 0; offset < length; ) {
+            int size = blockSize(header, readFully(channel, offset, header));
+            if (size <= 0)
+                throw new IOException("Invalid BGZF block at offset " + offset);
+            if (readFully(channel, offset + size - 4, footer) != 4)
+                throw new IOException("Truncated BGZF block at offset " + 
+                                      offset);
+            long uncompressedSize = (footer[0] & 0xFFL) 
+                | (footer[1] & 0xFFL) << 8 | (footer[2] & 0xFFL) << 16
+                | (footer[3] & 0xFFL) << 24;
+            blocks.add(new long[] { offset, uncompressedSize });
+            offset += size;
+        }
+
+        int n = (int)Math.max(1, Math.min(numRanges, length / MIN_RANGE_SIZE));
+        List<Range> ranges = new ArrayList<Range>(n);
+        int block = 0;
+        for (int i = 0; i < n && block < blocks.size(); ++i) {
+            long rangeEnd = length * (i + 1) / n;
+            long blockOffset = blocks.get(block)[0];
+            long uncompressed = 0;
+            do {
+                uncompressed += blocks.get(block)[1];
+                block++;
+            } while (block < blocks.size() 
+                     && blocks.get(block)[0] < rangeEnd);
+            ranges.add(new GzipRange(channel, blockOffset, 0, uncompressed, 
+                                     i > 0));
+        }
+        return ranges;
+    }
+
+    /**
+     * Returns the total size of the BGZF block whose header is contained in
+     * the array, or {@code -1} if the header is not that of a BGZF block.
+     */
+    private static int blockSize(byte[] header, int headerLength) {
+        // A BGZF block is a gzip member with the FEXTRA flag whose first extra
+        // subfield is "BC" with a two-byte length and contains the block size
+        // minus one
+        if (headerLength < 18 || (header[0] & 0xFF) != 0x1F 
+                || (header[1] & 0xFF) != 0x8B || header[2] != 8
+                || (header[3] & 4) == 0 || header[12] != 'B' 
+                || header[13] != 'C' || header[14] != 2 || header[15] != 0)
+            return -1;
+        return ((header[16] & 0xFF) | (header[17] & 0xFF) << 8) + 1;
+    }
+
+    /**
+     * Reads from the channel into the array starting at the position until the
+     * array is full or the channel is exhausted, and returns the number of
+     * bytes read.
+     */
+    private static int readFully(FileChannel channel, long position, 
+                                 byte[] bytes) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position + buf.position());
+            if (read == -1)
+                break;
+        }
+        return buf.position();
+    }
+
+    /**
+     * A contiguous portion of the file that is read by a single thread.
+     * Positions are in bytes of the data from which lines are read, starting
+     * from the position of {@link #open()}'s stream.
+     */
+    static class Range {
+
+        /**
+         * The channel containing the range
+         */
+        final FileChannel channel;
+
+        /**
+         * The position of the first byte of the range
+         */
+        final long start;
+
+        /**
+         * The position after the last byte of the range.  The line starting
+         * at this position is read as a part of this range.
+         */
+        final long end;
+
+        /**
+         * Whether the first line is partial and read by the preceding range
+         */
+        final boolean skipFirstLine;
+
+        public Range(FileChannel channel, long start, long end, 
+                     boolean skipFirstLine) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.skipFirstLine = skipFirstLine;
+        }
+
+        /**
+         * Returns a stream that starts at the range's first byte and continues
+         * to the end of the file.
+         */
+        public InputStream open() throws IOException {
+            return new ChannelInputStream(channel, start);
+        }
+    }
+
+    /**
+     * A range of a gzip-compressed file, which begins at the start of a gzip
+     * member.
+     */
+    static class GzipRange extends Range {
+
+        /**
+         * The offset in the file of the gzip member that starts this range
+         */
+        private final long memberOffset;
+
+        public GzipRange(FileChannel channel, long memberOffset, long start,
+                         long end, boolean skipFirstLine) {
+            super(channel, start, end, skipFirstLine);
+            this.memberOffset = memberOffset;
+        }
+
+        /**
+         * Returns a stream of the decompressed data from the range's first
+         * member through the end of the file.
+         */
+        public InputStream open() throws IOException {
+            return new GZIPInputStream(
+                new ChannelInputStream(channel, memberOffset), BUFFER_SIZE);
+        }
+    }
+
+    /**
+     * An {@code InputStream} that reads a {@code FileChannel} from a starting
+     * position using positional reads, which allows several streams to share
+     * the same channel.
+     */
+    private static class ChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        private long position;
+
+        public ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) == -1) ? -1 : b[0] & 0xFF;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if (read > 0)
+                position += read;
+            return read;
+        }
+    }
+}
@@ -60,16 +60,22 @@ import java.util.Set;
  * chain of filters from a text configuration.  This is intended to facility
  * command-line tools that want to provide easily configurable filters.  An
  * example configuration might look like:
- * <tt>include=top-tokens.txt:test-words.txt,exclude=stop-words.txt</tt>
+ * <tt>include=top-tokens.txt:test-words.txt,exclude=stop-words.txt</tt><p>
+ *
+ * The tokens of a filter are compiled into a {@link TokenTrie} when the filter
+ * is created, so later changes to the provided set do not affect the filter.
+ * The compiled form allows tokens to be tested directly from a {@code char}
+ * buffer using {@link #accept(char[],int,int)}, which lets a tokenizer avoid
+ * creating a {@code String} for any token that is rejected.
  *
  * @see FilteredIterator
  */
 public class TokenFilter {
 
     /**
-     * The set of tokens used to filter the output
+     * The compiled set of tokens used to filter the output
      */
-    private final Set<String> tokens;
+    private final TokenTrie tokens;
 
     /**
      * {@code true} if the returned tokens must not be in the filter set
@@ -119,7 +125,7 @@ public class TokenFilter {
      */
     public TokenFilter(Set<String> tokens, boolean excludeTokens, 
 		       TokenFilter parent) {
-	this.tokens = tokens;
+	this.tokens = new TokenTrie(tokens);
 	this.excludeTokens = excludeTokens;
 	this.parent = parent;
     }
@@ -137,6 +143,21 @@ public class TokenFilter {
 		tokens.contains(token) ^ excludeTokens;
     }
 
+    /**
+     * Returns {@code true} if the token made of the specified range of
+     * characters is valid according to the configuration of this filter.
+     *
+     * @param chars the characters containing the token
+     * @param offset the index of the token's first character
+     * @param length the number of characters in the token
+     *
+     * @return {@code true} if this token is valid
+     */
+    public boolean accept(char[] chars, int offset, int length) {
+	return (parent == null || parent.accept(chars, offset, length)) &&
+		tokens.contains(chars, offset, length) ^ excludeTokens;
+    }
+
     /**
      * Creates a chained filter by accepting the subset of whatever {@code
      * parent} accepts less what tokens this filter rejects.  
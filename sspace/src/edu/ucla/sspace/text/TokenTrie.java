@@ -0,0 +1,262 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.text;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+
+/**
+ * An immutable, compiled trie over a set of tokens that is matched one
+ * character at a time.  The trie is a deterministic automaton whose states are
+ * the prefixes of the tokens: {@link #step(int,char) step} follows the
+ * transition for a single character, and {@link #getIndex(int) getIndex}
+ * reports whether a state accepts one of the tokens.  Since matching operates
+ * on characters rather than {@code String} instances, tokens may be looked up
+ * directly from a {@code char} buffer without first creating a {@code
+ * String}, and multi-token sequences may be matched incrementally by stepping
+ * over their separators.<p>
+ *
+ * The automaton is stored in a few flat arrays, rather than as a graph of
+ * node objects.  The transitions of each state are sorted by character and
+ * stored contiguously, so each step is a binary search over the state's
+ * transitions.  Each token is assigned an index, which is its position in the
+ * sorted order of the distinct tokens.<p>
+ *
+ * This class is thread-safe.
+ *
+ * @see TokenFilter
+ * @see CompoundWordIterator
+ */
+public class TokenTrie {
+
+    /**
+     * The state from which all matching begins, which represents the empty
+     * prefix.
+     */
+    public static final int ROOT = 0;
+
+    /**
+     * The value returned when no transition exists for a character.
+     */
+    public static final int NO_STATE = -1;
+
+    /**
+     * The distinct tokens in sorted order.
+     */
+    private final String[] tokens;
+
+    /**
+     * The index of the first transition for each state, where the transitions
+     * of state {@code s} are those from {@code firstEdge[s]} to {@code
+     * firstEdge[s + 1]}.
+     */
+    private final int[] firstEdge;
+
+    /**
+     * The character of each transition.
+     */
+    private final char[] labels;
+
+    /**
+     * The state reached by each transition.
+     */
+    private final int[] targets;
+
+    /**
+     * The index of the token accepted by each state, or {@code -1} if the
+     * state does not accept a token.
+     */
+    private final int[] accepts;
+
+    /**
+     * Compiles a trie that accepts exactly the provided tokens.
+     */
+    public TokenTrie(Collection<? extends CharSequence> tokenSet) {
+        String[] sorted = new String[tokenSet.size()];
+        int n = 0;
+        long totalChars = 0;
+        for (CharSequence cs : tokenSet) {
+            sorted[n++] = cs.toString();
+            totalChars += cs.length();
+        }
+        Arrays.sort(sorted);
+        // Remove any duplicates, which is possible if the collection is not a
+        // set or contains distinct CharSequences with the same characters
+        int unique = 0;
+        for (int i = 0; i < n; ++i) {
+            if (unique == 0 || !sorted[i].equals(sorted[unique - 1]))
+                sorted[unique++] = sorted[i];
+        }
+        tokens = (unique == n) ? sorted : Arrays.copyOf(sorted, unique);
+
+        if (totalChars >= Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Too many characters in tokens");
+        // Every state other than the root is reached by a single transition,
+        // and each character of each token creates at most one state
+        int maxStates = (int)totalChars + 1;
+        int[] edgeStart = new int[maxStates + 1];
+        char[] edgeLabels = new char[maxStates - 1];
+        int[] edgeTargets = new int[maxStates - 1];
+        int[] accepting = new int[maxStates];
+
+        // The range of sorted tokens that share each state's prefix, along
+        // with the prefix length.  States are created in breadth-first order,
+        // which places the transitions of each state contiguously.
+        int[] lo = new int[maxStates];
+        int[] hi = new int[maxStates];
+        int[] depth = new int[maxStates];
+        hi[ROOT] = tokens.length;
+        int numStates = 1;
+        int numEdges = 0;
+        for (int state = 0; state < numStates; ++state) {
+            edgeStart[state] = numEdges;
+            int start = lo[state];
+            int end = hi[state];
+            int d = depth[state];
+            // Since the tokens are sorted, a token that is equal to the
+            // prefix is always first in the range
+            if (start < end && tokens[start].length() == d) 
+                accepting[state] = start++;
+            else
+                accepting[state] = -1;
+            while (start < end) {
+                char c = tokens[start].charAt(d);
+                int groupEnd = start + 1;
+                while (groupEnd < end && tokens[groupEnd].charAt(d) == c)
+                    groupEnd++;
+                edgeLabels[numEdges] = c;
+                edgeTargets[numEdges] = numStates;
+                numEdges++;
+                lo[numStates] = start;
+                hi[numStates] = groupEnd;
+                depth[numStates] = d + 1;
+                numStates++;
+                start = groupEnd;
+            }
+        }
+        edgeStart[numStates] = numEdges;
+
+        firstEdge = Arrays.copyOf(edgeStart, numStates + 1);
+        labels = Arrays.copyOf(edgeLabels, numEdges);
+        targets = Arrays.copyOf(edgeTargets, numEdges);
+        accepts = Arrays.copyOf(accepting, numStates);
+    }
+
+    /**
+     * Returns {@code true} if the trie contains the token.
+     */
+    public boolean contains(CharSequence token) {
+        return indexOf(token) >= 0;
+    }
+
+    /**
+     * Returns {@code true} if the trie contains the token made of the
+     * specified range of characters.
+     */
+    public boolean contains(char[] chars, int offset, int length) {
+        return indexOf(chars, offset, length) >= 0;
+    }
+
+    /**
+     * Returns the index of the token accepted by the state, or {@code -1} if
+     * the state does not accept a token.
+     */
+    public int getIndex(int state) {
+        return accepts[state];
+    }
+
+    /**
+     * Returns the token with the specified index.
+     */
+    public String getToken(int index) {
+        return tokens[index];
+    }
+
+    /**
+     * Returns the index of the token or {@code -1} if the trie does not
+     * contain it.
+     */
+    public int indexOf(CharSequence token) {
+        int state = walk(ROOT, token);
+        return (state == NO_STATE) ? -1 : accepts[state];
+    }
+
+    /**
+     * Returns the index of the token made of the specified range of
+     * characters, or {@code -1} if the trie does not contain it.
+     */
+    public int indexOf(char[] chars, int offset, int length) {
+        int state = ROOT;
+        int end = offset + length;
+        for (int i = offset; i < end && state != NO_STATE; ++i)
+            state = step(state, chars[i]);
+        return (state == NO_STATE) ? -1 : accepts[state];
+    }
+
+    /**
+     * Returns the number of states in the automaton.
+     */
+    public int numStates() {
+        return accepts.length;
+    }
+
+    /**
+     * Returns the number of distinct tokens in the trie.
+     */
+    public int size() {
+        return tokens.length;
+    }
+
+    /**
+     * Returns the state reached by following the transition for the character
+     * from the specified state, or {@link #NO_STATE} if no token has the
+     * resulting prefix.
+     */
+    public int step(int state, char c) {
+        int low = firstEdge[state];
+        int high = firstEdge[state + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char label = labels[mid];
+            if (label < c)
+                low = mid + 1;
+            else if (label > c)
+                high = mid - 1;
+            else
+                return targets[mid];
+        }
+        return NO_STATE;
+    }
+
+    /**
+     * Returns the state reached by following the transitions for each
+     * character in the sequence from the specified state, or {@link
+     * #NO_STATE} if no token has the resulting prefix.
+     */
+    public int walk(int state, CharSequence chars) {
+        int length = chars.length();
+        for (int i = 0; i < length && state != NO_STATE; ++i)
+            state = step(state, chars.charAt(i));
+        return state;
+    }
+}
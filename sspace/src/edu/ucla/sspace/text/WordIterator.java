@@ -26,28 +26,49 @@ import java.io.IOError;
 import java.io.IOException;
 import java.io.StringReader;
 
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 
 /**
  * An iterator over all of the tokens present in a {@link BufferedReader} that
- * are separated by any amount of white space.
+ * are separated by any amount of white space.  White space is any of the
+ * characters matched by the regular expression {@code \s}: space, tab, line
+ * feed, vertical tab, form feed and carriage return.<p>
+ *
+ * The reader's characters are scanned directly from a {@code char} buffer, so
+ * the only object created for each token is its {@code String}.  An iterator
+ * may also be created with a {@link TokenFilter}, which is applied to the
+ * characters of each token before the token's {@code String} is created.
+ * Rejected tokens are either skipped or, if the token ordering is to be
+ * preserved, returned as {@link IteratorFactory#EMPTY_TOKEN}, which matches
+ * the behavior of {@link FilteredIterator} and {@link
+ * OrderPreservingFilteredIterator} respectively.
  */
 public class WordIterator implements Iterator<String> {
 
     /**
-     * A fixed pattern matching all non-whitespace characters.
+     * The number of characters read from the stream at a time
      */
-    private static final Pattern notWhiteSpace = Pattern.compile("\\S+");
+    private static final int BUFFER_SIZE = 8192;
 
     /**
      * The stream from which to read tokens
      */
     private final BufferedReader br;
+
+    /**
+     * The filter applied to the tokens or {@code null} if all tokens are
+     * returned
+     */
+    private final TokenFilter filter;
+
+    /**
+     * Whether rejected tokens are returned as {@link
+     * IteratorFactory#EMPTY_TOKEN} rather than being skipped
+     */
+    private final boolean keepOrdering;
     
     /**
      * The next token to return
@@ -55,14 +76,24 @@ public class WordIterator implements Iterator<String> {
     private String next;
 
     /**
-     * The matcher that is tokenizing the current line
+     * The characters read from the stream
      */
-    private Matcher matcher;
-    
+    private char[] buffer;
+
+    /**
+     * The index of the next character in the buffer to scan
+     */
+    private int pos;
+
     /**
-     * The current line being considered
+     * The number of valid characters in the buffer
      */
-    private String curLine;
+    private int limit;
+
+    /**
+     * Whether the end of the stream has been reached
+     */
+    private boolean eof;
 
     /**
      * Constructs an iterator for all the tokens contained in the string
@@ -76,44 +107,108 @@ public class WordIterator implements Iterator<String> {
      * provided reader.
      */
     public WordIterator(BufferedReader br) {
+        this(br, null, false);
+    }
+
+    /**
+     * Constructs an iterator for the tokens contained in text of the provided
+     * reader that are accepted by the filter.
+     *
+     * @param br the reader whose tokens are to be returned
+     * @param filter the filter to apply to the tokens, or {@code null} if all
+     *        tokens should be returned
+     * @param keepOrdering {@code true} if rejected tokens should be returned as
+     *        {@link IteratorFactory#EMPTY_TOKEN}, or {@code false} if they
+     *        should be skipped
+     */
+    public WordIterator(BufferedReader br, TokenFilter filter, 
+                        boolean keepOrdering) {
         this.br = br;
-        curLine = null;
+        this.filter = filter;
+        this.keepOrdering = keepOrdering;
+        buffer = new char[BUFFER_SIZE];
+        pos = 0;
+        limit = 0;
+        eof = false;
         advance();
     }
 
+    /**
+     * Returns {@code true} if the character separates tokens.
+     */
+    private static boolean isWhiteSpace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    /**
+     * Reads more characters into the buffer after the valid characters,
+     * growing the buffer if it is full.  Returns {@code false} if the end of
+     * the stream has been reached.
+     */
+    private boolean fill() throws IOException {
+        if (eof)
+            return false;
+        if (limit == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        int read = br.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
     /**
      * Advances to the next word in the buffer.
      */
     private void advance() {
         try {
-            // loop until we find a word in the reader, or there are no more
-            // words
             while (true) {
-                // if we haven't looked at any lines yet, or if the index into
-                // the current line is already at the end 
-                if (curLine == null || !matcher.find()) {
-
-                    String line = br.readLine();
-                    
-                    // if there aren't any more lines in the reader, then mark
-                    // next as null to indicate that there are no more words
-                    if (line == null) {
-                        next = null;
-                        br.close();
-                        return;
+                // Skip any white space before the next token
+                while (true) {
+                    if (pos == limit) {
+                        pos = limit = 0;
+                        if (!fill()) {
+                            next = null;
+                            br.close();
+                            return;
+                        }
+                    }
+                    if (!isWhiteSpace(buffer[pos]))
+                        break;
+                    pos++;
+                }
+
+                // Find the end of the token, shifting the token to the start
+                // of the buffer if it continues past the buffered characters
+                int start = pos;
+                while (true) {
+                    if (pos == limit) {
+                        if (start > 0) {
+                            System.arraycopy(buffer, start, buffer, 0, 
+                                             limit - start);
+                            limit -= start;
+                            pos -= start;
+                            start = 0;
+                        }
+                        if (!fill())
+                            break;
                     }
-                    
-                    // create a new matcher to find all the tokens in this line
-                    matcher = notWhiteSpace.matcher(line);
-                    curLine = line;
-                    
-                    // skip lines with no matches
-                    if (!matcher.find())
-                        continue;                    
+                    if (isWhiteSpace(buffer[pos]))
+                        break;
+                    pos++;
                 }
 
-                next = curLine.substring(matcher.start(), matcher.end());
-                break;
+                int length = pos - start;
+                if (filter == null || filter.accept(buffer, start, length)) {
+                    next = new String(buffer, start, length);
+                    return;
+                }
+                else if (keepOrdering) {
+                    next = IteratorFactory.EMPTY_TOKEN;
+                    return;
+                }
             }
         } catch (IOException ioe) {
             throw new IOError(ioe);
@@ -23,6 +23,8 @@ package edu.ucla.sspace.tools;
 
 import edu.ucla.sspace.common.ArgOptions;
 import edu.ucla.sspace.common.DimensionallyInterpretableSemanticSpace;
+import edu.ucla.sspace.common.NearestNeighborFinder;
+import edu.ucla.sspace.common.RandomProjectionNearestNeighborFinder;
 import edu.ucla.sspace.common.SemanticSpace;
 import edu.ucla.sspace.common.SemanticSpaceIO;
 import edu.ucla.sspace.common.Similarity;
@@ -80,7 +82,8 @@ public class SemanticSpaceExplorer {
         ALIAS,
         GET_WORDS,
         DESCRIBE_DIMENSION,
-        DESCRIBE_SEMANTIC_SPACE
+        DESCRIBE_SEMANTIC_SPACE,
+        BUILD_INDEX
     }
 
     /**
@@ -120,6 +123,13 @@ public class SemanticSpaceExplorer {
      */
     private final Map<String,String> aliasToFileName;
 
+    /**
+     * The mapping from a semantic space to the approximate nearest neighbor
+     * index that should be used instead of {@link #wordComparator} to find the
+     * neighbors of its words.
+     */
+    private final Map<SemanticSpace,NearestNeighborFinder> sspaceToIndex;
+
     /**
      * The current {@code SemanticSpace} to be used when invoking commands
      */
@@ -132,6 +142,7 @@ public class SemanticSpaceExplorer {
         this.wordComparator = new WordComparator();
         fileNameToSSpace = new LinkedHashMap<String,SemanticSpace>();
         aliasToFileName = new HashMap<String,String>();
+        sspaceToIndex = new HashMap<SemanticSpace,NearestNeighborFinder>();
         current = null;
     }
 
@@ -240,6 +251,21 @@ public class SemanticSpaceExplorer {
             }
             fileNameToSSpace.put(sspaceFileName, sspace);
             current = sspace;
+
+            // Use the nearest neighbor index for the space if one was
+            // previously built
+            File indexFile = RandomProjectionNearestNeighborFinder
+                .getIndexFile(new File(sspaceFileName));
+            if (sspace != null && indexFile.exists()) {
+                try {
+                    sspaceToIndex.put(sspace,
+                        RandomProjectionNearestNeighborFinder.load(
+                            indexFile, sspace));
+                } catch (IOException ioe) {
+                    out.println("unable to load the index from " + 
+                                indexFile + ":\n" + ioe);
+                }
+            }
             break;
         }
 
@@ -271,6 +297,9 @@ public class SemanticSpaceExplorer {
                 }
             }
             
+            if (removed != null)
+                sspaceToIndex.remove(removed);
+
             // If we are removing the current semantic space, reassign it to be
             // the oldest semantic space, or if none are available, null.
             if (removed == current) {
@@ -340,10 +369,13 @@ public class SemanticSpaceExplorer {
             }
             
             // Using the provided or default arguments find the closest
-            // neighbors to the target word in the current semantic space
-            SortedMultiMap<Double,String> mostSimilar =
-                wordComparator.getMostSimilar(focusWord, current, neighbors,
-                                              simType);
+            // neighbors to the target word in the current semantic space,
+            // using its index if one has been built
+            NearestNeighborFinder index = sspaceToIndex.get(current);
+            SortedMultiMap<Double,String> mostSimilar = (index != null)
+                ? index.getMostSimilar(focusWord, neighbors, simType)
+                : wordComparator.getMostSimilar(focusWord, current, neighbors,
+                                                simType);
 
             if (mostSimilar == null) {
                 out.println(focusWord + 
@@ -612,6 +644,48 @@ public class SemanticSpaceExplorer {
             break;
         }
 
+        // Builds an approximate nearest neighbor index for the current
+        // semantic space and saves it next to the .sspace file
+        case BUILD_INDEX: {
+            if (current == null) {
+                out.println("no current semantic space");
+                return false;
+            }
+            int numTables =
+                RandomProjectionNearestNeighborFinder.DEFAULT_NUM_TABLES;
+            int numBits =
+                RandomProjectionNearestNeighborFinder.DEFAULT_BITS_PER_TABLE;
+            try {
+                if (commandTokens.hasNext())
+                    numTables = Integer.parseInt(commandTokens.next());
+                if (commandTokens.hasNext())
+                    numBits = Integer.parseInt(commandTokens.next());
+            } catch (NumberFormatException nfe) {
+                out.println("invalid index parameter: " + nfe.getMessage());
+                return false;
+            }
+
+            RandomProjectionNearestNeighborFinder index = null;
+            try {
+                index = new RandomProjectionNearestNeighborFinder(
+                    current, numTables, numBits, System.currentTimeMillis(),
+                    Runtime.getRuntime().availableProcessors());
+            } catch (IllegalArgumentException iae) {
+                out.println(iae.getMessage());
+                return false;
+            }
+            sspaceToIndex.put(current, index);
+            File indexFile = RandomProjectionNearestNeighborFinder
+                .getIndexFile(new File(getCurrentSSpaceFileName()));
+            try {
+                index.save(indexFile);
+            } catch (IOException ioe) {
+                out.println("unable to save the index to " + indexFile +
+                            ":\n" + ioe);
+            }
+            break;
+        }
+
         // Prints out statistics on the current sspaces
         case DESCRIBE_SEMANTIC_SPACE: {
             if (current == null) {
@@ -665,7 +739,12 @@ public class SemanticSpaceExplorer {
             "  print-vector word\n" +
             "  get-words [string-prefix]\n" +
             "  describe-dimension number\n" +
-            "  describe-semantic-space\n";
+            "  describe-semantic-space\n" +
+            "  build-index [tables (default " +
+            RandomProjectionNearestNeighborFinder.DEFAULT_NUM_TABLES +
+            ")] [bits per table (default " +
+            RandomProjectionNearestNeighborFinder.DEFAULT_BITS_PER_TABLE +
+            ")]\n";
     }
 
     /**
@@ -22,15 +22,22 @@
 package edu.ucla.sspace.tools;
 
 import edu.ucla.sspace.common.ArgOptions;
+import edu.ucla.sspace.common.RandomProjectionNearestNeighborFinder;
 import edu.ucla.sspace.common.Similarity;
 import edu.ucla.sspace.common.Similarity.SimType;
 import edu.ucla.sspace.common.SemanticSpace;
 import edu.ucla.sspace.common.SemanticSpaceIO;
 import edu.ucla.sspace.common.WordComparator;
 
+import edu.ucla.sspace.matrix.BlockedRowComparator;
+
 import edu.ucla.sspace.util.BoundedSortedMap;
 import edu.ucla.sspace.util.Pair;
 import edu.ucla.sspace.util.SortedMultiMap;
+import edu.ucla.sspace.util.TreeMultiMap;
+import edu.ucla.sspace.util.WorkQueue;
+
+import edu.ucla.sspace.vector.Vector;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -40,7 +47,9 @@ import java.io.PrintWriter;
 
 import java.lang.reflect.Method;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
@@ -92,6 +101,27 @@ public class SimilarityListGenerator {
         argOptions.addOption('v', "verbose", "prints verbose output "+ 
                              "(default: false)", false, null, 
                              "Program Options");
+        argOptions.addOption('a', "approximate", "finds the most similar " +
+                             "words using an LSH index, which is loaded " +
+                             "from <sspace-file>.lsh or built and saved " +
+                             "there if it does not exist (default: false)",
+                             false, null, "Approximate Search Options");
+        argOptions.addOption('T', "lshTables", "the number of hash tables " +
+                             "when building an index (default: " +
+                             RandomProjectionNearestNeighborFinder
+                             .DEFAULT_NUM_TABLES + ")",
+                             true, "int", "Approximate Search Options");
+        argOptions.addOption('B', "lshBits", "the number of hash bits per " +
+                             "table when building an index (default: " +
+                             RandomProjectionNearestNeighborFinder
+                             .DEFAULT_BITS_PER_TABLE + ")",
+                             true, "int", "Approximate Search Options");
+        argOptions.addOption('P', "lshProbes", "the number of extra buckets " +
+                             "searched per table; higher values increase " +
+                             "recall at the cost of speed (default: " +
+                             RandomProjectionNearestNeighborFinder
+                             .DEFAULT_NUM_PROBES + ")",
+                             true, "int", "Approximate Search Options");
     }
 
 
@@ -175,33 +205,110 @@ public class SimilarityListGenerator {
         final PrintWriter outputWriter = new PrintWriter(output);
             
         final Set<String> words = sspace.getWords();
-        WordComparator comparator = new WordComparator(numThreads);
 
+        // Cosine similarity for every word can be computed much faster as a
+        // blocked matrix product than one pair at a time
+        if (!argOptions.hasOption('a') &&
+                similarityType.equals(SimType.COSINE)) {
+            final String[] wordArr = words.toArray(new String[words.size()]);
+            List<Vector> vectors = new ArrayList<Vector>(wordArr.length);
+            for (String word : wordArr)
+                vectors.add(sspace.getVector(word));
+            WorkQueue workQueue = (argOptions.hasOption("threads"))
+                ? new WorkQueue(numThreads)
+                : WorkQueue.getWorkQueue();
+            BlockedRowComparator blocked = new BlockedRowComparator(workQueue);
+            blocked.getMostSimilar(vectors, numSimilar,
+                new BlockedRowComparator.NeighborHandler() {
+                    public void handle(int row,
+                                       SortedMultiMap<Double,Integer> rows) {
+                        SortedMultiMap<Double,String> mostSimilar =
+                            new TreeMultiMap<Double,String>();
+                        for (Map.Entry<Double,Integer> e : rows.entrySet())
+                            mostSimilar.put(e.getKey(), wordArr[e.getValue()]);
+                        writeMostSimilar(outputWriter, wordArr[row],
+                                         mostSimilar, printSimilarity);
+                    }
+                });
+            outputWriter.close();
+            return;
+        }
+
+        WordComparator comparator = null;
+        RandomProjectionNearestNeighborFinder finder = null;
+        if (argOptions.hasOption('a'))
+            finder = loadIndex(sspaceFile, sspace, numThreads);
+        else
+            comparator = new WordComparator(numThreads);
 
         for (String word : words) {            
             // compute the k most-similar words to this word
-            SortedMultiMap<Double,String> mostSimilar =
-                comparator.getMostSimilar(word, sspace, numSimilar,
-                                          similarityType);
+            SortedMultiMap<Double,String> mostSimilar = (finder != null)
+                ? finder.getMostSimilar(word, numSimilar, similarityType)
+                : comparator.getMostSimilar(word, sspace, numSimilar,
+                                            similarityType);
             
             // once processing has finished write the k most-similar words to
             // the output file.
-            StringBuilder sb = new StringBuilder(256);
-            sb.append(word).append("|");
-            for (Map.Entry<Double,String> e : 
-                     mostSimilar.entrySet()) {
-                String s = e.getValue();
-                Double d = e.getKey();
-
-                sb.append(s);
-                if (printSimilarity) {
-                    sb.append(" ").append(d);
-                }
-                sb.append("|");
-                
+            writeMostSimilar(outputWriter, word, mostSimilar, printSimilarity);
+        }
+    }
+
+    /**
+     * Writes the most similar words to the word as a single line of output.
+     */
+    private static void writeMostSimilar(PrintWriter outputWriter, String word,
+                                         SortedMultiMap<Double,String>
+                                         mostSimilar,
+                                         boolean printSimilarity) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(word).append("|");
+        for (Map.Entry<Double,String> e : 
+                 mostSimilar.entrySet()) {
+            String s = e.getValue();
+            Double d = e.getKey();
+
+            sb.append(s);
+            if (printSimilarity) {
+                sb.append(" ").append(d);
             }
-            outputWriter.println(sb.toString());
-            outputWriter.flush();
+            sb.append("|");
+            
+        }
+        outputWriter.println(sb.toString());
+        outputWriter.flush();
+    }
+
+    /**
+     * Loads the LSH index stored next to the {@code .sspace} file, or builds
+     * and saves a new index if none exists.
+     */
+    private RandomProjectionNearestNeighborFinder loadIndex(
+            File sspaceFile, SemanticSpace sspace, int numThreads)
+            throws IOException {
+        File indexFile =
+            RandomProjectionNearestNeighborFinder.getIndexFile(sspaceFile);
+        RandomProjectionNearestNeighborFinder finder = null;
+        if (indexFile.exists()) {
+            LOGGER.fine("loading LSH index: " + indexFile.getName());
+            finder = RandomProjectionNearestNeighborFinder.load(
+                indexFile, sspace);
+        }
+        else {
+            int numTables = (argOptions.hasOption('T'))
+                ? argOptions.getIntOption('T')
+                : RandomProjectionNearestNeighborFinder.DEFAULT_NUM_TABLES;
+            int numBits = (argOptions.hasOption('B'))
+                ? argOptions.getIntOption('B')
+                : RandomProjectionNearestNeighborFinder.DEFAULT_BITS_PER_TABLE;
+            finder = new RandomProjectionNearestNeighborFinder(
+                sspace, numTables, numBits, System.currentTimeMillis(),
+                numThreads);
+            LOGGER.fine("saving LSH index: " + indexFile.getName());
+            finder.save(indexFile);
         }
+        if (argOptions.hasOption('P'))
+            finder.setNumProbes(argOptions.getIntOption('P'));
+        return finder;
     }
 }
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.util;
+
+/**
+ * A map from primitive {@code long} keys to primitive {@code double} values.
+ * Mappings are stored in parallel arrays using open addressing with linear
+ * probing, so no {@code Long}, {@code Double} or entry objects are created for
+ * any operation.  The map is intended to be used as a reusable accumulator on
+ * a hot path, such as summing the weights of co-occurrences whose row and
+ * column have been packed into a single {@code long}: once its table has grown
+ * to the size of the largest working set, {@link #clear()} leaves the table in
+ * place and later accumulation allocates nothing.  The occupied slots are
+ * recorded as they are filled, so clearing the map and listing its keys take
+ * time proportional to the number of mappings rather than to the size of the
+ * table.<p>
+ *
+ * Since {@code double} values cannot be {@code null}, {@link #get(long)}
+ * returns {@code 0} for keys that are not present.  The order of the keys
+ * returned by {@link #keys(long[])} is unspecified.<p>
+ *
+ * This class is not thread-safe.
+ *
+ * @see StringIntMap
+ */
+public class LongDoubleMap {
+
+    /**
+     * The default number of mappings for which space is reserved
+     */
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The keys of this map
+     */
+    private long[] keys;
+
+    /**
+     * The value for the key at the same slot
+     */
+    private double[] values;
+
+    /**
+     * Whether the slot contains a mapping.  A separate array is used so that
+     * every {@code long} value may be used as a key.
+     */
+    private boolean[] used;
+
+    /**
+     * The slots that contain a mapping, in the order they were filled.  Only
+     * the first {@code size} elements are valid.
+     */
+    private int[] occupied;
+
+    /**
+     * The number of mappings in this map
+     */
+    private int size;
+
+    /**
+     * Creates an empty map.
+     */
+    public LongDoubleMap() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map with space for the specified number of mappings.
+     */
+    public LongDoubleMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException(
+                "Capacity must be non-negative: " + initialCapacity);
+        // Keep the load factor at or below .5 to ensure short probe sequences
+        int slots = StringIntMap.tableSizeFor(initialCapacity * 2);
+        keys = new long[slots];
+        values = new double[slots];
+        used = new boolean[slots];
+        occupied = new int[maxSize(slots)];
+        size = 0;
+    }
+
+    /**
+     * Returns the most mappings that a table with the specified number of
+     * slots holds before it is rehashed.
+     */
+    private static int maxSize(int slots) {
+        return slots / 2 + 1;
+    }
+
+    /**
+     * Spreads the bits of the key so that keys that differ only in their high
+     * or low bits are distributed evenly across the table.
+     */
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the slot that contains the key or the empty slot at which it
+     * would be inserted.
+     */
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (used[slot] && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Adds {@code delta} to the value mapped to the key, creating a mapping
+     * with the value {@code delta} if the key is not present, and returns the
+     * resulting value.
+     */
+    public double add(long key, double delta) {
+        int slot = slotOf(key);
+        if (used[slot])
+            return values[slot] += delta;
+        keys[slot] = key;
+        values[slot] = delta;
+        used[slot] = true;
+        occupied[size] = slot;
+        if (++size * 2 > keys.length)
+            rehash(keys.length << 1);
+        return delta;
+    }
+
+    /**
+     * Removes all of the mappings from this map without releasing the space
+     * used by its table.
+     */
+    public void clear() {
+        for (int i = 0; i < size; ++i)
+            used[occupied[i]] = false;
+        size = 0;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the key.
+     */
+    public boolean containsKey(long key) {
+        return used[slotOf(key)];
+    }
+
+    /**
+     * Returns the value to which the key is mapped, or {@code 0} if this map
+     * contains no mapping for the key.
+     */
+    public double get(long key) {
+        int slot = slotOf(key);
+        return (used[slot]) ? values[slot] : 0;
+    }
+
+    /**
+     * Returns {@code true} if this map contains no mappings.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the keys of this map in the first {@link #size()} elements of an
+     * array.  If the keys fit in the provided array, it is returned; otherwise,
+     * a new array is allocated.  This allows a caller to reuse the same array
+     * for repeated calls.
+     */
+    public long[] keys(long[] dest) {
+        if (dest == null || dest.length < size)
+            dest = new long[size];
+        for (int i = 0; i < size; ++i)
+            dest[i] = keys[occupied[i]];
+        return dest;
+    }
+
+    /**
+     * Maps the key to the value, returning the previously mapped value or
+     * {@code 0} if the key was not present.
+     */
+    public double put(long key, double value) {
+        int slot = slotOf(key);
+        if (used[slot]) {
+            double old = values[slot];
+            values[slot] = value;
+            return old;
+        }
+        add(key, value);
+        return 0;
+    }
+
+    /**
+     * Moves all of the mappings into a table with the specified number of
+     * slots.
+     */
+    private void rehash(int newSlots) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        int[] oldOccupied = occupied;
+        keys = new long[newSlots];
+        values = new double[newSlots];
+        used = new boolean[newSlots];
+        occupied = new int[maxSize(newSlots)];
+        int mask = newSlots - 1;
+        for (int i = 0; i < size; ++i) {
+            int oldSlot = oldOccupied[i];
+            int slot = hash(oldKeys[oldSlot]) & mask;
+            while (used[slot])
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[oldSlot];
+            values[slot] = oldValues[oldSlot];
+            used[slot] = true;
+            occupied[i] = slot;
+        }
+    }
+
+    /**
+     * Returns the number of mappings in this map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a string representation of the mappings in this map.
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder(size * 8);
+        sb.append('{');
+        boolean first = true;
+        for (int i = 0; i < size; ++i) {
+            int slot = occupied[i];
+            if (!first)
+                sb.append(", ");
+            sb.append(keys[slot]).append('=').append(values[slot]);
+            first = false;
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A frequency tracker for an unbounded stream of items that uses memory
+ * proportional to the number of frequent items, rather than the number of
+ * distinct items.  This class implements the <i>lossy counting</i> algorithm
+ * described in: <ul>
+ *
+ *   <li style="font-family:Garamond, Georgia, serif"> G. S. Manku and R.
+ *     Motwani.  Approximate Frequency Counts over Data Streams.  In
+ *     <i>Proceedings of the 28th International Conference on Very Large Data
+ *     Bases</i>, pages 346-357, 2002.
+ *
+ * </ul> The stream is divided into buckets of {@code ceil(1 / epsilon)} items.
+ * At the end of each bucket, the items whose counts show that they occur less
+ * than once per bucket are evicted.  Any item whose true frequency is at least
+ * {@code epsilon * N}, for a stream of {@code N} items, is never evicted, and
+ * the count of every tracked item underestimates its true count by at most
+ * {@code epsilon * N}.<p>
+ *
+ * Since the number of tracked items is only bounded in expectation, a hard
+ * limit on the number of tracked items may also be specified.  If the limit
+ * is exceeded, the items with the lowest maximum possible counts are evicted
+ * until a quarter of the limit is free.<p>
+ *
+ * The {@link #add(Object,int) add} method returns the items that were evicted
+ * as a result of the addition, which allows the caller to discard any data
+ * associated with those items.  An evicted item may later be added again, in
+ * which case it is tracked as a new item.<p>
+ *
+ * This class is thread-safe.
+ */
+public class LossyCounter<T> {
+
+    /**
+     * The number of items in each bucket
+     */
+    private final long bucketWidth;
+
+    /**
+     * The maximum number of items to track, or {@code 0} if the number is not
+     * limited
+     */
+    private final int maxItems;
+
+    /**
+     * The tracked items and their counts
+     */
+    private final Map<T,Entry> entries;
+
+    /**
+     * The total count of all items added
+     */
+    private long total;
+
+    /**
+     * The identifier of the current bucket, starting at {@code 1}
+     */
+    private long currentBucket;
+
+    /**
+     * Creates a counter with the specified error bound and no limit on the
+     * number of tracked items.
+     *
+     * @param epsilon the maximum error in an item's count as a fraction of
+     *        the total count of all items
+     */
+    public LossyCounter(double epsilon) {
+        this(epsilon, 0);
+    }
+
+    /**
+     * Creates a counter with the specified error bound that tracks at most
+     * {@code maxItems} items.
+     *
+     * @param epsilon the maximum error in an item's count as a fraction of
+     *        the total count of all items
+     * @param maxItems the maximum number of items to track, or {@code 0} for
+     *        no limit
+     */
+    public LossyCounter(double epsilon, int maxItems) {
+        if (epsilon <= 0 || epsilon >= 1)
+            throw new IllegalArgumentException(
+                "epsilon must be in (0, 1): " + epsilon);
+        if (maxItems < 0)
+            throw new IllegalArgumentException(
+                "The maximum number of items must be non-negative: " + 
+                maxItems);
+        bucketWidth = (long)Math.ceil(1 / epsilon);
+        this.maxItems = maxItems;
+        entries = new HashMap<T,Entry>();
+        total = 0;
+        currentBucket = 1;
+    }
+
+    /**
+     * Adds one occurrence of the item and returns the items that were evicted
+     * as a result.
+     */
+    public List<T> add(T item) {
+        return add(item, 1);
+    }
+
+    /**
+     * Adds {@code count} occurrences of the item and returns the items that
+     * were evicted as a result, which may include {@code item} itself.  The
+     * returned list is empty if no items were evicted.
+     */
+    public synchronized List<T> add(T item, int count) {
+        if (count < 1)
+            throw new IllegalArgumentException(
+                "count must be positive: " + count);
+        Entry e = entries.get(item);
+        if (e == null)
+            entries.put(item, new Entry(count, currentBucket - 1));
+        else
+            e.count += count;
+        total += count;
+
+        List<T> evicted = Collections.<T>emptyList();
+        long bucket = (total + bucketWidth - 1) / bucketWidth;
+        if (bucket > currentBucket) {
+            // The previous bucket is complete, so evict all items whose
+            // maximum possible count is within the completed buckets
+            evicted = evictAtMost(bucket - 1);
+            currentBucket = bucket;
+        }
+        if (maxItems > 0 && entries.size() > maxItems) {
+            List<T> overflow = evictLeastFrequent(maxItems - maxItems / 4);
+            if (evicted.isEmpty())
+                evicted = overflow;
+            else
+                evicted.addAll(overflow);
+        }
+        return evicted;
+    }
+
+    /**
+     * Returns {@code true} if the item is currently tracked.
+     */
+    public synchronized boolean contains(T item) {
+        return entries.containsKey(item);
+    }
+
+    /**
+     * Returns the estimated count of the item, which is at most the true count
+     * and at least the true count minus {@code epsilon} times the total count.
+     * Returns {@code 0} if the item is not tracked.
+     */
+    public synchronized long getCount(T item) {
+        Entry e = entries.get(item);
+        return (e == null) ? 0 : e.count;
+    }
+
+    /**
+     * Returns the total count of all the items that have been added.
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the number of items currently tracked.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes the items whose maximum possible count is at most the threshold
+     * and returns them.
+     */
+    private List<T> evictAtMost(long threshold) {
+        List<T> evicted = new ArrayList<T>();
+        Iterator<Map.Entry<T,Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<T,Entry> e = it.next();
+            if (e.getValue().maxCount() <= threshold) {
+                evicted.add(e.getKey());
+                it.remove();
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Removes the items with the lowest maximum possible counts until only
+     * {@code retain} items remain and returns the removed items.
+     */
+    private List<T> evictLeastFrequent(int retain) {
+        long[] maxCounts = new long[entries.size()];
+        int i = 0;
+        for (Entry e : entries.values())
+            maxCounts[i++] = e.maxCount();
+        Arrays.sort(maxCounts);
+        // Evict every item whose maximum count is below the threshold, and
+        // then enough items with the threshold count to reach the target
+        long threshold = maxCounts[maxCounts.length - retain - 1];
+        int toEvict = maxCounts.length - retain;
+        List<T> evicted = new ArrayList<T>(toEvict);
+        Iterator<Map.Entry<T,Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext() && evicted.size() < toEvict) {
+            Map.Entry<T,Entry> e = it.next();
+            if (e.getValue().maxCount() < threshold) {
+                evicted.add(e.getKey());
+                it.remove();
+            }
+        }
+        it = entries.entrySet().iterator();
+        while (it.hasNext() && evicted.size() < toEvict) {
+            Map.Entry<T,Entry> e = it.next();
+            if (e.getValue().maxCount() == threshold) {
+                evicted.add(e.getKey());
+                it.remove();
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * The count of an item and the maximum number of its occurrences that may
+     * have been missed before it was last tracked.
+     */
+    private static class Entry {
+
+        long count;
+
+        final long delta;
+
+        public Entry(long count, long delta) {
+            this.count = count;
+            this.delta = delta;
+        }
+
+        public long maxCount() {
+            return count + delta;
+        }
+    }
+}
@@ -21,6 +21,9 @@
 
 package edu.ucla.sspace.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 import java.util.Arrays;
@@ -39,14 +42,21 @@ import java.util.NoSuchElementException;
  * The {@code get} operation runs in logarithmic time.  The {@code set}
  * operation runs in consant time if setting an existing non-zero value to a
  * non-zero value.  However, if the {@code set} invocation sets a zero value to
- * non-zero, the operation is linear with the size of the array.<p>
+ * non-zero, the operation is linear with the number of non-zero values after
+ * the index, which is constant when indices are set in increasing order.  The
+ * non-zero values are stored in arrays with spare capacity that grow
+ * geometrically, so adding a new non-zero value does not allocate new arrays
+ * except when the capacity is exhausted.  When many values are to be added in
+ * an arbitrary order, a {@link Builder} will be faster, since it sorts and
+ * merges all of the values at once.<p>
  *
  * Instance offer a space savings of retaining only the non-zero indices and
  * values.  For large array with only a few values set, this offers a huge
  * savings.  However, as the cardinality of the array grows in relation to its
  * size, a dense {@code double[]} array will offer better performance in both
  * space and time.  This is especially true if the sparse array instance
- * approaches a cardinality to size ratio of {@code .5}.<p>
+ * approaches a cardinality to size ratio of {@code .5}.  Any unused capacity
+ * may be released with {@link #trimToSize()}.<p>
  *
  * This class supports iterating over the non-zero indices and values in the
  * array via the {@link #iterator()} method.  The indices will be returned in
@@ -64,13 +74,20 @@ public class SparseDoubleArray
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The number of non-zero values for which space is reserved when the first
+     * value is added to an empty array.
+     */
+    private static final int MIN_CAPACITY = 4;
+
     /**
      * The maximum length of this array
      */
     private final int maxLength;
   
     /**
-     * A list of all the non-zero indices
+     * A list of all the non-zero indices, where only the first {@code size}
+     * elements are valid
      */
     private int[] indices;
 
@@ -79,6 +96,20 @@ public class SparseDoubleArray
      * indices} array.
      */
     private double[] values;
+
+    /**
+     * The number of non-zero values in this array.  This field is not
+     * serialized, as the arrays are trimmed to this size prior to
+     * serialization.
+     */
+    private transient int size;
+
+    /**
+     * A copy of the non-zero indices that is returned by {@link
+     * #getElementIndices()} until the indices next change, or {@code null} if
+     * no copy has been made since then.
+     */
+    private transient volatile int[] indicesCopy;
      
     /**
      * Creates a sparse {@code double} array that grows to the maximum size set by
@@ -92,12 +123,24 @@ public class SparseDoubleArray
      * Creates a sparse {@code double} array with a fixed length
      */
     public SparseDoubleArray(int length) {
+        this(length, 0);
+    }
+
+    /**
+     * Creates a sparse {@code double} array with a fixed length that reserves
+     * space for the specified number of non-zero values.
+     */
+    public SparseDoubleArray(int length, int initialCapacity) {
         if (length < 0)
             throw new IllegalArgumentException("length must be non-negative");
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException(
+                "capacity must be non-negative");
         maxLength = length;
         
-        indices = new int[0];
-        values = new double[0];
+        indices = new int[initialCapacity];
+        values = new double[initialCapacity];
+        size = 0;
     }
 
     /**
@@ -126,6 +169,7 @@ public class SparseDoubleArray
                 values[index++] = array[i];
             }
         }    
+        size = nonZero;
     }
 
     /**
@@ -148,6 +192,7 @@ public class SparseDoubleArray
         maxLength = length;
         this.indices = indices;
         this.values = values;
+        size = indices.length;
         // Ensure that no duplicate indices, or unsorted exist
         for (int i = 0; i < this.indices.length - 1; ++i) {
             if (this.indices[i] >= this.indices[i+1])
@@ -157,6 +202,18 @@ public class SparseDoubleArray
         }
     }
 
+    /**
+     * Creates a sparse array from the first {@code size} elements of the
+     * arrays, which are assumed to be sorted, unique and non-zero.
+     */
+    private SparseDoubleArray(int[] indices, double[] values, int size,
+                              int length) {
+        maxLength = length;
+        this.indices = indices;
+        this.values = values;
+        this.size = size;
+    }
+
     /**
      * Adds the specified value to the index.  This call is more effecient than
      * calling {@code get} and {@code set}.
@@ -173,29 +230,12 @@ public class SparseDoubleArray
         if (delta == 0)
             return get(index);
         
-        int pos = Arrays.binarySearch(indices, index);
+        int pos = Arrays.binarySearch(indices, 0, size, index);
         
         // The add operation is putting a new value in the array, so we need to
         // make room in the indices array
         if (pos < 0) {
-            int newPos = 0 - (pos + 1);
-            int[] newIndices = Arrays.copyOf(indices, indices.length + 1);
-            double[] newValues = Arrays.copyOf(values, values.length + 1);
-            
-            // shift the elements down by one to make room
-            for (int i = newPos; i < values.length; ++i) {
-                newValues[i+1] = values[i];
-                newIndices[i+1] = indices[i];
-            }
-            
-            // swap the arrays
-            indices = newIndices;
-            values = newValues;
-            pos = newPos;
-            
-            // update the position of the pos in the values array
-            indices[pos] = index;
-            values[pos] = delta;
+            insert(0 - (pos + 1), index, delta);
             return delta;
         }
         else {
@@ -203,21 +243,8 @@ public class SparseDoubleArray
 
             // The new value is zero, so remove its position and shift
             // everything over
-            if (newValue == 0) {
-                int newLength = indices.length - 1;
-                int[] newIndices = new int[newLength];
-                double[] newValues = new double[newLength];
-                for (int i = 0, j = 0; i < indices.length; ++i) {
-                    if (i != pos) {
-                        newIndices[j] = indices[i];
-                        newValues[j] = values[i];            
-                        j++;
-                    }
-                }
-                // swap the arrays
-                indices = newIndices;
-                values = newValues;
-            }
+            if (newValue == 0) 
+                remove(pos);
             // Otherwise, the new value is still non-zero, so update it in the
             // array
             else
@@ -237,7 +264,24 @@ public class SparseDoubleArray
      * {@inheritDoc}
      */
     public int cardinality() {
-        return indices.length;
+        return size;
+    }
+
+    /**
+     * Ensures that the array has space for at least the specified number of
+     * non-zero values without needing to grow.
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity <= indices.length)
+            return;
+        // Grow by half of the current capacity so that the cost of copying is
+        // amortized over the values added, but never reserve more space than
+        // there are indices in the array
+        int newCapacity = Math.max(MIN_CAPACITY,
+                                   indices.length + (indices.length >> 1));
+        newCapacity = Math.max(minCapacity, Math.min(newCapacity, maxLength));
+        indices = Arrays.copyOf(indices, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
     }
 
     /**
@@ -248,12 +292,24 @@ public class SparseDoubleArray
     }
 
     /**
-     * Returns the indices of the array that contain non-{@code 0} values.
+     * Returns the indices of the array that contain non-{@code 0} values.  If
+     * this array has no unused capacity, the returned array is the internal
+     * storage of this array and should not be modified; otherwise, a copy of
+     * the non-zero indices is returned, which is shared by every call until
+     * the non-zero indices change and also should not be modified.  This
+     * method does not modify the contents of this array.
      *
      * @return the indices that contain values
      */
     public int[] getElementIndices() {
-        return indices;
+        if (size == indices.length)
+            return indices;
+        int[] copy = indicesCopy;
+        if (copy == null) {
+            copy = Arrays.copyOf(indices, size);
+            indicesCopy = copy;
+        }
+        return copy;
     }
     
     /**
@@ -272,10 +328,28 @@ public class SparseDoubleArray
             throw new ArrayIndexOutOfBoundsException(
                     "invalid index: " + index);
         }
-        int pos = Arrays.binarySearch(indices, index);
+        int pos = Arrays.binarySearch(indices, 0, size, index);
         double value = (pos >= 0) ? values[pos] : 0;
         return value;
     }
+
+    /**
+     * Inserts the index and its value at the specified position, shifting all
+     * later values down by one.
+     */
+    private void insert(int pos, int index, double value) {
+        if (size == indices.length)
+            ensureCapacity(size + 1);
+        int toMove = size - pos;
+        if (toMove > 0) {
+            System.arraycopy(indices, pos, indices, pos + 1, toMove);
+            System.arraycopy(values, pos, values, pos + 1, toMove);
+        }
+        indices[pos] = index;
+        values[pos] = value;
+        size++;
+        indicesCopy = null;
+    }
     
     /**
      * Returns an iterator over the non-zero values in this array.
@@ -291,6 +365,20 @@ public class SparseDoubleArray
         return maxLength;
     }
 
+    /**
+     * Removes the value at the specified position, shifting all later values
+     * up by one.
+     */
+    private void remove(int pos) {
+        int toMove = size - pos - 1;
+        if (toMove > 0) {
+            System.arraycopy(indices, pos + 1, indices, pos, toMove);
+            System.arraycopy(values, pos + 1, values, pos, toMove);
+        }
+        size--;
+        indicesCopy = null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -303,48 +391,19 @@ public class SparseDoubleArray
      * without auto-boxing.
      */
     public void setPrimitive(int index, double value) {
-        int pos = Arrays.binarySearch(indices, index);
+        int pos = Arrays.binarySearch(indices, 0, size, index);
 
         if (value != 0) {
             // need to make room in the indices array
-            if (pos < 0) {
-                int newPos = 0 - (pos + 1);
-                int[] newIndices = Arrays.copyOf(indices, indices.length + 1);
-                double[] newValues = Arrays.copyOf(values, values.length + 1);
-                
-                // shift the elements down by one to make room
-                for (int i = newPos; i < values.length; ++i) {
-                    newValues[i+1] = values[i];
-                    newIndices[i+1] = indices[i];
-                }
-            
-                // swap the arrays
-                indices = newIndices;
-                values = newValues;
-                pos = newPos;
-                    
-                // update the position of the pos in the values array
-                indices[pos] = index;
-            }
-            values[pos] = value;
+            if (pos < 0)
+                insert(0 - (pos + 1), index, value);
+            else
+                values[pos] = value;
         }
         // The value is zero but previously held a spot in the array, so remove
         // its position and shift everything over
-        else if (value == 0 && pos >= 0) {
-            int newLength = indices.length - 1;
-            int[] newIndices = new int[newLength];
-            double[] newValues = new double[newLength];
-            for (int i = 0, j = 0; i < indices.length; ++i) {
-                if (i != pos) {
-                    newIndices[j] = indices[i];
-                    newValues[j] = values[i];            
-                    j++;
-                }
-            }
-            // swap the arrays
-            indices = newIndices;
-            values = newValues;
-        }
+        else if (pos >= 0)
+            remove(pos);
 
         // note that in the even of a set with value 0 where the pos was
         // not present, this method is a no-op
@@ -357,7 +416,7 @@ public class SparseDoubleArray
     public <E> E[] toArray(E[] array) {    
         for (int i = 0, j = 0; i < array.length; ++i) {
             int index = -1;
-            if (j < indices.length && (index = indices[j]) == i) {
+            if (j < size && (index = indices[j]) == i) {
                 array[i] = (E)(Double.valueOf(values[j]));
                 j++;
             }
@@ -375,7 +434,7 @@ public class SparseDoubleArray
     public double[] toPrimitiveArray(double[] array) {
         for (int i = 0, j = 0; i < array.length; ++i) {
             int index = -1;
-            if (j < indices.length && (index = indices[j]) == i) {
+            if (j < size && (index = indices[j]) == i) {
                 array[i] = values[j];
                 j++;
             } else
@@ -384,6 +443,173 @@ public class SparseDoubleArray
         return array;
     }
 
+    /**
+     * Releases any space reserved for non-zero values beyond the current
+     * cardinality of this array.
+     */
+    public void trimToSize() {
+        if (size < indices.length) {
+            indices = Arrays.copyOf(indices, size);
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Writes only the non-zero values of the arrays, which keeps the serialized
+     * form identical to that of earlier versions without modifying this array.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("maxLength", maxLength);
+        fields.put("indices", Arrays.copyOf(indices, size));
+        fields.put("values", Arrays.copyOf(values, size));
+        out.writeFields();
+    }
+
+    /**
+     * Restores the number of non-zero values from the length of the arrays.
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        size = indices.length;
+    }
+
+    /**
+     * A builder for sparse arrays whose values are added in an arbitrary
+     * order.  Each call to {@link #add(int,double) add} appends the index and
+     * value in constant amortized time, and {@link #build()} sorts the values
+     * by index and sums the values of duplicate indices in {@code O(n log n)}
+     * time overall.  This avoids the cost of shifting values that {@link
+     * SparseDoubleArray#addPrimitive(int,double) addPrimitive} incurs when
+     * indices are not added in increasing order.<p>
+     *
+     * This class is not thread-safe.
+     */
+    public static class Builder {
+
+        /**
+         * The length of the arrays that are built
+         */
+        private final int length;
+
+        /**
+         * The indices in the order they were added
+         */
+        private int[] indices;
+
+        /**
+         * The values in the order they were added
+         */
+        private double[] values;
+
+        /**
+         * The number of values that have been added
+         */
+        private int size;
+
+        /**
+         * Creates a builder for arrays of the specified length.
+         */
+        public Builder(int length) {
+            this(length, 16);
+        }
+
+        /**
+         * Creates a builder for arrays of the specified length that reserves
+         * space for the specified number of values.
+         */
+        public Builder(int length, int expectedValues) {
+            if (length < 0)
+                throw new IllegalArgumentException(
+                    "length must be non-negative");
+            this.length = length;
+            int capacity = Math.max(expectedValues, MIN_CAPACITY);
+            indices = new int[capacity];
+            values = new double[capacity];
+            size = 0;
+        }
+
+        /**
+         * Adds the value to the index.  Values added to the same index are
+         * summed when the array is built.
+         *
+         * @return this builder
+         */
+        public Builder add(int index, double value) {
+            if (index < 0 || index >= length) 
+                throw new ArrayIndexOutOfBoundsException(
+                    "invalid index: " + index);
+            if (size == indices.length) {
+                int newCapacity = indices.length + (indices.length >> 1);
+                indices = Arrays.copyOf(indices, newCapacity);
+                values = Arrays.copyOf(values, newCapacity);
+            }
+            indices[size] = index;
+            values[size++] = value;
+            return this;
+        }
+
+        /**
+         * Returns a new array that contains the sum of the values added for
+         * each index.  Indices whose values sum to zero are not included.  The
+         * builder retains its values, so further values may be added and
+         * another array built.
+         */
+        public SparseDoubleArray build() {
+            long[] order = sortedOrder(indices, size);
+            int[] newIndices = new int[size];
+            double[] newValues = new double[size];
+            int n = 0;
+            for (int i = 0; i < size; ) {
+                int index = (int)(order[i] >>> 32);
+                double sum = 0;
+                // Sum all of the values added for the index
+                do {
+                    sum += values[(int)order[i++]];
+                } while (i < size && (int)(order[i] >>> 32) == index);
+                if (sum != 0) {
+                    newIndices[n] = index;
+                    newValues[n++] = sum;
+                }
+            }
+            if (n < size) {
+                newIndices = Arrays.copyOf(newIndices, n);
+                newValues = Arrays.copyOf(newValues, n);
+            }
+            return new SparseDoubleArray(newIndices, newValues, n, length);
+        }
+
+        /**
+         * Removes all of the values that have been added.
+         */
+        public void clear() {
+            size = 0;
+        }
+
+        /**
+         * Returns the number of values that have been added, including those
+         * added to the same index.
+         */
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Returns the positions of the first {@code size} indices in order of
+     * increasing index, with ties broken by position.  Each index is packed
+     * into the upper 32 bits of a {@code long} and its position into the lower
+     * 32 bits, which allows the positions to be sorted without boxing.
+     */
+    static long[] sortedOrder(int[] indices, int size) {
+        long[] order = new long[size];
+        for (int i = 0; i < size; ++i)
+            order[i] = ((long)indices[i] << 32) | i;
+        Arrays.sort(order);
+        return order;
+    }
+
     /**
      * A private iterator over the non-zero values of the array.  Note that this
      * iterator is <i>not</i> thread safe.
@@ -400,11 +626,11 @@ public class SparseDoubleArray
         }
 
         public boolean hasNext() {
-            return SparseDoubleArray.this.indices.length > curIndex;
+            return SparseDoubleArray.this.size > curIndex;
         }
 
         public DoubleEntry next() {
-            if (SparseDoubleArray.this.indices.length <= curIndex)
+            if (SparseDoubleArray.this.size <= curIndex)
                 throw new NoSuchElementException();
             // Modify the state of the entry rather than create a new one to cut
             // down on object allocation for faster iterating
@@ -21,15 +21,19 @@
 
 package edu.ucla.sspace.util;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
+
 /**
- * A sparse {@code int} array.  This class trades increased space efficiency at
- * the cost of decreased performance.<p>
+ * A sparse {@code int} array.  This class trades increased space efficiency
+ * at the cost of decreased performance.<p>
  *
  * This class also provides additional primitive accessor methods.  This allows
  * users to invoke {@code get} and {@code set} without marshalling primitive
@@ -38,14 +42,21 @@ import java.util.NoSuchElementException;
  * The {@code get} operation runs in logarithmic time.  The {@code set}
  * operation runs in consant time if setting an existing non-zero value to a
  * non-zero value.  However, if the {@code set} invocation sets a zero value to
- * non-zero, the operation is linear with the size of the array.<p>
+ * non-zero, the operation is linear with the number of non-zero values after
+ * the index, which is constant when indices are set in increasing order.  The
+ * non-zero values are stored in arrays with spare capacity that grow
+ * geometrically, so adding a new non-zero value does not allocate new arrays
+ * except when the capacity is exhausted.  When many values are to be added in
+ * an arbitrary order, a {@link Builder} will be faster, since it sorts and
+ * merges all of the values at once.<p>
  *
  * Instance offer a space savings of retaining only the non-zero indices and
  * values.  For large array with only a few values set, this offers a huge
  * savings.  However, as the cardinality of the array grows in relation to its
- * size, a dense {@code int[]} array will offer better performance in both space
- * and time.  This is especially true if the sparse array instance approaches a
- * cardinality to size ratio of {@code .5}.<p>
+ * size, a dense {@code int[]} array will offer better performance in both
+ * space and time.  This is especially true if the sparse array instance
+ * approaches a cardinality to size ratio of {@code .5}.  Any unused capacity
+ * may be released with {@link #trimToSize()}.<p>
  *
  * This class supports iterating over the non-zero indices and values in the
  * array via the {@link #iterator()} method.  The indices will be returned in
@@ -64,13 +75,20 @@ public class SparseIntArray
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The number of non-zero values for which space is reserved when the first
+     * value is added to an empty array.
+     */
+    private static final int MIN_CAPACITY = 4;
+
     /**
      * The maximum length of this array
      */
     private final int maxLength;
   
     /**
-     * A list of all the non-zero indices
+     * A list of all the non-zero indices, where only the first {@code size}
+     * elements are valid
      */
     private int[] indices;
 
@@ -79,6 +97,20 @@ public class SparseIntArray
      * indices} array.
      */
     private int[] values;
+
+    /**
+     * The number of non-zero values in this array.  This field is not
+     * serialized, as the arrays are trimmed to this size prior to
+     * serialization.
+     */
+    private transient int size;
+
+    /**
+     * A copy of the non-zero indices that is returned by {@link
+     * #getElementIndices()} until the indices next change, or {@code null} if
+     * no copy has been made since then.
+     */
+    private transient volatile int[] indicesCopy;
      
     /**
      * Creates a sparse {@code int} array that grows to the maximum size set by
@@ -92,18 +124,32 @@ public class SparseIntArray
      * Creates a sparse {@code int} array with a fixed length
      */
     public SparseIntArray(int length) {
+        this(length, 0);
+    }
+
+    /**
+     * Creates a sparse {@code int} array with a fixed length that reserves
+     * space for the specified number of non-zero values.
+     */
+    public SparseIntArray(int length, int initialCapacity) {
         if (length < 0)
             throw new IllegalArgumentException("length must be non-negative");
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException(
+                "capacity must be non-negative");
         maxLength = length;
         
-        indices = new int[0];
-        values = new int[0];
+        indices = new int[initialCapacity];
+        values = new int[initialCapacity];
+        size = 0;
     }
 
     /**
      * Creates a sparse array copy of the provided array, retaining only the
      * non-zero values.  The length of the provided array is used to set the
      * maximum size of this sparse array.
+     *
+     * @param array the array whose values will be copied into this sparse array
      */
     public SparseIntArray(int[] array) {
         maxLength = array.length;
@@ -124,6 +170,7 @@ public class SparseIntArray
                 values[index++] = array[i];
             }
         }    
+        size = nonZero;
     }
 
     /**
@@ -146,14 +193,28 @@ public class SparseIntArray
         maxLength = length;
         this.indices = indices;
         this.values = values;
+        size = indices.length;
         // Ensure that no duplicate indices, or unsorted exist
         for (int i = 0; i < this.indices.length - 1; ++i) {
-            if (this.indices[i] <= this.indices[i+1])
+            if (this.indices[i] >= this.indices[i+1])
                 throw new IllegalArgumentException(
-                    "Indices must be sorted and unique");
+                    "Indices must be sorted and unique.  Given " +
+                    this.indices[i] + " and " + this.indices[i+1]);
         }
     }
 
+    /**
+     * Creates a sparse array from the first {@code size} elements of the
+     * arrays, which are assumed to be sorted, unique and non-zero.
+     */
+    private SparseIntArray(int[] indices, int[] values, int size,
+                           int length) {
+        maxLength = length;
+        this.indices = indices;
+        this.values = values;
+        this.size = size;
+    }
+
     /**
      * Adds the specified value to the index.  This call is more effecient than
      * calling {@code get} and {@code set}.
@@ -170,29 +231,12 @@ public class SparseIntArray
         if (delta == 0)
             return get(index);
         
-        int pos = Arrays.binarySearch(indices, index);
+        int pos = Arrays.binarySearch(indices, 0, size, index);
         
         // The add operation is putting a new value in the array, so we need to
         // make room in the indices array
         if (pos < 0) {
-            int newPos = 0 - (pos + 1);
-            int[] newIndices = Arrays.copyOf(indices, indices.length + 1);
-            int[] newValues = Arrays.copyOf(values, values.length + 1);
-            
-            // shift the elements down by one to make room
-            for (int i = newPos; i < values.length; ++i) {
-                newValues[i+1] = values[i];
-                newIndices[i+1] = indices[i];
-            }
-            
-            // swap the arrays
-            indices = newIndices;
-            values = newValues;
-            pos = newPos;
-            
-            // update the position of the pos in the values array
-            indices[pos] = index;
-            values[pos] = delta;
+            insert(0 - (pos + 1), index, delta);
             return delta;
         }
         else {
@@ -200,21 +244,8 @@ public class SparseIntArray
 
             // The new value is zero, so remove its position and shift
             // everything over
-            if (newValue == 0) {
-                int newLength = indices.length - 1;
-                int[] newIndices = new int[newLength];
-                int[] newValues = new int[newLength];
-                for (int i = 0, j = 0; i < indices.length; ++i) {
-                    if (i != pos) {
-                        newIndices[j] = indices[i];
-                        newValues[j] = values[i];            
-                        j++;
-                    }
-                }
-                // swap the arrays
-                indices = newIndices;
-                values = newValues;
-            }
+            if (newValue == 0) 
+                remove(pos);
             // Otherwise, the new value is still non-zero, so update it in the
             // array
             else
@@ -234,7 +265,24 @@ public class SparseIntArray
      * {@inheritDoc}
      */
     public int cardinality() {
-        return indices.length;
+        return size;
+    }
+
+    /**
+     * Ensures that the array has space for at least the specified number of
+     * non-zero values without needing to grow.
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity <= indices.length)
+            return;
+        // Grow by half of the current capacity so that the cost of copying is
+        // amortized over the values added, but never reserve more space than
+        // there are indices in the array
+        int newCapacity = Math.max(MIN_CAPACITY,
+                                   indices.length + (indices.length >> 1));
+        newCapacity = Math.max(minCapacity, Math.min(newCapacity, maxLength));
+        indices = Arrays.copyOf(indices, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
     }
 
     /**
@@ -245,16 +293,28 @@ public class SparseIntArray
     }
 
     /**
-     * Returns the indices of the array that contain non-{@code 0} values.
+     * Returns the indices of the array that contain non-{@code 0} values.  If
+     * this array has no unused capacity, the returned array is the internal
+     * storage of this array and should not be modified; otherwise, a copy of
+     * the non-zero indices is returned, which is shared by every call until
+     * the non-zero indices change and also should not be modified.  This
+     * method does not modify the contents of this array.
      *
      * @return the indices that contain values
      */
     public int[] getElementIndices() {
-        return indices;
+        if (size == indices.length)
+            return indices;
+        int[] copy = indicesCopy;
+        if (copy == null) {
+            copy = Arrays.copyOf(indices, size);
+            indicesCopy = copy;
+        }
+        return copy;
     }
     
     /**
-     * Retrieve the value at specified index or 0 if no value had been
+     * Retrieves the value at specified index or 0 if no value had been
      * specified.
      *
      * @param index the position in the array
@@ -266,15 +326,32 @@ public class SparseIntArray
      */
     public int getPrimitive(int index) {
         if (index < 0 || index >= maxLength) {
-            throw new ArrayIndexOutOfBoundsException("invalid index: " + 
-                                 index);
+            throw new ArrayIndexOutOfBoundsException(
+                    "invalid index: " + index);
         }
-
-        int pos = Arrays.binarySearch(indices, index);
+        int pos = Arrays.binarySearch(indices, 0, size, index);
         int value = (pos >= 0) ? values[pos] : 0;
         return value;
     }
 
+    /**
+     * Inserts the index and its value at the specified position, shifting all
+     * later values down by one.
+     */
+    private void insert(int pos, int index, int value) {
+        if (size == indices.length)
+            ensureCapacity(size + 1);
+        int toMove = size - pos;
+        if (toMove > 0) {
+            System.arraycopy(indices, pos, indices, pos + 1, toMove);
+            System.arraycopy(values, pos, values, pos + 1, toMove);
+        }
+        indices[pos] = index;
+        values[pos] = value;
+        size++;
+        indicesCopy = null;
+    }
+    
     /**
      * Returns an iterator over the non-zero values in this array.
      */
@@ -289,6 +366,20 @@ public class SparseIntArray
         return maxLength;
     }
 
+    /**
+     * Removes the value at the specified position, shifting all later values
+     * up by one.
+     */
+    private void remove(int pos) {
+        int toMove = size - pos - 1;
+        if (toMove > 0) {
+            System.arraycopy(indices, pos + 1, indices, pos, toMove);
+            System.arraycopy(values, pos + 1, values, pos, toMove);
+        }
+        size--;
+        indicesCopy = null;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -298,78 +389,41 @@ public class SparseIntArray
 
     /**
      * Sets the value of the index to the value using the Java primitives
-     * without auto-boxing.  if {@code value} is 0, and the value at {@code
-     * index} is already zero, this will be a no-op.
+     * without auto-boxing.
      */
     public void setPrimitive(int index, int value) {
-        int pos = Arrays.binarySearch(indices, index);
+        int pos = Arrays.binarySearch(indices, 0, size, index);
 
         if (value != 0) {
             // need to make room in the indices array
-            if (pos < 0) {
-                int newPos = 0 - (pos + 1);
-                int[] newIndices = new int[indices.length + 1];
-                int[] newValues = new int[values.length + 1];
-            
-                // copy the existing array contents that are valid in their
-                // current positions
-                for (int i = 0; i < newPos; ++i) {
-                    newValues[i] = values[i];
-                    newIndices[i] = indices[i];
-                }
-
-                // shift the elements down by one to make room
-                for (int i = newPos; i < values.length; ++i) {
-                    newValues[i+1] = values[i];
-                    newIndices[i+1] = indices[i];
-                }
-                    
-                // swap the arrays
-                indices = newIndices;
-                values = newValues;
-                pos = newPos;
-                    
-                 // update the position of the pos in the values array
-                indices[pos] = index;
-            }
-            values[pos] = value;
-        }
-        // The value is zero but previously held a spot in the matrix, so
-        // remove its position and shift everything over
-        else if (value == 0 && pos >= 0) {
-            int newLength = indices.length - 1;
-            int[] newIndices = new int[newLength];
-            int[] newValues = new int[newLength];
-            for (int i = 0, j = 0; i < indices.length; ++i) {
-                if (i != pos) {
-                    newIndices[j] = indices[i];
-                    newValues[j] = values[i];            
-                    j++;
-                }
-            }
-
-            // swap the arrays
-            indices = newIndices;
-            values = newValues;
+            if (pos < 0)
+                insert(0 - (pos + 1), index, value);
+            else
+                values[pos] = value;
         }
+        // The value is zero but previously held a spot in the array, so remove
+        // its position and shift everything over
+        else if (pos >= 0)
+            remove(pos);
 
+        // note that in the even of a set with value 0 where the pos was
+        // not present, this method is a no-op
     }
 
     /**
      * {@inheritDoc}
      */
     @SuppressWarnings("unchecked")
-    public <E> E[] toArray(E[] array) {
+    public <E> E[] toArray(E[] array) {    
         for (int i = 0, j = 0; i < array.length; ++i) {
             int index = -1;
-            if (j < indices.length && (index = indices[j]) == i) {
+            if (j < size && (index = indices[j]) == i) {
                 array[i] = (E)(Integer.valueOf(values[j]));
                 j++;
             }
-            else
-                array[i] = (E)(Integer.valueOf(0));
+        else 
+            array[i] = (E)(Integer.valueOf(0));
         }
-
         return array;
     }
 
@@ -381,17 +435,168 @@ public class SparseIntArray
     public int[] toPrimitiveArray(int[] array) {
         for (int i = 0, j = 0; i < array.length; ++i) {
             int index = -1;
-            if (j < indices.length && (index = indices[j]) == i) {
+            if (j < size && (index = indices[j]) == i) {
                 array[i] = values[j];
                 j++;
-            }
-            else
+            } else
                 array[i] = 0;
         }
-
         return array;
     }
 
+    /**
+     * Releases any space reserved for non-zero values beyond the current
+     * cardinality of this array.
+     */
+    public void trimToSize() {
+        if (size < indices.length) {
+            indices = Arrays.copyOf(indices, size);
+            values = Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Writes only the non-zero values of the arrays, which keeps the serialized
+     * form identical to that of earlier versions without modifying this array.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("maxLength", maxLength);
+        fields.put("indices", Arrays.copyOf(indices, size));
+        fields.put("values", Arrays.copyOf(values, size));
+        out.writeFields();
+    }
+
+    /**
+     * Restores the number of non-zero values from the length of the arrays.
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        size = indices.length;
+    }
+
+    /**
+     * A builder for sparse arrays whose values are added in an arbitrary
+     * order.  Each call to {@link #add(int,int) add} appends the index and
+     * value in constant amortized time, and {@link #build()} sorts the values
+     * by index and sums the values of duplicate indices in {@code O(n log n)}
+     * time overall.  This avoids the cost of shifting values that {@link
+     * SparseIntArray#addPrimitive(int,int) addPrimitive} incurs when
+     * indices are not added in increasing order.<p>
+     *
+     * This class is not thread-safe.
+     */
+    public static class Builder {
+
+        /**
+         * The length of the arrays that are built
+         */
+        private final int length;
+
+        /**
+         * The indices in the order they were added
+         */
+        private int[] indices;
+
+        /**
+         * The values in the order they were added
+         */
+        private int[] values;
+
+        /**
+         * The number of values that have been added
+         */
+        private int size;
+
+        /**
+         * Creates a builder for arrays of the specified length.
+         */
+        public Builder(int length) {
+            this(length, 16);
+        }
+
+        /**
+         * Creates a builder for arrays of the specified length that reserves
+         * space for the specified number of values.
+         */
+        public Builder(int length, int expectedValues) {
+            if (length < 0)
+                throw new IllegalArgumentException(
+                    "length must be non-negative");
+            this.length = length;
+            int capacity = Math.max(expectedValues, MIN_CAPACITY);
+            indices = new int[capacity];
+            values = new int[capacity];
+            size = 0;
+        }
+
+        /**
+         * Adds the value to the index.  Values added to the same index are
+         * summed when the array is built.
+         *
+         * @return this builder
+         */
+        public Builder add(int index, int value) {
+            if (index < 0 || index >= length) 
+                throw new ArrayIndexOutOfBoundsException(
+                    "invalid index: " + index);
+            if (size == indices.length) {
+                int newCapacity = indices.length + (indices.length >> 1);
+                indices = Arrays.copyOf(indices, newCapacity);
+                values = Arrays.copyOf(values, newCapacity);
+            }
+            indices[size] = index;
+            values[size++] = value;
+            return this;
+        }
+
+        /**
+         * Returns a new array that contains the sum of the values added for
+         * each index.  Indices whose values sum to zero are not included.  The
+         * builder retains its values, so further values may be added and
+         * another array built.
+         */
+        public SparseIntArray build() {
+            long[] order = SparseDoubleArray.sortedOrder(indices, size);
+            int[] newIndices = new int[size];
+            int[] newValues = new int[size];
+            int n = 0;
+            for (int i = 0; i < size; ) {
+                int index = (int)(order[i] >>> 32);
+                int sum = 0;
+                // Sum all of the values added for the index
+                do {
+                    sum += values[(int)order[i++]];
+                } while (i < size && (int)(order[i] >>> 32) == index);
+                if (sum != 0) {
+                    newIndices[n] = index;
+                    newValues[n++] = sum;
+                }
+            }
+            if (n < size) {
+                newIndices = Arrays.copyOf(newIndices, n);
+                newValues = Arrays.copyOf(newValues, n);
+            }
+            return new SparseIntArray(newIndices, newValues, n, length);
+        }
+
+        /**
+         * Removes all of the values that have been added.
+         */
+        public void clear() {
+            size = 0;
+        }
+
+        /**
+         * Returns the number of values that have been added, including those
+         * added to the same index.
+         */
+        public int size() {
+            return size;
+        }
+    }
+
     /**
      * A private iterator over the non-zero values of the array.  Note that this
      * iterator is <i>not</i> thread safe.
@@ -408,11 +613,11 @@ public class SparseIntArray
         }
 
         public boolean hasNext() {
-            return SparseIntArray.this.indices.length > curIndex;
+            return SparseIntArray.this.size > curIndex;
         }
 
         public IntegerEntry next() {
-            if (SparseIntArray.this.indices.length <= curIndex)
+            if (SparseIntArray.this.size <= curIndex)
                 throw new NoSuchElementException();
             // Modify the state of the entry rather than create a new one to cut
             // down on object allocation for faster iterating
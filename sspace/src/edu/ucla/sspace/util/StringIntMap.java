@@ -0,0 +1,415 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.util;
+
+import java.io.Serializable;
+
+import java.util.AbstractSet;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+
+/**
+ * A space-optimized map from {@code String} keys to primitive {@code int}
+ * values.  Mappings are stored in parallel arrays using open addressing with
+ * linear probing, so no {@code Integer} or entry objects are created for any
+ * operation.  This makes the class well suited for the per-token hot path of
+ * document processing, such as counting term occurrences or looking up the
+ * index of a term in a co-occurrence matrix.<p>
+ *
+ * Since {@code int} values cannot be {@code null}, the methods that would
+ * otherwise return {@code null} for a missing key instead return the map's
+ * <i>no entry value</i>, which is {@code -1} unless otherwise specified at
+ * construction time.<p>
+ *
+ * This map does not allow {@code null} keys.  The order in which keys are
+ * iterated is unspecified.<p>
+ *
+ * This class is not thread-safe.
+ *
+ * @see TokenDictionary
+ */
+public class StringIntMap implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default number of mappings for which space is reserved
+     */
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The keys of this map, where a {@code null} slot is empty
+     */
+    private String[] keys;
+
+    /**
+     * The value for the key at the same slot
+     */
+    private int[] values;
+
+    /**
+     * The cached hash code for the key at the same slot, which avoids
+     * recomputing hashes when resizing and avoids most calls to {@code
+     * String.equals} when probing.
+     */
+    private int[] hashes;
+
+    /**
+     * The number of mappings in this map
+     */
+    private int size;
+
+    /**
+     * The value returned for keys that are not present.
+     */
+    private final int noEntryValue;
+
+    /**
+     * The number of structural modifications made to this map, which is used
+     * to detect concurrent modification during iteration.
+     */
+    private transient int modCount;
+
+    /**
+     * Creates an empty map whose no entry value is {@code -1}.
+     */
+    public StringIntMap() {
+        this(DEFAULT_INITIAL_CAPACITY, -1);
+    }
+
+    /**
+     * Creates an empty map with space for the specified number of mappings
+     * whose no entry value is {@code -1}.
+     */
+    public StringIntMap(int initialCapacity) {
+        this(initialCapacity, -1);
+    }
+
+    /**
+     * Creates an empty map with space for the specified number of mappings that
+     * returns {@code noEntryValue} for all keys that are not present.
+     */
+    public StringIntMap(int initialCapacity, int noEntryValue) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException(
+                "Capacity must be non-negative: " + initialCapacity);
+        this.noEntryValue = noEntryValue;
+        // Keep the load factor at or below .5 to ensure short probe sequences
+        int slots = tableSizeFor(initialCapacity * 2);
+        keys = new String[slots];
+        values = new int[slots];
+        hashes = new int[slots];
+        size = 0;
+    }
+
+    /**
+     * Returns the smallest power of two that is at least {@code n}.
+     */
+    static int tableSizeFor(int n) {
+        int slots = 2;
+        while (slots < n)
+            slots <<= 1;
+        return slots;
+    }
+
+    /**
+     * Spreads the bits of the key's hash code so that keys with similar hash
+     * codes are distributed evenly across the table.
+     */
+    static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot that contains the key or the empty slot at which it
+     * would be inserted.
+     */
+    private int slotOf(String key, int hash) {
+        int mask = keys.length - 1;
+        int slot = hash & mask;
+        String k;
+        while ((k = keys[slot]) != null) {
+            if (hashes[slot] == hash && k.equals(key))
+                return slot;
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        if (size == 0)
+            return;
+        for (int i = 0; i < keys.length; ++i)
+            keys[i] = null;
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the key.
+     */
+    public boolean containsKey(String key) {
+        return keys[slotOf(key, hash(key))] != null;
+    }
+
+    /**
+     * Returns the value to which the key is mapped, or the no entry value if
+     * this map contains no mapping for the key.
+     */
+    public int get(String key) {
+        int slot = slotOf(key, hash(key));
+        return (keys[slot] == null) ? noEntryValue : values[slot];
+    }
+
+    /**
+     * Returns the value returned by this map for keys that are not present.
+     */
+    public int getNoEntryValue() {
+        return noEntryValue;
+    }
+
+    /**
+     * Adds {@code delta} to the value mapped to the key, creating a mapping
+     * with the value {@code delta} if the key is not present, and returns the
+     * resulting value.
+     */
+    public int increment(String key, int delta) {
+        int hash = hash(key);
+        int slot = slotOf(key, hash);
+        if (keys[slot] != null)
+            return values[slot] += delta;
+        insert(slot, key, hash, delta);
+        return delta;
+    }
+
+    /**
+     * Returns {@code true} if this map contains no mappings.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns a view of the keys in this map.  The set supports element removal
+     * but not addition.
+     */
+    public Set<String> keySet() {
+        return new KeySet();
+    }
+
+    /**
+     * Maps the key to the value, returning the previously mapped value or the
+     * no entry value if the key was not present.
+     */
+    public int put(String key, int value) {
+        if (key == null)
+            throw new NullPointerException("keys cannot be null");
+        int hash = hash(key);
+        int slot = slotOf(key, hash);
+        if (keys[slot] != null) {
+            int old = values[slot];
+            values[slot] = value;
+            return old;
+        }
+        insert(slot, key, hash, value);
+        return noEntryValue;
+    }
+
+    /**
+     * Inserts a new mapping at the empty slot, resizing the table if needed.
+     */
+    private void insert(int slot, String key, int hash, int value) {
+        keys[slot] = key;
+        values[slot] = value;
+        hashes[slot] = hash;
+        modCount++;
+        if (++size * 2 > keys.length)
+            rehash(keys.length << 1);
+    }
+
+    /**
+     * Moves all of the mappings into a table with the specified number of
+     * slots.
+     */
+    private void rehash(int newSlots) {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        int[] oldHashes = hashes;
+        keys = new String[newSlots];
+        values = new int[newSlots];
+        hashes = new int[newSlots];
+        int mask = newSlots - 1;
+        for (int i = 0; i < oldKeys.length; ++i) {
+            if (oldKeys[i] == null)
+                continue;
+            int slot = oldHashes[i] & mask;
+            while (keys[slot] != null)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+            hashes[slot] = oldHashes[i];
+        }
+    }
+
+    /**
+     * Removes the mapping for the key, returning the previously mapped value or
+     * the no entry value if the key was not present.
+     */
+    public int remove(String key) {
+        int slot = slotOf(key, hash(key));
+        if (keys[slot] == null)
+            return noEntryValue;
+        int old = values[slot];
+        removeSlot(slot);
+        return old;
+    }
+
+    /**
+     * Removes the mapping in the slot and shifts any following mappings in the
+     * same probe sequence backwards so that no tombstones are needed.
+     */
+    private void removeSlot(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (keys[next] != null) {
+            int ideal = hashes[next] & mask;
+            // Move the mapping into the hole if the hole lies on the cyclic
+            // path from its ideal slot to its current slot
+            if (((next - ideal) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hashes[hole] = hashes[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[hole] = null;
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Returns the number of mappings in this map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a string representation of the mappings in this map.
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder(size * 8);
+        sb.append('{');
+        boolean first = true;
+        for (int i = 0; i < keys.length; ++i) {
+            if (keys[i] == null)
+                continue;
+            if (!first)
+                sb.append(", ");
+            sb.append(keys[i]).append('=').append(values[i]);
+            first = false;
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * A view of the keys in the map.
+     */
+    private class KeySet extends AbstractSet<String> {
+
+        public void clear() {
+            StringIntMap.this.clear();
+        }
+
+        public boolean contains(Object o) {
+            return (o instanceof String) && containsKey((String)o);
+        }
+
+        public Iterator<String> iterator() {
+            return new KeyIterator();
+        }
+
+        public boolean remove(Object o) {
+            if (!(o instanceof String))
+                return false;
+            int oldSize = size;
+            StringIntMap.this.remove((String)o);
+            return oldSize != size;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * An iterator over the keys in the map.  Since removing a mapping may
+     * shift a later mapping backward past the iterator's position, removal
+     * through the iterator is not supported.
+     */
+    private class KeyIterator implements Iterator<String> {
+
+        private int nextSlot;
+
+        private final int expectedModCount;
+
+        public KeyIterator() {
+            expectedModCount = modCount;
+            nextSlot = -1;
+            advance();
+        }
+
+        private void advance() {
+            nextSlot++;
+            while (nextSlot < keys.length && keys[nextSlot] == null)
+                nextSlot++;
+        }
+
+        public boolean hasNext() {
+            return nextSlot < keys.length;
+        }
+
+        public String next() {
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+            if (nextSlot >= keys.length)
+                throw new NoSuchElementException();
+            String key = keys[nextSlot];
+            advance();
+            return key;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException(
+                "Removal through the iterator is not supported");
+        }
+    }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.util;
+
+import edu.ucla.sspace.basis.BasisMapping;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+
+/**
+ * A thread-safe dictionary that assigns each distinct token a dense, stable
+ * {@code int} index and keeps a single canonical instance of each token's
+ * {@code String}.  Indices are assigned in the order tokens are first seen,
+ * starting at {@code 0}, which makes the dictionary suitable for mapping terms
+ * to the rows or columns of a matrix.  Since this class implements {@link
+ * BasisMapping}, it may be used by any {@link
+ * edu.ucla.sspace.common.SemanticSpace SemanticSpace} that accepts a {@code
+ * BasisMapping<String,String>}.<p>
+ *
+ * Tokens are stored in an open-addressing table of primitive indices, rather
+ * than a {@code Map<String,Integer>}, so looking up a token neither boxes its
+ * index nor follows a pointer to an entry object.  Lookups of existing tokens
+ * acquire no locks; only the assignment of a new index is synchronized.  The
+ * memory used for each token is roughly one reference and one {@code int} for
+ * its table slot, plus one reference for its reverse mapping.<p>
+ *
+ * The {@link #keySet()} method returns the tokens in the order of their
+ * indices.  Tokens cannot be removed once they have been added.<p>
+ *
+ * This class is thread-safe.
+ *
+ * @see StringIntMap
+ */
+public class TokenDictionary
+        implements BasisMapping<String,String>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The default number of tokens for which space is reserved.
+     */
+    private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+    /**
+     * The current table of token to index mappings.  A new table is published
+     * each time the dictionary grows.
+     */
+    private transient volatile Table table;
+
+    /**
+     * The tokens in the order that their indices were assigned.
+     */
+    private transient volatile String[] indexToToken;
+
+    /**
+     * The number of tokens in this dictionary.
+     */
+    private transient volatile int size;
+
+    /**
+     * Whether new tokens are assigned indices by {@link #getDimension(String)}.
+     */
+    private volatile boolean readOnly;
+
+    /**
+     * Creates an empty dictionary.
+     */
+    public TokenDictionary() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty dictionary with space reserved for the specified number
+     * of tokens.
+     */
+    public TokenDictionary(int initialCapacity) {
+        init(initialCapacity);
+    }
+
+    /**
+     * Initializes the empty state of this dictionary.
+     */
+    private void init(int initialCapacity) {
+        table = new Table(StringIntMap.tableSizeFor(
+            Math.max(initialCapacity, 1) * 2));
+        indexToToken = new String[Math.max(initialCapacity, 1)];
+        size = 0;
+    }
+
+    /**
+     * Returns the index of the token, assigning it the next available index if
+     * the token has not been seen before.  If this dictionary is read-only,
+     * {@code -1} is returned for unseen tokens.
+     */
+    public int getDimension(String token) {
+        int index = indexOf(token);
+        if (index >= 0 || readOnly)
+            return index;
+        return add(token);
+    }
+
+    /**
+     * Returns the token with the specified index.
+     *
+     * @throws IllegalArgumentException if no token has the index
+     */
+    public String getDimensionDescription(int dimension) {
+        if (dimension < 0 || dimension >= size)
+            throw new IllegalArgumentException(
+                "invalid dimension: " + dimension);
+        return indexToToken[dimension];
+    }
+
+    /**
+     * Returns the token with the specified index.
+     *
+     * @throws IllegalArgumentException if no token has the index
+     */
+    public String getToken(int index) {
+        return getDimensionDescription(index);
+    }
+
+    /**
+     * Returns the index of the token or {@code -1} if the token is not in this
+     * dictionary.  Unlike {@link #getDimension(String)}, this method never
+     * adds the token.
+     */
+    public int indexOf(String token) {
+        Table t = table;
+        int hash = StringIntMap.hash(token);
+        int mask = t.indices.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            String k = t.tokens.get(slot);
+            if (k == null)
+                break;
+            if (t.hashes[slot] == hash && k.equals(token))
+                return t.indices[slot];
+        }
+        // The token may have been added to a newer table since this thread
+        // read the table reference, so recheck while holding the lock
+        if (t != table) {
+            synchronized(this) {
+                return find(token, hash);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the canonical instance of the token, adding the token to this
+     * dictionary if it has not been seen before.  Each distinct token is
+     * represented by a single {@code String} instance, which allows duplicate
+     * {@code String}s created during tokenization to be garbage collected.  If
+     * this dictionary is read-only and the token is not present, the token
+     * itself is returned.
+     */
+    public String intern(String token) {
+        int index = getDimension(token);
+        return (index < 0) ? token : indexToToken[index];
+    }
+
+    /**
+     * Returns {@code true} if the dictionary is read-only.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Returns the tokens in this dictionary in the order of their indices.  The
+     * returned set is an unmodifiable view that reflects tokens added after it
+     * was created.
+     */
+    public Set<String> keySet() {
+        return new TokenSet();
+    }
+
+    /**
+     * Returns the number of tokens in this dictionary.
+     */
+    public int numDimensions() {
+        return size;
+    }
+
+    /**
+     * Sets whether unseen tokens are assigned an index by {@link
+     * #getDimension(String)}.
+     */
+    public void setReadOnly(boolean readOnly) {
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Returns the number of tokens in this dictionary.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Assigns the token the next available index, unless another thread added
+     * the token while the current thread was waiting for the lock.
+     */
+    private synchronized int add(String token) {
+        int hash = StringIntMap.hash(token);
+        Table t = table;
+        int mask = t.indices.length - 1;
+        int slot = hash & mask;
+        String k;
+        while ((k = t.tokens.get(slot)) != null) {
+            if (t.hashes[slot] == hash && k.equals(token))
+                return t.indices[slot];
+            slot = (slot + 1) & mask;
+        }
+
+        int index = size;
+        String[] tokens = indexToToken;
+        if (index == tokens.length) {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+            indexToToken = tokens;
+        }
+        tokens[index] = token;
+
+        // Write the index and hash before publishing the token with a volatile
+        // write so that any thread that sees the token also sees its index
+        t.indices[slot] = index;
+        t.hashes[slot] = hash;
+        t.tokens.set(slot, token);
+        size = index + 1;
+
+        // Keep the load factor at or below .5
+        if (size * 2 > t.indices.length)
+            table = t.grow();
+        return index;
+    }
+
+    /**
+     * Returns the index of the token in the current table or {@code -1} if it
+     * is not present.  The caller must hold this dictionary's lock.
+     */
+    private int find(String token, int hash) {
+        Table t = table;
+        int mask = t.indices.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            String k = t.tokens.get(slot);
+            if (k == null)
+                return -1;
+            if (t.hashes[slot] == hash && k.equals(token))
+                return t.indices[slot];
+        }
+    }
+
+    /**
+     * Writes the tokens in the order of their indices.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        synchronized(this) {
+            int n = size;
+            out.writeInt(n);
+            for (int i = 0; i < n; ++i)
+                out.writeUTF(indexToToken[i]);
+        }
+    }
+
+    /**
+     * Rebuilds the dictionary from the tokens in the order of their indices.
+     */
+    private void readObject(ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int n = in.readInt();
+        init(n);
+        for (int i = 0; i < n; ++i)
+            add(in.readUTF());
+    }
+
+    /**
+     * An open-addressing table whose slots contain a token, its hash and its
+     * index.  A slot is considered occupied once its token is non-null.
+     */
+    private static class Table {
+
+        final AtomicReferenceArray<String> tokens;
+
+        final int[] indices;
+
+        final int[] hashes;
+
+        public Table(int slots) {
+            tokens = new AtomicReferenceArray<String>(slots);
+            indices = new int[slots];
+            hashes = new int[slots];
+        }
+
+        /**
+         * Returns a new table with twice as many slots that contains all of
+         * the mappings in this table.
+         */
+        public Table grow() {
+            Table t = new Table(indices.length * 2);
+            int mask = t.indices.length - 1;
+            for (int i = 0; i < indices.length; ++i) {
+                String token = tokens.get(i);
+                if (token == null)
+                    continue;
+                int slot = hashes[i] & mask;
+                while (t.tokens.get(slot) != null)
+                    slot = (slot + 1) & mask;
+                t.indices[slot] = indices[i];
+                t.hashes[slot] = hashes[i];
+                t.tokens.set(slot, token);
+            }
+            return t;
+        }
+    }
+
+    /**
+     * An unmodifiable view of the tokens in the order of their indices.
+     */
+    private class TokenSet extends AbstractSet<String> {
+
+        public boolean contains(Object o) {
+            return (o instanceof String) && indexOf((String)o) >= 0;
+        }
+
+        public Iterator<String> iterator() {
+            return new TokenIterator();
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * An iterator over the tokens that were present when the iterator was
+     * created, in the order of their indices.
+     */
+    private class TokenIterator implements Iterator<String> {
+
+        private final String[] tokens;
+
+        private final int end;
+
+        private int next;
+
+        public TokenIterator() {
+            // Read the size before the array to ensure that the array contains
+            // every token whose index is less than the size
+            end = size;
+            tokens = indexToToken;
+            next = 0;
+        }
+
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        public String next() {
+            if (next >= end)
+                throw new NoSuchElementException();
+            return tokens[next++];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException(
+                "Tokens cannot be removed from a TokenDictionary");
+        }
+    }
+}
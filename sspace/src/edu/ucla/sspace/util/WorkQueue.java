@@ -68,12 +68,25 @@ import java.util.concurrent.TimeUnit;
  * same identifier, which could result in either thread returning prematurely
  * before its tasks have finished.  However, a <i>shared</i> group identifier
  * can allow multiple threads to add tasks for a common goal, with each being
- * able await until all the tasks are finished.
+ * able await until all the tasks are finished.<p>
+ *
+ * Classes that do not need a queue of their own should use the queue returned
+ * by {@link #getWorkQueue()}, which is shared by the whole program and whose
+ * threads are not started until it is first needed.  A task that is running
+ * on a queue may itself run or wait on tasks of the same queue: while it
+ * waits, its thread executes the queued tasks, so nested use cannot leave
+ * every thread of the queue waiting.
  *
  * @author David Jurgens
  */
 public class WorkQueue {
 
+    /**
+     * The queue shared by all classes that use {@link #getWorkQueue()}, which
+     * is created when it is first requested.
+     */
+    private static WorkQueue sharedQueue;
+
     /**
      * The list of all threads drawing work from the queue.
      */
@@ -112,6 +125,16 @@ public class WorkQueue {
         }
     }
 
+    /**
+     * Returns the work queue shared by the whole program, creating it with as
+     * many threads as processors on the system the first time it is requested.
+     */
+    public static synchronized WorkQueue getWorkQueue() {
+        if (sharedQueue == null)
+            sharedQueue = new WorkQueue();
+        return sharedQueue;
+    }
+
     /**
      * Adds the provided task to the work queue on behalf of the task group
      * identifier.  Note that unlike the {@link #run(Collection) run} method,
@@ -146,8 +169,7 @@ public class WorkQueue {
             throw new IllegalArgumentException(
                 "Unknown task group: " + taskGroupId);
         try {
-            while(!latch.await(5, TimeUnit.SECONDS))
-                ;
+            awaitLatch(latch);
             //System.out.println("cur count: " + latch.getCount());
             // Once finished, remove the key so it can be associated with a new
             // task
@@ -173,7 +195,7 @@ public class WorkQueue {
             throw new IllegalArgumentException(
                 "Unknown task group: " + taskGroupId);
         try {
-            if (latch.await(timeout, unit)) {
+            if (awaitLatch(latch, unit.toNanos(timeout))) {
                 // Once finished, remove the key so it can be associated with a
                 // new task
                 taskKeyToLatch.remove(taskGroupId);
@@ -247,13 +269,54 @@ public class WorkQueue {
         }
         try {
             // Wait until all the tasks have finished
-            latch.await();
+            awaitLatch(latch);
         }
         catch (InterruptedException ie) {
             throw new IllegalStateException("Not all tasks finished", ie);
         }
     }
 
+    /**
+     * Waits until the latch reaches zero.  If the calling thread is one of
+     * this queue's threads, it executes queued tasks while waiting, since the
+     * tasks it waits on might otherwise never be run.
+     */
+    private void awaitLatch(CountDownLatch latch) throws InterruptedException {
+        if (!threads.contains(Thread.currentThread()))
+            latch.await();
+        else
+            awaitLatch(latch, Long.MAX_VALUE);
+    }
+
+    /**
+     * Waits until the latch reaches zero or the timeout, in nanoseconds, has
+     * elapsed, executing queued tasks while waiting if the calling thread is
+     * one of this queue's threads.  A queued task that is started before the
+     * timeout is run to completion, even if it finishes after the timeout.
+     *
+     * @return {@code true} if the latch reached zero
+     */
+    private boolean awaitLatch(CountDownLatch latch, long timeoutNanos)
+            throws InterruptedException {
+        if (!threads.contains(Thread.currentThread()))
+            return latch.await(timeoutNanos, TimeUnit.NANOSECONDS);
+        long remaining = timeoutNanos;
+        while (latch.getCount() > 0) {
+            if (remaining <= 0)
+                return false;
+            long start = System.nanoTime();
+            Runnable r = workQueue.poll();
+            if (r != null)
+                r.run();
+            else
+                latch.await(Math.min(remaining,
+                                     TimeUnit.MILLISECONDS.toNanos(1)),
+                            TimeUnit.NANOSECONDS);
+            remaining -= System.nanoTime() - start;
+        }
+        return true;
+    }
+
     /**
      * Returns the number of threads being used to process the enqueued tasks.
      */
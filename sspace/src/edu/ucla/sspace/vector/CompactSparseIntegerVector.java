@@ -69,13 +69,19 @@ public class CompactSparseIntegerVector
      * @param v the intial values for this vector to have
      */
     public CompactSparseIntegerVector(IntegerVector v) {
-        intArray = new SparseIntArray(v.length());
         if (v instanceof SparseVector) {
             SparseVector sv = (SparseVector)v;
-            for (int i : sv.getNonZeroIndices())
-                intArray.set(i, v.get(i));
+            int[] nz = sv.getNonZeroIndices();
+            // Use a builder since not all sparse vectors return their non-zero
+            // indices in sorted order
+            SparseIntArray.Builder builder =
+                new SparseIntArray.Builder(v.length(), nz.length);
+            for (int i : nz)
+                builder.add(i, v.get(i));
+            intArray = builder.build();
         }
         else {
+            intArray = new SparseIntArray(v.length());
             for (int i = 0; i < v.length(); ++i)
                 intArray.set(i, v.get(i));
         }
@@ -93,12 +93,14 @@ public class CompactSparseVector
      * @param array The double array to produce a sparse vector from.
      */
     public CompactSparseVector(SparseDoubleVector v) {
-        int length = v.length();
         int[] nz = v.getNonZeroIndices();
-        double[] values = new double[nz.length];
-        for (int i = 0; i < nz.length; ++i)
-            values[i] = v.get(nz[i]);
-        vector = new SparseDoubleArray(nz, values, length);
+        // Use a builder since not all sparse vectors return their non-zero
+        // indices in sorted order
+        SparseDoubleArray.Builder builder =
+            new SparseDoubleArray.Builder(v.length(), nz.length);
+        for (int i : nz)
+            builder.add(i, v.get(i));
+        vector = builder.build();
         magnitude = -1;
     }
 
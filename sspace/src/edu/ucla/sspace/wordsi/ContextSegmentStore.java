@@ -0,0 +1,455 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.wordsi;
+
+import edu.ucla.sspace.matrix.Matrices;
+import edu.ucla.sspace.matrix.SparseMatrix;
+
+import edu.ucla.sspace.vector.CompactSparseVector;
+import edu.ucla.sspace.vector.SparseDoubleVector;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.util.logging.Logger;
+
+
+/**
+ * A store of the context vectors observed for each term, which keeps the
+ * contexts in memory until a memory budget is exceeded and then appends them
+ * to a segment file for the term.  This allows a {@link WaitingWordsi} to
+ * collect more contexts than fit in the heap, since only the contexts of the
+ * terms currently being clustered need to be in memory at once.<p>
+ *
+ * Contexts are stored in a compact sparse binary encoding: the number of
+ * non-zero values, followed by each non-zero index, encoded as a variable
+ * length difference from the previous index, and its value as an eight-byte
+ * {@code double}.  The encoded contexts of each term are buffered in memory
+ * until the total size of all buffers exceeds the memory budget, at which
+ * point every buffer is appended to its term's segment file.  The contexts of
+ * a term are returned in the order in which they were added.<p>
+ *
+ * This class is thread-safe.
+ */
+public class ContextSegmentStore {
+
+    /**
+     * A logger for recording when contexts are written to disk.
+     */
+    private static final Logger LOG = Logger.getLogger(
+            ContextSegmentStore.class.getName());
+
+    /**
+     * The size at which a term's buffer is replaced with a smaller one after
+     * being written to disk.
+     */
+    private static final int MAX_RETAINED_BUFFER = 1 << 12;
+
+    /**
+     * The directory containing the segment files.
+     */
+    private final File directory;
+
+    /**
+     * Whether the directory was created by this store and should be deleted
+     * when it is closed.
+     */
+    private final boolean ownsDirectory;
+
+    /**
+     * The maximum number of bytes of encoded contexts held in memory.
+     */
+    private final long memoryBudget;
+
+    /**
+     * The number of bytes of encoded contexts currently held in memory.
+     */
+    private final AtomicLong bufferedBytes;
+
+    /**
+     * The segment for each term.
+     */
+    private final ConcurrentMap<String, Segment> segments;
+
+    /**
+     * The number of segments that have been created, which is used to name
+     * the segment files.
+     */
+    private final AtomicInteger segmentCounter;
+
+    /**
+     * Creates a store that writes its segments to a new temporary directory,
+     * which is deleted when the store is closed.
+     *
+     * @param memoryBudget the maximum number of bytes of encoded contexts to
+     *        hold in memory
+     */
+    public ContextSegmentStore(long memoryBudget) {
+        this(memoryBudget, createTempDirectory(), true);
+    }
+
+    /**
+     * Creates a store that writes its segments to the provided directory.
+     *
+     * @param memoryBudget the maximum number of bytes of encoded contexts to
+     *        hold in memory
+     * @param directory an existing directory in which segment files will be
+     *        created
+     */
+    public ContextSegmentStore(long memoryBudget, File directory) {
+        this(memoryBudget, directory, false);
+    }
+
+    private ContextSegmentStore(long memoryBudget, File directory, 
+                                boolean ownsDirectory) {
+        if (memoryBudget < 0)
+            throw new IllegalArgumentException(
+                "The memory budget must be non-negative: " + memoryBudget);
+        if (!directory.isDirectory())
+            throw new IllegalArgumentException(
+                directory + " is not a directory");
+        this.memoryBudget = memoryBudget;
+        this.directory = directory;
+        this.ownsDirectory = ownsDirectory;
+        bufferedBytes = new AtomicLong();
+        segments = new ConcurrentHashMap<String, Segment>();
+        segmentCounter = new AtomicInteger();
+    }
+
+    /**
+     * Creates a new, empty temporary directory.
+     */
+    private static File createTempDirectory() {
+        try {
+            File dir = File.createTempFile("wordsi-contexts", "");
+            if (!dir.delete() || !dir.mkdir())
+                throw new IOException("Unable to create directory " + dir);
+            return dir;
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+    }
+
+    /**
+     * Adds the context to those stored for the term and returns its index
+     * among the term's contexts.  A {@code null} context is stored as an empty
+     * vector.
+     */
+    public int add(String term, SparseDoubleVector context) {
+        Segment segment = segments.get(term);
+        if (segment == null) {
+            Segment s = new Segment(new File(directory, 
+                "term-" + segmentCounter.getAndIncrement() + ".seg"));
+            segment = segments.putIfAbsent(term, s);
+            if (segment == null)
+                segment = s;
+        }
+
+        int contextId;
+        int encodedBytes;
+        synchronized (segment) {
+            contextId = segment.numContexts++;
+            encodedBytes = segment.append(context);
+        }
+        if (bufferedBytes.addAndGet(encodedBytes) > memoryBudget)
+            spill();
+        return contextId;
+    }
+
+    /**
+     * Deletes all of the segment files, and the directory if it was created by
+     * this store.
+     */
+    public void close() {
+        for (String term : new ArrayList<String>(segments.keySet()))
+            remove(term);
+        if (ownsDirectory)
+            directory.delete();
+    }
+
+    /**
+     * Returns the contexts of the term as the rows of a matrix with the
+     * specified number of columns, in the order in which they were added.  Any
+     * non-zero values at indices greater than or equal to {@code numColumns}
+     * are ignored.  Returns {@code null} if no contexts have been added for the
+     * term.
+     */
+    public SparseMatrix getContexts(String term, int numColumns) {
+        Segment segment = segments.get(term);
+        if (segment == null)
+            return null;
+        InputStream in = null;
+        int numContexts = 0;
+        try {
+            synchronized (segment) {
+                numContexts = segment.numContexts;
+                InputStream buffered = new ByteArrayInputStream(
+                    Arrays.copyOf(segment.buffer, segment.size));
+                in = (segment.file.exists())
+                    ? new SequenceInputStream(
+                          new BufferedInputStream(
+                              new FileInputStream(segment.file)), buffered)
+                    : buffered;
+            }
+            List<SparseDoubleVector> rows = 
+                new ArrayList<SparseDoubleVector>(numContexts);
+            for (int i = 0; i < numContexts; ++i)
+                rows.add(readContext(in, numColumns));
+            return Matrices.asSparseMatrix(rows, numColumns);
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ioe) {
+                    throw new IOError(ioe);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of encoded contexts held in memory.
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    /**
+     * Returns the number of contexts added for the term.
+     */
+    public int numContexts(String term) {
+        Segment segment = segments.get(term);
+        if (segment == null)
+            return 0;
+        synchronized (segment) {
+            return segment.numContexts;
+        }
+    }
+
+    /**
+     * Removes the contexts of the term, deleting its segment file.
+     */
+    public void remove(String term) {
+        Segment segment = segments.remove(term);
+        if (segment == null)
+            return;
+        synchronized (segment) {
+            bufferedBytes.addAndGet(-segment.size);
+            segment.size = 0;
+            segment.file.delete();
+        }
+    }
+
+    /**
+     * Returns the terms for which contexts have been added.
+     */
+    public Set<String> terms() {
+        return Collections.unmodifiableSet(segments.keySet());
+    }
+
+    /**
+     * Appends the buffered contexts of every term to its segment file if the
+     * memory budget is exceeded.
+     */
+    private synchronized void spill() {
+        if (bufferedBytes.get() <= memoryBudget)
+            return;
+        LOG.fine("Writing " + bufferedBytes.get() + " bytes of contexts for " 
+                 + segments.size() + " terms to " + directory);
+        try {
+            for (Segment segment : segments.values()) {
+                synchronized (segment) {
+                    bufferedBytes.addAndGet(-segment.flush());
+                }
+            }
+        } catch (IOException ioe) {
+            throw new IOError(ioe);
+        }
+    }
+
+    /**
+     * Reads an encoded context from the stream.
+     */
+    private static SparseDoubleVector readContext(InputStream in, 
+                                                  int numColumns)
+            throws IOException {
+        int nonZero = readVarInt(in);
+        int[] indices = new int[nonZero];
+        double[] values = new double[nonZero];
+        int size = 0;
+        int index = 0;
+        for (int i = 0; i < nonZero; ++i) {
+            index += readVarInt(in);
+            long bits = 0;
+            for (int b = 0; b < 8; ++b)
+                bits = (bits << 8) | readByte(in);
+            if (index < numColumns) {
+                indices[size] = index;
+                values[size++] = Double.longBitsToDouble(bits);
+            }
+        }
+        if (size < nonZero) {
+            indices = Arrays.copyOf(indices, size);
+            values = Arrays.copyOf(values, size);
+        }
+        return new CompactSparseVector(indices, values, numColumns);
+    }
+
+    /**
+     * Reads an unsigned integer that was written seven bits per byte, with the
+     * high bit set on all but the last byte.
+     */
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = readByte(in);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+
+    /**
+     * Reads a single byte, throwing an exception if the stream has ended.
+     */
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0)
+            throw new EOFException("Truncated context segment");
+        return b;
+    }
+
+    /**
+     * The contexts for a single term, consisting of the encoded contexts held
+     * in memory and those previously written to the term's file.
+     */
+    private static class Segment {
+
+        /**
+         * The file to which the contexts are appended.
+         */
+        final File file;
+
+        /**
+         * The encoded contexts that have not yet been written to the file.
+         */
+        byte[] buffer;
+
+        /**
+         * The number of bytes used in {@link #buffer}.
+         */
+        int size;
+
+        /**
+         * The total number of contexts for the term.
+         */
+        int numContexts;
+
+        public Segment(File file) {
+            this.file = file;
+            buffer = new byte[64];
+        }
+
+        /**
+         * Encodes the context into the buffer and returns the number of bytes
+         * used.
+         */
+        public int append(SparseDoubleVector context) {
+            int start = size;
+            if (context == null) {
+                writeVarInt(0);
+                return size - start;
+            }
+            int[] nz = context.getNonZeroIndices();
+            // Not all sparse vectors return their indices in sorted order
+            int[] sorted = Arrays.copyOf(nz, nz.length);
+            Arrays.sort(sorted);
+            writeVarInt(sorted.length);
+            int last = 0;
+            for (int index : sorted) {
+                writeVarInt(index - last);
+                last = index;
+                long bits = Double.doubleToLongBits(context.get(index));
+                ensureCapacity(8);
+                for (int b = 56; b >= 0; b -= 8)
+                    buffer[size++] = (byte)(bits >>> b);
+            }
+            return size - start;
+        }
+
+        /**
+         * Appends the buffer to the file and returns the number of bytes that
+         * were written.
+         */
+        public int flush() throws IOException {
+            int written = size;
+            if (written == 0)
+                return 0;
+            FileOutputStream out = new FileOutputStream(file, true);
+            try {
+                out.write(buffer, 0, written);
+            } finally {
+                out.close();
+            }
+            size = 0;
+            if (buffer.length > MAX_RETAINED_BUFFER)
+                buffer = new byte[64];
+            return written;
+        }
+
+        private void writeVarInt(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[size++] = (byte)((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte)value;
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (size + bytes > buffer.length)
+                buffer = Arrays.copyOf(
+                    buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+    }
+}
@@ -37,6 +37,7 @@ import edu.ucla.sspace.vector.Vectors;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -54,6 +55,10 @@ import java.util.logging.Logger;
 /**
  * A {@link Wordsi} implementation that performs batch clustering.  Each context
  * vector is stored and later clustered using a {@link Clustering} algorithm.
+ * By default, the context vectors are stored in memory.  If a memory budget is
+ * specified, the context vectors are instead stored in a {@link
+ * ContextSegmentStore}, which writes them to disk once the budget is exceeded
+ * and reads back the contexts of each term only when the term is clustered.
  *
  * @author Keith Stevens
  */
@@ -77,6 +82,13 @@ public class WaitingWordsi extends BaseWordsi {
      */
     private final Map<String, List<SparseDoubleVector>> dataVectors;
 
+    /**
+     * The store of context vectors that is used instead of {@link
+     * #dataVectors} if a memory budget was specified, or {@code null} if the
+     * contexts are kept in memory.
+     */
+    private final ContextSegmentStore contextStore;
+
     /**
      * The final word space, which maps from strings to the semantic
      * representation.
@@ -139,11 +151,40 @@ public class WaitingWordsi extends BaseWordsi {
                          Clustering clustering,
                          AssignmentReporter reporter,
                          int numClusters) {
+        this(acceptedWords, extractor, clustering, reporter, numClusters, null);
+    }
+
+    /**
+     * Creates a new {@link WaitingWordsi} that stores its context vectors in
+     * the provided {@link ContextSegmentStore}, which allows the contexts to
+     * exceed the available memory.  The store is closed once the space has
+     * been processed.
+     *
+     * @param acceptedWords The set of words that {@link Wordsi} should
+     *        represent.  This may be {@code null} or empty}.
+     * @param extractor The {@link ContextExtractor} used to parse documents.
+     * @param clustering The {@link Clustering} algorithm to use on each data
+     *        set.
+     * @param reporter The {@link AssignmentReporter} responsible for generating
+     *        a report that details the cluster assignments.  This may be {@link
+     *        null}.  If {@code trackSecondaryKeys} is false, this is not used.
+     * @param numClusters Specifies the number of clusters to generate for each
+     *        term.
+     * @param contextStore The store for context vectors, or {@code null} if
+     *        the context vectors should be kept in memory.
+     */
+    public WaitingWordsi(Set<String> acceptedWords,
+                         ContextExtractor extractor,
+                         Clustering clustering,
+                         AssignmentReporter reporter,
+                         int numClusters,
+                         ContextSegmentStore contextStore) {
         super(acceptedWords, extractor);
 
         this.clustering = clustering;
         this.reporter = reporter;
         this.numClusters = numClusters;
+        this.contextStore = contextStore;
 
         dataVectors = new HashMap<String, List<SparseDoubleVector>>();
         wordSpace = new ConcurrentHashMap<String, SparseDoubleVector>();
@@ -170,6 +211,13 @@ public class WaitingWordsi extends BaseWordsi {
     public void handleContextVector(String focusKey,
                                     String secondaryKey,
                                     SparseDoubleVector context) {
+        if (contextStore != null) {
+            int contextId = contextStore.add(focusKey, context);
+            if (reporter != null)
+                reporter.assignContextToKey(focusKey, secondaryKey, contextId);
+            return;
+        }
+
         // Get the list of context vectors for the focus key.
         List<SparseDoubleVector> termContexts = dataVectors.get(focusKey);
         if (termContexts == null) {
@@ -209,6 +257,12 @@ public class WaitingWordsi extends BaseWordsi {
         }
 
         final Semaphore termsProcessed = new Semaphore(0); 
+
+        if (contextStore != null) {
+            processStoredContexts(props, workQueue, termsProcessed);
+            return;
+        }
+
         final int numTerms = dataVectors.size();
 
         // Process each word's context set in a worker thread.
@@ -227,7 +281,9 @@ public class WaitingWordsi extends BaseWordsi {
             workQueue.offer(new Runnable() {
                 public void run() {
                     try {
-                        clusterTerm(senseName, contextSet, props);
+                        clusterTerm(senseName, 
+                                    Matrices.asSparseMatrix(contextSet), 
+                                    props);
                     } catch (Exception e) {
                         e.printStackTrace();
                     } finally {
@@ -246,15 +302,51 @@ public class WaitingWordsi extends BaseWordsi {
         LOG.info("Finished processing all terms");
     }
 
+    /**
+     * Clusters the contexts of each term in the {@link #contextStore}.  The
+     * contexts of a term are read from the store by the worker thread that
+     * clusters them and are removed from the store afterwards, so only the
+     * contexts of the terms currently being clustered are held in memory.
+     */
+    private void processStoredContexts(final Properties props,
+                                       BlockingQueue<Runnable> workQueue,
+                                       final Semaphore termsProcessed) {
+        final int vectorLength = getVectorLength();
+        Set<String> terms = new HashSet<String>(contextStore.terms());
+        for (final String senseName : terms) {
+            workQueue.offer(new Runnable() {
+                public void run() {
+                    try {
+                        SparseMatrix contexts = 
+                            contextStore.getContexts(senseName, vectorLength);
+                        contextStore.remove(senseName);
+                        clusterTerm(senseName, contexts, props);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        termsProcessed.release();
+                    }
+                }
+            });
+        }
+        try {
+            termsProcessed.acquire(terms.size());
+            if (reporter != null)
+                reporter.finalizeReport();
+        } catch (InterruptedException ie) {
+            throw new Error(ie);
+        } finally {
+            contextStore.close();
+        }
+        LOG.info("Finished processing all terms");
+    }
+
     /**
      * Clusters the context vectors associated with {@link senseName}.
      */
     private void clusterTerm(String senseName,
-                             List<SparseDoubleVector> contextSet,
+                             SparseMatrix contexts,
                              Properties props) {
-        // Convert the data points to a sparse matrix.
-        SparseMatrix contexts = Matrices.asSparseMatrix(contextSet);
-
         // Cluster the context set.
         LOG.info("Clustering term: " + senseName);
         Assignments assignments = (numClusters > 0) 
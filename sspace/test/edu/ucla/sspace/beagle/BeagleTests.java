@@ -0,0 +1,124 @@
+/*
+ * Copyright 2009 Keith Stevens 
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.beagle;
+
+import edu.ucla.sspace.beagle.Beagle.SemanticType;
+
+import edu.ucla.sspace.text.IteratorFactory;
+
+import edu.ucla.sspace.vector.DenseVector;
+import edu.ucla.sspace.vector.DoubleVector;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class BeagleTests {
+
+    private static final int SIZE = 64;
+
+    @Before public void resetTokenizer() {
+        // Clear any token filters configured by other tests
+        IteratorFactory.setProperties(new Properties());
+    }
+
+    private static Map<String, DoubleVector> indexVectors(String... words) {
+        Random random = new Random(42);
+        Map<String, DoubleVector> vectors = new HashMap<String, DoubleVector>();
+        vectors.put("", randomVector(random));
+        for (String word : words)
+            vectors.put(word, randomVector(random));
+        return vectors;
+    }
+
+    private static DoubleVector randomVector(Random random) {
+        DoubleVector v = new DenseVector(SIZE);
+        for (int i = 0; i < SIZE; ++i)
+            v.set(i, random.nextGaussian() / Math.sqrt(SIZE));
+        return v;
+    }
+
+    private static void process(Beagle beagle, String text) 
+            throws IOException {
+        beagle.processDocument(new BufferedReader(new StringReader(text)));
+    }
+
+    @Test public void testCachedContextMatchesDefault() throws IOException {
+        String text = "the quick brown fox jumps over the lazy dog";
+        Map<String, DoubleVector> vectors = indexVectors(text.split(" "));
+        Beagle beagle = new Beagle(SIZE, SemanticType.CONTEXT, vectors);
+        Beagle cached = 
+            new Beagle(SIZE, SemanticType.CONTEXT, vectors, true);
+        process(beagle, text);
+        process(cached, text);
+
+        assertEquals(beagle.getWords(), cached.getWords());
+        for (String word : beagle.getWords()) {
+            DoubleVector expected = beagle.getVector(word);
+            DoubleVector actual = cached.getVector(word);
+            for (int i = 0; i < SIZE; ++i)
+                assertEquals(expected.get(i), actual.get(i), 1e-9);
+        }
+    }
+
+    @Test public void testCachedOrderingIsOrderSensitive() throws IOException {
+        Map<String, DoubleVector> vectors = 
+            indexVectors("red", "green", "blue", "cyan", "pink");
+        Beagle cached = 
+            new Beagle(SIZE, SemanticType.ORDERING, vectors, true);
+        // Each document forms a single context for its first word
+        process(cached, "red green blue");
+        process(cached, "cyan blue green");
+        process(cached, "pink green blue");
+
+        DoubleVector p = cached.getVector("red");
+        DoubleVector s = cached.getVector("cyan");
+        DoubleVector t = cached.getVector("pink");
+        double magnitude = 0;
+        boolean differs = false;
+        for (int i = 0; i < SIZE; ++i) {
+            magnitude += p.get(i) * p.get(i);
+            assertEquals(p.get(i), t.get(i), 1e-9);
+            if (Math.abs(p.get(i) - s.get(i)) > 1e-6)
+                differs = true;
+        }
+        // The order vector of each context is normalized
+        assertEquals(1, magnitude, 1e-9);
+        assertTrue(differs);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCachedRequiresPowerOfTwo() {
+        new Beagle(100, SemanticType.COMPOSITE, indexVectors(), true);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2011 Keith Stevens 
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.clustering;
+
+import edu.ucla.sspace.clustering.criterion.CriterionFunction;
+import edu.ucla.sspace.clustering.criterion.I1Function;
+
+import edu.ucla.sspace.clustering.seeding.KMeansSeed;
+
+import edu.ucla.sspace.common.Similarity;
+
+import edu.ucla.sspace.matrix.ArrayMatrix;
+import edu.ucla.sspace.matrix.Matrices;
+import edu.ucla.sspace.matrix.Matrix;
+
+import edu.ucla.sspace.vector.CompactSparseVector;
+import edu.ucla.sspace.vector.DenseVector;
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.SparseDoubleVector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of tests for the {@link DirectClustering} class
+ */
+public class DirectClusteringTests {
+
+    /**
+     * Returns rows in {@code numGroups} groups, where the rows of each group
+     * have values only in the group's own dimensions.
+     */
+    private static Matrix groupedRows(int numGroups, int rowsPerGroup,
+                                      Random random) {
+        int dimsPerGroup = 5;
+        List<SparseDoubleVector> rows = new ArrayList<SparseDoubleVector>();
+        for (int g = 0; g < numGroups; ++g) {
+            for (int r = 0; r < rowsPerGroup; ++r) {
+                SparseDoubleVector v = 
+                    new CompactSparseVector(numGroups * dimsPerGroup);
+                for (int d = 0; d < dimsPerGroup; ++d)
+                    v.set(g * dimsPerGroup + d, 1 + random.nextDouble());
+                rows.add(v);
+            }
+        }
+        return Matrices.asSparseMatrix(rows);
+    }
+
+    private static void assertGroupsRecovered(Assignments assignments,
+                                              int numGroups,
+                                              int rowsPerGroup) {
+        int[] groupClusters = new int[numGroups];
+        for (int g = 0; g < numGroups; ++g) {
+            groupClusters[g] = 
+                assignments.get(g * rowsPerGroup).assignments()[0];
+            for (int r = 0; r < rowsPerGroup; ++r)
+                assertEquals(groupClusters[g], assignments.get(
+                    g * rowsPerGroup + r).assignments()[0]);
+            for (int h = 0; h < g; ++h)
+                assertTrue(groupClusters[g] != groupClusters[h]);
+        }
+    }
+
+    @Test public void testRepetitionsRecoverGroups() {
+        Matrix m = groupedRows(3, 20, new Random(1));
+        Assignments assignments = DirectClustering.cluster(m, 3, 8);
+        assertGroupsRecovered(assignments, 3, 20);
+    }
+
+    @Test public void testSingleRepetitionRecoversGroups() {
+        // Use enough rows that the initial assignment is split across tasks
+        Matrix m = groupedRows(2, 1500, new Random(2));
+        Assignments assignments = DirectClustering.cluster(
+            m, 2, 1, new FixedSeed(m.getRowVector(0), m.getRowVector(1500)),
+            new I1Function());
+        assertGroupsRecovered(assignments, 2, 1500);
+    }
+
+    /**
+     * Checks that the initial assignment chooses the seed with the highest
+     * cosine similarity, including for data points and seeds with no non-zero
+     * values and data points whose similarity to every seed is negative.
+     */
+    @Test public void testInitialAssignmentMatchesCosine() {
+        Random random = new Random(3);
+        int rows = 2500;
+        int cols = 8;
+        double[][] values = new double[rows][cols];
+        for (int r = 0; r < rows; ++r) {
+            // Leave some rows with no non-zero values
+            if (r % 50 == 0)
+                continue;
+            for (int c = 0; c < cols; ++c)
+                values[r][c] = random.nextGaussian();
+        }
+        Matrix m = new ArrayMatrix(values);
+
+        DoubleVector[] seeds = new DoubleVector[6];
+        for (int s = 0; s < seeds.length; ++s) {
+            seeds[s] = new DenseVector(cols);
+            // Leave one seed with no non-zero values
+            if (s == 2)
+                continue;
+            for (int c = 0; c < cols; ++c)
+                seeds[s].set(c, random.nextGaussian());
+        }
+
+        for (int repetitions = 1; repetitions <= 2; ++repetitions) {
+            InitialAssignments criterion = new InitialAssignments();
+            DirectClustering.cluster(m, seeds.length, repetitions,
+                                     new FixedSeed(seeds), criterion);
+            int[] actual = criterion.assignments();
+            for (int r = 0; r < rows; ++r) {
+                int expected = 0;
+                double best = 0;
+                for (int s = 0; s < seeds.length; ++s) {
+                    double sim = Similarity.cosineSimilarity(
+                        seeds[s], m.getRowVector(r));
+                    if (sim >= best) {
+                        best = sim;
+                        expected = s;
+                    }
+                }
+                assertEquals("row " + r, expected, actual[r]);
+            }
+        }
+    }
+
+    /**
+     * A seeding algorithm that always returns the same seeds.
+     */
+    public static class FixedSeed implements KMeansSeed {
+
+        private final DoubleVector[] seeds;
+
+        public FixedSeed(DoubleVector... seeds) {
+            this.seeds = seeds;
+        }
+
+        public DoubleVector[] chooseSeeds(int numCentroids, Matrix dataPoints) {
+            return seeds;
+        }
+    }
+
+    /**
+     * A criterion function that retains the initial assignments and never
+     * moves a data point.
+     */
+    public static class InitialAssignments implements CriterionFunction {
+
+        private int[] assignments;
+
+        public void setup(Matrix m, int[] initialAssignments, 
+                          int numClusters) {
+            assignments = initialAssignments;
+        }
+
+        public boolean update(int currentVectorIndex) {
+            return false;
+        }
+
+        public int[] assignments() {
+            return assignments;
+        }
+
+        public DoubleVector[] centroids() {
+            return null;
+        }
+
+        public int[] clusterSizes() {
+            return null;
+        }
+
+        public double score() {
+            return 1;
+        }
+
+        public boolean isMaximize() {
+            return true;
+        }
+    }
+}
@@ -21,11 +21,13 @@
 
 package edu.ucla.sspace.clustering;
 
+import edu.ucla.sspace.common.Similarity;
 import edu.ucla.sspace.common.Similarity.SimType;
 
 import edu.ucla.sspace.clustering.HierarchicalAgglomerativeClustering.ClusterLinkage;
 
 import edu.ucla.sspace.matrix.*;
+import edu.ucla.sspace.util.WorkQueue;
 import edu.ucla.sspace.vector.*;
 
 import java.util.*;
@@ -126,6 +128,173 @@ public class HierarchicalAgglomerativeClusteringTests {
         assertEquals(2, mergeOrder.get(2).mergedCluster());
     }
 
+    /**
+     * Returns a matrix of random points around several centers.
+     */
+    private static Matrix randomPoints(int rows, long seed) {
+        Random rand = new Random(seed);
+        int dims = 8;
+        double[][] centers = new double[4][dims];
+        for (double[] c : centers)
+            for (int d = 0; d < dims; ++d)
+                c[d] = rand.nextDouble();
+        Matrix m = new ArrayMatrix(rows, dims);
+        for (int r = 0; r < rows; ++r) {
+            double[] c = centers[rand.nextInt(centers.length)];
+            for (int d = 0; d < dims; ++d)
+                m.set(r, d, c[d] + rand.nextGaussian() * .2);
+        }
+        return m;
+    }
+
+    /**
+     * Returns the dendrogram computed by repeatedly merging the most similar
+     * pair of clusters, using the same cluster numbering as {@link
+     * HierarchicalAgglomerativeClustering}.
+     */
+    private static List<Merge> naiveDendrogram(Matrix sims, 
+                                               ClusterLinkage linkage) {
+        int n = sims.rows();
+        Map<Integer,List<Integer>> clusters = 
+            new TreeMap<Integer,List<Integer>>();
+        for (int i = 0; i < n; ++i)
+            clusters.put(i, new ArrayList<Integer>(Collections.singleton(i)));
+        List<Merge> merges = new ArrayList<Merge>();
+        while (clusters.size() > 1) {
+            int best1 = -1;
+            int best2 = -1;
+            double bestSim = Double.NEGATIVE_INFINITY;
+            for (int c1 : clusters.keySet()) {
+                for (int c2 : clusters.keySet()) {
+                    if (c2 <= c1)
+                        continue;
+                    double sum = 0;
+                    double max = Double.NEGATIVE_INFINITY;
+                    double min = Double.POSITIVE_INFINITY;
+                    for (int i : clusters.get(c1)) {
+                        for (int j : clusters.get(c2)) {
+                            double s = sims.get(i, j);
+                            sum += s;
+                            max = Math.max(max, s);
+                            min = Math.min(min, s);
+                        }
+                    }
+                    double sim = (linkage == ClusterLinkage.SINGLE_LINKAGE)
+                        ? max
+                        : (linkage == ClusterLinkage.COMPLETE_LINKAGE)
+                        ? min
+                        : sum / (clusters.get(c1).size() 
+                                 * clusters.get(c2).size());
+                    if (sim > bestSim) {
+                        bestSim = sim;
+                        best1 = c1;
+                        best2 = c2;
+                    }
+                }
+            }
+            clusters.get(best1).addAll(clusters.remove(best2));
+            merges.add(new Merge(best1, best2, bestSim));
+        }
+        return merges;
+    }
+
+    private static void checkNearestNeighborChain(ClusterLinkage linkage) {
+        Matrix m = randomPoints(60, 1);
+        int n = m.rows();
+        Matrix sims = new ArrayMatrix(n, n);
+        for (int i = 0; i < n; ++i)
+            for (int j = 0; j < n; ++j)
+                sims.set(i, j, Similarity.cosineSimilarity(
+                    m.getRowVector(i), m.getRowVector(j)));
+
+        List<Merge> expected = naiveDendrogram(sims, linkage);
+        HierarchicalAgglomerativeClustering hac =
+            new HierarchicalAgglomerativeClustering();
+        List<Merge> fromRows = hac.buildDendogram(m, linkage, SimType.COSINE);
+        List<Merge> fromSims = hac.buildDendrogram(sims, linkage);
+        assertEquals(n - 1, fromRows.size());
+        for (int i = 0; i < n - 1; ++i) {
+            Merge e = expected.get(i);
+            for (Merge actual : Arrays.asList(fromRows.get(i), 
+                                              fromSims.get(i))) {
+                assertEquals(e.remainingCluster(), actual.remainingCluster());
+                assertEquals(e.mergedCluster(), actual.mergedCluster());
+                assertEquals(e.similarity(), actual.similarity(), 1e-5);
+            }
+        }
+
+        // Cutting the dendrogram should match applying the merges in order
+        int[] assignments = HierarchicalAgglomerativeClustering.partitionRows(
+            m, 4, linkage, SimType.COSINE);
+        int[] cluster = new int[n];
+        for (int i = 0; i < n; ++i)
+            cluster[i] = i;
+        for (Merge merge : expected.subList(0, n - 4))
+            for (int i = 0; i < n; ++i)
+                if (cluster[i] == merge.mergedCluster())
+                    cluster[i] = merge.remainingCluster();
+        for (int i = 0; i < n; ++i)
+            for (int j = 0; j < n; ++j)
+                assertEquals(cluster[i] == cluster[j], 
+                             assignments[i] == assignments[j]);
+        Set<Integer> ids = new HashSet<Integer>();
+        for (int a : assignments)
+            ids.add(a);
+        assertEquals(4, ids.size());
+    }
+
+    @Test public void testNearestNeighborChainSingleLinkage() {
+        checkNearestNeighborChain(ClusterLinkage.SINGLE_LINKAGE);
+    }
+
+    @Test public void testNearestNeighborChainCompleteLinkage() {
+        checkNearestNeighborChain(ClusterLinkage.COMPLETE_LINKAGE);
+    }
+
+    @Test public void testNearestNeighborChainMeanLinkage() {
+        checkNearestNeighborChain(ClusterLinkage.MEAN_LINKAGE);
+    }
+
+    @Test public void testClusterRowsThreshold() {
+        List<SparseDoubleVector> vectors = new ArrayList<SparseDoubleVector>();
+        vectors.add(newVec(new int[] { 1, 2 }, 100));
+        vectors.add(newVec(new int[] { 1, 2 }, 100));
+        vectors.add(newVec(new int[] { 3, 4 }, 100));
+        vectors.add(newVec(new int[] { 3, 4, 5 }, 100));
+        SparseMatrix m = Matrices.asSparseMatrix(vectors);
+        int[] assignments = HierarchicalAgglomerativeClustering.clusterRows(
+            m, .5, ClusterLinkage.MEAN_LINKAGE, SimType.COSINE);
+        assertEquals(0, assignments[0]);
+        assertEquals(0, assignments[1]);
+        assertEquals(1, assignments[2]);
+        assertEquals(1, assignments[3]);
+    }
+
+    @Test public void testCallerWorkQueue() {
+        Matrix m = randomPoints(40, 2);
+        WorkQueue queue = new WorkQueue(2);
+        HierarchicalAgglomerativeClustering hac =
+            new HierarchicalAgglomerativeClustering();
+        HierarchicalAgglomerativeClustering withQueue =
+            new HierarchicalAgglomerativeClustering(queue);
+        List<Merge> expected = hac.buildDendogram(
+            m, ClusterLinkage.MEAN_LINKAGE, SimType.COSINE);
+        List<Merge> actual = withQueue.buildDendogram(
+            m, ClusterLinkage.MEAN_LINKAGE, SimType.COSINE);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.get(i).remainingCluster(),
+                         actual.get(i).remainingCluster());
+            assertEquals(expected.get(i).mergedCluster(),
+                         actual.get(i).mergedCluster());
+        }
+        assertTrue(Arrays.equals(
+            HierarchicalAgglomerativeClustering.partitionRows(
+                m, 5, ClusterLinkage.MEAN_LINKAGE, SimType.COSINE),
+            HierarchicalAgglomerativeClustering.partitionRows(
+                m, 5, ClusterLinkage.MEAN_LINKAGE, SimType.COSINE, queue)));
+    }
+
     private static SparseDoubleVector newVec(int[] dimsToSet, int dims) {
         SparseDoubleVector sv = new CompactSparseVector(dims); 
         for (int i : dimsToSet)
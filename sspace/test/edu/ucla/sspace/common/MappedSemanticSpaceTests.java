@@ -0,0 +1,113 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.common;
+
+import edu.ucla.sspace.common.SemanticSpaceIO.SSpaceFormat;
+
+import edu.ucla.sspace.vector.CompactSparseVector;
+import edu.ucla.sspace.vector.DenseVector;
+import edu.ucla.sspace.vector.SparseDoubleVector;
+import edu.ucla.sspace.vector.Vector;
+
+import java.io.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link MappedSemanticSpace} 
+ */
+public class MappedSemanticSpaceTests {
+
+    DummySemanticSpace test;
+    
+    public MappedSemanticSpaceTests() {
+        test = new DummySemanticSpace();
+        test.setVector("cow", new DenseVector(new double[] {1, 0, 0, 0}));
+        test.setVector("dog", new DenseVector(new double[] {0, 1, 0, 0}));
+        test.setVector("ear", new DenseVector(new double[] {0, 0, 1, 0}));
+        test.setVector("fig", new DenseVector(new double[] {0, 0, 0, 1}));
+        test.setVector("git", new DenseVector(new double[] {1, 1, 0, 0}));
+        test.setVector("hat", new DenseVector(new double[] {1, 0, 1, 0}));
+        test.setVector("its", new DenseVector(new double[] {1, 0, 0, 1.5}));
+        test.setVector("j\u00e9j", new DenseVector(new double[] {0, -2, 0, 3}));
+    }
+
+    private void assertSameSpace(SemanticSpace mapped) {
+        assertEquals(test.getWords(), mapped.getWords());
+        assertEquals(test.getVectorLength(), mapped.getVectorLength());
+        for (String word : test.getWords()) {
+            Vector expected = test.getVector(word);
+            Vector actual = mapped.getVector(word);
+            assertEquals(expected.length(), actual.length());
+            for (int i = 0; i < expected.length(); ++i)
+                assertEquals(expected.getValue(i).doubleValue(),
+                             actual.getValue(i).doubleValue(), 0);
+            assertEquals(expected.magnitude(), actual.magnitude(), 0.0001);
+        }
+        assertNull(mapped.getVector("not-a-word"));
+    }
+
+    @Test public void testBinary() throws Exception { 
+        File binaryFile = File.createTempFile("test-binary",".sspace");
+        binaryFile.deleteOnExit();
+        SemanticSpaceIO.save(test, binaryFile, SSpaceFormat.BINARY);
+        SemanticSpace mapped = new MappedSemanticSpace(binaryFile);
+        assertSameSpace(mapped);
+    }
+
+    @Test public void testSparseBinary() throws Exception { 
+        File sparseBinaryFile = 
+            File.createTempFile("test-sparse-binary",".sspace");
+        sparseBinaryFile.deleteOnExit();
+        SemanticSpaceIO.save(test, sparseBinaryFile, 
+                             SSpaceFormat.SPARSE_BINARY);
+        SemanticSpace mapped = new MappedSemanticSpace(sparseBinaryFile);
+        assertSameSpace(mapped);
+
+        Vector v = mapped.getVector("its");
+        assertTrue(v instanceof SparseDoubleVector);
+        int[] nz = ((SparseDoubleVector)v).getNonZeroIndices();
+        assertEquals(2, nz.length);
+        assertEquals(0, nz[0]);
+        assertEquals(3, nz[1]);
+    }
+
+    @Test(expected=UnsupportedOperationException.class) 
+    public void testReadOnly() throws Exception { 
+        File binaryFile = File.createTempFile("test-binary",".sspace");
+        binaryFile.deleteOnExit();
+        SemanticSpaceIO.save(test, binaryFile, SSpaceFormat.BINARY);
+        SemanticSpace mapped = new MappedSemanticSpace(binaryFile);
+        mapped.getVector("cow").set(0, 2d);
+    }
+
+    @Test(expected=IllegalArgumentException.class) 
+    public void testText() throws Exception { 
+        File textFile = File.createTempFile("test-text",".sspace");
+        textFile.deleteOnExit();
+        SemanticSpaceIO.save(test, textFile, SSpaceFormat.TEXT);
+        new MappedSemanticSpace(textFile);
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.common;
+
+import edu.ucla.sspace.common.QuantizedSemanticSpace.Encoding;
+import edu.ucla.sspace.common.SemanticSpaceIO.SSpaceFormat;
+
+import edu.ucla.sspace.util.SortedMultiMap;
+
+import edu.ucla.sspace.vector.DenseVector;
+import edu.ucla.sspace.vector.Vector;
+
+import java.io.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link QuantizedSemanticSpace} 
+ */
+public class QuantizedSemanticSpaceTests {
+
+    /**
+     * Returns a space whose vectors are scattered around a small number of
+     * random centers.
+     */
+    private static DummySemanticSpace randomSpace(int words, int dims,
+                                                  int clusters, long seed) {
+        Random random = new Random(seed);
+        double[][] centers = new double[clusters][dims];
+        for (double[] center : centers)
+            for (int i = 0; i < dims; ++i)
+                center[i] = random.nextGaussian() * 5;
+        DummySemanticSpace sspace = new DummySemanticSpace();
+        for (int w = 0; w < words; ++w) {
+            double[] v = new double[dims];
+            double[] center = centers[w % clusters];
+            for (int i = 0; i < dims; ++i)
+                v[i] = center[i] + random.nextGaussian();
+            sspace.setVector("w" + w, new DenseVector(v));
+        }
+        return sspace;
+    }
+
+    private static QuantizedSemanticSpace save(SemanticSpace sspace,
+                                               Encoding encoding,
+                                               int numSubspaces)
+            throws IOException {
+        File f = File.createTempFile("test-quantized", ".sspace");
+        f.deleteOnExit();
+        QuantizedSemanticSpace.write(sspace, f, encoding, numSubspaces);
+        return new QuantizedSemanticSpace(f);
+    }
+
+    /**
+     * Returns the {@code k} most similar words found by comparing every
+     * vector in the space.
+     */
+    private static List<String> bruteForce(SemanticSpace sspace, Vector query,
+                                           String exclude, int k,
+                                           Similarity.SimType simType) {
+        final Map<String,Double> sims = new HashMap<String,Double>();
+        for (String word : sspace.getWords()) {
+            if (!word.equals(exclude))
+                sims.put(word, Similarity.getSimilarity(
+                             simType, query, sspace.getVector(word)));
+        }
+        List<String> words = new ArrayList<String>(sims.keySet());
+        Collections.sort(words, new Comparator<String>() {
+                public int compare(String w1, String w2) {
+                    return Double.compare(sims.get(w2), sims.get(w1));
+                }
+            });
+        return words.subList(0, k);
+    }
+
+    @Test public void testHalfConversion() {
+        float[] exact = { 0f, -0f, 1f, -2f, 0.5f, 65504f, 1f / (1 << 24),
+                          0.333251953125f };
+        for (float f : exact)
+            assertEquals(f, QuantizedSemanticSpace.halfToFloat(
+                             QuantizedSemanticSpace.floatToHalf(f)), 0f);
+        // Ties round to the even mantissa
+        assertEquals(1f, QuantizedSemanticSpace.halfToFloat(
+                         QuantizedSemanticSpace.floatToHalf(1f + 1f / 2048)),
+                     0f);
+        assertEquals(1f + 2f / 1024, QuantizedSemanticSpace.halfToFloat(
+                         QuantizedSemanticSpace.floatToHalf(1f + 3f / 2048)),
+                     0f);
+        assertTrue(Float.isInfinite(QuantizedSemanticSpace.halfToFloat(
+                         QuantizedSemanticSpace.floatToHalf(1e6f))));
+        assertTrue(Float.isNaN(QuantizedSemanticSpace.halfToFloat(
+                         QuantizedSemanticSpace.floatToHalf(Float.NaN))));
+    }
+
+    @Test public void testInt8RoundTrip() throws Exception {
+        DummySemanticSpace test = randomSpace(50, 16, 5, 1);
+        File f = File.createTempFile("test-quantized", ".sspace");
+        f.deleteOnExit();
+        SemanticSpaceIO.save(test, f, SSpaceFormat.QUANTIZED);
+        SemanticSpace loaded = SemanticSpaceIO.load(f);
+        assertTrue(loaded instanceof QuantizedSemanticSpace);
+        assertEquals(Encoding.INT8,
+                     ((QuantizedSemanticSpace)loaded).getEncoding());
+        assertEquals(test.getWords(), loaded.getWords());
+        assertEquals(16, loaded.getVectorLength());
+        for (String word : test.getWords()) {
+            Vector expected = test.getVector(word);
+            Vector actual = loaded.getVector(word);
+            double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+            for (int i = 0; i < 16; ++i) {
+                min = Math.min(min, expected.getValue(i).doubleValue());
+                max = Math.max(max, expected.getValue(i).doubleValue());
+            }
+            double tolerance = (max - min) / 254 * 0.51;
+            for (int i = 0; i < 16; ++i)
+                assertEquals(expected.getValue(i).doubleValue(),
+                             actual.getValue(i).doubleValue(), tolerance);
+        }
+        assertNull(loaded.getVector("not-a-word"));
+    }
+
+    @Test public void testFloat16RoundTrip() throws Exception {
+        DummySemanticSpace test = randomSpace(50, 16, 5, 2);
+        QuantizedSemanticSpace loaded = save(test, Encoding.FLOAT16, 0);
+        assertEquals(Encoding.FLOAT16, loaded.getEncoding());
+        for (String word : test.getWords()) {
+            Vector expected = test.getVector(word);
+            Vector actual = loaded.getVector(word);
+            for (int i = 0; i < 16; ++i)
+                assertEquals(expected.getValue(i).doubleValue(),
+                             actual.getValue(i).doubleValue(), 0.01);
+        }
+    }
+
+    @Test public void testConstantVector() throws Exception {
+        DummySemanticSpace test = new DummySemanticSpace();
+        test.setVector("zero", new DenseVector(new double[] {0, 0, 0}));
+        test.setVector("two", new DenseVector(new double[] {2, 2, 2}));
+        test.setVector("other", new DenseVector(new double[] {1, -1, 3}));
+        QuantizedSemanticSpace loaded = save(test, Encoding.INT8, 0);
+        assertEquals(0, loaded.getVector("zero").magnitude(), 0);
+        assertEquals(2, loaded.getVector("two").get(1), 0);
+        SortedMultiMap<Double,String> sims = loaded.getMostSimilar(
+            "two", 2, Similarity.SimType.COSINE);
+        assertEquals(2, sims.size());
+        assertTrue(sims.get(0d).contains("zero"));
+    }
+
+    @Test public void testMostSimilarMatchesDequantized() throws Exception {
+        for (Encoding encoding : Encoding.values()) {
+            QuantizedSemanticSpace loaded =
+                save(randomSpace(300, 24, 10, 3), encoding, 0);
+            for (int q = 0; q < 300; q += 37) {
+                String word = "w" + q;
+                Vector query = loaded.getVector(word);
+                List<String> expected = bruteForce(
+                    loaded, query, word, 10, Similarity.SimType.COSINE);
+                SortedMultiMap<Double,String> actual = loaded.getMostSimilar(
+                    word, 10, Similarity.SimType.COSINE);
+                assertEquals(10, actual.size());
+                assertEquals(new HashSet<String>(expected),
+                             new HashSet<String>(actual.values()));
+                for (Map.Entry<Double,String> e : actual.entrySet())
+                    assertEquals(Similarity.cosineSimilarity(
+                                     query, loaded.getVector(e.getValue())),
+                                 e.getKey(), 1e-5);
+
+                // Queries by vector do not exclude the word itself
+                actual = loaded.getMostSimilar(
+                    query, 10, Similarity.SimType.COSINE);
+                assertTrue(actual.values().contains(word));
+            }
+        }
+    }
+
+    @Test public void testOtherSimilarity() throws Exception {
+        QuantizedSemanticSpace loaded =
+            save(randomSpace(100, 8, 5, 4), Encoding.INT8, 0);
+        Vector query = loaded.getVector("w7");
+        List<String> expected = bruteForce(
+            loaded, query, "w7", 5, Similarity.SimType.EUCLIDEAN);
+        SortedMultiMap<Double,String> actual = loaded.getMostSimilar(
+            "w7", 5, Similarity.SimType.EUCLIDEAN);
+        assertEquals(new HashSet<String>(expected),
+                     new HashSet<String>(actual.values()));
+    }
+
+    @Test public void testProductQuantization() throws Exception {
+        DummySemanticSpace test = randomSpace(1000, 32, 40, 5);
+        QuantizedSemanticSpace loaded = save(test, Encoding.INT8, 8);
+        assertEquals(8, loaded.getNumSubspaces());
+        int found = 0;
+        int queries = 0;
+        for (int q = 0; q < 1000; q += 50, ++queries) {
+            String word = "w" + q;
+            List<String> expected = bruteForce(
+                loaded, loaded.getVector(word), word, 10,
+                Similarity.SimType.COSINE);
+            SortedMultiMap<Double,String> actual = loaded.getMostSimilar(
+                word, 10, Similarity.SimType.COSINE);
+            assertEquals(10, actual.size());
+            for (String w : actual.values())
+                if (expected.contains(w))
+                    found++;
+        }
+        assertTrue("recall: " + found, found >= 0.9 * 10 * queries);
+    }
+
+    @Test public void testCompression() throws Exception {
+        DummySemanticSpace test = randomSpace(200, 100, 5, 6);
+        File binary = File.createTempFile("test-binary", ".sspace");
+        binary.deleteOnExit();
+        SemanticSpaceIO.save(test, binary, SSpaceFormat.BINARY);
+        File quantized = File.createTempFile("test-quantized", ".sspace");
+        quantized.deleteOnExit();
+        SemanticSpaceIO.save(test, quantized, SSpaceFormat.QUANTIZED);
+        assertTrue(quantized.length() * 6 < binary.length());
+    }
+
+    @Test public void testWordComparator() throws Exception {
+        QuantizedSemanticSpace loaded =
+            save(randomSpace(200, 16, 10, 7), Encoding.INT8, 0);
+        SortedMultiMap<Double,String> expected = loaded.getMostSimilar(
+            "w3", 5, Similarity.SimType.COSINE);
+        SortedMultiMap<Double,String> actual = new WordComparator(1)
+            .getMostSimilar("w3", loaded, 5, Similarity.SimType.COSINE);
+        assertEquals(expected.keySet(), actual.keySet());
+        assertEquals(new ArrayList<String>(expected.values()),
+                     new ArrayList<String>(actual.values()));
+        assertNull(new WordComparator(1).getMostSimilar(
+            "not-a-word", loaded, 5, Similarity.SimType.COSINE));
+    }
+
+    @Test(expected=IllegalArgumentException.class) 
+    public void testNotQuantized() throws Exception { 
+        File binary = File.createTempFile("test-binary", ".sspace");
+        binary.deleteOnExit();
+        SemanticSpaceIO.save(randomSpace(10, 4, 2, 8), binary,
+                             SSpaceFormat.BINARY);
+        new QuantizedSemanticSpace(binary);
+    }
+}
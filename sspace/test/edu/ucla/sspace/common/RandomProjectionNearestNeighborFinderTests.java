@@ -0,0 +1,208 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.common;
+
+import edu.ucla.sspace.common.Similarity.SimType;
+
+import edu.ucla.sspace.util.SortedMultiMap;
+
+import edu.ucla.sspace.vector.CompactSparseVector;
+import edu.ucla.sspace.vector.DenseVector;
+import edu.ucla.sspace.vector.Vector;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link RandomProjectionNearestNeighborFinder}
+ */
+public class RandomProjectionNearestNeighborFinderTests {
+
+    /**
+     * Returns a space with clusters of words whose vectors are small
+     * perturbations of a shared center.
+     */
+    private static DummySemanticSpace clusteredSpace(int clusters,
+                                                     int wordsPerCluster,
+                                                     int dimensions) {
+        Random rand = new Random(42);
+        DummySemanticSpace sspace = new DummySemanticSpace();
+        for (int c = 0; c < clusters; ++c) {
+            double[] center = new double[dimensions];
+            for (int d = 0; d < dimensions; ++d)
+                center[d] = rand.nextGaussian();
+            for (int w = 0; w < wordsPerCluster; ++w) {
+                double[] v = new double[dimensions];
+                for (int d = 0; d < dimensions; ++d)
+                    v[d] = center[d] + .1 * rand.nextGaussian();
+                sspace.setVector("c" + c + "w" + w, new DenseVector(v));
+            }
+        }
+        return sspace;
+    }
+
+    @Test public void testExhaustiveProbingIsExact() {
+        DummySemanticSpace sspace = clusteredSpace(20, 10, 16);
+        // With one bit and one probe, both buckets are always examined
+        RandomProjectionNearestNeighborFinder finder =
+            new RandomProjectionNearestNeighborFinder(sspace, 1, 1, 7, 2);
+        finder.setNumProbes(1);
+        WordComparator comparator = new WordComparator(1);
+        for (String word : sspace.getWords()) {
+            SortedMultiMap<Double,String> exact =
+                comparator.getMostSimilar(word, sspace, 5, SimType.COSINE);
+            SortedMultiMap<Double,String> approx =
+                finder.getMostSimilar(word, 5, SimType.COSINE);
+            assertEquals(new HashSet<String>(exact.values()),
+                         new HashSet<String>(approx.values()));
+        }
+    }
+
+    @Test public void testRecall() {
+        DummySemanticSpace sspace = clusteredSpace(50, 10, 32);
+        RandomProjectionNearestNeighborFinder finder =
+            new RandomProjectionNearestNeighborFinder(sspace, 8, 10, 11, 4);
+        int found = 0;
+        int total = 0;
+        for (String word : sspace.getWords()) {
+            SortedMultiMap<Double,String> approx =
+                finder.getMostSimilar(word, 9, SimType.COSINE);
+            assertFalse(approx.values().contains(word));
+            String cluster = word.substring(0, word.indexOf('w'));
+            for (String neighbor : approx.values()) {
+                if (neighbor.startsWith(cluster + "w"))
+                    found++;
+            }
+            total += 9;
+        }
+        assertTrue("recall too low: " + found + "/" + total,
+                   found > .9 * total);
+    }
+
+    @Test public void testSparseVectorsHashLikeDense() {
+        DummySemanticSpace dense = clusteredSpace(10, 5, 20);
+        DummySemanticSpace sparse = new DummySemanticSpace();
+        for (String word : dense.getWords()) {
+            Vector v = dense.getVector(word);
+            CompactSparseVector sv = new CompactSparseVector(v.length());
+            for (int i = 0; i < v.length(); ++i)
+                sv.set(i, v.getValue(i));
+            sparse.setVector(word, sv);
+        }
+        RandomProjectionNearestNeighborFinder denseFinder =
+            new RandomProjectionNearestNeighborFinder(dense, 3, 8, 5, 1);
+        RandomProjectionNearestNeighborFinder sparseFinder =
+            new RandomProjectionNearestNeighborFinder(sparse, 3, 8, 5, 1);
+        for (String word : dense.getWords()) {
+            assertEquals(new ArrayList<String>(
+                             denseFinder.getMostSimilar(word, 4, SimType.COSINE)
+                             .values()),
+                         new ArrayList<String>(
+                             sparseFinder.getMostSimilar(word, 4,
+                                                         SimType.COSINE)
+                             .values()));
+        }
+    }
+
+    @Test public void testSaveAndLoad() throws Exception {
+        DummySemanticSpace sspace = clusteredSpace(10, 5, 8);
+        RandomProjectionNearestNeighborFinder finder =
+            new RandomProjectionNearestNeighborFinder(sspace, 4, 6, 13, 2);
+        File f = File.createTempFile("test-index", ".lsh");
+        f.deleteOnExit();
+        finder.save(f);
+        RandomProjectionNearestNeighborFinder loaded =
+            RandomProjectionNearestNeighborFinder.load(f, sspace);
+        assertEquals(finder.size(), loaded.size());
+        for (String word : sspace.getWords()) {
+            assertEquals(new ArrayList<String>(
+                             finder.getMostSimilar(word, 3, SimType.COSINE)
+                             .values()),
+                         new ArrayList<String>(
+                             loaded.getMostSimilar(word, 3, SimType.COSINE)
+                             .values()));
+        }
+    }
+
+    @Test(expected=IOException.class)
+    public void testLoadWithDifferentWords() throws Exception {
+        DummySemanticSpace sspace = clusteredSpace(2, 2, 4);
+        RandomProjectionNearestNeighborFinder finder =
+            new RandomProjectionNearestNeighborFinder(sspace, 2, 2, 1, 1);
+        File f = File.createTempFile("test-index", ".lsh");
+        f.deleteOnExit();
+        finder.save(f);
+        DummySemanticSpace other = clusteredSpace(2, 2, 4);
+        other.setVector("extra", new DenseVector(4));
+        RandomProjectionNearestNeighborFinder.load(f, other);
+    }
+
+    @Test(expected=IOException.class)
+    public void testLoadWithRenamedWord() throws Exception {
+        DummySemanticSpace sspace = clusteredSpace(2, 2, 4);
+        RandomProjectionNearestNeighborFinder finder =
+            new RandomProjectionNearestNeighborFinder(sspace, 2, 2, 1, 1);
+        File f = File.createTempFile("test-index", ".lsh");
+        f.deleteOnExit();
+        finder.save(f);
+        DummySemanticSpace other = clusteredSpace(2, 1, 4);
+        other.setVector("renamed", new DenseVector(4));
+        other.setVector("renamed-too", new DenseVector(4));
+        RandomProjectionNearestNeighborFinder.load(f, other);
+    }
+
+    @Test public void testIndexFile() {
+        assertEquals(new File("dir/test.sspace.lsh"),
+                     RandomProjectionNearestNeighborFinder.getIndexFile(
+                         new File("dir/test.sspace")));
+    }
+
+    @Test public void testMissingWord() {
+        DummySemanticSpace sspace = clusteredSpace(2, 2, 4);
+        RandomProjectionNearestNeighborFinder finder =
+            new RandomProjectionNearestNeighborFinder(sspace, 2, 2, 1, 1);
+        assertNull(finder.getMostSimilar("not-a-word", 3, SimType.COSINE));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testWrongVectorLength() {
+        DummySemanticSpace sspace = clusteredSpace(2, 2, 4);
+        RandomProjectionNearestNeighborFinder finder =
+            new RandomProjectionNearestNeighborFinder(sspace, 2, 2, 1, 1);
+        finder.getMostSimilar(new DenseVector(3), 3, SimType.COSINE);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testTooManyBits() {
+        DummySemanticSpace sspace = clusteredSpace(2, 2, 4);
+        new RandomProjectionNearestNeighborFinder(sspace, 2, 33, 1, 1);
+    }
+}
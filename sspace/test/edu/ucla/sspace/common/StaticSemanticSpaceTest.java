@@ -108,6 +108,140 @@ public class StaticSemanticSpaceTest {
         }        
     }
 
+    @Test public void testRepeatedWordUsesLastRow() throws Exception {
+        File textFile = File.createTempFile("test-repeated-text", ".sspace");
+        textFile.deleteOnExit();
+        DataOutputStream dos =
+            new DataOutputStream(new FileOutputStream(textFile));
+        dos.writeChar('s');
+        dos.writeChar('0' + SSpaceFormat.TEXT.ordinal());
+        dos.writeBytes("4 2\na|1 0\nb|0 1\na|2 2\nc|3 3\n");
+        dos.close();
+        SemanticSpace onDisk = new StaticSemanticSpace(textFile);
+
+        assertEquals(3, onDisk.getWords().size());
+        assertEquals("2.0 2.0", VectorIO.toString(onDisk.getVector("a")));
+        assertEquals("0.0 1.0", VectorIO.toString(onDisk.getVector("b")));
+        assertEquals("3.0 3.0", VectorIO.toString(onDisk.getVector("c")));
+    }
+
+    /**
+     * Returns a space that is large enough to be split into several chunks
+     * when loaded.
+     */
+    private static DummySemanticSpace largeSpace(boolean sparse) {
+        java.util.Random random = new java.util.Random(1);
+        DummySemanticSpace sspace = new DummySemanticSpace();
+        for (int w = 0; w < 4000; ++w) {
+            double[] v = new double[100];
+            for (int i = 0; i < v.length; ++i) {
+                if (sparse && random.nextInt(10) != 0)
+                    continue;
+                switch (random.nextInt(4)) {
+                case 0: v[i] = random.nextGaussian(); break;
+                case 1: v[i] = random.nextInt(1000); break;
+                case 2: v[i] = random.nextGaussian() * 1e-12; break;
+                default: v[i] = -random.nextInt(10) / 8d;
+                }
+            }
+            sspace.setVector("w" + w, new DenseVector(v));
+        }
+        return sspace;
+    }
+
+    private static void assertSameValues(SemanticSpace expected,
+                                         SemanticSpace actual) {
+        assertEquals(expected.getWords(), actual.getWords());
+        for (String word : expected.getWords()) {
+            Vector e = expected.getVector(word);
+            Vector a = actual.getVector(word);
+            assertEquals(e.length(), a.length());
+            for (int i = 0; i < e.length(); ++i)
+                assertEquals(e.getValue(i).doubleValue(),
+                             a.getValue(i).doubleValue(), 0);
+        }
+    }
+
+    @Test public void testLargeText() throws Exception { 
+        DummySemanticSpace large = largeSpace(false);
+        File textFile = File.createTempFile("test-text",".sspace");
+        textFile.deleteOnExit();
+        SemanticSpaceIO.save(large, textFile, SSpaceFormat.TEXT);
+        assertTrue(textFile.length() > ParallelTextLoader.CHUNK_SIZE);
+        assertSameValues(large, new StaticSemanticSpace(textFile));
+    }
+
+    @Test public void testLargeSparseText() throws Exception { 
+        DummySemanticSpace large = largeSpace(true);
+        File textFile = File.createTempFile("test-sparse-text",".sspace");
+        textFile.deleteOnExit();
+        SemanticSpaceIO.save(large, textFile, SSpaceFormat.SPARSE_TEXT);
+        assertSameValues(large, new StaticSemanticSpace(textFile));
+    }
+
+    @Test public void testLargeBinary() throws Exception { 
+        DummySemanticSpace large = largeSpace(true);
+        File binaryFile = File.createTempFile("test-binary",".sspace");
+        binaryFile.deleteOnExit();
+        SemanticSpaceIO.save(large, binaryFile, SSpaceFormat.SPARSE_BINARY);
+        assertSameValues(large, new StaticSemanticSpace(binaryFile));
+        SemanticSpaceIO.save(large, binaryFile, SSpaceFormat.BINARY);
+        assertSameValues(large, new StaticSemanticSpace(binaryFile));
+    }
+
+    @Test public void testSparseTextLayout() throws Exception { 
+        File sparseTextFile = File.createTempFile("test-sparse-text",".sspace");
+        sparseTextFile.deleteOnExit();
+        OutputStream os = new FileOutputStream(sparseTextFile);
+        SemanticSpaceIO.writeHeader(os, SSpaceFormat.SPARSE_TEXT);
+        // Unsorted indices, blank lines, carriage returns and empty vectors
+        os.write("3 5\r\ncow|3,1.5,0,-2\r\n\n  \ndog|\near|4,1e3"
+                 .getBytes("UTF-8"));
+        os.close();
+        SemanticSpace sspace = new StaticSemanticSpace(sparseTextFile);
+        assertEquals(3, sspace.getWords().size());
+        assertEquals(5, sspace.getVectorLength());
+        Vector cow = sspace.getVector("cow");
+        assertEquals(-2, cow.getValue(0).doubleValue(), 0);
+        assertEquals(1.5, cow.getValue(3).doubleValue(), 0);
+        assertEquals(0, sspace.getVector("dog").magnitude(), 0);
+        assertEquals(1000, sspace.getVector("ear").getValue(4).doubleValue(),
+                     0);
+    }
+
+    @Test(expected=IOException.class)
+    public void testMissingRows() throws Exception { 
+        File textFile = File.createTempFile("test-text",".sspace");
+        textFile.deleteOnExit();
+        OutputStream os = new FileOutputStream(textFile);
+        SemanticSpaceIO.writeHeader(os, SSpaceFormat.TEXT);
+        os.write("3 2\ncow|1 2\ndog|3 4\n".getBytes("UTF-8"));
+        os.close();
+        new StaticSemanticSpace(textFile);
+    }
+
+    @Test public void testParseDouble() {
+        String[] numbers = { "0", "-0.0", "1.0", "+2.5", ".5", "5.", "3",
+                             "0.1", "1.0E-5", "-4.25e+3", "1e22", "1e23",
+                             "123456789012345678901", "0.30000000000000004",
+                             "1.7976931348623157E308", "4.9E-324", "1e400",
+                             "NaN", "-Infinity", "2.5d", "9007199254740993" };
+        for (String n : numbers) {
+            byte[] bytes = (" " + n + " ").getBytes();
+            assertEquals(n, Double.doubleToLongBits(Double.parseDouble(n)),
+                         Double.doubleToLongBits(ParallelTextLoader
+                             .parseDouble(bytes, 1, bytes.length - 1)));
+        }
+        java.util.Random random = new java.util.Random(2);
+        for (int i = 0; i < 10000; ++i) {
+            double d = random.nextGaussian() * Math.pow(10, random.nextInt(40)
+                                                        - 20);
+            byte[] bytes = Double.toString(d).getBytes();
+            assertEquals(d, ParallelTextLoader.parseDouble(
+                             bytes, 0, bytes.length), 0);
+        }
+    }
+
     private static String toSparseString(Vector v) {
         StringBuilder sb = new StringBuilder();
         for (int i = 0; i < v.length(); ++i)
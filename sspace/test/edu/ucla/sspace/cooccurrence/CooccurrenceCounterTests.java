@@ -0,0 +1,207 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.cooccurrence;
+
+import edu.ucla.sspace.text.Document;
+import edu.ucla.sspace.text.StringDocument;
+
+import java.io.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link CooccurrenceCounter} and {@link
+ * CooccurrenceFile}
+ */
+public class CooccurrenceCounterTests {
+
+    /**
+     * Returns the documents of a random corpus.
+     */
+    private static List<String> randomCorpus(int docs, int vocab, long seed) {
+        Random random = new Random(seed);
+        List<String> corpus = new ArrayList<String>();
+        for (int d = 0; d < docs; ++d) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(200);
+            for (int i = 0; i < length; ++i) {
+                // Skew the distribution so that some pairs repeat often
+                int w = (int) (vocab * Math.pow(random.nextDouble(), 3));
+                sb.append("w").append(w).append(' ');
+            }
+            corpus.add(sb.toString());
+        }
+        return corpus;
+    }
+
+    private static Iterator<Document> documents(List<String> corpus) {
+        List<Document> docs = new ArrayList<Document>();
+        for (String text : corpus)
+            docs.add(new StringDocument(text));
+        return docs.iterator();
+    }
+
+    /**
+     * Counts the co-occurrences of the corpus the same way as the Hadoop
+     * extractor.
+     */
+    private static Map<String,Integer> naiveCounts(List<String> corpus,
+                                                   int windowSize) {
+        Map<String,Integer> counts = new HashMap<String,Integer>();
+        for (String text : corpus) {
+            String[] tokens = text.trim().split("\\s+");
+            if (tokens.length == 1 && tokens[0].length() == 0)
+                continue;
+            for (int i = 0; i < tokens.length; ++i) {
+                for (int j = Math.max(0, i - windowSize);
+                         j <= Math.min(tokens.length - 1, i + windowSize); ++j) {
+                    if (i == j)
+                        continue;
+                    String key = tokens[i] + " " + tokens[j] + " " + (j - i);
+                    Integer c = counts.get(key);
+                    counts.put(key, (c == null) ? 1 : c + 1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static Map<String,Integer> readCounts(CooccurrenceFile file) {
+        Map<String,Integer> counts = new HashMap<String,Integer>();
+        for (Cooccurrence co : file) {
+            String key = co.focusWord() + " " + co.relativeWord() + " " +
+                co.getDistance();
+            assertNull("duplicate " + key,
+                       counts.put(key, co.getCount()));
+        }
+        return counts;
+    }
+
+    private static File count(List<String> corpus, Properties props)
+            throws IOException {
+        File output = File.createTempFile("test-cooccurrence", ".dat");
+        output.deleteOnExit();
+        new CooccurrenceCounter(props).execute(documents(corpus), output);
+        return output;
+    }
+
+    @Test public void testInMemory() throws Exception {
+        List<String> corpus = randomCorpus(50, 100, 1);
+        File output = count(corpus, new Properties());
+        CooccurrenceFile file = new CooccurrenceFile(output);
+        assertEquals(naiveCounts(corpus, 2), readCounts(file));
+    }
+
+    @Test public void testSpilledRuns() throws Exception {
+        List<String> corpus = randomCorpus(400, 2000, 2);
+        File tempDir = File.createTempFile("test-cooccurrence", "");
+        tempDir.delete();
+        tempDir.mkdir();
+        tempDir.deleteOnExit();
+
+        Properties props = new Properties();
+        props.setProperty(CooccurrenceCounter.WINDOW_SIZE_PROPERTY, "3");
+        props.setProperty(CooccurrenceCounter.SHARDS_PROPERTY, "3");
+        props.setProperty(CooccurrenceCounter.MEMORY_BUDGET_PROPERTY, "1");
+        props.setProperty(CooccurrenceCounter.TEMP_DIR_PROPERTY,
+                          tempDir.getPath());
+        File output = count(corpus, props);
+        CooccurrenceFile file = new CooccurrenceFile(output);
+        assertEquals(naiveCounts(corpus, 3), readCounts(file));
+
+        // Each focus word has one row, sorted by word and then distance
+        Set<Integer> finished = new HashSet<Integer>();
+        int focus = -1;
+        int prevRelative = -1;
+        int prevDistance = 0;
+        for (Cooccurrence co : file) {
+            if (co.focusIndex() != focus) {
+                assertTrue(finished.add(focus));
+                focus = co.focusIndex();
+            }
+            else {
+                assertTrue(co.relativeIndex() > prevRelative
+                           || (co.relativeIndex() == prevRelative
+                               && co.getDistance() > prevDistance));
+            }
+            prevRelative = co.relativeIndex();
+            prevDistance = co.getDistance();
+        }
+        assertEquals(file.numRows(), finished.size());
+
+        // The runs and segments are removed
+        assertEquals(0, tempDir.list().length);
+    }
+
+    @Test public void testShortAndEmptyDocuments() throws Exception {
+        List<String> corpus = Arrays.asList("", "a", "a b", "c a c");
+        File output = count(corpus, new Properties());
+        CooccurrenceFile file = new CooccurrenceFile(output);
+        assertEquals(naiveCounts(corpus, 2), readCounts(file));
+        assertEquals(3, file.getWords().length);
+        assertEquals(3, file.numRows());
+    }
+
+    @Test public void testEmptyCorpus() throws Exception {
+        List<String> corpus = Collections.emptyList();
+        CooccurrenceFile file =
+            new CooccurrenceFile(count(corpus, new Properties()));
+        assertEquals(0, file.getWords().length);
+        assertFalse(file.iterator().hasNext());
+    }
+
+    @Test public void testPack() {
+        int focus = CooccurrenceCounter.MAX_WORDS - 1;
+        for (int d = -127; d <= 127; d += 127) {
+            long key = CooccurrenceCounter.pack(focus, 12345, d);
+            assertTrue(key > 0);
+            assertEquals(focus, CooccurrenceCounter.focusOf(key));
+            assertEquals(12345, CooccurrenceCounter.relativeOf(key));
+            assertEquals(d, CooccurrenceCounter.distanceOf(key));
+        }
+        assertTrue(CooccurrenceCounter.pack(0, 0, -127) > 0);
+        assertTrue(CooccurrenceCounter.pack(1, 0, -1)
+                   > CooccurrenceCounter.pack(0, 5, 2));
+    }
+
+    @Test public void testSort() {
+        Random random = new Random(3);
+        int n = 10000;
+        long[] keys = new long[n];
+        int[] counts = new int[n];
+        for (int i = 0; i < n; ++i) {
+            keys[i] = random.nextInt(500) + 1;
+            counts[i] = (int) keys[i] * 7;
+        }
+        CooccurrenceCounter.sort(keys, counts, 0, n);
+        for (int i = 0; i < n; ++i) {
+            if (i > 0)
+                assertTrue(keys[i - 1] <= keys[i]);
+            assertEquals(keys[i] * 7, counts[i]);
+        }
+    }
+}
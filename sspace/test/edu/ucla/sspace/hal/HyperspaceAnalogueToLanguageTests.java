@@ -0,0 +1,229 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.hal;
+
+import edu.ucla.sspace.text.IteratorFactory;
+
+import edu.ucla.sspace.vector.Vector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class HyperspaceAnalogueToLanguageTests {
+
+    private static final String[] VOCAB = 
+        { "a", "b", "c", "d", "e", "f", "g", "h" };
+
+    @Before public void resetTokenizer() {
+        // Clear any token filters configured by other tests
+        IteratorFactory.setProperties(new Properties());
+    }
+
+    @After public void clearTokenizer() {
+        IteratorFactory.setProperties(new Properties());
+    }
+
+    /**
+     * Returns documents whose first document contains every word in the
+     * vocabulary, with the last new word followed by another word, so that the
+     * co-occurrence matrix is square.
+     */
+    private static List<String> documents(int numDocs, Random random) {
+        List<String> docs = new ArrayList<String>();
+        StringBuilder first = new StringBuilder();
+        for (String w : VOCAB)
+            first.append(w).append(' ');
+        docs.add(first.append(VOCAB[0]).toString());
+        docs.add("");
+        docs.add(VOCAB[1]);
+        for (int i = 0; i < numDocs; ++i) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int j = 0; j < length; ++j)
+                sb.append(VOCAB[random.nextInt(VOCAB.length)]).append(' ');
+            docs.add(sb.toString());
+        }
+        return docs;
+    }
+
+    /**
+     * Computes the weighted co-occurrence counts for the documents using
+     * queues of tokens, as HAL originally did.
+     */
+    private static Map<String,Double> expected(List<String> docs, 
+                                               int windowSize,
+                                               List<String> filtered) {
+        WeightingFunction weighting = new LinearWeighting();
+        Map<String,Double> counts = new HashMap<String,Double>();
+        for (String doc : docs) {
+            String[] tokens = doc.trim().split("\\s+");
+            if (doc.trim().length() == 0)
+                continue;
+            for (int i = 0; i < tokens.length; ++i) {
+                if (filtered.contains(tokens[i]))
+                    continue;
+                for (int d = 1; d <= windowSize && i + d < tokens.length; ++d) {
+                    if (!filtered.contains(tokens[i + d]))
+                        add(counts, tokens[i], tokens[i + d], 
+                            weighting.weight(d, windowSize));
+                }
+                int start = Math.max(0, i - windowSize);
+                for (int j = start; j < i; ++j) {
+                    if (!filtered.contains(tokens[j]))
+                        add(counts, tokens[j], tokens[i],
+                            weighting.weight(-(j - start + 1), windowSize));
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static void add(Map<String,Double> counts, String row, String col,
+                            double value) {
+        String key = row + " " + col;
+        Double cur = counts.get(key);
+        counts.put(key, (cur == null) ? value : cur + value);
+    }
+
+    private static HyperspaceAnalogueToLanguage process(List<String> docs,
+                                                        int windowSize) 
+            throws IOException {
+        Properties props = new Properties();
+        props.setProperty(HyperspaceAnalogueToLanguage.WINDOW_SIZE_PROPERTY,
+                          String.valueOf(windowSize));
+        HyperspaceAnalogueToLanguage hal = 
+            new HyperspaceAnalogueToLanguage(props);
+        for (String doc : docs)
+            hal.processDocument(new BufferedReader(new StringReader(doc)));
+        hal.processSpace(new Properties());
+        return hal;
+    }
+
+    private static void assertMatches(HyperspaceAnalogueToLanguage hal,
+                                      Map<String,Double> expected) {
+        List<String> words = new ArrayList<String>(hal.getWords());
+        int n = words.size();
+        for (int r = 0; r < n; ++r) {
+            Vector v = hal.getVector(words.get(r));
+            assertEquals(2 * n, v.length());
+            for (int c = 0; c < n; ++c) {
+                Double rowVal = expected.get(words.get(r) + " " + words.get(c));
+                Double colVal = expected.get(words.get(c) + " " + words.get(r));
+                assertEquals((rowVal == null) ? 0 : rowVal,
+                             v.getValue(c).doubleValue(), 1e-9);
+                assertEquals((colVal == null) ? 0 : colVal,
+                             v.getValue(n + c).doubleValue(), 1e-9);
+            }
+        }
+    }
+
+    @Test public void testMatchesQueueBasedCounts() throws IOException {
+        for (int windowSize = 1; windowSize <= 6; windowSize += 5) {
+            List<String> docs = documents(50, new Random(windowSize));
+            HyperspaceAnalogueToLanguage hal = process(docs, windowSize);
+            assertEquals(VOCAB.length, hal.getWords().size());
+            assertMatches(hal, expected(docs, windowSize, 
+                                        new ArrayList<String>()));
+        }
+    }
+
+    @Test public void testFilteredTokensOccupyWindow() throws IOException {
+        File validTokens = File.createTempFile("hal-test", ".txt");
+        validTokens.deleteOnExit();
+        PrintWriter pw = new PrintWriter(validTokens);
+        List<String> filtered = new ArrayList<String>();
+        for (String w : VOCAB) {
+            if (w.equals("c") || w.equals("f"))
+                filtered.add(w);
+            else
+                pw.println(w);
+        }
+        pw.close();
+        Properties props = new Properties();
+        props.setProperty(IteratorFactory.TOKEN_FILTER_PROPERTY, 
+                          "include=" + validTokens.getAbsolutePath());
+        IteratorFactory.setProperties(props);
+
+        List<String> docs = documents(50, new Random(3));
+        HyperspaceAnalogueToLanguage hal = process(docs, 3);
+        assertEquals(VOCAB.length - filtered.size(), hal.getWords().size());
+        assertMatches(hal, expected(docs, 3, filtered));
+    }
+
+    @Test public void testPruneRareWords() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(HyperspaceAnalogueToLanguage.WINDOW_SIZE_PROPERTY,
+                          "2");
+        props.setProperty(
+            HyperspaceAnalogueToLanguage.PRUNING_EPSILON_PROPERTY, ".05");
+        HyperspaceAnalogueToLanguage hal = 
+            new HyperspaceAnalogueToLanguage(props);
+        hal.processDocument(
+            new BufferedReader(new StringReader("a b rare b a")));
+        for (int i = 0; i < 20; ++i)
+            hal.processDocument(
+                new BufferedReader(new StringReader("a b a b a")));
+        hal.processSpace(new Properties());
+
+        assertFalse(hal.getWords().contains("rare"));
+        assertTrue(hal.getWords().contains("a"));
+        assertTrue(hal.getWords().contains("b"));
+        assertNull(hal.getVector("rare"));
+        // The remaining co-occurrences are those of the full corpus without
+        // any involving the pruned word
+        List<String> docs = new ArrayList<String>();
+        docs.add("a b rare b a");
+        for (int i = 0; i < 20; ++i)
+            docs.add("a b a b a");
+        Map<String,Double> expected = 
+            expected(docs, 2, Collections.singletonList("rare"));
+        String[] words = { "a", "b", "rare" };
+        for (int r = 0; r < 2; ++r) {
+            Vector v = hal.getVector(words[r]);
+            for (int c = 0; c < words.length; ++c) {
+                Double rowVal = expected.get(words[r] + " " + words[c]);
+                Double colVal = expected.get(words[c] + " " + words[r]);
+                assertEquals((rowVal == null) ? 0 : rowVal,
+                             v.getValue(c).doubleValue(), 1e-9);
+                assertEquals((colVal == null) ? 0 : colVal,
+                             v.getValue(3 + c).doubleValue(), 1e-9);
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.lra;
+
+import edu.ucla.sspace.util.Pair;
+
+import java.io.*;
+
+import java.util.*;
+
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link PhraseIndex} 
+ */
+public class PhraseIndexTests {
+
+    private static final String[] WORDS =
+        { "a", "b", "c", "d", "e", "f", "g.", "h" };
+
+    /**
+     * Writes a random corpus of several files, one in a subdirectory, and
+     * returns the lines of each file.
+     */
+    private static List<List<String>> writeCorpus(File dir, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        File subDir = new File(dir, "sub");
+        subDir.mkdir();
+        List<List<String>> docs = new ArrayList<List<String>>();
+        for (int d = 0; d < 6; ++d) {
+            File file = new File((d % 2 == 0) ? dir : subDir, d + ".txt");
+            List<String> lines = new ArrayList<String>();
+            PrintWriter pw = new PrintWriter(file);
+            for (int l = 0; l < 40; ++l) {
+                StringBuilder sb = new StringBuilder();
+                int length = random.nextInt(12);
+                for (int i = 0; i < length; ++i)
+                    sb.append(WORDS[random.nextInt(WORDS.length)]).append(
+                        (random.nextInt(4) == 0) ? "  " : " ");
+                lines.add(sb.toString());
+                pw.println(sb);
+            }
+            pw.close();
+            docs.add(lines);
+        }
+        // Files without the .txt suffix are not indexed
+        PrintWriter pw = new PrintWriter(new File(dir, "ignored.dat"));
+        pw.println("a b c d");
+        pw.close();
+        return docs;
+    }
+
+    private static File tempDir() throws IOException {
+        File dir = File.createTempFile("test-phrase-index", "");
+        dir.delete();
+        dir.mkdir();
+        return dir;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null)
+            for (File c : children)
+                delete(c);
+        f.delete();
+    }
+
+    private static List<String> tokens(List<String> lines) {
+        List<String> tokens = new ArrayList<String>();
+        for (String line : lines)
+            for (String t : line.trim().split("\\s+"))
+                if (t.length() > 0)
+                    tokens.add(t);
+        return tokens;
+    }
+
+    @Test public void testQueries() throws Exception {
+        File dir = tempDir();
+        try {
+            List<List<String>> docs = writeCorpus(dir, 1);
+            PhraseIndex index = new PhraseIndex(dir);
+
+            int numTokens = 0;
+            for (List<String> doc : docs)
+                numTokens += tokens(doc).size();
+            assertEquals(numTokens, index.numTokens());
+
+            List<Pair<String>> pairs = new ArrayList<Pair<String>>();
+            for (String x : WORDS)
+                for (String y : WORDS)
+                    pairs.add(new Pair<String>(x, y));
+            pairs.add(new Pair<String>("a", "missing"));
+
+            // Phrases within a slop of 2
+            int[] counts = index.countPhrases(pairs, 2);
+            for (int i = 0; i < pairs.size(); ++i) {
+                Pair<String> pair = pairs.get(i);
+                int expected = 0;
+                for (List<String> doc : docs) {
+                    List<String> t = tokens(doc);
+                    for (int p = 0; p < t.size(); ++p)
+                        for (int q = 0; q < t.size(); ++q)
+                            if (p != q && Math.abs(q - p - 1) <= 2
+                                    && t.get(p).equals(pair.x)
+                                    && t.get(q).equals(pair.y))
+                                expected++;
+                }
+                assertEquals(pair.toString(), expected, counts[i]);
+            }
+
+            // Intervening words of 1 to 3 tokens
+            List<Set<String>> found = index.findInterveningWords(pairs, 1, 3);
+            for (int i = 0; i < pairs.size(); ++i) {
+                Pair<String> pair = pairs.get(i);
+                Set<String> expected = new HashSet<String>();
+                for (List<String> doc : docs) {
+                    List<String> t = tokens(doc);
+                    for (int p = 0; p < t.size(); ++p) {
+                        if (!t.get(p).equals(pair.x))
+                            continue;
+                        for (int k = 1; k <= 3 && p + k + 1 < t.size(); ++k) {
+                            if (t.get(p + k + 1).equals(pair.y)) {
+                                StringBuilder sb = new StringBuilder();
+                                for (int j = p + 1; j <= p + k; ++j)
+                                    sb.append((j > p + 1) ? " " : "")
+                                        .append(t.get(j));
+                                expected.add(sb.toString());
+                                break;
+                            }
+                        }
+                    }
+                }
+                assertEquals(pair.toString(), expected, found.get(i));
+            }
+
+            // Patterns with wildcards, compared against a regular expression
+            List<String[]> patterns = new ArrayList<String[]>();
+            Random random = new Random(2);
+            for (int i = 0; i < 200; ++i) {
+                String[] pattern = new String[1 + random.nextInt(4)];
+                for (int j = 0; j < pattern.length; ++j)
+                    pattern[j] = (random.nextInt(3) == 0)
+                        ? null : WORDS[random.nextInt(WORDS.length)];
+                patterns.add(pattern);
+            }
+            patterns.add(new String[] { null, null, null });
+            patterns.add(new String[] { "missing" });
+            int[] lineCounts = index.countLines(patterns);
+            for (int i = 0; i < patterns.size(); ++i) {
+                StringBuilder regex = new StringBuilder(".*\\s");
+                for (String word : patterns.get(i))
+                    regex.append((word == null)
+                                 ? "[\\w]+" : Pattern.quote(word))
+                        .append("\\s+");
+                regex.append(".*");
+                int expected = 0;
+                for (List<String> doc : docs)
+                    for (String line : doc)
+                        if ((" " + line + " ").matches(regex.toString()))
+                            expected++;
+                assertEquals(Arrays.toString(patterns.get(i)),
+                             expected, lineCounts[i]);
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test public void testEmptyFilesAndLines() throws Exception {
+        File dir = tempDir();
+        try {
+            new FileWriter(new File(dir, "empty.txt")).close();
+            PrintWriter pw = new PrintWriter(new File(dir, "lines.txt"));
+            pw.println("");
+            pw.println("x y");
+            pw.println("");
+            pw.println("");
+            pw.println("y x");
+            pw.println("");
+            pw.close();
+            new FileWriter(new File(dir, "empty2.txt")).close();
+
+            PhraseIndex index = new PhraseIndex(dir);
+            assertEquals(4, index.numTokens());
+            assertEquals(2, index.frequency("x"));
+            assertEquals(1, index.countLines(new String[] { "x", "y" }));
+            assertEquals(2, index.countLines(new String[] { null, null }));
+            assertEquals(0,
+                         index.countLines(new String[] { null, null, null }));
+            // "x y y x" spans lines but stays within the document
+            assertEquals(1, index.countPhrase("x", "y", 0));
+            assertEquals(3, index.countPhrase("x", "y", 2));
+            assertEquals(Collections.singleton("y y"),
+                         index.findInterveningWords("x", "x", 1, 3));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test(expected=IOException.class) public void testMissingDirectory()
+            throws Exception {
+        new PhraseIndex(new File("/no/such/directory"));
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.mains;
+
+import edu.ucla.sspace.common.SemanticSpace;
+
+import edu.ucla.sspace.text.Document;
+import edu.ucla.sspace.text.StringDocument;
+
+import edu.ucla.sspace.vector.Vector;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class DocumentSchedulerTests {
+
+    /**
+     * A space that records the documents it processes and fails on documents
+     * containing "fail".
+     */
+    private static class RecordingSpace implements SemanticSpace {
+
+        final Set<String> seen = Collections.newSetFromMap(
+            new ConcurrentHashMap<String,Boolean>());
+
+        final AtomicInteger active = new AtomicInteger();
+
+        public void processDocument(BufferedReader document) 
+                throws IOException {
+            String text = document.readLine();
+            active.incrementAndGet();
+            try {
+                if (!seen.add(text))
+                    throw new IllegalStateException("duplicate: " + text);
+                if (text.contains("fail"))
+                    throw new IOException("expected failure");
+                // Make some documents much slower than others
+                if (text.endsWith("0"))
+                    Thread.sleep(2);
+            } catch (InterruptedException ie) {
+                throw new IOException(ie);
+            } finally {
+                active.decrementAndGet();
+            }
+        }
+
+        public Set<String> getWords() { return Collections.emptySet(); }
+        public Vector getVector(String word) { return null; }
+        public void processSpace(Properties properties) { }
+        public String getSpaceName() { return "recording"; }
+        public int getVectorLength() { return 0; }
+    }
+
+    /**
+     * An iterator that counts the documents it has returned.
+     */
+    private static class CountingIterator implements Iterator<Document> {
+
+        final int numDocs;
+
+        int returned;
+
+        CountingIterator(int numDocs) {
+            this.numDocs = numDocs;
+        }
+
+        public synchronized boolean hasNext() {
+            return returned < numDocs;
+        }
+
+        public synchronized Document next() {
+            int i = returned++;
+            return new StringDocument((i == 7) ? "fail " + i : "doc " + i);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static DocumentProcessingMetrics run(DocumentScheduler scheduler,
+                                                 RecordingSpace space,
+                                                 int numDocs) 
+            throws InterruptedException {
+        DocumentProcessingMetrics metrics = new DocumentProcessingMetrics();
+        // Silence the stack trace of the expected failure
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(new ByteArrayOutputStream()));
+        try {
+            scheduler.processDocuments(
+                space, new CountingIterator(numDocs), 3, metrics);
+        } finally {
+            System.setErr(err);
+        }
+        return metrics;
+    }
+
+    @Test public void testWorkStealingProcessesAll() throws Exception {
+        RecordingSpace space = new RecordingSpace();
+        DocumentProcessingMetrics metrics = 
+            run(new WorkStealingDocumentScheduler(4, 2), space, 500);
+        assertEquals(500, space.seen.size());
+        assertEquals(0, space.active.get());
+        assertEquals(500, metrics.getDocumentsProcessed());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(0, metrics.getQueueDepth());
+        // batch size * batches per thread * threads
+        assertTrue(metrics.getMaxQueueDepth() <= 4 * 2 * 3);
+        assertTrue(metrics.getMaxQueueDepth() > 0);
+    }
+
+    @Test public void testWorkStealingEmptyIterator() throws Exception {
+        RecordingSpace space = new RecordingSpace();
+        DocumentProcessingMetrics metrics = 
+            run(new WorkStealingDocumentScheduler(), space, 0);
+        assertEquals(0, metrics.getDocumentsProcessed());
+        assertEquals(0, metrics.getLatencyPercentile(50), 0);
+    }
+
+    @Test public void testThreadedProcessesAll() throws Exception {
+        RecordingSpace space = new RecordingSpace();
+        DocumentProcessingMetrics metrics = 
+            run(new ThreadedDocumentScheduler(), space, 200);
+        assertEquals(200, space.seen.size());
+        assertEquals(200, metrics.getDocumentsProcessed());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(0, metrics.getQueueDepth());
+    }
+
+    @Test public void testLatencyHistogram() {
+        DocumentProcessingMetrics metrics = new DocumentProcessingMetrics();
+        metrics.started();
+        metrics.documentsQueued(4);
+        assertEquals(4, metrics.getQueueDepth());
+        metrics.documentProcessed(500, true);          // < 1 microsecond
+        metrics.documentProcessed(3000, true);         // 3 microseconds
+        metrics.documentProcessed(3000, true);
+        metrics.documentProcessed(5000000, false);     // 5 milliseconds
+        metrics.finished();
+        long[] histogram = metrics.getLatencyHistogram();
+        assertEquals(1, histogram[0]);
+        assertEquals(2, histogram[2]);
+        assertEquals(1, histogram[13]);
+        assertEquals(.004, metrics.getLatencyPercentile(50), 1e-12);
+        assertEquals(8.192, metrics.getLatencyPercentile(100), 1e-12);
+        assertEquals(1, metrics.getFailures());
+        assertEquals(4, metrics.getMaxQueueDepth());
+        assertEquals(0, metrics.getQueueDepth());
+        assertTrue(metrics.getThroughput() > 0);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.common.Similarity;
+import edu.ucla.sspace.common.Similarity.SimType;
+
+import edu.ucla.sspace.matrix.AffinityMatrixCreator.EdgeType;
+import edu.ucla.sspace.matrix.AffinityMatrixCreator.EdgeWeighting;
+import edu.ucla.sspace.matrix.AffinityMatrixCreator.NeighborSearch;
+
+import edu.ucla.sspace.vector.DoubleVector;
+import edu.ucla.sspace.vector.SparseDoubleVector;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link AffinityMatrixCreator} 
+ */
+public class AffinityMatrixCreatorTests {
+
+    private static Matrix randomMatrix(int rows, int cols, long seed) {
+        Random rand = new Random(seed);
+        Matrix m = new ArrayMatrix(rows, cols);
+        for (int r = 0; r < rows; ++r)
+            for (int c = 0; c < cols; ++c)
+                m.set(r, c, rand.nextDouble() - .5);
+        return m;
+    }
+
+    /**
+     * Returns the {@code k} rows most similar to the row by comparing it with
+     * every other row.
+     */
+    private static int[] naiveNeighbors(Matrix m, int row, int k,
+                                        SimType sim) {
+        final double[] sims = new double[m.rows()];
+        Integer[] others = new Integer[m.rows() - 1];
+        for (int r = 0, i = 0; r < m.rows(); ++r) {
+            if (r == row)
+                continue;
+            sims[r] = Similarity.getSimilarity(
+                sim, m.getRowVector(row), m.getRowVector(r));
+            others[i++] = r;
+        }
+        Arrays.sort(others, new java.util.Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return Double.compare(sims[b], sims[a]);
+                }
+            });
+        int[] neighbors = new int[k];
+        for (int i = 0; i < k; ++i)
+            neighbors[i] = others[i];
+        Arrays.sort(neighbors);
+        return neighbors;
+    }
+
+    private static void checkNearestNeighbors(SimType sim) {
+        // Use more rows than a single block to test the parallel blocks
+        Matrix m = randomMatrix(150, 10, 1);
+        int k = 5;
+        SparseMatrix affinities = AffinityMatrixCreator.calculateInMemory(
+            m, sim, EdgeType.NEAREST_NEIGHBORS, k, 
+            EdgeWeighting.COSINE_SIMILARITY, 0);
+        assertEquals(m.rows(), affinities.rows());
+        assertEquals(m.rows(), affinities.columns());
+        for (int r = 0; r < m.rows(); ++r) {
+            SparseDoubleVector row = affinities.getRowVector(r);
+            int[] expected = naiveNeighbors(m, r, k, sim);
+            for (int c = 0; c < m.rows(); ++c) {
+                if (Arrays.binarySearch(expected, c) >= 0)
+                    assertEquals(Similarity.cosineSimilarity(
+                        m.getRowVector(r), m.getRowVector(c)), 
+                                 row.get(c), 1e-9);
+                else
+                    assertEquals(0, row.get(c), 0);
+            }
+        }
+    }
+
+    @Test public void testNearestNeighborsCosine() {
+        checkNearestNeighbors(SimType.COSINE);
+    }
+
+    @Test public void testNearestNeighborsEuclidean() {
+        checkNearestNeighbors(SimType.EUCLIDEAN);
+    }
+
+    @Test public void testSparseNearestNeighborsCosine() {
+        // Most rows share no columns with each other, so their neighbors
+        // include rows with a similarity of zero
+        Random rand = new Random(4);
+        Matrix m = new YaleSparseMatrix(100, 400);
+        for (int r = 0; r < m.rows(); ++r)
+            m.set(r, rand.nextInt(m.columns()), 1);
+        int k = 5;
+        SparseMatrix affinities = AffinityMatrixCreator.calculateInMemory(
+            m, SimType.COSINE, EdgeType.NEAREST_NEIGHBORS, k,
+            EdgeWeighting.BINARY, 0);
+        for (int r = 0; r < m.rows(); ++r) {
+            SparseDoubleVector row = affinities.getRowVector(r);
+            assertEquals(k, row.getNonZeroIndices().length);
+            assertEquals(0, row.get(r), 0);
+        }
+    }
+
+    @Test public void testApproximateNearestNeighbors() {
+        Matrix m = randomMatrix(200, 20, 2);
+        int k = 5;
+        SparseMatrix affinities = AffinityMatrixCreator.calculateInMemory(
+            m, SimType.COSINE, EdgeType.NEAREST_NEIGHBORS, k, 
+            EdgeWeighting.BINARY, 0, NeighborSearch.RANDOM_PROJECTION);
+        assertEquals(m.rows(), affinities.rows());
+        int found = 0;
+        for (int r = 0; r < m.rows(); ++r) {
+            SparseDoubleVector row = affinities.getRowVector(r);
+            int[] nz = row.getNonZeroIndices();
+            assertTrue(nz.length <= k);
+            assertEquals(0, row.get(r), 0);
+            for (int c : naiveNeighbors(m, r, k, SimType.COSINE))
+                if (row.get(c) == 1)
+                    found++;
+        }
+        // The approximate neighbors should include most of the exact ones
+        assertTrue(found > m.rows() * k / 2);
+    }
+
+    @Test public void testMinSimilarity() {
+        Matrix m = randomMatrix(150, 10, 3);
+        double threshold = .3;
+        SparseMatrix affinities = AffinityMatrixCreator.calculateInMemory(
+            m, SimType.COSINE, EdgeType.MIN_SIMILARITY, threshold, 
+            EdgeWeighting.GAUSSIAN_KERNEL, 1);
+        for (int r = 0; r < m.rows(); ++r) {
+            SparseDoubleVector row = affinities.getRowVector(r);
+            int[] nz = row.getNonZeroIndices();
+            for (int i = 1; i < nz.length; ++i)
+                assertTrue(nz[i - 1] < nz[i]);
+            for (int c = 0; c < m.rows(); ++c) {
+                DoubleVector v1 = m.getRowVector(r);
+                DoubleVector v2 = m.getRowVector(c);
+                assertEquals(affinities.get(c, r), row.get(c), 0);
+                if (r != c && Similarity.cosineSimilarity(v1, v2) > threshold)
+                    assertEquals(Math.exp(-Similarity.euclideanDistance(v1, v2)
+                                          / 1), row.get(c), 1e-9);
+                else
+                    assertEquals(0, row.get(c), 0);
+            }
+        }
+    }
+
+    @Test public void testCalculateWritesMatrix() throws Exception {
+        Matrix m = randomMatrix(70, 10, 4);
+        SparseMatrix expected = AffinityMatrixCreator.calculateInMemory(
+            m, SimType.COSINE, EdgeType.MIN_SIMILARITY, .5, 
+            EdgeWeighting.COSINE_SIMILARITY, 0);
+        MatrixFile file = AffinityMatrixCreator.calculate(
+            m, SimType.COSINE, EdgeType.MIN_SIMILARITY, .5, 
+            EdgeWeighting.COSINE_SIMILARITY, 0);
+        file.getFile().deleteOnExit();
+        assertEquals(MatrixIO.Format.MATLAB_SPARSE, file.getFormat());
+        Matrix read = MatrixIO.readMatrix(file.getFile(), file.getFormat());
+        assertEquals(m.rows(), read.rows());
+        assertEquals(m.rows(), read.columns());
+        for (int r = 0; r < m.rows(); ++r)
+            for (int c = 0; c < m.rows(); ++c)
+                assertEquals(expected.get(r, c), read.get(r, c), 1e-9);
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.common.Similarity;
+
+import edu.ucla.sspace.util.SortedMultiMap;
+import edu.ucla.sspace.util.WorkQueue;
+
+import edu.ucla.sspace.vector.Vector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link BlockedRowComparator}
+ */
+public class BlockedRowComparatorTests {
+
+    private static Matrix randomMatrix(Matrix m, double density, long seed) {
+        Random rand = new Random(seed);
+        for (int r = 0; r < m.rows(); ++r) {
+            for (int c = 0; c < m.columns(); ++c) {
+                if (rand.nextDouble() < density)
+                    m.set(r, c, rand.nextGaussian());
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Returns the {@code k} highest similarities of the row to all other rows,
+     * in decreasing order.
+     */
+    private static List<Double> bruteForce(Matrix m, int row, int k) {
+        List<Double> sims = new ArrayList<Double>();
+        for (int other = 0; other < m.rows(); ++other) {
+            if (other == row)
+                continue;
+            double sim = Similarity.cosineSimilarity(m.getRowVector(row),
+                                                     m.getRowVector(other));
+            sims.add(sim);
+        }
+        Collections.sort(sims, Collections.reverseOrder());
+        return sims.subList(0, Math.min(k, sims.size()));
+    }
+
+    private static void assertMatchesBruteForce(
+            Matrix m, List<SortedMultiMap<Double,Integer>> results, int k) {
+        assertEquals(m.rows(), results.size());
+        for (int row = 0; row < m.rows(); ++row) {
+            SortedMultiMap<Double,Integer> neighbors = results.get(row);
+            List<Double> actual = new ArrayList<Double>();
+            for (Map.Entry<Double,Integer> e : neighbors.entrySet()) {
+                assertTrue(e.getValue() != row);
+                // Check that the reported similarity belongs to the row
+                assertEquals(Similarity.cosineSimilarity(
+                                 m.getRowVector(row),
+                                 m.getRowVector(e.getValue())),
+                             e.getKey(), 1e-9);
+                actual.add(e.getKey());
+            }
+            Collections.sort(actual, Collections.reverseOrder());
+            List<Double> expected = bruteForce(m, row, k);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); ++i)
+                assertEquals(expected.get(i), actual.get(i), 1e-9);
+        }
+    }
+
+    @Test public void testDense() {
+        Matrix m = randomMatrix(new ArrayMatrix(150, 20), 1, 1);
+        BlockedRowComparator comparator =
+            new BlockedRowComparator(new WorkQueue(3));
+        assertMatchesBruteForce(m, comparator.getMostSimilar(m, 5), 5);
+    }
+
+    @Test public void testDenseWithManyCandidateBlocks() {
+        // Use enough columns that the candidate rows span several blocks
+        Matrix m = randomMatrix(new ArrayMatrix(100, 4000), 1, 2);
+        BlockedRowComparator comparator =
+            new BlockedRowComparator(new WorkQueue(2));
+        assertMatchesBruteForce(m, comparator.getMostSimilar(m, 3), 3);
+    }
+
+    @Test public void testSparse() {
+        Matrix m = randomMatrix(new YaleSparseMatrix(300, 200), .02, 3);
+        BlockedRowComparator comparator =
+            new BlockedRowComparator(new WorkQueue(4));
+        assertMatchesBruteForce(m, comparator.getMostSimilar(m, 4), 4);
+    }
+
+    @Test public void testSparseReportsZeroSimilarities() {
+        // Most rows share no columns, so their neighbors are mostly padded
+        // with rows of zero similarity
+        Matrix m = randomMatrix(new YaleSparseMatrix(100, 500), .004, 7);
+        BlockedRowComparator comparator =
+            new BlockedRowComparator(new WorkQueue(2));
+        List<SortedMultiMap<Double,Integer>> results =
+            comparator.getMostSimilar(m, 5);
+        for (SortedMultiMap<Double,Integer> neighbors : results)
+            assertEquals(5, neighbors.range());
+        assertMatchesBruteForce(m, results, 5);
+    }
+
+    @Test public void testDenseWithoutCopy() {
+        Matrix m = randomMatrix(new ArrayMatrix(150, 20), 1, 8);
+        List<Vector> rows = new ArrayList<Vector>();
+        for (int r = 0; r < m.rows(); ++r)
+            rows.add(m.getRowVector(r));
+        final List<SortedMultiMap<Double,Integer>> results =
+            new ArrayList<SortedMultiMap<Double,Integer>>();
+        new BlockedRowComparator(new WorkQueue(2)).getMostSimilar(rows, 5,
+            new BlockedRowComparator.NeighborHandler() {
+                public void handle(int row,
+                                   SortedMultiMap<Double,Integer> neighbors) {
+                    results.add(neighbors);
+                }
+            }, false);
+        assertMatchesBruteForce(m, results, 5);
+    }
+
+    @Test public void testFitsInMemory() {
+        assertTrue(BlockedRowComparator.fitsInMemory(100, 100));
+        assertFalse(BlockedRowComparator.fitsInMemory(100000, 100000));
+    }
+
+    @Test public void testSparseWithManyCandidateBlocks() {
+        // Use enough rows that the candidate rows span several blocks
+        Matrix m = randomMatrix(new YaleSparseMatrix(50000, 30), .05, 4);
+        BlockedRowComparator comparator =
+            new BlockedRowComparator(new WorkQueue(4));
+        final List<SortedMultiMap<Double,Integer>> results =
+            comparator.getMostSimilar(m, 2);
+        assertEquals(m.rows(), results.size());
+        // Check a sample of the rows, since brute force is slow
+        Random rand = new Random(5);
+        for (int i = 0; i < 20; ++i) {
+            int row = rand.nextInt(m.rows());
+            List<Double> expected = bruteForce(m, row, 2);
+            List<Double> actual = new ArrayList<Double>();
+            for (Map.Entry<Double,Integer> e : results.get(row).entrySet())
+                actual.add(e.getKey());
+            Collections.sort(actual, Collections.reverseOrder());
+            assertEquals(expected.size(), actual.size());
+            for (int j = 0; j < expected.size(); ++j)
+                assertEquals(expected.get(j), actual.get(j), 1e-9);
+        }
+    }
+
+    @Test public void testHandlerOrder() {
+        Matrix m = randomMatrix(new ArrayMatrix(500, 5), 1, 6);
+        final List<Integer> order = new ArrayList<Integer>();
+        new BlockedRowComparator(new WorkQueue(4)).getMostSimilar(m, 2,
+            new BlockedRowComparator.NeighborHandler() {
+                public void handle(int row,
+                                   SortedMultiMap<Double,Integer> neighbors) {
+                    order.add(row);
+                    assertEquals(2, neighbors.size());
+                }
+            });
+        assertEquals(500, order.size());
+        for (int i = 0; i < order.size(); ++i)
+            assertEquals(i, order.get(i).intValue());
+    }
+
+    @Test public void testTopK() {
+        BlockedRowComparator.TopK heap = new BlockedRowComparator.TopK(3);
+        double[] sims = { .5, .1, .9, .3, .7, .2, .8 };
+        for (int i = 0; i < sims.length; ++i)
+            heap.offer(sims[i], i);
+        SortedMultiMap<Double,Integer> map = heap.toMultiMap();
+        assertEquals(3, map.size());
+        assertTrue(map.containsKey(.9));
+        assertTrue(map.containsKey(.8));
+        assertTrue(map.containsKey(.7));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.matrix.MemoryMappedMatrix.Layout;
+
+import edu.ucla.sspace.vector.CompactSparseVector;
+import edu.ucla.sspace.vector.DoubleVector;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.nio.ReadOnlyBufferException;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link MemoryMappedMatrix} 
+ */
+public class MemoryMappedMatrixTests {
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("MemoryMappedMatrixTests", ".matrix");
+        f.deleteOnExit();
+        return f;
+    }
+
+    private static double[][] randomValues(int rows, int cols, Random rand) {
+        double[][] values = new double[rows][cols];
+        for (int r = 0; r < rows; ++r)
+            for (int c = 0; c < cols; ++c)
+                values[r][c] = rand.nextDouble();
+        return values;
+    }
+
+    /**
+     * Checks every form of access against the expected values
+     */
+    private static void assertMatrixEquals(double[][] expected, Matrix m) {
+        assertEquals(expected.length, m.rows());
+        assertEquals(expected[0].length, m.columns());
+        for (int r = 0; r < m.rows(); ++r) {
+            assertArrayEquals(expected[r], m.getRow(r), 0);
+            DoubleVector v = m.getRowVector(r);
+            assertEquals(m.columns(), v.length());
+            for (int c = 0; c < m.columns(); ++c) {
+                assertEquals(expected[r][c], m.get(r, c), 0);
+                assertEquals(expected[r][c], v.get(c), 0);
+            }
+        }
+        for (int c = 0; c < m.columns(); ++c) {
+            double[] column = m.getColumn(c);
+            for (int r = 0; r < m.rows(); ++r)
+                assertEquals(expected[r][c], column[r], 0);
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorIllegalSize() {
+        new MemoryMappedMatrix(0, 3);
+    }
+
+    @Test public void testSetAndGet() {
+        for (Layout layout : Layout.values()) {
+            Matrix m = new MemoryMappedMatrix(3, 3, layout);
+            assertEquals(0, m.get(2, 2), 0);
+            m.set(2, 2, 1.5);
+            m.set(0, 1, -2);
+            assertEquals(1.5, m.get(2, 2), 0);
+            assertEquals(-2, m.get(0, 1), 0);
+            assertEquals(0, m.get(1, 0), 0);
+        }
+    }
+
+    @Test(expected=ArrayIndexOutOfBoundsException.class)
+    public void testGetOutOfBounds() {
+        new MemoryMappedMatrix(3, 3).get(0, 3);
+    }
+
+    @Test public void testRowsAndColumns() throws IOException {
+        Random rand = new Random(1);
+        for (Layout layout : Layout.values()) {
+            int tileSize = (layout == Layout.TILED) ? 4 : 1;
+            // Use sizes that are not multiples of the tile size
+            double[][] values = randomValues(13, 10, rand);
+            MemoryMappedMatrix m = MemoryMappedMatrix.create(
+                tempFile(), 13, 10, layout, tileSize);
+            for (int r = 0; r < 13; ++r)
+                m.setRow(r, values[r]);
+            assertMatrixEquals(values, m);
+
+            double[] column = new double[13];
+            for (int r = 0; r < 13; ++r) 
+                column[r] = values[r][3] = r;
+            m.setColumn(3, column);
+            assertMatrixEquals(values, m);
+        }
+    }
+
+    @Test public void testMultipleRegions() throws IOException {
+        Random rand = new Random(2);
+        for (Layout layout : Layout.values()) {
+            int tileSize = (layout == Layout.TILED) ? 3 : 1;
+            double[][] values = randomValues(20, 7, rand);
+            // Each region holds at most two rows of tiles or six rows
+            MemoryMappedMatrix m = MemoryMappedMatrix.create(
+                tempFile(), 20, 7, layout, tileSize, 6 * 9 * 8);
+            for (int r = 0; r < 20; ++r)
+                for (int c = 0; c < 7; ++c)
+                    m.set(r, c, values[r][c]);
+            assertMatrixEquals(values, m);
+        }
+    }
+
+    @Test public void testReopen() throws IOException {
+        Random rand = new Random(3);
+        for (Layout layout : Layout.values()) {
+            File f = tempFile();
+            double[][] values = randomValues(9, 5, rand);
+            MemoryMappedMatrix m = MemoryMappedMatrix.create(f, 9, 5, layout);
+            for (int r = 0; r < 9; ++r)
+                m.setRow(r, values[r]);
+            m.force();
+
+            MemoryMappedMatrix reopened = MemoryMappedMatrix.open(f);
+            assertEquals(layout, reopened.getLayout());
+            assertMatrixEquals(values, reopened);
+            // Changes to the reopened matrix are visible in the original
+            reopened.set(1, 1, 42);
+            assertEquals(42, m.get(1, 1), 0);
+        }
+    }
+
+    @Test(expected=ReadOnlyBufferException.class)
+    public void testReadOnly() throws IOException {
+        File f = tempFile();
+        MemoryMappedMatrix.create(f, 2, 2).set(0, 0, 1);
+        MemoryMappedMatrix m = MemoryMappedMatrix.open(f, true);
+        assertTrue(m.isReadOnly());
+        assertEquals(1, m.get(0, 0), 0);
+        m.set(0, 0, 2);
+    }
+
+    @Test(expected=MatrixIOException.class)
+    public void testOpenInvalidFile() throws IOException {
+        File f = tempFile();
+        FileWriter fw = new FileWriter(f);
+        for (int i = 0; i < 100; ++i)
+            fw.write("not a matrix");
+        fw.close();
+        MemoryMappedMatrix.open(f);
+    }
+
+    @Test public void testRowVectorIsView() {
+        MemoryMappedMatrix m = new MemoryMappedMatrix(4, 3);
+        DoubleVector row = m.getRowVector(2);
+        row.set(1, 5);
+        row.add(1, 1);
+        assertEquals(6, m.get(2, 1), 0);
+        m.set(2, 0, 3);
+        assertEquals(3, row.get(0), 0);
+        assertEquals(0, m.get(1, 1), 0);
+        assertEquals(0, m.get(3, 1), 0);
+        assertArrayEquals(new double[] {3, 6, 0}, row.toArray(), 0);
+    }
+
+    @Test public void testSetSparseRow() {
+        MemoryMappedMatrix m = new MemoryMappedMatrix(2, 4, Layout.TILED);
+        m.setRow(0, new double[] { 1, 2, 3, 4 });
+        CompactSparseVector v = new CompactSparseVector(4);
+        v.set(2, 7);
+        m.setRow(0, v);
+        assertArrayEquals(new double[] { 0, 0, 7, 0 }, m.getRow(0), 0);
+    }
+}
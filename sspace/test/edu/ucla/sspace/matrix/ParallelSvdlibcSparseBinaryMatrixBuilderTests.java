@@ -0,0 +1,234 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.matrix.MatrixIO.Format;
+
+import edu.ucla.sspace.util.*;
+import edu.ucla.sspace.vector.*;
+
+import java.io.*;
+
+import java.util.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link
+ * ParallelSvdlibcSparseBinaryMatrixBuilder}
+ */
+public class ParallelSvdlibcSparseBinaryMatrixBuilderTests {
+
+    private static final double[][] values = {{1, 0, 1, 2, 4},
+                                              {3, 5, 0, 0, 1},
+                                              {1, 1, 1, 0, 0}};
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("test-parallel-builder", ".dat");
+        f.deleteOnExit();
+        return f;
+    }
+
+    /**
+     * Checks that the matrix file contains the columns of {@code values}, or
+     * their transpose.
+     */
+    private static void testFileWithData(double[][] values, File mFile,
+                                         boolean transposed)
+            throws IOException {
+        Matrix m = MatrixIO.readMatrix(mFile, Format.SVDLIBC_SPARSE_BINARY);
+        int rows = (transposed) ? values.length : values[0].length;
+        int cols = (transposed) ? values[0].length : values.length;
+        assertEquals(rows, m.rows());
+        assertEquals(cols, m.columns());
+        for (int c = 0; c < values.length; ++c) {
+            for (int r = 0; r < values[c].length; ++r) {
+                double v = (transposed) ? m.get(c, r) : m.get(r, c);
+                assertEquals(values[c][r], v, .0001);
+            }
+        }
+    }
+
+    @Test public void testAddColumnTypes() throws Exception {
+        for (boolean transpose : new boolean[] { false, true }) {
+            for (int type = 0; type < 4; ++type) {
+                MatrixBuilder builder =
+                    new ParallelSvdlibcSparseBinaryMatrixBuilder(
+                        tempFile(), transpose);
+                for (int col = 0; col < values.length; ++col) {
+                    int index = -1;
+                    switch (type) {
+                    case 0:
+                        index = builder.addColumn(values[col]);
+                        break;
+                    case 1:
+                        index = builder.addColumn(
+                            new CompactSparseVector(values[col]));
+                        break;
+                    case 2:
+                        index = builder.addColumn(
+                            new DenseVector(values[col]));
+                        break;
+                    case 3:
+                        index = builder.addColumn(
+                            new SparseDoubleArray(values[col]));
+                        break;
+                    }
+                    assertEquals(col, index);
+                }
+                builder.finish();
+                assertTrue(builder.isFinished());
+                testFileWithData(values, builder.getFile(), transpose);
+            }
+        }
+    }
+
+    @Test public void testHeaderAndSortedRows() throws Exception {
+        MatrixBuilder builder =
+            new ParallelSvdlibcSparseBinaryMatrixBuilder(tempFile(), true);
+        for (double[] column : values)
+            builder.addColumn(column);
+        builder.finish();
+
+        // Compare with the file written by the single-stream builder
+        MatrixBuilder expected = new SvdlibcSparseBinaryMatrixBuilder(
+            tempFile(), false);
+        for (int row = 0; row < values[0].length; ++row) {
+            double[] column = new double[values.length];
+            for (int col = 0; col < values.length; ++col)
+                column[col] = values[col][row];
+            expected.addColumn(column);
+        }
+        expected.finish();
+        assertEquals(expected.getFile().length(), builder.getFile().length());
+        DataInputStream a = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(expected.getFile())));
+        DataInputStream b = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(builder.getFile())));
+        for (long i = 0; i < expected.getFile().length(); ++i)
+            assertEquals(a.readByte(), b.readByte());
+        a.close();
+        b.close();
+    }
+
+    @Test public void testConcurrentColumns() throws Exception {
+        final int numColumns = 2000;
+        final int numRows = 300;
+        for (boolean transpose : new boolean[] { false, true }) {
+            for (long budget : new long[] { 1, 1 << 20 }) {
+                final MatrixBuilder builder =
+                    new ParallelSvdlibcSparseBinaryMatrixBuilder(
+                        tempFile(), transpose, budget);
+                final double[][] columns = new double[numColumns][];
+                Thread[] threads = new Thread[4];
+                for (int t = 0; t < threads.length; ++t) {
+                    final long seed = t;
+                    threads[t] = new Thread() {
+                            public void run() {
+                                Random random = new Random(seed);
+                                for (int i = 0; i < numColumns / 4; ++i) {
+                                    double[] column = new double[numRows];
+                                    for (int j = 0; j < 10; ++j)
+                                        column[random.nextInt(numRows)] =
+                                            random.nextInt(100) + 1;
+                                    SparseArray<Double> sparse =
+                                        new SparseDoubleArray(column);
+                                    int index = builder.addColumn(sparse);
+                                    columns[index] = column;
+                                }
+                            }
+                        };
+                    threads[t].start();
+                }
+                for (Thread thread : threads)
+                    thread.join();
+                builder.finish();
+                testFileWithData(columns, builder.getFile(), transpose);
+            }
+        }
+    }
+
+    @Test public void testFinishDuringAdd() throws Exception {
+        final MatrixBuilder builder =
+            new ParallelSvdlibcSparseBinaryMatrixBuilder(tempFile(), true);
+        final AtomicInteger added = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread() {
+                    public void run() {
+                        try {
+                            for (int i = 0; i < 100000; ++i) {
+                                builder.addColumn(values[0]);
+                                added.incrementAndGet();
+                            }
+                        } catch (IllegalStateException ise) {
+                            // The matrix was finished
+                        }
+                    }
+                };
+            threads[t].start();
+        }
+        Thread.sleep(20);
+        builder.finish();
+        for (Thread thread : threads)
+            thread.join();
+
+        // Every column that was added before the matrix was finished should
+        // be in the file
+        Matrix m = MatrixIO.readMatrix(
+            builder.getFile(), Format.SVDLIBC_SPARSE_BINARY);
+        assertEquals(added.get(), m.rows());
+        for (int row = 0; row < m.rows(); ++row)
+            assertArrayEquals(values[0], m.getRow(row), 0);
+    }
+
+    @Test public void testEmptyMatrix() throws Exception {
+        MatrixBuilder builder =
+            new ParallelSvdlibcSparseBinaryMatrixBuilder(tempFile(), true);
+        builder.finish();
+        DataInputStream dis = new DataInputStream(
+            new FileInputStream(builder.getFile()));
+        assertEquals(0, dis.readInt());
+        assertEquals(0, dis.readInt());
+        assertEquals(0, dis.readInt());
+        assertEquals(-1, dis.read());
+        dis.close();
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testAddAfterFinish() throws Exception {
+        MatrixBuilder builder =
+            new ParallelSvdlibcSparseBinaryMatrixBuilder(tempFile());
+        builder.finish();
+        builder.addColumn(values[0]);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void testGetFileBeforeFinish() throws Exception {
+        new ParallelSvdlibcSparseBinaryMatrixBuilder(tempFile()).getFile();
+    }
+}
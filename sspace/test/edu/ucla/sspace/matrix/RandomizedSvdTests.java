@@ -0,0 +1,192 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.matrix.MatrixIO.Format;
+
+import java.io.File;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link RandomizedSvd}
+ */
+public class RandomizedSvdTests {
+
+    /**
+     * Returns a sparse matrix whose non-zero cells are the sum of a low rank
+     * matrix with decaying singular values and noise.  The matrix is only low
+     * rank if every cell is filled.
+     */
+    private static Matrix lowRankMatrix(int rows, int cols, int rank,
+                                        double noise, double density,
+                                        long seed) {
+        Random rand = new Random(seed);
+        double[][] left = new double[rank][rows];
+        double[][] right = new double[rank][cols];
+        for (int r = 0; r < rank; ++r) {
+            for (int i = 0; i < rows; ++i)
+                left[r][i] = rand.nextGaussian();
+            for (int j = 0; j < cols; ++j)
+                right[r][j] = rand.nextGaussian();
+        }
+        Matrix m = new YaleSparseMatrix(rows, cols);
+        for (int i = 0; i < rows; ++i) {
+            for (int j = 0; j < cols; ++j) {
+                // Keep the matrix sparse by only filling some cells
+                if (rand.nextDouble() >= density)
+                    continue;
+                double value = 0;
+                for (int r = 0; r < rank; ++r)
+                    value += left[r][i] * right[r][j] / (r + 1);
+                value += noise * rand.nextGaussian();
+                m.set(i, j, value);
+            }
+        }
+        return m;
+    }
+
+    private static void assertOrthonormalColumns(Matrix m) {
+        for (int c1 = 0; c1 < m.columns(); ++c1) {
+            for (int c2 = c1; c2 < m.columns(); ++c2) {
+                double dot = 0;
+                for (int r = 0; r < m.rows(); ++r)
+                    dot += m.get(r, c1) * m.get(r, c2);
+                assertEquals((c1 == c2) ? 1 : 0, dot, 1e-8);
+            }
+        }
+    }
+
+    private static void assertSameSingularValues(Matrix expected,
+                                                 Matrix actual, int k,
+                                                 double tolerance) {
+        for (int i = 0; i < k; ++i)
+            assertEquals(expected.get(i, i), actual.get(i, i),
+                         tolerance * expected.get(0, 0));
+    }
+
+    @Test public void testMatchesJama() {
+        Matrix m = lowRankMatrix(120, 80, 10, .01, 1, 1);
+        Matrix[] exact = SVD.svd(m, SVD.Algorithm.JAMA, 10);
+        Matrix[] usv = RandomizedSvd.svd(m, 10, 10, 2, new Random(2));
+
+        assertEquals(120, usv[0].rows());
+        assertEquals(10, usv[0].columns());
+        assertEquals(10, usv[1].rows());
+        assertEquals(10, usv[2].rows());
+        assertEquals(80, usv[2].columns());
+        assertSameSingularValues(exact[1], usv[1], 10, 1e-3);
+        assertOrthonormalColumns(usv[0]);
+        assertOrthonormalColumns(Matrices.transpose(usv[2]));
+
+        // Check that the factors reconstruct the best rank-k approximation by
+        // comparing the top singular vectors up to their sign
+        for (int c = 0; c < 3; ++c) {
+            double dot = 0;
+            for (int r = 0; r < m.rows(); ++r)
+                dot += exact[0].get(r, c) * usv[0].get(r, c);
+            assertEquals(1, Math.abs(dot), 1e-3);
+        }
+    }
+
+    @Test public void testExactForLowRank() {
+        Matrix m = lowRankMatrix(60, 40, 3, 0, 1, 3);
+        Matrix[] exact = SVD.svd(m, SVD.Algorithm.JAMA, 5);
+        Matrix[] usv = RandomizedSvd.svd(m, 5, 5, 1, new Random(4));
+        assertSameSingularValues(exact[1], usv[1], 5, 1e-8);
+    }
+
+    @Test public void testRankDeficient() {
+        Matrix m = new YaleSparseMatrix(10, 6);
+        for (int i = 0; i < 10; ++i) {
+            m.set(i, 0, i + 1);
+            m.set(i, 3, 2 * (i + 1));
+        }
+        Matrix[] usv = RandomizedSvd.svd(m, 4, 2, 2, new Random(5));
+        assertEquals(4, usv[1].rows());
+        assertTrue(usv[1].get(0, 0) > 1);
+        for (int i = 1; i < 4; ++i)
+            assertEquals(0, usv[1].get(i, i), 1e-8);
+    }
+
+    @Test public void testTooManyDimensions() {
+        Matrix m = lowRankMatrix(20, 7, 2, .1, .3, 6);
+        Matrix[] usv = RandomizedSvd.svd(m, 50, 10, 2, new Random(7));
+        assertEquals(7, usv[1].rows());
+        assertEquals(7, usv[0].columns());
+    }
+
+    @Test public void testDenseSize() {
+        assertEquals(600, RandomizedSvd.denseSize(20, 30));
+        assertEquals(Integer.MAX_VALUE,
+                     RandomizedSvd.denseSize(Integer.MAX_VALUE, 1));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testDenseSizeOverflow() {
+        // The product overflows to a positive int
+        RandomizedSvd.denseSize(3000000, 1500);
+    }
+
+    @Test public void testParallelProducts() {
+        // Use enough rows that the products are computed in parallel
+        Matrix m = lowRankMatrix(5000, 60, 8, .01, 1, 8);
+        Matrix[] exact = SVD.svd(m, SVD.Algorithm.JAMA, 8);
+        Matrix[] usv = RandomizedSvd.svd(m, 8, 10, 2, new Random(9));
+        assertSameSingularValues(exact[1], usv[1], 8, 1e-3);
+        assertOrthonormalColumns(usv[0]);
+    }
+
+    @Test public void testSvdlibcSparseBinaryFile() throws Exception {
+        Matrix m = lowRankMatrix(50, 30, 4, .01, 1, 10);
+        File f = File.createTempFile("randomized-svd-test", ".dat");
+        f.deleteOnExit();
+        MatrixIO.writeMatrix(m, f, Format.SVDLIBC_SPARSE_BINARY);
+        Matrix[] fromFile =
+            SVD.svd(f, SVD.Algorithm.RANDOMIZED,
+                    Format.SVDLIBC_SPARSE_BINARY, 4);
+        Matrix[] exact = SVD.svd(m, SVD.Algorithm.JAMA, 4);
+        assertEquals(50, fromFile[0].rows());
+        assertEquals(30, fromFile[2].columns());
+        // The file stores values as floats
+        assertSameSingularValues(exact[1], fromFile[1], 4, 1e-4);
+    }
+
+    @Test public void testCompressedRowsTranspose() {
+        Matrix m = lowRankMatrix(13, 9, 2, .1, .3, 11);
+        RandomizedSvd.CompressedRows a =
+            RandomizedSvd.CompressedRows.fromMatrix(m);
+        RandomizedSvd.CompressedRows at = a.transpose();
+        assertEquals(9, at.rows);
+        assertEquals(13, at.cols);
+        for (int row = 0; row < at.rows; ++row) {
+            for (int i = at.rowStarts[row]; i < at.rowStarts[row + 1]; ++i)
+                assertEquals(m.get(at.columns[i], row), at.values[i], 0);
+        }
+        assertEquals(a.rowStarts[a.rows], at.rowStarts[at.rows]);
+    }
+}
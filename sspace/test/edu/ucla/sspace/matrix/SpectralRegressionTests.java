@@ -0,0 +1,163 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.matrix;
+
+import edu.ucla.sspace.matrix.RandomizedSvd.CompressedRows;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link SpectralRegression} 
+ */
+public class SpectralRegressionTests {
+
+    /**
+     * Returns the affinity matrix of two cliques of the specified size that
+     * are connected by a single weak edge.
+     */
+    private static Matrix twoCliques(int size) {
+        int n = size * 2;
+        Matrix w = new YaleSparseMatrix(n, n);
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                if (i != j && (i < size) == (j < size))
+                    w.set(i, j, 1);
+            }
+        }
+        w.set(0, size, .1);
+        w.set(size, 0, .1);
+        return w;
+    }
+
+    /**
+     * Returns a random symmetric affinity matrix with non-negative weights.
+     */
+    private static Matrix randomAffinities(int n, double density, long seed) {
+        Random rand = new Random(seed);
+        Matrix w = new YaleSparseMatrix(n, n);
+        for (int i = 0; i < n; ++i) {
+            for (int j = i + 1; j < n; ++j) {
+                if (rand.nextDouble() < density) {
+                    double v = rand.nextDouble();
+                    w.set(i, j, v);
+                    w.set(j, i, v);
+                }
+            }
+        }
+        return w;
+    }
+
+    @Test public void testEmbedSolvesGeneralizedEigenproblem() {
+        int n = 60;
+        int d = 4;
+        Matrix w = randomAffinities(n, .2, 1);
+        double[] eigenvalues = new double[d];
+        double[] y = SpectralRegression.embed(
+            CompressedRows.fromMatrix(w), d, eigenvalues);
+        double[] degree = new double[n];
+        for (int i = 0; i < n; ++i)
+            for (int j = 0; j < n; ++j)
+                degree[i] += w.get(i, j);
+        for (int c = 0; c < d; ++c) {
+            if (c > 0)
+                assertTrue(eigenvalues[c - 1] >= eigenvalues[c] - 1e-9);
+            // The trivial eigenvalue of 1 is excluded
+            assertTrue(eigenvalues[c] < 1 - 1e-6);
+            double norm = 0;
+            for (int i = 0; i < n; ++i) {
+                double wy = 0;
+                for (int j = 0; j < n; ++j)
+                    wy += w.get(i, j) * y[j * d + c];
+                assertEquals(eigenvalues[c] * degree[i] * y[i * d + c], wy,
+                             1e-4);
+                norm += y[i * d + c] * y[i * d + c];
+            }
+            assertEquals(1, norm, 1e-9);
+        }
+    }
+
+    @Test public void testEmbedSeparatesClusters() {
+        int size = 10;
+        double[] y = SpectralRegression.embed(
+            CompressedRows.fromMatrix(twoCliques(size)), 1, null);
+        double sign = Math.signum(y[0]);
+        for (int i = 0; i < size; ++i) {
+            assertEquals(sign, Math.signum(y[i]), 0);
+            assertEquals(-sign, Math.signum(y[size + i]), 0);
+        }
+    }
+
+    @Test public void testRegressWithIdentity() {
+        int n = 20;
+        int d = 3;
+        Random rand = new Random(2);
+        double[] y = new double[n * d];
+        for (int i = 0; i < y.length; ++i)
+            y[i] = rand.nextGaussian();
+        Matrix identity = new YaleSparseMatrix(n, n);
+        for (int i = 0; i < n; ++i)
+            identity.set(i, i, 1);
+        CompressedRows x = CompressedRows.fromMatrix(identity);
+        double alpha = .5;
+        double[] a = SpectralRegression.regress(x, x.transpose(), y, d, alpha);
+        // The ridge solution for the identity is y / (1 + alpha)
+        for (int i = 0; i < y.length; ++i)
+            assertEquals(y[i] / (1 + alpha), a[i], 1e-6);
+    }
+
+    @Test public void testProject() {
+        int size = 15;
+        int n = size * 2;
+        Matrix w = twoCliques(size);
+        // Give each cluster its own features, plus some noise
+        Random rand = new Random(3);
+        Matrix data = new YaleSparseMatrix(n, 12);
+        for (int i = 0; i < n; ++i) {
+            int base = (i < size) ? 0 : 6;
+            for (int j = 0; j < 6; ++j)
+                data.set(i, base + j, 1 + rand.nextDouble() * .1);
+        }
+        Matrix projection = SpectralRegression.project(data, w, 2);
+        assertEquals(n, projection.rows());
+        assertEquals(2, projection.columns());
+        double sign = Math.signum(projection.get(0, 0));
+        assertTrue(sign != 0);
+        for (int i = 0; i < n; ++i)
+            assertEquals((i < size) ? sign : -sign, 
+                         Math.signum(projection.get(i, 0)), 0);
+
+        Matrix viaLpp = LocalityPreservingProjection.project(data, w, 2);
+        for (int i = 0; i < n; ++i)
+            for (int j = 0; j < 2; ++j)
+                assertEquals(projection.get(i, j), viaLpp.get(i, j), 1e-12);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testProjectMismatchedAffinities() {
+        SpectralRegression.project(new YaleSparseMatrix(4, 2),
+                                   new YaleSparseMatrix(3, 3), 1);
+    }
+}
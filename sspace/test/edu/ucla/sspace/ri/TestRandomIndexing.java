@@ -21,6 +21,10 @@
 
 package edu.ucla.sspace.ri;
 
+import edu.ucla.sspace.index.RandomIndexVectorGenerator;
+
+import edu.ucla.sspace.vector.Vector;
+
 import java.io.*;
 import java.util.*;
 
@@ -47,4 +51,62 @@ public class TestRandomIndexing {
 
         assertEquals(words, ri.getWords());
     }
+
+    @Test public void testBufferedAccumulation() throws IOException {
+        String text = "the quick brown fox jumps over the lazy dog the end";
+
+        RandomIndexVectorGenerator.RANDOM.setSeed(SEED);
+        RandomIndexing ri = new RandomIndexing(new Properties());
+        ri.processDocument(new BufferedReader(new StringReader(text)));
+
+        // Use a buffer smaller than the vocabulary to force intermediate merges
+        Properties props = new Properties();
+        props.setProperty(
+            RandomIndexing.USE_BUFFERED_ACCUMULATION_PROPERTY, "true");
+        props.setProperty(
+            RandomIndexing.ACCUMULATION_BUFFER_SIZE_PROPERTY, "3");
+        RandomIndexing buffered = new RandomIndexing(props);
+        RandomIndexVectorGenerator.RANDOM.setSeed(SEED);
+        buffered.processDocument(new BufferedReader(new StringReader(text)));
+
+        assertEquals(ri.getWords(), buffered.getWords());
+        for (String word : ri.getWords()) {
+            Vector expected = ri.getVector(word);
+            Vector actual = buffered.getVector(word);
+            assertEquals(expected.length(), actual.length());
+            for (int i = 0; i < expected.length(); ++i)
+                assertEquals(expected.getValue(i).intValue(),
+                             actual.getValue(i).intValue());
+        }
+    }
+
+    @Test public void testBufferedSingleWordDocument() throws IOException {
+        // A word with no context should still have a vector, as it does when
+        // the changes are not buffered
+        Properties props = new Properties();
+        props.setProperty(
+            RandomIndexing.USE_BUFFERED_ACCUMULATION_PROPERTY, "true");
+        RandomIndexing buffered = new RandomIndexing(props);
+        buffered.processDocument(new BufferedReader(new StringReader("alone")));
+        RandomIndexing ri = new RandomIndexing(new Properties());
+        ri.processDocument(new BufferedReader(new StringReader("alone")));
+        assertEquals(ri.getWords(), buffered.getWords());
+        assertNotNull(buffered.getVector("alone"));
+    }
+
+    @Test public void testPruneRareWords() throws IOException {
+        Properties props = new Properties();
+        props.setProperty(RandomIndexing.PRUNING_EPSILON_PROPERTY, ".05");
+        RandomIndexing ri = new RandomIndexing(props);
+        ri.processDocument(new BufferedReader(
+            new StringReader("the rare dog the dog")));
+        assertTrue(ri.getWords().contains("rare"));
+        for (int i = 0; i < 20; ++i)
+            ri.processDocument(new BufferedReader(
+                new StringReader("the dog the dog the")));
+        assertFalse(ri.getWords().contains("rare"));
+        assertNull(ri.getVector("rare"));
+        assertTrue(ri.getWords().contains("the"));
+        assertTrue(ri.getWords().contains("dog"));
+    }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.text;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link CachingStemmer} 
+ */
+public class CachingStemmerTests {
+
+    /**
+     * A stemmer that removes a trailing "s" and counts its calls
+     */
+    private static class CountingStemmer implements Stemmer {
+        int calls;
+        public String stem(String token) {
+            calls++;
+            return (token.endsWith("s")) 
+                ? token.substring(0, token.length() - 1) : token;
+        }
+    }
+
+    @Test public void testCachesStems() {
+        CountingStemmer counting = new CountingStemmer();
+        CachingStemmer stemmer = new CachingStemmer(counting);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals("cat", stemmer.stem("cats"));
+            assertEquals("dog", stemmer.stem("dog"));
+        }
+        assertEquals(2, counting.calls);
+    }
+
+    @Test public void testFrequentStemsSurviveTurnover() {
+        CountingStemmer counting = new CountingStemmer();
+        CachingStemmer stemmer = new CachingStemmer(counting, 4);
+        for (int i = 0; i < 100; ++i) {
+            assertEquals("cat", stemmer.stem("cats"));
+            assertEquals("rare" + i, stemmer.stem("rare" + i + "s"));
+        }
+        // Each rare word is stemmed once, while the frequent word is only
+        // recomputed if both generations turn over between its occurrences
+        assertEquals(101, counting.calls);
+    }
+
+    @Test(expected=IllegalArgumentException.class) 
+    public void testInvalidSize() {
+        new CachingStemmer(new CountingStemmer(), 0);
+    }
+}
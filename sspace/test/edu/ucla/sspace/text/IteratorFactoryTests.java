@@ -87,6 +87,42 @@ public class IteratorFactoryTests {
 	assertFalse(it.hasNext());
     }
 
+    @Test public void testOrderedWithFilterAndLimit() throws IOException {
+	File stopWords = createFileWithText("is\nexample");
+	Properties props = new Properties();
+	props.setProperty(IteratorFactory.TOKEN_FILTER_PROPERTY, 
+			  "exclude=" + stopWords.getAbsolutePath());
+	props.setProperty(IteratorFactory.TOKEN_COUNT_LIMIT_PROPERTY, "4");
+	IteratorFactory.setProperties(props);
+	Iterator<String> it = IteratorFactory.tokenizeOrdered(getReader());
+	assertEquals("this", it.next());
+	assertEquals(IteratorFactory.EMPTY_TOKEN, it.next());
+	assertEquals("my", it.next());
+	assertEquals(IteratorFactory.EMPTY_TOKEN, it.next());
+	assertFalse(it.hasNext());
+
+	// Without ordering, the limit applies to the tokens before filtering
+	it = IteratorFactory.tokenize(getReader());
+	assertEquals("this", it.next());
+	assertEquals("my", it.next());
+	assertFalse(it.hasNext());
+	IteratorFactory.setProperties(new Properties());
+    }
+
+    @Test public void testWithStemmer() throws IOException {
+	Properties props = new Properties();
+	props.setProperty(IteratorFactory.STEMMER_PROPERTY, 
+			  PorterStemmer.class.getName());
+	IteratorFactory.setProperties(props);
+	Iterator<String> it = IteratorFactory.tokenize(
+	    new BufferedReader(new StringReader("running cats running")));
+	assertEquals("run", it.next());
+	assertEquals("cat", it.next());
+	assertEquals("run", it.next());
+	assertFalse(it.hasNext());
+	IteratorFactory.setProperties(new Properties());
+    }
+
     public static File createFileWithText(String text) throws IOException {
 	File tmp = File.createTempFile("test", ".txt");
 	PrintWriter pw = new PrintWriter(tmp);
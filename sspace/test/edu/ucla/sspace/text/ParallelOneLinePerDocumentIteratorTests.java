@@ -0,0 +1,223 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.text;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOError;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class ParallelOneLinePerDocumentIteratorTests {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Returns lines of random letters with varied lengths, including empty
+     * lines and lines that are longer than the reader's buffer.
+     */
+    private static List<String> lines(int numLines, Random random) {
+        List<String> lines = new ArrayList<String>(numLines);
+        for (int i = 0; i < numLines; ++i) {
+            int length = (i % 500 == 0) 
+                ? 70000 + random.nextInt(1000) 
+                : random.nextInt(200);
+            if (i % 97 == 0)
+                length = 0;
+            StringBuilder sb = new StringBuilder(length);
+            for (int j = 0; j < length; ++j)
+                sb.append((char)('a' + random.nextInt(26)));
+            if (i % 101 == 0)
+                sb.append("é");
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    private static byte[] join(List<String> lines, boolean finalNewline) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines.size(); ++i) {
+            sb.append(lines.get(i));
+            if (i + 1 < lines.size() || finalNewline)
+                sb.append((i % 3 == 0) ? "\r\n" : "\n");
+        }
+        return sb.toString().getBytes(UTF8);
+    }
+
+    private static File write(byte[] bytes, String suffix) throws IOException {
+        File f = File.createTempFile("parallel-docs", suffix);
+        f.deleteOnExit();
+        OutputStream out = new FileOutputStream(f);
+        out.write(bytes);
+        out.close();
+        return f;
+    }
+
+    /**
+     * Returns the data compressed as a series of BGZF blocks, with an empty
+     * block at the end as written by {@code bgzip}.
+     */
+    private static byte[] bgzf(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int off = 0; off < data.length; off += 50000)
+            bgzfBlock(out, data, off, Math.min(50000, data.length - off));
+        bgzfBlock(out, data, 0, 0);
+        return out.toByteArray();
+    }
+
+    private static void bgzfBlock(ByteArrayOutputStream out, 
+                                  byte[] data, int off, int len) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, off, len);
+        deflater.finish();
+        byte[] compressed = new byte[len + 1024];
+        int clen = deflater.deflate(compressed);
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data, off, len);
+        int bsize = 18 + clen + 8 - 1;
+        byte[] header = { 0x1f, (byte)0x8b, 8, 4, 0, 0, 0, 0, 0, (byte)0xff,
+                          6, 0, 'B', 'C', 2, 0, 
+                          (byte)bsize, (byte)(bsize >>> 8) };
+        out.write(header, 0, header.length);
+        out.write(compressed, 0, clen);
+        writeInt(out, (int)crc.getValue());
+        writeInt(out, len);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int v) {
+        for (int i = 0; i < 4; ++i)
+            out.write((v >>> (8 * i)) & 0xFF);
+    }
+
+    private static List<String> readAll(File f, int threads) 
+            throws IOException {
+        ParallelOneLinePerDocumentIterator it = 
+            new ParallelOneLinePerDocumentIterator(f, threads, 16, 4, UTF8);
+        List<String> docs = new ArrayList<String>();
+        while (it.hasNext())
+            docs.add(text(it.next()));
+        assertFalse(it.hasNext());
+        return docs;
+    }
+
+    private static String text(Document doc) throws IOException {
+        BufferedReader br = doc.reader();
+        StringBuilder sb = new StringBuilder();
+        for (int c; (c = br.read()) != -1; )
+            sb.append((char)c);
+        return sb.toString();
+    }
+
+    private static void assertSameDocuments(List<String> expected, 
+                                            List<String> actual) {
+        expected = new ArrayList<String>(expected);
+        actual = new ArrayList<String>(actual);
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test public void testSmallFile() throws IOException {
+        List<String> lines = new ArrayList<String>();
+        lines.add("the first document");
+        lines.add("");
+        lines.add("the third document");
+        File f = write(join(lines, false), ".txt");
+        assertEquals(lines, readAll(f, 4));
+    }
+
+    @Test public void testEmptyFile() throws IOException {
+        File f = write(new byte[0], ".txt");
+        assertTrue(readAll(f, 4).isEmpty());
+    }
+
+    @Test public void testSplitUncompressed() throws IOException {
+        List<String> lines = lines(30000, new Random(1));
+        for (boolean finalNewline : new boolean[] { true, false }) {
+            File f = write(join(lines, finalNewline), ".txt");
+            assertTrue(f.length() > 
+                       4 * ParallelOneLinePerDocumentIterator.MIN_RANGE_SIZE);
+            for (int threads = 1; threads <= 7; threads += 3) 
+                assertSameDocuments(lines, readAll(f, threads));
+        }
+    }
+
+    @Test public void testMatchesSequentialIterator() throws IOException {
+        List<String> lines = lines(30000, new Random(2));
+        File f = write(join(lines, true), ".txt");
+        OneLinePerDocumentIterator it = 
+            new OneLinePerDocumentIterator(f.getPath());
+        ParallelOneLinePerDocumentIterator parallel = 
+            new ParallelOneLinePerDocumentIterator(f, 3);
+        List<String> expected = new ArrayList<String>();
+        List<String> actual = new ArrayList<String>();
+        while (it.hasNext())
+            expected.add(text(it.next()));
+        while (parallel.hasNext())
+            actual.add(text(parallel.next()));
+        assertSameDocuments(expected, actual);
+    }
+
+    @Test public void testSplitBgzf() throws IOException {
+        List<String> lines = lines(30000, new Random(3));
+        File f = write(bgzf(join(lines, true)), ".gz");
+        assertTrue(f.length() > 
+                   2 * ParallelOneLinePerDocumentIterator.MIN_RANGE_SIZE);
+        for (int threads = 1; threads <= 4; threads += 3) 
+            assertSameDocuments(lines, readAll(f, threads));
+    }
+
+    @Test public void testGzip() throws IOException {
+        List<String> lines = lines(5000, new Random(4));
+        File f = File.createTempFile("parallel-docs", ".gz");
+        f.deleteOnExit();
+        GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(f));
+        out.write(join(lines, true));
+        out.close();
+        assertEquals(lines, readAll(f, 4));
+    }
+
+    @Test(expected=IOError.class)
+    public void testBzip2Rejected() throws IOException {
+        File f = write("BZh91AY&SY".getBytes(UTF8), ".bz2");
+        readAll(f, 2);
+    }
+}
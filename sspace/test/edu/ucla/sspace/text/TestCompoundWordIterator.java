@@ -124,4 +124,34 @@ public class TestCompoundWordIterator {
 	assertFalse(it.hasNext());
     }
 
-}
\ No newline at end of file
+    @Test public void testLongestMatch() {
+	BufferedReader br = new BufferedReader(new StringReader(
+	    "the white house lawn and the white house party and the white"));
+	Set<String> compounds = new HashSet<String>();
+	compounds.add("white house");
+	compounds.add("white house lawn");
+	compounds.add("white castle");
+	CompoundWordIterator it = new CompoundWordIterator(br, compounds);
+	assertEquals("the", it.next());
+	assertEquals("white house lawn", it.next());
+	assertEquals("and", it.next());
+	assertEquals("the", it.next());
+	assertEquals("white house", it.next());
+	assertEquals("party", it.next());
+	assertEquals("and", it.next());
+	assertEquals("the", it.next());
+	assertEquals("white", it.next());
+	assertFalse(it.hasNext());
+    }
+
+    @Test public void testPartialTokenDoesNotMatch() {
+	BufferedReader br = 
+	    new BufferedReader(new StringReader("my ca my cats"));
+	CompoundWordIterator it = new CompoundWordIterator(br, myCat);
+	assertEquals("my", it.next());
+	assertEquals("ca", it.next());
+	assertEquals("my", it.next());
+	assertEquals("cats", it.next());
+	assertFalse(it.hasNext());
+    }
+}
@@ -24,6 +24,12 @@ package edu.ucla.sspace.text;
 import java.io.BufferedReader;
 import java.io.StringReader;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import org.junit.Ignore;
 import org.junit.Test;
 
@@ -86,4 +92,53 @@ public class TestWordIterator {
 	assertFalse(it.hasNext());
     }
 
-}
\ No newline at end of file
+    @Test public void testAllWhiteSpace() {
+	WordIterator it = new WordIterator("my\tcat\r\nis\u000Bvery\fbig ");
+	assertEquals("my", it.next());
+	assertEquals("cat", it.next());
+	assertEquals("is", it.next());
+	assertEquals("very", it.next());
+	assertEquals("big", it.next());
+	assertFalse(it.hasNext());
+    }
+
+    @Test public void testTokensSpanningBuffer() {
+	// Create tokens that cross the boundaries of the internal buffer, and a
+	// token that is longer than the buffer
+	StringBuilder sb = new StringBuilder();
+	List<String> tokens = new ArrayList<String>();
+	for (int i = 0; i < 5000; ++i) {
+	    String token = "token" + i;
+	    tokens.add(token);
+	    sb.append(token).append((i % 3 == 0) ? "  " : "\n");
+	}
+	char[] longToken = new char[20000];
+	Arrays.fill(longToken, 'x');
+	tokens.add(new String(longToken));
+	sb.append(longToken);
+	WordIterator it = new WordIterator(sb.toString());
+	for (String token : tokens)
+	    assertEquals(token, it.next());
+	assertFalse(it.hasNext());
+    }
+
+    @Test public void testFilter() {
+	Set<String> stopWords = new HashSet<String>();
+	stopWords.add("is");
+	stopWords.add("my");
+	TokenFilter filter = new TokenFilter(stopWords, true);
+	WordIterator it = new WordIterator(
+	    new BufferedReader(new StringReader("my cat is big")), filter, false);
+	assertEquals("cat", it.next());
+	assertEquals("big", it.next());
+	assertFalse(it.hasNext());
+
+	it = new WordIterator(
+	    new BufferedReader(new StringReader("my cat is big")), filter, true);
+	assertEquals(IteratorFactory.EMPTY_TOKEN, it.next());
+	assertEquals("cat", it.next());
+	assertEquals(IteratorFactory.EMPTY_TOKEN, it.next());
+	assertEquals("big", it.next());
+	assertFalse(it.hasNext());
+    }
+}
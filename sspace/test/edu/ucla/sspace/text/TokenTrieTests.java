@@ -0,0 +1,117 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.text;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link TokenTrie} 
+ */
+public class TokenTrieTests {
+
+    @Test public void testContains() {
+        TokenTrie trie = new TokenTrie(
+            Arrays.asList("cat", "cats", "car", "dog", "cat"));
+        assertEquals(4, trie.size());
+        assertTrue(trie.contains("cat"));
+        assertTrue(trie.contains("cats"));
+        assertTrue(trie.contains("car"));
+        assertTrue(trie.contains("dog"));
+        assertFalse(trie.contains("ca"));
+        assertFalse(trie.contains("catss"));
+        assertFalse(trie.contains(""));
+        assertFalse(trie.contains("do"));
+    }
+
+    @Test public void testContainsChars() {
+        TokenTrie trie = new TokenTrie(Arrays.asList("is", "big"));
+        char[] chars = "my cat is big".toCharArray();
+        assertTrue(trie.contains(chars, 7, 2));
+        assertTrue(trie.contains(chars, 10, 3));
+        assertFalse(trie.contains(chars, 0, 2));
+        assertFalse(trie.contains(chars, 10, 2));
+    }
+
+    @Test public void testEmpty() {
+        TokenTrie trie = new TokenTrie(new HashSet<String>());
+        assertEquals(0, trie.size());
+        assertEquals(1, trie.numStates());
+        assertFalse(trie.contains("a"));
+        assertFalse(trie.contains(""));
+        assertEquals(TokenTrie.NO_STATE, trie.step(TokenTrie.ROOT, 'a'));
+    }
+
+    @Test public void testEmptyToken() {
+        TokenTrie trie = new TokenTrie(Arrays.asList("", "a"));
+        assertTrue(trie.contains(""));
+        assertTrue(trie.contains("a"));
+    }
+
+    @Test public void testIndices() {
+        List<String> tokens = Arrays.asList("b", "a", "ab", "ba");
+        TokenTrie trie = new TokenTrie(tokens);
+        for (String t : tokens) 
+            assertEquals(t, trie.getToken(trie.indexOf(t)));
+        assertEquals(-1, trie.indexOf("c"));
+    }
+
+    @Test public void testStepAndWalk() {
+        TokenTrie trie = new TokenTrie(Arrays.asList("white house", "white"));
+        int state = trie.walk(TokenTrie.ROOT, "white");
+        assertTrue(trie.getIndex(state) >= 0);
+        state = trie.step(state, ' ');
+        assertTrue(state != TokenTrie.NO_STATE);
+        assertEquals(-1, trie.getIndex(state));
+        state = trie.walk(state, "house");
+        assertEquals("white house", trie.getToken(trie.getIndex(state)));
+        assertEquals(TokenTrie.NO_STATE, trie.step(state, ' '));
+    }
+
+    @Test public void testRandomTokens() {
+        Random rand = new Random(7);
+        Set<String> tokens = new HashSet<String>();
+        for (int i = 0; i < 2000; ++i)
+            tokens.add(randomToken(rand));
+        TokenTrie trie = new TokenTrie(tokens);
+        assertEquals(tokens.size(), trie.size());
+        for (int i = 0; i < 10000; ++i) {
+            String t = randomToken(rand);
+            assertEquals(tokens.contains(t), trie.contains(t));
+        }
+    }
+
+    private static String randomToken(Random rand) {
+        int length = 1 + rand.nextInt(5);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; ++i)
+            chars[i] = (char)('a' + rand.nextInt(4));
+        return new String(chars);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link LongDoubleMap} 
+ */
+public class LongDoubleMapTests {
+
+    @Test public void testPutAndGet() {
+        LongDoubleMap m = new LongDoubleMap();
+        assertEquals(0, m.put(1L, 1.5), 0);
+        assertEquals(0, m.put(Long.MIN_VALUE, 2), 0);
+        assertEquals(1.5, m.put(1L, 3), 0);
+        assertEquals(3, m.get(1L), 0);
+        assertEquals(2, m.get(Long.MIN_VALUE), 0);
+        assertEquals(0, m.get(0L), 0);
+        assertEquals(2, m.size());
+        assertTrue(m.containsKey(Long.MIN_VALUE));
+        assertFalse(m.containsKey(0L));
+    }
+
+    @Test public void testAdd() {
+        LongDoubleMap m = new LongDoubleMap(1);
+        assertEquals(1, m.add(5L << 32 | 7, 1), 0);
+        assertEquals(3.5, m.add(5L << 32 | 7, 2.5), 0);
+        assertEquals(1, m.size());
+        assertEquals(-1, m.add(7L << 32 | 5, -1), 0);
+        assertEquals(2, m.size());
+    }
+
+    @Test public void testClearReusesTable() {
+        LongDoubleMap m = new LongDoubleMap();
+        for (long i = 0; i < 100; ++i)
+            m.add(i, i);
+        m.clear();
+        assertTrue(m.isEmpty());
+        assertFalse(m.containsKey(5L));
+        assertEquals(0, m.get(5L), 0);
+        m.add(5L, 2);
+        assertEquals(1, m.size());
+        assertEquals(2, m.get(5L), 0);
+    }
+
+    @Test public void testClearAfterRehash() {
+        Random rand = new Random(2);
+        LongDoubleMap m = new LongDoubleMap(4);
+        for (int round = 0; round < 20; ++round) {
+            Map<Long,Double> control = new HashMap<Long,Double>();
+            int n = rand.nextInt(500);
+            for (int i = 0; i < n; ++i) {
+                long key = rand.nextLong();
+                control.put(key, 1d);
+                m.put(key, 1);
+            }
+            assertEquals(control.size(), m.size());
+            long[] keys = m.keys(null);
+            for (int i = 0; i < m.size(); ++i)
+                assertTrue(control.containsKey(keys[i]));
+            m.clear();
+            assertTrue(m.isEmpty());
+            for (Long key : control.keySet())
+                assertFalse(m.containsKey(key));
+        }
+    }
+
+    @Test public void testKeys() {
+        LongDoubleMap m = new LongDoubleMap();
+        m.add(30, 1);
+        m.add(10, 1);
+        m.add(20, 1);
+        long[] small = new long[1];
+        long[] keys = m.keys(small);
+        assertNotSame(small, keys);
+        Arrays.sort(keys, 0, m.size());
+        assertEquals(10, keys[0]);
+        assertEquals(20, keys[1]);
+        assertEquals(30, keys[2]);
+
+        long[] large = new long[10];
+        assertSame(large, m.keys(large));
+    }
+
+    @Test public void testRandomAgainstHashMap() {
+        Random rand = new Random(1);
+        LongDoubleMap m = new LongDoubleMap();
+        Map<Long,Double> control = new HashMap<Long,Double>();
+        for (int i = 0; i < 50000; ++i) {
+            long key = ((long)rand.nextInt(200) << 32) | rand.nextInt(200);
+            double delta = rand.nextDouble();
+            Double cur = control.get(key);
+            control.put(key, (cur == null) ? delta : cur + delta);
+            m.add(key, delta);
+        }
+        assertEquals(control.size(), m.size());
+        for (Map.Entry<Long,Double> e : control.entrySet())
+            assertEquals(e.getValue(), m.get(e.getKey()), 0);
+    }
+}
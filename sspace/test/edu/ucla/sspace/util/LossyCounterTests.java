@@ -0,0 +1,120 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link LossyCounter} 
+ */
+public class LossyCounterTests {
+
+    @Test(expected=IllegalArgumentException.class) 
+    public void testInvalidEpsilon() {
+        new LossyCounter<String>(0);
+    }
+
+    @Test public void testEvictsAtBucketBoundary() {
+        // Buckets contain 4 items
+        LossyCounter<String> c = new LossyCounter<String>(.25);
+        assertTrue(c.add("a", 2).isEmpty());
+        assertTrue(c.add("b").isEmpty());
+        assertTrue(c.add("c").isEmpty());
+        assertEquals(3, c.size());
+        // The fifth item starts the second bucket, which evicts the items
+        // that occurred at most once in the first
+        List<String> evicted = c.add("a");
+        assertEquals(2, evicted.size());
+        assertTrue(evicted.contains("b"));
+        assertTrue(evicted.contains("c"));
+        assertTrue(c.contains("a"));
+        assertEquals(3, c.getCount("a"));
+        assertEquals(0, c.getCount("b"));
+        assertEquals(5, c.getTotal());
+    }
+
+    @Test public void testReaddedItemIsTrackedAgain() {
+        LossyCounter<String> c = new LossyCounter<String>(.5);
+        c.add("a");
+        c.add("b");
+        assertEquals(1, c.add("a").size());
+        assertFalse(c.contains("b"));
+        c.add("b");
+        assertTrue(c.contains("b"));
+        assertEquals(1, c.getCount("b"));
+    }
+
+    @Test public void testMaxItems() {
+        LossyCounter<Integer> c = new LossyCounter<Integer>(1e-6, 8);
+        for (int i = 0; i < 8; ++i)
+            c.add(i, i + 1);
+        assertEquals(8, c.size());
+        // The ninth item exceeds the limit, which evicts the items with the
+        // lowest counts until 6 remain
+        List<Integer> evicted = c.add(100, 100);
+        assertEquals(3, evicted.size());
+        assertEquals(6, c.size());
+        for (int i = 0; i < 3; ++i)
+            assertTrue(evicted.contains(i));
+        assertTrue(c.contains(100));
+    }
+
+    @Test public void testErrorBound() {
+        double epsilon = .01;
+        LossyCounter<Integer> c = new LossyCounter<Integer>(epsilon);
+        Map<Integer,Integer> trueCounts = new HashMap<Integer,Integer>();
+        Set<Integer> evicted = new HashSet<Integer>();
+        Random rand = new Random(1);
+        int n = 50000;
+        for (int i = 0; i < n; ++i) {
+            // Skew the distribution so that a few items are frequent
+            int item = (int)Math.pow(rand.nextInt(1 << 16), 2) >> 20;
+            if (rand.nextBoolean())
+                item = rand.nextInt(100000);
+            Integer cur = trueCounts.get(item);
+            trueCounts.put(item, (cur == null) ? 1 : cur + 1);
+            evicted.addAll(c.add(item));
+        }
+        assertEquals(n, c.getTotal());
+        for (Map.Entry<Integer,Integer> e : trueCounts.entrySet()) {
+            int item = e.getKey();
+            int count = e.getValue();
+            long estimate = c.getCount(item);
+            assertTrue(estimate <= count);
+            if (count >= epsilon * n)
+                assertTrue(c.contains(item));
+            if (c.contains(item) && !evicted.contains(item))
+                assertTrue(count - estimate <= epsilon * n);
+        }
+        // Far fewer items are tracked than were seen
+        assertTrue(c.size() < trueCounts.size() / 10);
+    }
+}
@@ -21,6 +21,11 @@
 
 package edu.ucla.sspace.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -31,6 +36,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
@@ -188,4 +194,103 @@ public class SparseDoubleArrayTests {
         }
         assertEquals(i, size);
     }
-}
\ No newline at end of file
+
+    @Test public void testRandomOrderAddAndRemove() {
+        int length = 500;
+        double[] control = new double[length];
+        SparseDoubleArray arr = new SparseDoubleArray(length);
+        Random rand = new Random(1);
+        for (int i = 0; i < 5000; ++i) {
+            int index = rand.nextInt(length);
+            // Periodically zero out a value to exercise removal
+            double delta = (i % 7 == 0) ? -control[index] : rand.nextInt(5) + 1;
+            control[index] += delta;
+            arr.addPrimitive(index, delta);
+        }
+        int nonZero = 0;
+        for (int i = 0; i < length; ++i) {
+            assertEquals(control[i], arr.getPrimitive(i), 0.0001);
+            if (control[i] != 0)
+                nonZero++;
+        }
+        assertEquals(nonZero, arr.cardinality());
+        assertEquals(nonZero, arr.getElementIndices().length);
+        assertTrue(Arrays.equals(control, 
+                                 arr.toPrimitiveArray(new double[length])));
+    }
+
+    @Test public void testGetElementIndicesAfterGrowth() {
+        SparseDoubleArray arr = new SparseDoubleArray(100);
+        arr.setPrimitive(9, 1);
+        arr.setPrimitive(3, 2);
+        arr.setPrimitive(5, 3);
+        int[] indices = arr.getElementIndices();
+        assertTrue(Arrays.equals(new int[] {3, 5, 9}, indices));
+        arr.setPrimitive(5, 0);
+        arr.setPrimitive(1, 4);
+        assertTrue(Arrays.equals(new int[] {1, 3, 9}, 
+                                 arr.getElementIndices()));
+        // Indices returned earlier are not affected by later changes
+        assertTrue(Arrays.equals(new int[] {3, 5, 9}, indices));
+    }
+
+    @Test public void testRepeatedGetElementIndicesDoesNotCopy() {
+        SparseDoubleArray arr = new SparseDoubleArray(100);
+        arr.setPrimitive(9, 1);
+        arr.setPrimitive(3, 1);
+        arr.setPrimitive(5, 1);
+        int[] indices = arr.getElementIndices();
+        assertSame(indices, arr.getElementIndices());
+        // Changing the value of an existing index keeps the same indices
+        arr.setPrimitive(9, 5);
+        assertSame(indices, arr.getElementIndices());
+        arr.setPrimitive(1, 1);
+        assertNotSame(indices, arr.getElementIndices());
+        assertTrue(Arrays.equals(new int[] {1, 3, 5, 9},
+                                 arr.getElementIndices()));
+        assertTrue(Arrays.equals(new int[] {3, 5, 9}, indices));
+    }
+
+    @Test public void testBuilder() {
+        SparseDoubleArray.Builder builder = new SparseDoubleArray.Builder(100);
+        builder.add(50, 1).add(3, 2).add(50, 2).add(7, 4).add(7, -4).add(0, 1);
+        assertEquals(6, builder.size());
+        SparseDoubleArray arr = builder.build();
+        assertEquals(100, arr.length());
+        assertEquals(3, arr.cardinality());
+        assertTrue(Arrays.equals(new int[] {0, 3, 50}, 
+                                 arr.getElementIndices()));
+        assertEquals(1, arr.getPrimitive(0), 0.0001);
+        assertEquals(2, arr.getPrimitive(3), 0.0001);
+        assertEquals(3, arr.getPrimitive(50), 0.0001);
+        assertEquals(0, arr.getPrimitive(7), 0.0001);
+
+        // The built array should still support modification
+        arr.addPrimitive(4, 5);
+        assertEquals(4, arr.cardinality());
+        assertEquals(5, arr.getPrimitive(4), 0.0001);
+    }
+
+    @Test(expected=ArrayIndexOutOfBoundsException.class) 
+    public void testBuilderIllegalIndex() {
+        new SparseDoubleArray.Builder(10).add(10, 1);
+    }
+
+    @Test public void testSerialization() throws Exception {
+        SparseDoubleArray arr = new SparseDoubleArray(100);
+        for (int i = 0; i < 10; ++i)
+            arr.setPrimitive(i * 3, i + 1);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(arr);
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream(
+            new ByteArrayInputStream(baos.toByteArray()));
+        SparseDoubleArray copy = (SparseDoubleArray)ois.readObject();
+        assertEquals(10, copy.cardinality());
+        for (int i = 0; i < 100; ++i)
+            assertEquals(arr.getPrimitive(i), copy.getPrimitive(i), 0.0001);
+        copy.addPrimitive(1, 1);
+        assertEquals(11, copy.cardinality());
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.util;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link StringIntMap} 
+ */
+public class StringIntMapTests {
+
+    @Test public void testPutAndGet() {
+        StringIntMap m = new StringIntMap();
+        assertEquals(-1, m.put("a", 1));
+        assertEquals(-1, m.put("b", 2));
+        assertEquals(1, m.put("a", 3));
+        assertEquals(3, m.get("a"));
+        assertEquals(2, m.get("b"));
+        assertEquals(-1, m.get("c"));
+        assertEquals(2, m.size());
+        assertTrue(m.containsKey("a"));
+        assertFalse(m.containsKey("c"));
+    }
+
+    @Test public void testNoEntryValue() {
+        StringIntMap m = new StringIntMap(4, 0);
+        assertEquals(0, m.get("a"));
+        assertEquals(0, m.remove("a"));
+        assertEquals(0, m.getNoEntryValue());
+    }
+
+    @Test(expected=NullPointerException.class) 
+    public void testPutNullKey() {
+        StringIntMap m = new StringIntMap();
+        m.put(null, 1);
+    }
+
+    @Test public void testIncrement() {
+        StringIntMap m = new StringIntMap();
+        assertEquals(1, m.increment("a", 1));
+        assertEquals(3, m.increment("a", 2));
+        assertEquals(-4, m.increment("b", -4));
+        assertEquals(3, m.get("a"));
+        assertEquals(2, m.size());
+    }
+
+    @Test public void testRemove() {
+        StringIntMap m = new StringIntMap();
+        m.put("a", 1);
+        m.put("b", 2);
+        assertEquals(1, m.remove("a"));
+        assertEquals(-1, m.remove("a"));
+        assertFalse(m.containsKey("a"));
+        assertEquals(2, m.get("b"));
+        assertEquals(1, m.size());
+    }
+
+    @Test public void testKeySet() {
+        StringIntMap m = new StringIntMap();
+        Set<String> expected = new HashSet<String>();
+        for (int i = 0; i < 100; ++i) {
+            m.put("key" + i, i);
+            expected.add("key" + i);
+        }
+        Set<String> keys = m.keySet();
+        assertEquals(expected.size(), keys.size());
+        assertEquals(expected, new HashSet<String>(keys));
+        assertTrue(keys.contains("key5"));
+        assertTrue(keys.remove("key5"));
+        assertFalse(m.containsKey("key5"));
+    }
+
+    @Test public void testClear() {
+        StringIntMap m = new StringIntMap();
+        m.put("a", 1);
+        m.clear();
+        assertTrue(m.isEmpty());
+        assertEquals(-1, m.get("a"));
+    }
+
+    /**
+     * Checks that the map agrees with a {@link HashMap} for a long random
+     * sequence of operations, which exercises resizing and the backward
+     * shifting of entries during removal.
+     */
+    @Test public void testRandomOperations() {
+        StringIntMap m = new StringIntMap(2);
+        Map<String,Integer> control = new HashMap<String,Integer>();
+        Random rand = new Random(1);
+        for (int i = 0; i < 20000; ++i) {
+            String key = String.valueOf(rand.nextInt(500));
+            int op = rand.nextInt(3);
+            if (op == 0) {
+                Integer old = control.put(key, i);
+                assertEquals((old == null) ? -1 : old.intValue(), 
+                             m.put(key, i));
+            }
+            else if (op == 1) {
+                Integer old = control.remove(key);
+                assertEquals((old == null) ? -1 : old.intValue(), 
+                             m.remove(key));
+            }
+            else {
+                Integer val = control.get(key);
+                assertEquals((val == null) ? -1 : val.intValue(), m.get(key));
+            }
+            assertEquals(control.size(), m.size());
+        }
+        for (Map.Entry<String,Integer> e : control.entrySet())
+            assertEquals(e.getValue().intValue(), m.get(e.getKey()));
+    }
+}
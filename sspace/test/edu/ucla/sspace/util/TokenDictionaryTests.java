@@ -0,0 +1,133 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package edu.ucla.sspace.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * A collection of unit tests for {@link TokenDictionary} 
+ */
+public class TokenDictionaryTests {
+
+    @Test public void testGetDimension() {
+        TokenDictionary d = new TokenDictionary(2);
+        assertEquals(0, d.getDimension("a"));
+        assertEquals(1, d.getDimension("b"));
+        assertEquals(0, d.getDimension("a"));
+        for (int i = 0; i < 100; ++i)
+            assertEquals(i + 2, d.getDimension("token" + i));
+        assertEquals(102, d.numDimensions());
+        assertEquals(1, d.indexOf("b"));
+        assertEquals(-1, d.indexOf("c"));
+        assertEquals("b", d.getDimensionDescription(1));
+        assertEquals("token99", d.getToken(101));
+    }
+
+    @Test public void testReadOnly() {
+        TokenDictionary d = new TokenDictionary();
+        d.getDimension("a");
+        d.setReadOnly(true);
+        assertTrue(d.isReadOnly());
+        assertEquals(-1, d.getDimension("b"));
+        assertEquals(0, d.getDimension("a"));
+        assertEquals(1, d.size());
+    }
+
+    @Test public void testIntern() {
+        TokenDictionary d = new TokenDictionary();
+        String a = new String("token");
+        String b = new String("token");
+        assertSame(a, d.intern(a));
+        assertSame(a, d.intern(b));
+    }
+
+    @Test public void testKeySetOrder() {
+        TokenDictionary d = new TokenDictionary();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 50; ++i) {
+            d.getDimension("w" + i);
+            expected.add("w" + i);
+        }
+        assertEquals(expected, new ArrayList<String>(d.keySet()));
+        assertTrue(d.keySet().contains("w3"));
+        assertFalse(d.keySet().contains("x"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidDimension() {
+        TokenDictionary d = new TokenDictionary();
+        d.getDimension("a");
+        d.getDimensionDescription(1);
+    }
+
+    @Test public void testConcurrentAdd() throws Exception {
+        final TokenDictionary d = new TokenDictionary(4);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 5000; ++i)
+                        d.getDimension("token" + i);
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        assertEquals(5000, d.size());
+        boolean[] seen = new boolean[5000];
+        for (int i = 0; i < 5000; ++i) {
+            int index = d.indexOf("token" + i);
+            assertFalse(seen[index]);
+            seen[index] = true;
+            assertEquals("token" + i, d.getToken(index));
+        }
+    }
+
+    @Test public void testSerialization() throws Exception {
+        TokenDictionary d = new TokenDictionary();
+        for (int i = 0; i < 10; ++i)
+            d.getDimension("w" + i);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(baos);
+        oos.writeObject(d);
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream(
+            new ByteArrayInputStream(baos.toByteArray()));
+        TokenDictionary copy = (TokenDictionary)(ois.readObject());
+        assertEquals(d.size(), copy.size());
+        for (int i = 0; i < 10; ++i)
+            assertEquals(i, copy.indexOf("w" + i));
+    }
+}
@@ -100,4 +100,53 @@ public class WorkQueueTests {
         assertEquals(100, j.get());
     }
 
+    @Test public void testSharedQueue() {
+        assertSame(WorkQueue.getWorkQueue(), WorkQueue.getWorkQueue());
+    }
+
+    @Test(timeout=10000) public void testNestedRun() {
+        // Each outer task waits on inner tasks of the same single-threaded
+        // queue, which only finish if the waiting thread runs them itself
+        final WorkQueue w = new WorkQueue(1);
+        final AtomicInteger j = new AtomicInteger();
+        Collection<Runnable> outer = new ArrayList<Runnable>();
+        for (int i = 0; i < 4; ++i)
+            outer.add(new Runnable() {
+                public void run() {
+                    Collection<Runnable> inner = new ArrayList<Runnable>();
+                    for (int k = 0; k < 10; ++k)
+                        inner.add(new Runnable() {
+                            public void run() {
+                                j.incrementAndGet();
+                            }
+                        });
+                    w.run(inner);
+                }
+            });
+        w.run(outer);
+        assertEquals(40, j.get());
+    }
+
+    @Test(timeout=10000) public void testNestedTimedAwait() {
+        // The outer task waits on inner tasks of the same single-threaded
+        // queue with a timeout, which it should not need to reach
+        final WorkQueue w = new WorkQueue(1);
+        final AtomicInteger j = new AtomicInteger();
+        final AtomicBoolean finished = new AtomicBoolean();
+        w.run(new Runnable() {
+                public void run() {
+                    Object key = w.registerTaskGroup(10);
+                    for (int k = 0; k < 10; ++k)
+                        w.add(key, new Runnable() {
+                            public void run() {
+                                j.incrementAndGet();
+                            }
+                        });
+                    finished.set(w.await(key, 5, TimeUnit.SECONDS));
+                }
+            });
+        assertTrue(finished.get());
+        assertEquals(10, j.get());
+    }
+
 }
\ No newline at end of file
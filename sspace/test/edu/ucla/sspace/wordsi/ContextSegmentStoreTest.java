@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009 David Jurgens
+ *
+ * This file is part of the S-Space package and is covered under the terms and
+ * conditions therein.
+ *
+ * The S-Space package is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 2 as published
+ * by the Free Software Foundation and distributed hereunder to you.
+ *
+ * THIS SOFTWARE IS PROVIDED "AS IS" AND NO REPRESENTATIONS OR WARRANTIES,
+ * EXPRESS OR IMPLIED ARE MADE.  BY WAY OF EXAMPLE, BUT NOT LIMITATION, WE MAKE
+ * NO REPRESENTATIONS OR WARRANTIES OF MERCHANT- ABILITY OR FITNESS FOR ANY
+ * PARTICULAR PURPOSE OR THAT THE USE OF THE LICENSED SOFTWARE OR DOCUMENTATION
+ * WILL NOT INFRINGE ANY THIRD PARTY PATENTS, COPYRIGHTS, TRADEMARKS OR OTHER
+ * RIGHTS.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package edu.ucla.sspace.wordsi;
+
+import edu.ucla.sspace.matrix.SparseMatrix;
+
+import edu.ucla.sspace.vector.CompactSparseVector;
+import edu.ucla.sspace.vector.SparseDoubleVector;
+import edu.ucla.sspace.vector.SparseHashDoubleVector;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class ContextSegmentStoreTest {
+
+    private static SparseDoubleVector randomVector(Random random, int length) {
+        SparseDoubleVector v = new SparseHashDoubleVector(length);
+        int nonZero = random.nextInt(10);
+        for (int i = 0; i < nonZero; ++i)
+            v.set(random.nextInt(length), random.nextGaussian());
+        return v;
+    }
+
+    private static void assertRowsEqual(List<SparseDoubleVector> expected,
+                                        SparseMatrix actual, int columns) {
+        assertEquals(expected.size(), actual.rows());
+        assertEquals(columns, actual.columns());
+        for (int r = 0; r < expected.size(); ++r) {
+            for (int c = 0; c < columns; ++c)
+                assertEquals(expected.get(r).get(c), actual.get(r, c), 0);
+        }
+    }
+
+    @Test public void testInMemory() {
+        ContextSegmentStore store = new ContextSegmentStore(1 << 20);
+        Random random = new Random(1);
+        List<SparseDoubleVector> cat = new ArrayList<SparseDoubleVector>();
+        for (int i = 0; i < 20; ++i) {
+            SparseDoubleVector v = randomVector(random, 100);
+            cat.add(v);
+            assertEquals(i, store.add("cat", v));
+        }
+        assertEquals(0, store.add("dog", null));
+        assertEquals(20, store.numContexts("cat"));
+        assertTrue(store.getBufferedBytes() > 0);
+        assertRowsEqual(cat, store.getContexts("cat", 100), 100);
+        assertEquals(1, store.getContexts("dog", 100).rows());
+        assertNull(store.getContexts("bird", 100));
+        store.close();
+    }
+
+    @Test public void testSpillToDisk() {
+        File dir = new File(System.getProperty("java.io.tmpdir"),
+                            "context-store-test-" + System.nanoTime());
+        assertTrue(dir.mkdir());
+        ContextSegmentStore store = new ContextSegmentStore(256, dir);
+        Random random = new Random(2);
+        List<SparseDoubleVector> cat = new ArrayList<SparseDoubleVector>();
+        List<SparseDoubleVector> dog = new ArrayList<SparseDoubleVector>();
+        for (int i = 0; i < 500; ++i) {
+            SparseDoubleVector v = randomVector(random, 1000);
+            if (i % 3 == 0) {
+                dog.add(v);
+                store.add("dog", v);
+            }
+            else {
+                cat.add(v);
+                store.add("cat", v);
+            }
+            assertTrue(store.getBufferedBytes() <= 256);
+        }
+        assertEquals(2, dir.listFiles().length);
+        assertRowsEqual(cat, store.getContexts("cat", 1000), 1000);
+        assertRowsEqual(dog, store.getContexts("dog", 1000), 1000);
+
+        store.remove("dog");
+        assertEquals(1, dir.listFiles().length);
+        assertEquals(0, store.numContexts("dog"));
+        store.close();
+        assertEquals(0, dir.listFiles().length);
+        dir.delete();
+    }
+
+    @Test public void testTruncatesColumns() {
+        ContextSegmentStore store = new ContextSegmentStore(0);
+        SparseDoubleVector v = new CompactSparseVector(10);
+        v.set(1, 1);
+        v.set(8, 2);
+        store.add("cat", v);
+        SparseMatrix m = store.getContexts("cat", 5);
+        assertEquals(5, m.columns());
+        assertEquals(1, m.get(0, 1), 0);
+        assertEquals(1, m.getRowVector(0).getNonZeroIndices().length);
+        store.close();
+    }
+}
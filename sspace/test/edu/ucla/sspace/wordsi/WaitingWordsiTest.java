@@ -128,6 +128,38 @@ public class WaitingWordsiTest {
         assertEquals(2, wordsi.getWords().size());
     }
 
+    @Test public void testProcessSpaceWithContextStore() {
+        MockClustering clustering = new MockClustering();
+        MockExtractor extractor = new MockExtractor();
+        WaitingWordsi wordsi = new WaitingWordsi(
+                null, extractor, clustering, null, 2, 
+                new ContextSegmentStore(0));
+
+        vectors = new SparseDoubleVector[] {
+            new CompactSparseVector(new double[] {1, 0, 0, 0}),
+            new CompactSparseVector(new double[] {0, 1, 0, 0}),
+            new CompactSparseVector(new double[] {0, 0, 1, 0}),
+            new CompactSparseVector(new double[] {0, 0, 0, 1}),
+        };
+
+        for (SparseDoubleVector v : vectors)
+            wordsi.handleContextVector("cat", "dog", v);
+
+        wordsi.processSpace(System.getProperties());
+        assertTrue(clustering.calledWithNumC);
+
+        vectors = new SparseDoubleVector[] {
+            new CompactSparseVector(new double[] {.5, .5, 0, 0}),
+            new CompactSparseVector(new double[] {0, 0, .5, .5}),
+        };
+
+        assertEquals(VectorIO.toString(vectors[0]),
+                     VectorIO.toString(wordsi.getVector("cat")));
+        assertEquals(VectorIO.toString(vectors[1]),
+                     VectorIO.toString(wordsi.getVector("cat-1")));
+        assertEquals(2, wordsi.getWords().size());
+    }
+
     class MockClustering implements Clustering {
 
         boolean calledWithoutNumC;